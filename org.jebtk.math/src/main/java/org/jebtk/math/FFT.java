@@ -0,0 +1,185 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.math;
+
+/**
+ * In place radix 2 fast Fourier transform on primitive arrays, used for
+ * convolutions such as kernel smoothing.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class FFT {
+
+  /**
+   * Instantiates a new fft.
+   */
+  private FFT() {
+    // Do nothing
+  }
+
+  /**
+   * Returns the smallest power of 2 that is greater than or equal to n.
+   *
+   * @param n the n
+   * @return the power of 2
+   */
+  public static int nextPowerOf2(int n) {
+    int ret = 1;
+
+    while (ret < n) {
+      ret <<= 1;
+    }
+
+    return ret;
+  }
+
+  /**
+   * Forward transform of a complex sequence. The length of the arrays must be
+   * a power of 2.
+   *
+   * @param re the real parts, replaced by the transform.
+   * @param im the imaginary parts, replaced by the transform.
+   */
+  public static void transform(double[] re, double[] im) {
+    transform(re, im, false);
+  }
+
+  /**
+   * Inverse transform of a complex sequence, including the 1 / n scaling.
+   * The length of the arrays must be a power of 2.
+   *
+   * @param re the real parts, replaced by the inverse transform.
+   * @param im the imaginary parts, replaced by the inverse transform.
+   */
+  public static void inverse(double[] re, double[] im) {
+    transform(re, im, true);
+
+    int n = re.length;
+
+    for (int i = 0; i < n; ++i) {
+      re[i] /= n;
+      im[i] /= n;
+    }
+  }
+
+  /**
+   * Circular convolution of two real sequences of the same power of 2
+   * length. To get a linear convolution the sequences must be padded with
+   * enough zeros that the result does not wrap around.
+   *
+   * @param a the first sequence.
+   * @param b the second sequence.
+   * @return the convolution.
+   */
+  public static double[] convolve(double[] a, double[] b) {
+    int n = a.length;
+
+    double[] re1 = a.clone();
+    double[] im1 = new double[n];
+    double[] re2 = b.clone();
+    double[] im2 = new double[n];
+
+    transform(re1, im1);
+    transform(re2, im2);
+
+    for (int i = 0; i < n; ++i) {
+      double r = re1[i] * re2[i] - im1[i] * im2[i];
+
+      im1[i] = re1[i] * im2[i] + im1[i] * re2[i];
+      re1[i] = r;
+    }
+
+    inverse(re1, im1);
+
+    return re1;
+  }
+
+  /**
+   * Iterative Cooley-Tukey transform.
+   *
+   * @param re the re
+   * @param im the im
+   * @param inverse true for the inverse transform (without scaling).
+   */
+  private static void transform(double[] re, double[] im, boolean inverse) {
+    int n = re.length;
+
+    if (Integer.bitCount(n) != 1) {
+      throw new IllegalArgumentException(n + " is not a power of 2.");
+    }
+
+    // Bit reversal permutation
+    for (int i = 1, j = 0; i < n; ++i) {
+      int bit = n >> 1;
+
+      for (; (j & bit) != 0; bit >>= 1) {
+        j ^= bit;
+      }
+
+      j ^= bit;
+
+      if (i < j) {
+        double t = re[i];
+        re[i] = re[j];
+        re[j] = t;
+
+        t = im[i];
+        im[i] = im[j];
+        im[j] = t;
+      }
+    }
+
+    double sign = inverse ? 1 : -1;
+
+    for (int len = 2; len <= n; len <<= 1) {
+      int half = len >> 1;
+
+      double a = sign * 2 * Math.PI / len;
+
+      // Compute the twiddle factors directly rather than by repeated
+      // multiplication so errors do not build up for long transforms
+      for (int k = 0; k < half; ++k) {
+        double wr = Math.cos(a * k);
+        double wi = Math.sin(a * k);
+
+        for (int i = k; i < n; i += len) {
+          int j = i + half;
+
+          double xr = re[j] * wr - im[j] * wi;
+          double xi = re[j] * wi + im[j] * wr;
+
+          re[j] = re[i] - xr;
+          im[j] = im[i] - xi;
+          re[i] += xr;
+          im[i] += xi;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,175 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.math;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Run blocks of work across the shared fork join pool. Work is split into
+ * contiguous ranges so that callers can partition output arrays without
+ * locking and so that results do not depend on how many threads are
+ * available.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class ParallelUtils {
+
+  /**
+   * How many blocks to aim for per thread so that uneven blocks can be
+   * balanced between threads.
+   */
+  private static final int BLOCKS_PER_THREAD = 4;
+
+  /**
+   * Recursively splits a range in half until it is no larger than the block
+   * size.
+   */
+  private static class RangeAction extends RecursiveAction {
+
+    /** The Constant serialVersionUID. */
+    private static final long serialVersionUID = 1L;
+
+    /** The m F. */
+    private final RangeFunction mF;
+
+    /** The m start. */
+    private final int mStart;
+
+    /** The m end. */
+    private final int mEnd;
+
+    /** The m block size. */
+    private final int mBlockSize;
+
+    /**
+     * Instantiates a new range action.
+     *
+     * @param f the function.
+     * @param start the start index (inclusive).
+     * @param end the end index (exclusive).
+     * @param blockSize the maximum number of indices to process in one task.
+     */
+    public RangeAction(RangeFunction f, int start, int end, int blockSize) {
+      mF = f;
+      mStart = start;
+      mEnd = end;
+      mBlockSize = blockSize;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.util.concurrent.RecursiveAction#compute()
+     */
+    @Override
+    protected void compute() {
+      if (mEnd - mStart <= mBlockSize) {
+        mF.apply(mStart, mEnd);
+      } else {
+        int mid = (mStart + mEnd) >>> 1;
+
+        invokeAll(new RangeAction(mF, mStart, mid, mBlockSize),
+            new RangeAction(mF, mid, mEnd, mBlockSize));
+      }
+    }
+  }
+
+  /**
+   * Instantiates a new parallel utils.
+   */
+  private ParallelUtils() {
+    // Do nothing
+  }
+
+  /**
+   * Returns the pool shared by all parallel operations.
+   *
+   * @return the fork join pool
+   */
+  public static ForkJoinPool pool() {
+    return ForkJoinPool.commonPool();
+  }
+
+  /**
+   * Returns the number of threads in the shared pool.
+   *
+   * @return the parallelism
+   */
+  public static int parallelism() {
+    return pool().getParallelism();
+  }
+
+  /**
+   * Returns a block size that splits n items into a few blocks per thread.
+   *
+   * @param n the number of items.
+   * @return the block size
+   */
+  public static int blockSize(int n) {
+    return Math.max(1, n / (parallelism() * BLOCKS_PER_THREAD));
+  }
+
+  /**
+   * Apply a function to the range [0, n) in parallel.
+   *
+   * @param n the number of items.
+   * @param f the function.
+   */
+  public static void forEach(int n, RangeFunction f) {
+    forEach(0, n, blockSize(n), f);
+  }
+
+  /**
+   * Apply a function to the range [start, end) in parallel, processing at most
+   * blockSize items per task. If the range fits in a single block, the
+   * function is run on the calling thread.
+   *
+   * @param start the start index (inclusive).
+   * @param end the end index (exclusive).
+   * @param blockSize the block size.
+   * @param f the function.
+   */
+  public static void forEach(int start,
+      int end,
+      int blockSize,
+      RangeFunction f) {
+    if (end <= start) {
+      return;
+    }
+
+    blockSize = Math.max(1, blockSize);
+
+    if (end - start <= blockSize) {
+      f.apply(start, end);
+    } else {
+      pool().invoke(new RangeAction(f, start, end, blockSize));
+    }
+  }
+}
@@ -35,7 +35,7 @@ import org.jebtk.math.matrix.Matrix;
 /**
  * The class AverageLinkage.
  */
-public class AverageLinkage implements Linkage {
+public class AverageLinkage implements LanceWilliamsLinkage {
 
   /*
    * (non-Javadoc)
@@ -132,4 +132,19 @@ public class AverageLinkage implements Linkage {
 
     return d;
   }
+
+  @Override
+  public double update(double dki,
+      double dkj,
+      double dij,
+      int ni,
+      int nj,
+      int nk) {
+    return (ni * dki + nj * dkj) / (ni + nj);
+  }
+
+  @Override
+  public boolean isSquared() {
+    return false;
+  }
 }
@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.math.cluster;
+
+import org.jebtk.math.matrix.Matrix;
+
+/**
+ * Centroid linkage (UPGMC). The distance between two clusters is the
+ * distance between their centroids. The distance metric should be
+ * Euclidean. Merge heights are not guaranteed to increase.
+ */
+public class CentroidLinkage implements LanceWilliamsLinkage {
+
+  @Override
+  public double getLinkage(final Matrix distanceMatrix,
+      final Cluster c1,
+      final Cluster c2) {
+    return Math.sqrt(LeafWeights.centroidDistance2(distanceMatrix,
+        new LeafWeights(c1, false),
+        new LeafWeights(c2, false)));
+  }
+
+  @Override
+  public double update(double dki,
+      double dkj,
+      double dij,
+      int ni,
+      int nj,
+      int nk) {
+    double n = ni + nj;
+
+    return (ni * dki + nj * dkj) / n - ni * nj * dij / (n * n);
+  }
+
+  @Override
+  public boolean isSquared() {
+    return true;
+  }
+}
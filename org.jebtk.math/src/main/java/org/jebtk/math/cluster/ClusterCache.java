@@ -0,0 +1,717 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.math.cluster;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.jebtk.math.matrix.Matrix;
+
+/**
+ * Caches distance matrices and linkage trees on disk so that clustering the
+ * same data again does not need to recalculate them. Entries are keyed by a
+ * fingerprint of the matrix values together with the metric, linkage and
+ * orientation. Distance matrices are stored as the packed upper triangle of
+ * the leaf to leaf distances and read back through memory mapped buffers.
+ * 
+ * The cache is limited to a maximum number of bytes. Reading an entry marks
+ * it as recently used and the least recently used entries are removed when a
+ * new entry would exceed the limit.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class ClusterCache {
+
+  /** The Constant DISTANCE_EXT. */
+  private static final String DISTANCE_EXT = ".dist";
+
+  /** The Constant TREE_EXT. */
+  private static final String TREE_EXT = ".tree";
+
+  /** Identifies cache files and their format version. */
+  private static final int MAGIC = 0x4A434332;
+
+  /** The size of the distance matrix file header in bytes. */
+  private static final int HEADER_BYTES = 12;
+
+  /** Map at most this many doubles at a time (1Gb). */
+  private static final int MAP_DOUBLES = 1 << 27;
+
+  /** The m dir. */
+  private final Path mDir;
+
+  /** The m max bytes. */
+  private final long mMaxBytes;
+
+  /**
+   * Instantiates a new cluster cache.
+   *
+   * @param dir the directory to store entries in. It is created if it does
+   *          not exist.
+   * @param maxBytes the maximum size of the cache.
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public ClusterCache(Path dir, long maxBytes) throws IOException {
+    mDir = dir;
+    mMaxBytes = maxBytes;
+
+    Files.createDirectories(dir);
+  }
+
+  /**
+   * Returns the key for the distances between the rows of a matrix.
+   *
+   * @param m the m
+   * @param metric the metric
+   * @return the key
+   */
+  public static String rowKey(Matrix m, DistanceMetric metric) {
+    return key(m, false, metric, null);
+  }
+
+  /**
+   * Returns the key for the distances between the columns of a matrix.
+   *
+   * @param m the m
+   * @param metric the metric
+   * @return the key
+   */
+  public static String columnKey(Matrix m, DistanceMetric metric) {
+    return key(m, true, metric, null);
+  }
+
+  /**
+   * Returns the key for an entry. The key is a SHA-256 digest of the matrix
+   * dimensions and values, the orientation and a description of the metric
+   * and linkage made of their class names and the values of their instance
+   * fields, so that differently parameterized instances of the same class do
+   * not share entries.
+   *
+   * @param m the m
+   * @param columns true if the columns are being clustered.
+   * @param metric the metric
+   * @param linkage the linkage, or null for a distance matrix.
+   * @return the key
+   */
+  public static String key(Matrix m,
+      boolean columns,
+      DistanceMetric metric,
+      Linkage linkage) {
+    MessageDigest digest;
+
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      // Every Java platform is required to support SHA-256
+      throw new IllegalStateException(e);
+    }
+
+    int rows = m.getRows();
+    int cols = m.getCols();
+
+    ByteBuffer buffer = ByteBuffer.allocate(8 * Math.max(2, cols));
+
+    buffer.putInt(rows).putInt(cols);
+    digest.update(buffer.array(), 0, 8);
+
+    for (int i = 0; i < rows; ++i) {
+      buffer.clear();
+
+      for (int j = 0; j < cols; ++j) {
+        buffer.putLong(Double.doubleToLongBits(m.getValue(i, j)));
+      }
+
+      digest.update(buffer.array(), 0, buffer.position());
+    }
+
+    StringBuilder desc = new StringBuilder();
+
+    desc.append(columns ? "col" : "row").append(';');
+    describe(metric, desc);
+    desc.append(';');
+
+    if (linkage != null) {
+      describe(linkage, desc);
+    }
+
+    digest.update(desc.toString().getBytes(StandardCharsets.UTF_8));
+
+    StringBuilder ret = new StringBuilder();
+
+    for (byte b : digest.digest()) {
+      ret.append(String.format("%02x", b));
+    }
+
+    return ret.toString();
+  }
+
+  /**
+   * Append the class name of an object and the values of its instance fields,
+   * including inherited ones, in a fixed order.
+   *
+   * @param o the o
+   * @param desc the desc
+   */
+  private static void describe(Object o, StringBuilder desc) {
+    desc.append(o.getClass().getName());
+
+    for (Class<?> c = o.getClass(); c != Object.class; c = c
+        .getSuperclass()) {
+      Field[] fields = c.getDeclaredFields();
+
+      // The order of declared fields is not specified
+      Arrays.sort(fields, new Comparator<Field>() {
+        @Override
+        public int compare(Field f1, Field f2) {
+          return f1.getName().compareTo(f2.getName());
+        }
+      });
+
+      for (Field field : fields) {
+        int modifiers = field.getModifiers();
+
+        if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)
+            || field.isSynthetic()) {
+          continue;
+        }
+
+        field.setAccessible(true);
+
+        Object v;
+
+        try {
+          v = field.get(o);
+        } catch (IllegalAccessException e) {
+          throw new IllegalStateException(e);
+        }
+
+        desc.append(',').append(field.getName()).append('=');
+
+        // Handles arrays of any type
+        desc.append(Arrays.deepToString(new Object[] { v }));
+      }
+    }
+  }
+
+  /**
+   * Returns the distances between the columns of a matrix, calculating and
+   * caching them if necessary.
+   *
+   * @param m the m
+   * @param metric the metric
+   * @return the distance matrix
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public DistanceMatrix columnDistanceMatrix(Matrix m, DistanceMetric metric)
+      throws IOException {
+    String key = columnKey(m, metric);
+
+    DistanceMatrix ret = getDistanceMatrix(key);
+
+    if (ret == null) {
+      ret = HierarchicalClustering.createColumnDistanceMatrix(m, metric);
+
+      putDistanceMatrix(key, ret);
+    }
+
+    return ret;
+  }
+
+  /**
+   * Returns the distances between the rows of a matrix, calculating and
+   * caching them if necessary.
+   *
+   * @param m the m
+   * @param metric the metric
+   * @return the distance matrix
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public DistanceMatrix rowDistanceMatrix(Matrix m, DistanceMetric metric)
+      throws IOException {
+    String key = rowKey(m, metric);
+
+    DistanceMatrix ret = getDistanceMatrix(key);
+
+    if (ret == null) {
+      ret = HierarchicalClustering.createRowDistanceMatrix(m, metric);
+
+      putDistanceMatrix(key, ret);
+    }
+
+    return ret;
+  }
+
+  /**
+   * Returns the linkage of the columns of a matrix, using cached distances
+   * and trees where possible.
+   *
+   * @param m the m
+   * @param linkage the linkage
+   * @param metric the metric
+   * @return the dendrogram
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public Dendrogram columnLinkage(Matrix m,
+      Linkage linkage,
+      DistanceMetric metric) throws IOException {
+    String key = key(m, true, metric, linkage);
+
+    Dendrogram ret = getDendrogram(key);
+
+    if (ret == null) {
+      // Linkage writes merged distances so work on a copy
+      DistanceMatrix dm = new DistanceMatrix(columnDistanceMatrix(m, metric));
+
+      ret = HierarchicalClustering.linkage(linkage, m.getCols(), dm);
+
+      putDendrogram(key, ret);
+    }
+
+    return ret;
+  }
+
+  /**
+   * Returns the linkage of the rows of a matrix, using cached distances and
+   * trees where possible.
+   *
+   * @param m the m
+   * @param linkage the linkage
+   * @param metric the metric
+   * @return the dendrogram
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public Dendrogram rowLinkage(Matrix m,
+      Linkage linkage,
+      DistanceMetric metric) throws IOException {
+    String key = key(m, false, metric, linkage);
+
+    Dendrogram ret = getDendrogram(key);
+
+    if (ret == null) {
+      DistanceMatrix dm = new DistanceMatrix(rowDistanceMatrix(m, metric));
+
+      ret = HierarchicalClustering.linkage(linkage, m.getRows(), dm);
+
+      putDendrogram(key, ret);
+    }
+
+    return ret;
+  }
+
+  /**
+   * Returns a cached distance matrix or null if there is no entry for the
+   * key.
+   *
+   * @param key the key
+   * @return the distance matrix
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public DistanceMatrix getDistanceMatrix(String key) throws IOException {
+    Path file = file(key, DISTANCE_EXT);
+
+    FileChannel channel;
+
+    // Opening directly rather than checking first means an entry that is
+    // replaced or evicted in between is simply a miss
+    try {
+      channel = FileChannel.open(file, StandardOpenOption.READ);
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+
+    DistanceMatrix ret;
+
+    try {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+
+      channel.read(header, 0);
+      header.flip();
+
+      if (header.getInt() != MAGIC) {
+        throw new IOException(file + " is not a distance matrix.");
+      }
+
+      ret = new DistanceMatrix(header.getInt());
+
+      int n = header.getInt();
+
+      long size = (long) n * (n - 1) / 2;
+
+      long p = 0;
+      DoubleBuffer buffer = null;
+
+      for (int i = 0; i < n - 1; ++i) {
+        int offset = ret.mOffsets[i] + i + 1;
+        int l = n - i - 1;
+
+        while (l > 0) {
+          if (buffer == null || !buffer.hasRemaining()) {
+            int c = (int) Math.min(MAP_DOUBLES, size - p);
+
+            buffer = channel
+                .map(FileChannel.MapMode.READ_ONLY,
+                    HEADER_BYTES + 8L * p,
+                    8L * c)
+                .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+
+            p += c;
+          }
+
+          int c = Math.min(l, buffer.remaining());
+
+          buffer.get(ret.mData, offset, c);
+
+          offset += c;
+          l -= c;
+        }
+      }
+    } finally {
+      channel.close();
+    }
+
+    touch(file);
+
+    return ret;
+  }
+
+  /**
+   * Store a distance matrix. Only the distances between the leaves are
+   * stored, since those between merged clusters are recalculated by each
+   * linkage. The matrix is assumed to have 2n - 1 rows for n leaves, as
+   * created by {@link HierarchicalClustering}.
+   *
+   * @param key the key
+   * @param m the m
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void putDistanceMatrix(String key, DistanceMatrix m)
+      throws IOException {
+    int n = (m.getRows() + 1) / 2;
+
+    long size = (long) n * (n - 1) / 2;
+
+    long bytes = HEADER_BYTES + 8L * size;
+
+    evict(bytes);
+
+    Path tmp = Files.createTempFile(mDir, key, ".tmp");
+
+    FileChannel channel = FileChannel.open(tmp,
+        StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+
+    try {
+      MappedByteBuffer header = channel
+          .map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+
+      header.putInt(MAGIC).putInt(m.getRows()).putInt(n);
+
+      // Copy the leaf part of each row, mapping the file a window at a time
+
+      long p = 0;
+      DoubleBuffer buffer = null;
+
+      for (int i = 0; i < n - 1; ++i) {
+        int offset = m.mOffsets[i] + i + 1;
+        int l = n - i - 1;
+
+        while (l > 0) {
+          if (buffer == null || !buffer.hasRemaining()) {
+            int c = (int) Math.min(MAP_DOUBLES, size - p);
+
+            buffer = channel
+                .map(FileChannel.MapMode.READ_WRITE,
+                    HEADER_BYTES + 8L * p,
+                    8L * c)
+                .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+
+            p += c;
+          }
+
+          int c = Math.min(l, buffer.remaining());
+
+          buffer.put(m.mData, offset, c);
+
+          offset += c;
+          l -= c;
+        }
+      }
+    } finally {
+      channel.close();
+    }
+
+    commit(tmp, file(key, DISTANCE_EXT));
+  }
+
+  /**
+   * Returns a cached tree or null if there is no entry for the key.
+   *
+   * @param key the key
+   * @return the dendrogram
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public Dendrogram getDendrogram(String key) throws IOException {
+    Path file = file(key, TREE_EXT);
+
+    ByteBuffer buffer;
+
+    try {
+      buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+
+    if (buffer.getInt() != MAGIC) {
+      throw new IOException(file + " is not a tree.");
+    }
+
+    int n = buffer.getInt();
+    int merges = buffer.getInt();
+
+    Dendrogram ret = new Dendrogram(n);
+
+    for (int i = 0; i < merges; ++i) {
+      ret.merge(buffer.getInt(), buffer.getInt(), buffer.getDouble());
+    }
+
+    touch(file);
+
+    return ret;
+  }
+
+  /**
+   * Store a tree.
+   *
+   * @param key the key
+   * @param dendrogram the dendrogram
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void putDendrogram(String key, Dendrogram dendrogram)
+      throws IOException {
+    int merges = dendrogram.getMergeCount();
+
+    ByteBuffer buffer = ByteBuffer.allocate(12 + 16 * merges);
+
+    buffer.putInt(MAGIC)
+        .putInt(dendrogram.getLeafCount())
+        .putInt(merges);
+
+    for (int i = 0; i < merges; ++i) {
+      buffer.putInt(dendrogram.getLeft(i))
+          .putInt(dendrogram.getRight(i))
+          .putDouble(dendrogram.getHeight(i));
+    }
+
+    evict(buffer.capacity());
+
+    Path tmp = Files.createTempFile(mDir, key, ".tmp");
+
+    Files.write(tmp, buffer.array());
+
+    commit(tmp, file(key, TREE_EXT));
+  }
+
+  /**
+   * Remove the distance matrix and tree stored under a key.
+   *
+   * @param key the key
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void invalidate(String key) throws IOException {
+    Files.deleteIfExists(file(key, DISTANCE_EXT));
+    Files.deleteIfExists(file(key, TREE_EXT));
+  }
+
+  /**
+   * Remove every entry.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void clear() throws IOException {
+    for (Path file : entries()) {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  /**
+   * Returns the number of bytes used by the cache.
+   *
+   * @return the size
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public long size() throws IOException {
+    long ret = 0;
+
+    for (Path file : entries()) {
+      ret += Files.size(file);
+    }
+
+    return ret;
+  }
+
+  /**
+   * Remove least recently used entries until there is room for a new entry.
+   *
+   * @param bytes the size of the new entry.
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private void evict(long bytes) throws IOException {
+    List<Path> files = entries();
+
+    long size = 0;
+
+    for (Path file : files) {
+      size += Files.size(file);
+    }
+
+    if (size + bytes <= mMaxBytes) {
+      return;
+    }
+
+    final List<FileTime> times = new ArrayList<FileTime>(files.size());
+
+    for (Path file : files) {
+      times.add(Files.getLastModifiedTime(file));
+    }
+
+    List<Integer> order = new ArrayList<Integer>(files.size());
+
+    for (int i = 0; i < files.size(); ++i) {
+      order.add(i);
+    }
+
+    Collections.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer o1, Integer o2) {
+        return times.get(o1).compareTo(times.get(o2));
+      }
+    });
+
+    for (int i : order) {
+      if (size + bytes <= mMaxBytes) {
+        break;
+      }
+
+      Path file = files.get(i);
+
+      size -= Files.size(file);
+
+      Files.deleteIfExists(file);
+    }
+  }
+
+  /**
+   * Returns the files in the cache.
+   *
+   * @return the list
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private List<Path> entries() throws IOException {
+    List<Path> ret = new ArrayList<Path>();
+
+    DirectoryStream<Path> stream = Files.newDirectoryStream(mDir);
+
+    try {
+      for (Path file : stream) {
+        String name = file.getFileName().toString();
+
+        if (name.endsWith(DISTANCE_EXT) || name.endsWith(TREE_EXT)) {
+          ret.add(file);
+        }
+      }
+    } finally {
+      stream.close();
+    }
+
+    return ret;
+  }
+
+  /**
+   * Move a completed temporary file into place so that readers never see a
+   * partly written entry.
+   *
+   * @param tmp the tmp
+   * @param file the file
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static void commit(Path tmp, Path file) throws IOException {
+    Files.move(tmp,
+        file,
+        StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Mark an entry as recently used. Entries removed by another process after
+   * they were read are ignored.
+   *
+   * @param file the file
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static void touch(Path file) throws IOException {
+    try {
+      Files.setLastModifiedTime(file,
+          FileTime.fromMillis(System.currentTimeMillis()));
+    } catch (NoSuchFileException e) {
+      // Already evicted
+    }
+  }
+
+  /**
+   * File.
+   *
+   * @param key the key
+   * @param ext the ext
+   * @return the path
+   */
+  private Path file(String key, String ext) {
+    return mDir.resolve(key + ext);
+  }
+}
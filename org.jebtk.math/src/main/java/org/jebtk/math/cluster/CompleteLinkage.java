@@ -35,7 +35,7 @@ import org.jebtk.math.matrix.Matrix;
 /**
  * The class CompleteLinkage.
  */
-public class CompleteLinkage implements Linkage {
+public class CompleteLinkage implements LanceWilliamsLinkage {
 
   /*
    * (non-Javadoc)
@@ -134,4 +134,19 @@ public class CompleteLinkage implements Linkage {
 
     return d;
   }
+
+  @Override
+  public double update(double dki,
+      double dkj,
+      double dij,
+      int ni,
+      int nj,
+      int nk) {
+    return Math.max(dki, dkj);
+  }
+
+  @Override
+  public boolean isSquared() {
+    return false;
+  }
 }
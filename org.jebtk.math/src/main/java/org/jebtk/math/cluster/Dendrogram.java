@@ -0,0 +1,469 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.math.cluster;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Compact array representation of a dendrogram in the style of a linkage
+ * matrix. Leaves are numbered [0, n - 1] and the i-th merge creates the node
+ * n + i, which matches the ids assigned to {@code Cluster} objects by
+ * {@code HierarchicalClustering}. Each merge is stored in four parallel
+ * primitive arrays so trees with many thousands of leaves can be stored and
+ * traversed without creating an object per node.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class Dendrogram {
+
+  /** The number of leaves. */
+  private final int mN;
+
+  /** The number of merges performed so far. */
+  private int mMerges = 0;
+
+  /** The left child of each merge. */
+  private final int[] mLeft;
+
+  /** The right child of each merge. */
+  private final int[] mRight;
+
+  /** The height (linkage distance) of each merge. */
+  private final double[] mHeight;
+
+  /** The number of leaves under each merge. */
+  private final int[] mSize;
+
+  /**
+   * Instantiates a new dendrogram with space for n - 1 merges.
+   *
+   * @param n the number of leaves.
+   */
+  public Dendrogram(int n) {
+    mN = n;
+
+    int m = Math.max(0, n - 1);
+
+    mLeft = new int[m];
+    mRight = new int[m];
+    mHeight = new double[m];
+    mSize = new int[m];
+  }
+
+  /**
+   * Record the merge of two nodes and return the id of the new node.
+   *
+   * @param left the id of the left child.
+   * @param right the id of the right child.
+   * @param height the linkage distance between the children.
+   * @return the id of the new node.
+   */
+  public int merge(int left, int right, double height) {
+    if (mMerges == mLeft.length) {
+      throw new IllegalStateException("All " + mN + " leaves have been merged.");
+    }
+
+    int i = mMerges++;
+
+    mLeft[i] = left;
+    mRight[i] = right;
+    mHeight[i] = height;
+    mSize[i] = getSize(left) + getSize(right);
+
+    return mN + i;
+  }
+
+  /**
+   * Returns the number of leaves.
+   *
+   * @return the leaf count
+   */
+  public int getLeafCount() {
+    return mN;
+  }
+
+  /**
+   * Returns the number of merges recorded.
+   *
+   * @return the merge count
+   */
+  public int getMergeCount() {
+    return mMerges;
+  }
+
+  /**
+   * Returns the id of the root node.
+   *
+   * @return the root
+   */
+  public int getRoot() {
+    return mMerges > 0 ? mN + mMerges - 1 : 0;
+  }
+
+  /**
+   * Returns true if the node id refers to a leaf.
+   *
+   * @param node the node
+   * @return true, if is leaf
+   */
+  public boolean isLeaf(int node) {
+    return node < mN;
+  }
+
+  /**
+   * Gets the left child of a merge.
+   *
+   * @param merge the merge index (not the node id).
+   * @return the left
+   */
+  public int getLeft(int merge) {
+    return mLeft[merge];
+  }
+
+  /**
+   * Gets the right child of a merge.
+   *
+   * @param merge the merge index (not the node id).
+   * @return the right
+   */
+  public int getRight(int merge) {
+    return mRight[merge];
+  }
+
+  /**
+   * Gets the height of a merge.
+   *
+   * @param merge the merge index (not the node id).
+   * @return the height
+   */
+  public double getHeight(int merge) {
+    return mHeight[merge];
+  }
+
+  /**
+   * Returns the number of leaves under a node.
+   *
+   * @param node the node id.
+   * @return the size
+   */
+  public int getSize(int node) {
+    return node < mN ? 1 : mSize[node - mN];
+  }
+
+  /**
+   * Swap the children of a merge. This does not alter the structure of the
+   * tree, only the order in which the leaves are drawn.
+   *
+   * @param merge the merge index.
+   */
+  public void swapChildren(int merge) {
+    int t = mLeft[merge];
+
+    mLeft[merge] = mRight[merge];
+    mRight[merge] = t;
+  }
+
+  /**
+   * Returns the leaf ids in the order they appear in the tree reading left to
+   * right.
+   *
+   * @return the leaf order
+   */
+  public int[] leafOrder() {
+    int[] ret = new int[mN];
+
+    if (mN == 0) {
+      return ret;
+    }
+
+    // A binary tree with n leaves never needs more than n stack slots
+    int[] stack = new int[mN];
+    int sp = 0;
+    int c = 0;
+
+    stack[sp++] = getRoot();
+
+    while (sp > 0) {
+      int node = stack[--sp];
+
+      if (node < mN) {
+        ret[c++] = node;
+      } else {
+        int i = node - mN;
+
+        stack[sp++] = mRight[i];
+        stack[sp++] = mLeft[i];
+      }
+    }
+
+    return ret;
+  }
+
+  /**
+   * Cut the tree so that merges above a given height are ignored and return
+   * the flat cluster label of each leaf. Labels are numbered from zero in the
+   * order clusters first appear in the leaf order. For linkages where merge
+   * heights are not monotonic (such as centroid), a merge is only applied if
+   * it and every merge beneath it are at or below the height.
+   *
+   * @param height the height
+   * @return the cluster label of each leaf.
+   */
+  public int[] cutByHeight(double height) {
+    double[] h = monotonicHeights();
+
+    int[] parent = createParents();
+
+    for (int i = 0; i < mMerges; ++i) {
+      if (h[i] <= height) {
+        join(parent, i);
+      }
+    }
+
+    return labels(parent);
+  }
+
+  /**
+   * Cut the tree into at most k flat clusters and return the cluster label of
+   * each leaf.
+   *
+   * @param k the number of clusters.
+   * @return the cluster label of each leaf.
+   */
+  public int[] cutByK(int k) {
+    k = Math.max(1, Math.min(k, mN));
+
+    final double[] h = monotonicHeights();
+
+    // Order merges by height. Ties are broken by merge index which
+    // guarantees children are always applied before their parents.
+    Integer[] sorted = new Integer[mMerges];
+
+    for (int i = 0; i < mMerges; ++i) {
+      sorted[i] = i;
+    }
+
+    Arrays.sort(sorted, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer i1, Integer i2) {
+        int c = Double.compare(h[i1], h[i2]);
+
+        return c != 0 ? c : Integer.compare(i1, i2);
+      }
+    });
+
+    int[] parent = createParents();
+
+    int clusters = mN;
+
+    for (int i = 0; i < mMerges && clusters > k; ++i) {
+      join(parent, sorted[i]);
+
+      --clusters;
+    }
+
+    return labels(parent);
+  }
+
+  /**
+   * Returns merge heights adjusted so that no merge is lower than any merge
+   * beneath it.
+   *
+   * @return the heights
+   */
+  private double[] monotonicHeights() {
+    double[] ret = new double[mMerges];
+
+    // Children always have lower merge indices than their parents so a
+    // single forward pass is sufficient.
+    for (int i = 0; i < mMerges; ++i) {
+      double h = mHeight[i];
+
+      if (mLeft[i] >= mN) {
+        h = Math.max(h, ret[mLeft[i] - mN]);
+      }
+
+      if (mRight[i] >= mN) {
+        h = Math.max(h, ret[mRight[i] - mN]);
+      }
+
+      ret[i] = h;
+    }
+
+    return ret;
+  }
+
+  /**
+   * Create a parent array for union find where each node is its own parent.
+   *
+   * @return the parent array
+   */
+  private int[] createParents() {
+    int[] parent = new int[mN + mMerges];
+
+    for (int i = 0; i < parent.length; ++i) {
+      parent[i] = i;
+    }
+
+    return parent;
+  }
+
+  /**
+   * Apply a merge by making the merge node the parent of both children.
+   *
+   * @param parent the parent array
+   * @param merge the merge
+   */
+  private void join(int[] parent, int merge) {
+    int node = mN + merge;
+
+    parent[mLeft[merge]] = node;
+    parent[mRight[merge]] = node;
+  }
+
+  /**
+   * Convert a union find parent array into labels, numbered in the order they
+   * first appear in the leaf order.
+   *
+   * @param parent the parent
+   * @return the labels
+   */
+  private int[] labels(int[] parent) {
+    int[] ret = new int[mN];
+
+    int[] ids = new int[parent.length];
+
+    Arrays.fill(ids, -1);
+
+    int label = 0;
+
+    for (int leaf : leafOrder()) {
+      int root = find(parent, leaf);
+
+      if (ids[root] == -1) {
+        ids[root] = label++;
+      }
+
+      ret[leaf] = ids[root];
+    }
+
+    return ret;
+  }
+
+  /**
+   * Find the root of a node, compressing the path as we go.
+   *
+   * @param parent the parent
+   * @param node the node
+   * @return the root
+   */
+  private static int find(int[] parent, int node) {
+    int root = node;
+
+    while (parent[root] != root) {
+      root = parent[root];
+    }
+
+    while (parent[node] != root) {
+      int next = parent[node];
+      parent[node] = root;
+      node = next;
+    }
+
+    return root;
+  }
+
+  /**
+   * Convert the dendrogram into a tree of cluster objects.
+   *
+   * @return the root cluster
+   */
+  public Cluster toCluster() {
+    if (mMerges == 0) {
+      return new Cluster(0, 0);
+    }
+
+    Cluster[] nodes = new Cluster[mN + mMerges];
+
+    for (int i = 0; i < mN; ++i) {
+      nodes[i] = new Cluster(i, 0);
+    }
+
+    for (int i = 0; i < mMerges; ++i) {
+      int id = mN + i;
+
+      nodes[id] = new Cluster(id, mHeight[i], nodes[mLeft[i]],
+          nodes[mRight[i]]);
+    }
+
+    return nodes[getRoot()];
+  }
+
+  /**
+   * Create a dendrogram from a cluster tree. The tree must use the id
+   * convention of {@code HierarchicalClustering}, i.e. leaves are numbered
+   * [0, n - 1] and parents [n, 2n - 2] in the order they were merged.
+   *
+   * @param root the root
+   * @param n the number of leaves.
+   * @return the dendrogram
+   */
+  public static Dendrogram fromCluster(final Cluster root, int n) {
+    Dendrogram ret = new Dendrogram(n);
+
+    if (n < 2) {
+      return ret;
+    }
+
+    Cluster[] parents = new Cluster[n - 1];
+
+    Cluster[] stack = new Cluster[n];
+    int sp = 0;
+
+    stack[sp++] = root;
+
+    while (sp > 0) {
+      Cluster c = stack[--sp];
+
+      if (c.isParent()) {
+        parents[c.getId() - n] = c;
+
+        stack[sp++] = c.getChild2();
+        stack[sp++] = c.getChild1();
+      }
+    }
+
+    for (Cluster c : parents) {
+      ret.merge(c.getChild1().getId(), c.getChild2().getId(), c.getLevel());
+    }
+
+    return ret;
+  }
+}
@@ -92,6 +92,33 @@ public abstract class DistanceMetric {
    */
   public abstract double distance(final double[] d1, final double[] d2);
 
+  /**
+   * Measures the distance between two blocks of n values stored in larger
+   * arrays, for example two rows of a row major matrix. The default
+   * implementation copies the blocks so subclasses should override this to
+   * avoid allocation.
+   *
+   * @param d1 Array 1
+   * @param o1 The offset of the first value in array 1.
+   * @param d2 Array 2
+   * @param o2 The offset of the first value in array 2.
+   * @param n The number of values to compare.
+   * @return The distance between the two blocks.
+   */
+  public double distance(final double[] d1,
+      int o1,
+      final double[] d2,
+      int o2,
+      int n) {
+    double[] b1 = new double[n];
+    double[] b2 = new double[n];
+
+    System.arraycopy(d1, o1, b1, 0, n);
+    System.arraycopy(d2, o2, b2, 0, n);
+
+    return distance(b1, b2);
+  }
+
   /**
    * Distance.
    *
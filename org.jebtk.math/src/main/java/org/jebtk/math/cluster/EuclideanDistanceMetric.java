@@ -56,6 +56,31 @@ public class EuclideanDistanceMetric extends DistanceMetric {
     return d;
   }
 
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.jebtk.math.cluster.DistanceMetric#distance(double[], int,
+   * double[], int, int)
+   */
+  @Override
+  public double distance(final double[] d1,
+      int o1,
+      final double[] d2,
+      int o2,
+      int n) {
+    double d = 0;
+    double x;
+
+    for (int i = 0; i < n; ++i) {
+      x = d1[o1++] - d2[o2++];
+      d += x * x;
+    }
+
+    d = Math.sqrt(d);
+
+    return d;
+  }
+
   /*
    * (non-Javadoc)
    * 
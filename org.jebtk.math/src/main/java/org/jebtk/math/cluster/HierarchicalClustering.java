@@ -163,6 +163,73 @@ public class HierarchicalClustering {
       boolean optimalLeafOrdering,
       DistanceMatrix distanceMatrix) {
 
+    Cluster rootCluster = linkage(l, numberOfSamples, distanceMatrix)
+        .toCluster();
+
+    // reorder by id
+    // orderById(distanceMatrix, rootCluster);
+
+    if (optimalLeafOrdering) {
+      rootCluster = optimalLeafOrder(numberOfSamples,
+          distanceMatrix,
+          rootCluster);
+    }
+
+    return rootCluster;
+  }
+
+  /**
+   * Row linkage.
+   *
+   * @param m the m
+   * @param l the l
+   * @param distanceMetric the distance metric
+   * @return the dendrogram
+   */
+  public static Dendrogram rowLinkage(final Matrix m,
+      final Linkage l,
+      final DistanceMetric distanceMetric) {
+    DistanceMatrix distance = createRowDistanceMatrix(m, distanceMetric);
+
+    return linkage(l, m.getRows(), distance);
+  }
+
+  /**
+   * Column linkage.
+   *
+   * @param m the m
+   * @param l the l
+   * @param distanceMetric the distance metric
+   * @return the dendrogram
+   */
+  public static Dendrogram columnLinkage(final Matrix m,
+      final Linkage l,
+      final DistanceMetric distanceMetric) {
+    DistanceMatrix distance = createColumnDistanceMatrix(m, distanceMetric);
+
+    return linkage(l, m.getCols(), distance);
+  }
+
+  /**
+   * Agglomeratively cluster samples and return the merges as a compact
+   * dendrogram. Use {@link Dendrogram#toCluster()} to obtain a cluster tree.
+   *
+   * @param l A linkage function.
+   * @param numberOfSamples How many samples are in the matrix.
+   * @param distanceMatrix The distance matrix. This must have space for 2n - 1
+   *          nodes since the distances to merged clusters are written to it.
+   * @return the dendrogram
+   */
+  public static Dendrogram linkage(final Linkage l,
+      int numberOfSamples,
+      DistanceMatrix distanceMatrix) {
+
+    if (l instanceof LanceWilliamsLinkage) {
+      return linkage((LanceWilliamsLinkage) l, numberOfSamples, distanceMatrix);
+    }
+
+    Dendrogram dendrogram = new Dendrogram(numberOfSamples);
+
     // Start by putting every index in a cluster
 
     List<Cluster> allClusters = new ArrayList<Cluster>();
@@ -230,6 +297,10 @@ public class HierarchicalClustering {
       Cluster mergeCluster = new Cluster(clusterId, minDistance,
           clusters.get(minCluster1), clusters.get(minCluster2));
 
+      dendrogram.merge(clusters.get(minCluster1).getId(),
+          clusters.get(minCluster2).getId(),
+          minDistance);
+
       allClusters.add(mergeCluster);
 
       ++clusterId;
@@ -288,21 +359,203 @@ public class HierarchicalClustering {
        */
     }
 
-    // The last cluster is the single cluster
-    // from which all sub clusters are
-    // derived.
-    Cluster rootCluster = clusters.get(0);
+    return dendrogram;
+  }
 
-    // reorder by id
-    // orderById(distanceMatrix, rootCluster);
+  /**
+   * Agglomerative clustering using the Lance-Williams update of the linkage.
+   * After each merge, the distances from the new cluster to every earlier
+   * cluster and to itself are written to the distance matrix, so each merge
+   * costs O(n) rather than walking the leaves of both clusters. Single,
+   * complete and average linkage are aggregates over pairs of leaves so the
+   * update gives the same values as the general method, even for clusters
+   * that contain one another. Each cluster keeps track of its nearest
+   * cluster with a larger id so that only clusters whose nearest neighbor
+   * was merged need to be rescanned. Ties are broken in the same way as the
+   * general method.
+   *
+   * @param l A linkage function.
+   * @param numberOfSamples How many samples are in the matrix.
+   * @param distanceMatrix The distance matrix. This must have space for 2n - 1
+   *          nodes.
+   * @return the dendrogram
+   */
+  public static Dendrogram linkage(final LanceWilliamsLinkage l,
+      int numberOfSamples,
+      DistanceMatrix distanceMatrix) {
+    int n = numberOfSamples;
 
-    if (optimalLeafOrdering) {
-      rootCluster = optimalLeafOrder(numberOfSamples,
-          distanceMatrix,
-          rootCluster);
+    Dendrogram dendrogram = new Dendrogram(n);
+
+    if (n < 2) {
+      return dendrogram;
     }
 
-    return rootCluster;
+    double[] d = distanceMatrix.mData;
+    int[] offsets = distanceMatrix.mOffsets;
+
+    boolean squared = l.isSquared();
+
+    // The active clusters ordered by id. Merged clusters always have the
+    // largest id so are appended to the end.
+    int[] active = new int[n];
+    int m = n;
+
+    int[] size = new int[2 * n - 1];
+
+    // Nearest active cluster with a larger id and the distance to it
+    int[] nn = new int[2 * n - 1];
+    double[] nnDist = new double[2 * n - 1];
+
+    for (int i = 0; i < n; ++i) {
+      active[i] = i;
+      size[i] = 1;
+    }
+
+    for (int p = 0; p < m; ++p) {
+      nearest(d, offsets, active, m, p, nn, nnDist);
+    }
+
+    for (int c = n; c < 2 * n - 1; ++c) {
+      // Find the closest pair, preferring the lowest ids
+      int p1 = -1;
+      double minDistance = Double.MAX_VALUE;
+
+      for (int p = 0; p < m - 1; ++p) {
+        if (nnDist[active[p]] < minDistance) {
+          minDistance = nnDist[active[p]];
+          p1 = p;
+        }
+      }
+
+      if (p1 == -1) {
+        // Only infinite or NaN distances remain
+        p1 = 0;
+        nn[active[0]] = active[1];
+        minDistance = d[index(offsets, active[0], active[1])];
+      }
+
+      int i = active[p1];
+      int j = nn[i];
+
+      dendrogram.merge(i, j, minDistance);
+
+      size[c] = size[i] + size[j];
+
+      // Remove i and j from the active list
+
+      int w = 0;
+
+      for (int p = 0; p < m; ++p) {
+        if (active[p] != i && active[p] != j) {
+          active[w++] = active[p];
+        }
+      }
+
+      m = w;
+
+      double dij = d[index(offsets, i, j)];
+
+      if (squared) {
+        dij *= dij;
+      }
+
+      // Write the distance to every earlier cluster, not just the active
+      // ones, and finally to c itself since the leaf ordering methods read
+      // these cells
+      for (int k = 0; k <= c; ++k) {
+        double dki = d[index(offsets, k, i)];
+        double dkj = d[index(offsets, k, j)];
+
+        if (squared) {
+          dki *= dki;
+          dkj *= dkj;
+        }
+
+        double dkc = l.update(dki, dkj, dij, size[i], size[j], size[k]);
+
+        if (squared) {
+          dkc = Math.sqrt(Math.max(0, dkc));
+        }
+
+        d[offsets[k] + c] = dkc;
+      }
+
+      active[m++] = c;
+
+      // Since c has the largest id it is only a candidate neighbor for the
+      // other clusters
+
+      for (int p = 0; p < m - 1; ++p) {
+        int k = active[p];
+
+        if (nn[k] == i || nn[k] == j) {
+          nearest(d, offsets, active, m, p, nn, nnDist);
+        } else {
+          double dkc = d[offsets[k] + c];
+
+          if (dkc < nnDist[k]) {
+            nn[k] = c;
+            nnDist[k] = dkc;
+          }
+        }
+      }
+
+      nn[c] = -1;
+      nnDist[c] = Double.MAX_VALUE;
+    }
+
+    return dendrogram;
+  }
+
+  /**
+   * Find the nearest active cluster with a larger id than the cluster at a
+   * given position in the active list.
+   *
+   * @param d the distance data
+   * @param offsets the row offsets
+   * @param active the active clusters
+   * @param m the number of active clusters.
+   * @param p the position of the cluster.
+   * @param nn the nearest neighbors.
+   * @param nnDist the nearest neighbor distances.
+   */
+  private static void nearest(double[] d,
+      int[] offsets,
+      int[] active,
+      int m,
+      int p,
+      int[] nn,
+      double[] nnDist) {
+    int k = active[p];
+    int o = offsets[k];
+
+    int best = -1;
+    double min = Double.MAX_VALUE;
+
+    for (int q = p + 1; q < m; ++q) {
+      double dq = d[o + active[q]];
+
+      if (dq < min) {
+        min = dq;
+        best = active[q];
+      }
+    }
+
+    nn[k] = best;
+    nnDist[k] = min;
+  }
+
+  /**
+   * Returns the index of a pair of clusters in a packed distance matrix.
+   *
+   * @param offsets the offsets
+   * @param i the i
+   * @param j the j
+   * @return the int
+   */
+  private static int index(int[] offsets, int i, int j) {
+    return i < j ? offsets[i] + j : offsets[j] + i;
   }
 
   /**
@@ -0,0 +1,590 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.math.cluster;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+
+import org.jebtk.math.ParallelUtils;
+import org.jebtk.math.RangeFunction;
+import org.jebtk.math.matrix.Matrix;
+
+/**
+ * Adds samples to a cluster tree built by {@link HierarchicalClustering}
+ * without reclustering from scratch. Only the distances between the new
+ * samples and the existing ones are calculated. Samples are inserted in order
+ * either next to their nearest leaf or by reclustering the subtree they join.
+ * 
+ * The distance matrix of the updated tree contains every leaf to leaf
+ * distance and, for each internal node with at least one internal child, the
+ * distance between its two children (its merge height), which is what the
+ * leaf ordering methods in {@link HierarchicalClustering} use. Leaf to leaf
+ * distances are never replaced by merge heights.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class IncrementalClustering {
+
+  /** The Constant DEFAULT_MAX_LOCAL_SIZE. */
+  public static final int DEFAULT_MAX_LOCAL_SIZE = 200;
+
+  /** The m linkage. */
+  private final Linkage mLinkage;
+
+  /** The m metric. */
+  private final DistanceMetric mMetric;
+
+  /** The m method. */
+  private InsertionMethod mMethod = InsertionMethod.NEAREST_LEAF;
+
+  /**
+   * Subtrees with more leaves than this are not reclustered and the new
+   * sample is placed next to its nearest leaf instead.
+   */
+  private int mMaxLocalSize = DEFAULT_MAX_LOCAL_SIZE;
+
+  /** The m root. */
+  private Cluster mRoot;
+
+  /** The m dist. */
+  private DistanceMatrix mDist;
+
+  /** The number of leaves. */
+  private int mN;
+
+  /** Working copy of the tree. */
+  private int[] mLeft;
+
+  /** The m right. */
+  private int[] mRight;
+
+  /** The m parent. */
+  private int[] mParent;
+
+  /** The m height. */
+  private double[] mHeight;
+
+  /** The id of the working root. */
+  private int mRootId;
+
+  /**
+   * Instantiates a new incremental clustering.
+   *
+   * @param root the root of the existing tree.
+   * @param distanceMatrix the distance matrix used to build the tree.
+   * @param linkage the linkage used to build the tree.
+   * @param metric the metric used to build the distance matrix.
+   */
+  public IncrementalClustering(Cluster root, DistanceMatrix distanceMatrix,
+      Linkage linkage, DistanceMetric metric) {
+    mRoot = root;
+    mDist = distanceMatrix;
+    mLinkage = linkage;
+    mMetric = metric;
+    mN = root.getCumulativeChildCount();
+  }
+
+  /**
+   * Sets the insertion method.
+   *
+   * @param method the method
+   * @return the incremental clustering
+   */
+  public IncrementalClustering setMethod(InsertionMethod method) {
+    mMethod = method;
+
+    return this;
+  }
+
+  /**
+   * Sets the largest subtree that will be reclustered when using
+   * {@link InsertionMethod#LOCAL_REMERGE}.
+   *
+   * @param maxLocalSize the max local size
+   * @return the incremental clustering
+   */
+  public IncrementalClustering setMaxLocalSize(int maxLocalSize) {
+    mMaxLocalSize = maxLocalSize;
+
+    return this;
+  }
+
+  /**
+   * Gets the root.
+   *
+   * @return the root
+   */
+  public Cluster getRoot() {
+    return mRoot;
+  }
+
+  /**
+   * Gets the distance matrix.
+   *
+   * @return the distance matrix
+   */
+  public DistanceMatrix getDistanceMatrix() {
+    return mDist;
+  }
+
+  /**
+   * Gets the number of samples in the tree.
+   *
+   * @return the sample count
+   */
+  public int getSampleCount() {
+    return mN;
+  }
+
+  /**
+   * Insert columns into the tree. The first columns of the matrix must be the
+   * samples already clustered, in the same order, and any further columns are
+   * added.
+   *
+   * @param m the m
+   * @return the new root.
+   */
+  public Cluster insertColumns(final Matrix m) {
+    return insert(m, m.getCols(), true);
+  }
+
+  /**
+   * Insert rows into the tree. The first rows of the matrix must be the
+   * samples already clustered, in the same order, and any further rows are
+   * added.
+   *
+   * @param m the m
+   * @return the new root.
+   */
+  public Cluster insertRows(final Matrix m) {
+    return insert(m, m.getRows(), false);
+  }
+
+  /**
+   * Insert.
+   *
+   * @param m the m
+   * @param total the number of samples in the matrix.
+   * @param columns true if the samples are columns.
+   * @return the cluster
+   */
+  private Cluster insert(final Matrix m, final int total, final boolean columns) {
+    final int n = mN;
+    final int added = total - n;
+
+    if (added < 0) {
+      throw new IllegalArgumentException(
+          "The matrix has fewer samples than the tree.");
+    }
+
+    if (added == 0) {
+      return mRoot;
+    }
+
+    final DistanceMatrix dist = new DistanceMatrix(2 * total - 1);
+
+    // Reuse the existing leaf distances
+
+    for (int i = 0; i < n; ++i) {
+      for (int j = i + 1; j < n; ++j) {
+        dist.mData[dist.getIndex(i, j)] = mDist.getValue(i, j);
+      }
+    }
+
+    // Only the new samples need distances. Each new sample is compared to
+    // the samples before it, so every cell is written once.
+
+    ParallelUtils.forEach(n, total, 1, new RangeFunction() {
+      @Override
+      public void apply(int start, int end) {
+        for (int i = start; i < end; ++i) {
+          for (int j = 0; j < i; ++j) {
+            dist.mData[dist.getIndex(i, j)] = columns
+                ? mMetric.columnDistance(m, i, j)
+                : mMetric.rowDistance(m, i, j);
+          }
+        }
+      }
+    });
+
+    load(mRoot, n, added);
+
+    // Ids for new internal nodes follow the existing ones
+    int nextId = total + n - 1;
+
+    for (int i = n; i < total; ++i) {
+      // There is always at least one existing leaf
+      int nearest = 0;
+      double min = Double.MAX_VALUE;
+
+      for (int j = 0; j < i; ++j) {
+        double d = dist.mData[dist.getIndex(i, j)];
+
+        if (d < min) {
+          min = d;
+          nearest = j;
+        }
+      }
+
+      if (mMethod == InsertionMethod.LOCAL_REMERGE
+          && remerge(dist, i, nearest, min, nextId)) {
+        ++nextId;
+      } else {
+        join(nearest, i, min, nextId++);
+      }
+    }
+
+    mN = total;
+    mDist = dist;
+    mRoot = build(dist);
+
+    return mRoot;
+  }
+
+  /**
+   * Copy the tree into the working arrays, shifting the ids of internal
+   * nodes to make room for the new leaves.
+   *
+   * @param root the root
+   * @param n the number of existing leaves.
+   * @param added the number of leaves being added.
+   */
+  private void load(Cluster root, int n, int added) {
+    int size = 2 * (n + added) - 1;
+
+    mLeft = new int[size];
+    mRight = new int[size];
+    mParent = new int[size];
+    mHeight = new double[size];
+
+    Arrays.fill(mLeft, -1);
+    Arrays.fill(mRight, -1);
+    Arrays.fill(mParent, -1);
+
+    Cluster[] stack = new Cluster[size];
+    int sp = 0;
+
+    stack[sp++] = root;
+
+    while (sp > 0) {
+      Cluster c = stack[--sp];
+
+      int id = shift(c.getId(), n, added);
+
+      if (c.isParent()) {
+        int l = shift(c.getChild1().getId(), n, added);
+        int r = shift(c.getChild2().getId(), n, added);
+
+        mLeft[id] = l;
+        mRight[id] = r;
+        mHeight[id] = c.getLevel();
+        mParent[l] = id;
+        mParent[r] = id;
+
+        stack[sp++] = c.getChild2();
+        stack[sp++] = c.getChild1();
+      }
+    }
+
+    mRootId = shift(root.getId(), n, added);
+  }
+
+  /**
+   * Internal node ids start after the leaves so they move up by the number
+   * of leaves added.
+   *
+   * @param id the id
+   * @param n the n
+   * @param added the added
+   * @return the int
+   */
+  private static int shift(int id, int n, int added) {
+    return id < n ? id : id + added;
+  }
+
+  /**
+   * Replace a node with a new parent joining it to a new leaf.
+   *
+   * @param node the node
+   * @param leaf the leaf
+   * @param height the height of the new parent.
+   * @param id the id of the new parent.
+   */
+  private void join(int node, int leaf, double height, int id) {
+    int p = mParent[node];
+
+    // Keep the tree monotonic
+    if (p != -1) {
+      height = Math.min(height, mHeight[p]);
+    }
+
+    height = Math.max(height, mHeight[node]);
+
+    mLeft[id] = node;
+    mRight[id] = leaf;
+    mHeight[id] = height;
+
+    replace(node, id);
+
+    mParent[node] = id;
+    mParent[leaf] = id;
+  }
+
+  /**
+   * Make a node take the place of another in the tree.
+   *
+   * @param old the old
+   * @param node the node
+   */
+  private void replace(int old, int node) {
+    int p = mParent[old];
+
+    mParent[node] = p;
+
+    if (p == -1) {
+      mRootId = node;
+    } else if (mLeft[p] == old) {
+      mLeft[p] = node;
+    } else {
+      mRight[p] = node;
+    }
+  }
+
+  /**
+   * Recluster the subtree the new leaf would join together with the new
+   * leaf.
+   *
+   * @param dist the distances
+   * @param leaf the new leaf
+   * @param nearest its nearest leaf
+   * @param d the distance to the nearest leaf
+   * @param id a free internal node id
+   * @return false if the subtree was too large, in which case nothing is
+   *         changed.
+   */
+  private boolean remerge(DistanceMatrix dist,
+      int leaf,
+      int nearest,
+      double d,
+      int id) {
+    // The lowest ancestor that merged at or above the distance to the
+    // nearest leaf is where the new leaf would have joined
+    int a = mParent[nearest];
+
+    while (a != -1 && mHeight[a] < d) {
+      a = mParent[a];
+    }
+
+    if (a == -1) {
+      // Joins above the current root
+      join(mRootId, leaf, d, id);
+
+      return true;
+    }
+
+    int[] leaves = new int[mMaxLocalSize];
+    int[] internal = new int[mMaxLocalSize];
+    int s = 0;
+    int si = 0;
+
+    int[] stack = new int[mLeft.length];
+    int sp = 0;
+
+    stack[sp++] = a;
+
+    while (sp > 0) {
+      int c = stack[--sp];
+
+      if (mLeft[c] == -1) {
+        if (s == mMaxLocalSize - 1) {
+          return false;
+        }
+
+        leaves[s++] = c;
+      } else {
+        internal[si++] = c;
+
+        stack[sp++] = mRight[c];
+        stack[sp++] = mLeft[c];
+      }
+    }
+
+    leaves[s++] = leaf;
+
+    // Reuse the ids of the old subtree
+    internal[si++] = id;
+
+    DistanceMatrix local = new DistanceMatrix(2 * s - 1);
+
+    for (int i = 0; i < s; ++i) {
+      for (int j = i + 1; j < s; ++j) {
+        local.mData[local.getIndex(i, j)] = dist.mData[dist.getIndex(leaves[i],
+            leaves[j])];
+      }
+    }
+
+    Dendrogram dendrogram = HierarchicalClustering.linkage(mLinkage, s, local);
+
+    int p = mParent[a];
+    double max = p != -1 ? mHeight[p] : Double.MAX_VALUE;
+
+    int[] map = new int[2 * s - 1];
+
+    System.arraycopy(leaves, 0, map, 0, s);
+    System.arraycopy(internal, 0, map, s, s - 1);
+
+    for (int i = 0; i < s - 1; ++i) {
+      int node = map[s + i];
+      int l = map[dendrogram.getLeft(i)];
+      int r = map[dendrogram.getRight(i)];
+
+      mLeft[node] = l;
+      mRight[node] = r;
+      mHeight[node] = Math.min(dendrogram.getHeight(i), max);
+      mParent[l] = node;
+      mParent[r] = node;
+    }
+
+    // The subtree root keeps its place in the tree
+    mParent[map[2 * s - 2]] = p;
+
+    if (p == -1) {
+      mRootId = map[2 * s - 2];
+    } else if (mLeft[p] == a) {
+      mLeft[p] = map[2 * s - 2];
+    } else {
+      mRight[p] = map[2 * s - 2];
+    }
+
+    return true;
+  }
+
+  /**
+   * Renumber the internal nodes in the order agglomerative clustering would
+   * have merged them, lowest first, and create the cluster tree. A node is
+   * only merged once both its children exist, so centroid and median linkage
+   * trees whose heights are not monotonic are still built bottom up.
+   *
+   * @param dist the distance matrix to store internal merge heights in.
+   * @return the root
+   */
+  private Cluster build(DistanceMatrix dist) {
+    int n = mN;
+    int size = 2 * n - 1;
+
+    // Post order positions break ties between nodes of equal height so
+    // that the numbering is deterministic
+    final int[] post = new int[size];
+    int pc = 0;
+
+    int[] stack = new int[size];
+    boolean[] visited = new boolean[size];
+    int sp = 0;
+
+    stack[sp++] = mRootId;
+
+    while (sp > 0) {
+      int node = stack[sp - 1];
+
+      if (mLeft[node] != -1 && !visited[node]) {
+        visited[node] = true;
+
+        stack[sp++] = mRight[node];
+        stack[sp++] = mLeft[node];
+      } else {
+        --sp;
+
+        post[node] = pc++;
+      }
+    }
+
+    // Nodes whose children have both been merged
+    PriorityQueue<Integer> ready = new PriorityQueue<Integer>(n,
+        new Comparator<Integer>() {
+          @Override
+          public int compare(Integer o1, Integer o2) {
+            int ret = Double.compare(mHeight[o1], mHeight[o2]);
+
+            if (ret == 0) {
+              ret = Integer.compare(post[o1], post[o2]);
+            }
+
+            return ret;
+          }
+        });
+
+    Cluster[] clusters = new Cluster[size];
+
+    for (int i = 0; i < n; ++i) {
+      clusters[i] = new Cluster(i, 0);
+
+      offer(i, clusters, ready);
+    }
+
+    Cluster root = clusters[0];
+
+    for (int i = 0; i < n - 1; ++i) {
+      int node = ready.poll();
+
+      Cluster c1 = clusters[mLeft[node]];
+      Cluster c2 = clusters[mRight[node]];
+
+      root = new Cluster(n + i, mHeight[node], c1, c2);
+
+      clusters[node] = root;
+
+      // Leaf to leaf cells keep the measured distance, which can differ
+      // from the merge height after a subtree is reclustered
+      if (c1.getId() >= n || c2.getId() >= n) {
+        dist.set(c1.getId(), c2.getId(), mHeight[node]);
+      }
+
+      offer(node, clusters, ready);
+    }
+
+    return root;
+  }
+
+  /**
+   * Queue the parent of a node once both of its children have been created.
+   *
+   * @param node the node
+   * @param clusters the clusters created so far.
+   * @param ready the queue of nodes that can be merged.
+   */
+  private void offer(int node, Cluster[] clusters, Queue<Integer> ready) {
+    int p = mParent[node];
+
+    if (p != -1 && clusters[mLeft[p]] != null && clusters[mRight[p]] != null) {
+      ready.add(p);
+    }
+  }
+}
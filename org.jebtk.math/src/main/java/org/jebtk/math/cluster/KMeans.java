@@ -0,0 +1,838 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.math.cluster;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jebtk.math.ParallelUtils;
+import org.jebtk.math.RangeFunction;
+import org.jebtk.math.matrix.DoubleMatrix;
+import org.jebtk.math.matrix.Matrix;
+
+/**
+ * Partition the rows or columns of a matrix into k clusters using k-means with
+ * k-means++ seeding. Assignment and center updates run in parallel on the
+ * shared pool. Results only depend on the seed and not on the number of
+ * threads.
+ * 
+ * When the distance metric is Euclidean, the Elkan or Hamerly algorithms are
+ * used to skip distance calculations that the triangle inequality shows cannot
+ * change an assignment. Other metrics fall back to Lloyd's algorithm. Centers
+ * are always the mean of their members.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class KMeans {
+
+  /** The Constant DEFAULT_MAX_ITERATIONS. */
+  public static final int DEFAULT_MAX_ITERATIONS = 300;
+
+  /** The Constant DEFAULT_TOLERANCE. */
+  public static final double DEFAULT_TOLERANCE = 1E-6;
+
+  /**
+   * Use Elkan when it needs at most this many lower bounds, otherwise use
+   * Hamerly (2^24 bounds is 128Mb).
+   */
+  private static final long MAX_ELKAN_BOUNDS = 1L << 24;
+
+  /** The number of clusters. */
+  private final int mK;
+
+  /** The m metric. */
+  private DistanceMetric mMetric = new EuclideanDistanceMetric();
+
+  /** The algorithm, or null to choose automatically. */
+  private KMeansAlgorithm mAlgorithm = null;
+
+  /** The m max iterations. */
+  private int mMaxIterations = DEFAULT_MAX_ITERATIONS;
+
+  /** The m tolerance. */
+  private double mTolerance = DEFAULT_TOLERANCE;
+
+  /** The m seed. */
+  private long mSeed = 0;
+
+  /**
+   * Instantiates a new k-means.
+   *
+   * @param k the number of clusters.
+   */
+  public KMeans(int k) {
+    if (k < 1) {
+      throw new IllegalArgumentException("k must be at least 1.");
+    }
+
+    mK = k;
+  }
+
+  /**
+   * Sets the distance metric used to assign items to centers.
+   *
+   * @param metric the metric
+   * @return the k means
+   */
+  public KMeans setMetric(DistanceMetric metric) {
+    mMetric = metric;
+
+    return this;
+  }
+
+  /**
+   * Sets the assignment algorithm. By default Elkan is used unless it would
+   * need too many bounds, in which case Hamerly is used. Elkan also falls
+   * back to Hamerly when its n x k bounds would not fit in an array.
+   *
+   * @param algorithm the algorithm
+   * @return the k means
+   */
+  public KMeans setAlgorithm(KMeansAlgorithm algorithm) {
+    mAlgorithm = algorithm;
+
+    return this;
+  }
+
+  /**
+   * Sets the max iterations.
+   *
+   * @param maxIterations the max iterations
+   * @return the k means
+   */
+  public KMeans setMaxIterations(int maxIterations) {
+    mMaxIterations = maxIterations;
+
+    return this;
+  }
+
+  /**
+   * Stop when no center moves more than this distance between iterations.
+   *
+   * @param tolerance the tolerance
+   * @return the k means
+   */
+  public KMeans setTolerance(double tolerance) {
+    mTolerance = tolerance;
+
+    return this;
+  }
+
+  /**
+   * Sets the seed for k-means++ initialization.
+   *
+   * @param seed the seed
+   * @return the k means
+   */
+  public KMeans setSeed(long seed) {
+    mSeed = seed;
+
+    return this;
+  }
+
+  /**
+   * Cluster the rows of a matrix.
+   *
+   * @param m the m
+   * @return the partition
+   */
+  public Partition rowCluster(final Matrix m) {
+    DoubleMatrix dm = rowMajor(m);
+
+    return cluster(dm.mData, dm.getRows(), dm.getCols());
+  }
+
+  /**
+   * Cluster the columns of a matrix.
+   *
+   * @param m the m
+   * @return the partition
+   */
+  public Partition columnCluster(final Matrix m) {
+    DoubleMatrix dm = (DoubleMatrix) DoubleMatrix.transpose(rowMajor(m));
+
+    return cluster(dm.mData, dm.getRows(), dm.getCols());
+  }
+
+  /**
+   * Cluster n items of dimension d stored row major in a flat array.
+   *
+   * @param data the data
+   * @param n the number of items.
+   * @param d the dimension of each item.
+   * @return the partition
+   */
+  public Partition cluster(final double[] data, int n, int d) {
+    int k = Math.min(mK, n);
+
+    KMeansAlgorithm algorithm = mAlgorithm;
+
+    if (!(mMetric instanceof EuclideanDistanceMetric)) {
+      // Pruning relies on the triangle inequality of the metric that
+      // k-means is minimizing
+      algorithm = KMeansAlgorithm.LLOYD;
+    } else if (algorithm == null) {
+      algorithm = (long) n * k <= MAX_ELKAN_BOUNDS ? KMeansAlgorithm.ELKAN
+          : KMeansAlgorithm.HAMERLY;
+    } else if (algorithm == KMeansAlgorithm.ELKAN
+        && (long) n * k > Integer.MAX_VALUE) {
+      // Too many lower bounds to index
+      algorithm = KMeansAlgorithm.HAMERLY;
+    }
+
+    KMeansRun run = new KMeansRun(data, n, d, k, mMetric, algorithm);
+
+    run.init(new Random(mSeed));
+
+    boolean converged = false;
+
+    int iteration = 0;
+
+    // The first assignment must look at every center
+    run.assignAll();
+
+    while (iteration < mMaxIterations) {
+      ++iteration;
+
+      double shift = run.updateCenters();
+
+      boolean reseeded = run.reseedEmpty();
+
+      if (!reseeded && shift <= mTolerance) {
+        converged = true;
+        break;
+      }
+
+      int changes = reseeded ? run.assignAll() : run.assign();
+
+      if (changes == 0 && !reseeded) {
+        converged = true;
+        break;
+      }
+    }
+
+    double cost = run.cost();
+
+    DoubleMatrix centers = DoubleMatrix.createDoubleMatrix(k, d);
+
+    System.arraycopy(run.mCenters, 0, centers.mData, 0, k * d);
+
+    return new Partition(run.mLabels, centers, null, cost, iteration,
+        converged);
+  }
+
+  /**
+   * Returns a row major double matrix view of a matrix, copying it only if
+   * necessary.
+   *
+   * @param m the m
+   * @return the double matrix
+   */
+  static DoubleMatrix rowMajor(final Matrix m) {
+    if (m instanceof DoubleMatrix) {
+      return (DoubleMatrix) m;
+    } else {
+      return new DoubleMatrix(m);
+    }
+  }
+
+  /**
+   * Holds the state of a single k-means run.
+   */
+  private static class KMeansRun {
+
+    /** The m data. */
+    private final double[] mData;
+
+    /** The number of items. */
+    private final int mN;
+
+    /** The dimension of each item. */
+    private final int mD;
+
+    /** The number of clusters. */
+    private final int mK;
+
+    /** The m metric. */
+    private final DistanceMetric mMetric;
+
+    /** The m algorithm. */
+    private final KMeansAlgorithm mAlgorithm;
+
+    /** The centers stored row major. */
+    private final double[] mCenters;
+
+    /** The m labels. */
+    private final int[] mLabels;
+
+    /** Upper bound on the distance of each item to its center. */
+    private final double[] mUpper;
+
+    /** Lower bounds (n x k for Elkan, n for Hamerly). */
+    private final double[] mLower;
+
+    /** How far each center moved in the last update. */
+    private final double[] mShift;
+
+    /** The distance between each pair of centers. */
+    private final double[] mCC;
+
+    /** Half the distance from each center to its nearest other center. */
+    private final double[] mS;
+
+    /** The member count of each cluster. */
+    private final int[] mCounts;
+
+    /**
+     * Instantiates a new k means run.
+     *
+     * @param data the data
+     * @param n the n
+     * @param d the d
+     * @param k the k
+     * @param metric the metric
+     * @param algorithm the algorithm
+     */
+    public KMeansRun(double[] data, int n, int d, int k, DistanceMetric metric,
+        KMeansAlgorithm algorithm) {
+      mData = data;
+      mN = n;
+      mD = d;
+      mK = k;
+      mMetric = metric;
+      mAlgorithm = algorithm;
+
+      mCenters = new double[k * d];
+      mLabels = new int[n];
+      mUpper = new double[n];
+      mShift = new double[k];
+      mCounts = new int[k];
+
+      switch (algorithm) {
+      case ELKAN:
+        mLower = new double[n * k];
+        break;
+      case HAMERLY:
+        mLower = new double[n];
+        break;
+      default:
+        mLower = null;
+        break;
+      }
+
+      if (algorithm == KMeansAlgorithm.LLOYD) {
+        mCC = null;
+        mS = null;
+      } else {
+        mCC = new double[k * k];
+        mS = new double[k];
+      }
+    }
+
+    /**
+     * Distance between an item and a center.
+     *
+     * @param i the item
+     * @param j the center
+     * @return the distance
+     */
+    private double dist(int i, int j) {
+      return mMetric.distance(mData, i * mD, mCenters, j * mD, mD);
+    }
+
+    /**
+     * Choose the initial centers using k-means++.
+     *
+     * @param rnd the random number generator
+     */
+    public void init(final Random rnd) {
+      final double[] minD2 = new double[mN];
+
+      int c = rnd.nextInt(mN);
+
+      System.arraycopy(mData, c * mD, mCenters, 0, mD);
+
+      Arrays.fill(minD2, Double.MAX_VALUE);
+
+      for (int j = 0; j < mK; ++j) {
+        if (j > 0) {
+          // Sum sequentially so the choice does not depend on threads
+          double total = 0;
+
+          for (double v : minD2) {
+            total += v;
+          }
+
+          if (total > 0) {
+            double r = rnd.nextDouble() * total;
+
+            c = mN - 1;
+
+            for (int i = 0; i < mN; ++i) {
+              r -= minD2[i];
+
+              if (r <= 0 && minD2[i] > 0) {
+                c = i;
+                break;
+              }
+            }
+          } else {
+            // All remaining items coincide with a center
+            c = rnd.nextInt(mN);
+          }
+
+          System.arraycopy(mData, c * mD, mCenters, j * mD, mD);
+        }
+
+        final int center = j;
+
+        ParallelUtils.forEach(mN, new RangeFunction() {
+          @Override
+          public void apply(int start, int end) {
+            for (int i = start; i < end; ++i) {
+              double dc = dist(i, center);
+
+              minD2[i] = Math.min(minD2[i], dc * dc);
+            }
+          }
+        });
+      }
+    }
+
+    /**
+     * Assign every item to its nearest center without pruning and reset the
+     * bounds.
+     *
+     * @return the number of items whose label changed.
+     */
+    public int assignAll() {
+      final AtomicInteger changes = new AtomicInteger();
+
+      ParallelUtils.forEach(mN, new RangeFunction() {
+        @Override
+        public void apply(int start, int end) {
+          int changed = 0;
+
+          for (int i = start; i < end; ++i) {
+            int a = 0;
+            double d1 = Double.MAX_VALUE;
+            double d2 = Double.MAX_VALUE;
+
+            for (int j = 0; j < mK; ++j) {
+              double dj = dist(i, j);
+
+              if (mAlgorithm == KMeansAlgorithm.ELKAN) {
+                mLower[i * mK + j] = dj;
+              }
+
+              if (dj < d1) {
+                d2 = d1;
+                d1 = dj;
+                a = j;
+              } else if (dj < d2) {
+                d2 = dj;
+              }
+            }
+
+            if (mAlgorithm == KMeansAlgorithm.HAMERLY) {
+              mLower[i] = d2;
+            }
+
+            if (a != mLabels[i]) {
+              ++changed;
+            }
+
+            mLabels[i] = a;
+            mUpper[i] = d1;
+          }
+
+          changes.addAndGet(changed);
+        }
+      });
+
+      return changes.get();
+    }
+
+    /**
+     * Assign items to their nearest center using the chosen algorithm.
+     *
+     * @return the number of items whose label changed.
+     */
+    public int assign() {
+      switch (mAlgorithm) {
+      case ELKAN:
+        return assignElkan();
+      case HAMERLY:
+        return assignHamerly();
+      default:
+        return assignAll();
+      }
+    }
+
+    /**
+     * Compute the distances between centers and half the distance of each
+     * center to its nearest neighbor.
+     */
+    private void centerDistances() {
+      ParallelUtils.forEach(mK, new RangeFunction() {
+        @Override
+        public void apply(int start, int end) {
+          for (int j1 = start; j1 < end; ++j1) {
+            double s = Double.MAX_VALUE;
+
+            for (int j2 = 0; j2 < mK; ++j2) {
+              double d = j1 == j2 ? 0
+                  : mMetric.distance(mCenters, j1 * mD, mCenters, j2 * mD, mD);
+
+              mCC[j1 * mK + j2] = d;
+
+              if (j1 != j2) {
+                s = Math.min(s, d);
+              }
+            }
+
+            mS[j1] = 0.5 * s;
+          }
+        }
+      });
+    }
+
+    /**
+     * Elkan assignment.
+     *
+     * @return the number of items whose label changed.
+     */
+    private int assignElkan() {
+      centerDistances();
+
+      final AtomicInteger changes = new AtomicInteger();
+
+      ParallelUtils.forEach(mN, new RangeFunction() {
+        @Override
+        public void apply(int start, int end) {
+          int changed = 0;
+
+          for (int i = start; i < end; ++i) {
+            int a = mLabels[i];
+            double u = mUpper[i];
+
+            if (u <= mS[a]) {
+              continue;
+            }
+
+            int lo = i * mK;
+            boolean tight = false;
+
+            for (int j = 0; j < mK; ++j) {
+              if (j == a || u <= mLower[lo + j]
+                  || u <= 0.5 * mCC[a * mK + j]) {
+                continue;
+              }
+
+              if (!tight) {
+                u = dist(i, a);
+                mLower[lo + a] = u;
+                tight = true;
+
+                if (u <= mLower[lo + j] || u <= 0.5 * mCC[a * mK + j]) {
+                  continue;
+                }
+              }
+
+              double dj = dist(i, j);
+
+              mLower[lo + j] = dj;
+
+              if (dj < u) {
+                a = j;
+                u = dj;
+              }
+            }
+
+            if (a != mLabels[i]) {
+              ++changed;
+            }
+
+            mLabels[i] = a;
+            mUpper[i] = u;
+          }
+
+          changes.addAndGet(changed);
+        }
+      });
+
+      return changes.get();
+    }
+
+    /**
+     * Hamerly assignment.
+     *
+     * @return the number of items whose label changed.
+     */
+    private int assignHamerly() {
+      centerDistances();
+
+      final AtomicInteger changes = new AtomicInteger();
+
+      ParallelUtils.forEach(mN, new RangeFunction() {
+        @Override
+        public void apply(int start, int end) {
+          int changed = 0;
+
+          for (int i = start; i < end; ++i) {
+            int a = mLabels[i];
+            double m = Math.max(mS[a], mLower[i]);
+
+            if (mUpper[i] <= m) {
+              continue;
+            }
+
+            mUpper[i] = dist(i, a);
+
+            if (mUpper[i] <= m) {
+              continue;
+            }
+
+            double d1 = Double.MAX_VALUE;
+            double d2 = Double.MAX_VALUE;
+
+            for (int j = 0; j < mK; ++j) {
+              double dj = dist(i, j);
+
+              if (dj < d1) {
+                d2 = d1;
+                d1 = dj;
+                a = j;
+              } else if (dj < d2) {
+                d2 = dj;
+              }
+            }
+
+            if (a != mLabels[i]) {
+              ++changed;
+            }
+
+            mLabels[i] = a;
+            mUpper[i] = d1;
+            mLower[i] = d2;
+          }
+
+          changes.addAndGet(changed);
+        }
+      });
+
+      return changes.get();
+    }
+
+    /**
+     * Move each center to the mean of its members and adjust the bounds by how
+     * far the centers moved. Members are summed in item order so the result
+     * does not depend on how the work is split between threads.
+     *
+     * @return the largest distance a center moved.
+     */
+    public double updateCenters() {
+      // Counting sort the items by label
+      Arrays.fill(mCounts, 0);
+
+      for (int l : mLabels) {
+        ++mCounts[l];
+      }
+
+      final int[] starts = new int[mK + 1];
+
+      for (int j = 0; j < mK; ++j) {
+        starts[j + 1] = starts[j] + mCounts[j];
+      }
+
+      final int[] members = new int[mN];
+      int[] pos = Arrays.copyOf(starts, mK);
+
+      for (int i = 0; i < mN; ++i) {
+        members[pos[mLabels[i]]++] = i;
+      }
+
+      ParallelUtils.forEach(0, mK, 1, new RangeFunction() {
+        @Override
+        public void apply(int start, int end) {
+          double[] mean = new double[mD];
+
+          for (int j = start; j < end; ++j) {
+            int c = starts[j + 1] - starts[j];
+
+            if (c == 0) {
+              // Empty clusters are reseeded later
+              mShift[j] = 0;
+              continue;
+            }
+
+            Arrays.fill(mean, 0);
+
+            for (int p = starts[j]; p < starts[j + 1]; ++p) {
+              int o = members[p] * mD;
+
+              for (int x = 0; x < mD; ++x) {
+                mean[x] += mData[o + x];
+              }
+            }
+
+            for (int x = 0; x < mD; ++x) {
+              mean[x] /= c;
+            }
+
+            mShift[j] = mMetric.distance(mean, 0, mCenters, j * mD, mD);
+
+            System.arraycopy(mean, 0, mCenters, j * mD, mD);
+          }
+        }
+      });
+
+      double max1 = 0;
+      double max2 = 0;
+      int maxj = -1;
+
+      for (int j = 0; j < mK; ++j) {
+        if (mShift[j] > max1) {
+          max2 = max1;
+          max1 = mShift[j];
+          maxj = j;
+        } else if (mShift[j] > max2) {
+          max2 = mShift[j];
+        }
+      }
+
+      if (mAlgorithm != KMeansAlgorithm.LLOYD) {
+        updateBounds(max1, max2, maxj);
+      }
+
+      return max1;
+    }
+
+    /**
+     * Loosen the bounds to account for centers moving.
+     *
+     * @param max1 the largest center shift.
+     * @param max2 the second largest center shift.
+     * @param maxj the center with the largest shift.
+     */
+    private void updateBounds(final double max1,
+        final double max2,
+        final int maxj) {
+      ParallelUtils.forEach(mN, new RangeFunction() {
+        @Override
+        public void apply(int start, int end) {
+          for (int i = start; i < end; ++i) {
+            int a = mLabels[i];
+
+            mUpper[i] += mShift[a];
+
+            if (mAlgorithm == KMeansAlgorithm.ELKAN) {
+              int lo = i * mK;
+
+              for (int j = 0; j < mK; ++j) {
+                mLower[lo + j] = Math.max(0, mLower[lo + j] - mShift[j]);
+              }
+            } else {
+              mLower[i] = Math.max(0, mLower[i] - (a == maxj ? max2 : max1));
+            }
+          }
+        }
+      });
+    }
+
+    /**
+     * Move the centers of empty clusters onto the items that are furthest
+     * from their own centers.
+     *
+     * @return true if any cluster was reseeded, in which case the bounds are
+     *         no longer valid.
+     */
+    public boolean reseedEmpty() {
+      boolean reseeded = false;
+
+      for (int j = 0; j < mK; ++j) {
+        if (mCounts[j] > 0) {
+          continue;
+        }
+
+        int furthest = -1;
+        double max = -1;
+
+        for (int i = 0; i < mN; ++i) {
+          // Do not empty another cluster
+          if (mCounts[mLabels[i]] > 1 && mUpper[i] > max) {
+            max = mUpper[i];
+            furthest = i;
+          }
+        }
+
+        if (furthest == -1) {
+          break;
+        }
+
+        --mCounts[mLabels[furthest]];
+        ++mCounts[j];
+
+        mLabels[furthest] = j;
+        mUpper[furthest] = 0;
+
+        System.arraycopy(mData, furthest * mD, mCenters, j * mD, mD);
+
+        reseeded = true;
+      }
+
+      return reseeded;
+    }
+
+    /**
+     * Returns the sum of the squared distances of each item to its center.
+     *
+     * @return the cost
+     */
+    public double cost() {
+      ParallelUtils.forEach(mN, new RangeFunction() {
+        @Override
+        public void apply(int start, int end) {
+          for (int i = start; i < end; ++i) {
+            mUpper[i] = dist(i, mLabels[i]);
+          }
+        }
+      });
+
+      double cost = 0;
+
+      for (double u : mUpper) {
+        cost += u * u;
+      }
+
+      return cost;
+    }
+  }
+}
@@ -0,0 +1,669 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.math.cluster;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.jebtk.math.ParallelUtils;
+import org.jebtk.math.RangeFunction;
+import org.jebtk.math.matrix.DoubleMatrix;
+import org.jebtk.math.matrix.Matrix;
+
+/**
+ * Partition the rows or columns of a matrix into k clusters each represented
+ * by one of its members (the medoid). Small inputs are clustered with PAM
+ * using the FastPAM1 swap step, which evaluates every swap involving a
+ * candidate in a single pass over the data. Larger inputs use CLARA, which runs
+ * PAM on random samples and keeps the medoids with the lowest cost over all
+ * items. Any distance metric can be used.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class KMedoids {
+
+  /** The Constant DEFAULT_MAX_ITERATIONS. */
+  public static final int DEFAULT_MAX_ITERATIONS = 100;
+
+  /** The Constant DEFAULT_SAMPLES. */
+  public static final int DEFAULT_SAMPLES = 5;
+
+  /**
+   * Inputs with more items than this are clustered with CLARA since PAM needs
+   * all pairwise distances.
+   */
+  public static final int DEFAULT_MAX_PAM_ITEMS = 4000;
+
+  /** Swaps must improve the cost by more than this. */
+  private static final double MIN_IMPROVEMENT = 1E-10;
+
+  /** The number of clusters. */
+  private final int mK;
+
+  /** The m metric. */
+  private DistanceMetric mMetric = new EuclideanDistanceMetric();
+
+  /** The m max iterations. */
+  private int mMaxIterations = DEFAULT_MAX_ITERATIONS;
+
+  /** The m seed. */
+  private long mSeed = 0;
+
+  /** The number of CLARA samples. */
+  private int mSamples = DEFAULT_SAMPLES;
+
+  /** The CLARA sample size, or -1 to use 40 + 2k. */
+  private int mSampleSize = -1;
+
+  /** The m max pam items. */
+  private int mMaxPamItems = DEFAULT_MAX_PAM_ITEMS;
+
+  /**
+   * Instantiates a new k medoids.
+   *
+   * @param k the number of clusters.
+   */
+  public KMedoids(int k) {
+    if (k < 1) {
+      throw new IllegalArgumentException("k must be at least 1.");
+    }
+
+    mK = k;
+  }
+
+  /**
+   * Sets the distance metric.
+   *
+   * @param metric the metric
+   * @return the k medoids
+   */
+  public KMedoids setMetric(DistanceMetric metric) {
+    mMetric = metric;
+
+    return this;
+  }
+
+  /**
+   * Sets the maximum number of swaps.
+   *
+   * @param maxIterations the max iterations
+   * @return the k medoids
+   */
+  public KMedoids setMaxIterations(int maxIterations) {
+    mMaxIterations = maxIterations;
+
+    return this;
+  }
+
+  /**
+   * Sets the seed used to draw CLARA samples.
+   *
+   * @param seed the seed
+   * @return the k medoids
+   */
+  public KMedoids setSeed(long seed) {
+    mSeed = seed;
+
+    return this;
+  }
+
+  /**
+   * Sets the number of CLARA samples.
+   *
+   * @param samples the samples
+   * @return the k medoids
+   */
+  public KMedoids setSamples(int samples) {
+    mSamples = samples;
+
+    return this;
+  }
+
+  /**
+   * Sets the CLARA sample size.
+   *
+   * @param sampleSize the sample size
+   * @return the k medoids
+   */
+  public KMedoids setSampleSize(int sampleSize) {
+    mSampleSize = sampleSize;
+
+    return this;
+  }
+
+  /**
+   * Inputs larger than this are clustered with CLARA rather than PAM.
+   *
+   * @param maxPamItems the max pam items
+   * @return the k medoids
+   */
+  public KMedoids setMaxPamItems(int maxPamItems) {
+    mMaxPamItems = maxPamItems;
+
+    return this;
+  }
+
+  /**
+   * Cluster the rows of a matrix.
+   *
+   * @param m the m
+   * @return the partition
+   */
+  public Partition rowCluster(final Matrix m) {
+    DoubleMatrix dm = KMeans.rowMajor(m);
+
+    return cluster(dm.mData, dm.getRows(), dm.getCols());
+  }
+
+  /**
+   * Cluster the columns of a matrix.
+   *
+   * @param m the m
+   * @return the partition
+   */
+  public Partition columnCluster(final Matrix m) {
+    DoubleMatrix dm = (DoubleMatrix) DoubleMatrix.transpose(KMeans.rowMajor(m));
+
+    return cluster(dm.mData, dm.getRows(), dm.getCols());
+  }
+
+  /**
+   * Cluster n items of dimension d stored row major in a flat array.
+   *
+   * @param data the data
+   * @param n the number of items.
+   * @param d the dimension of each item.
+   * @return the partition
+   */
+  public Partition cluster(final double[] data, int n, int d) {
+    int k = Math.min(mK, n);
+
+    int[] medoids;
+    int iterations;
+    boolean converged;
+
+    if (n <= mMaxPamItems) {
+      int[] items = new int[n];
+
+      for (int i = 0; i < n; ++i) {
+        items[i] = i;
+      }
+
+      PamRun run = new PamRun(data, d, items, k, mMetric);
+
+      run.run(mMaxIterations);
+
+      medoids = run.getMedoids();
+      iterations = run.mIterations;
+      converged = run.mConverged;
+    } else {
+      int sampleSize = mSampleSize > 0 ? mSampleSize : 40 + 2 * k;
+
+      sampleSize = Math.max(k, Math.min(n, sampleSize));
+
+      Random rnd = new Random(mSeed);
+
+      int[] perm = new int[n];
+
+      for (int i = 0; i < n; ++i) {
+        perm[i] = i;
+      }
+
+      medoids = null;
+      iterations = 0;
+      converged = true;
+
+      double bestCost = Double.MAX_VALUE;
+
+      for (int s = 0; s < mSamples; ++s) {
+        int[] sample = sample(perm, sampleSize, medoids, rnd);
+
+        PamRun run = new PamRun(data, d, sample, k, mMetric);
+
+        run.run(mMaxIterations);
+
+        iterations += run.mIterations;
+        converged &= run.mConverged;
+
+        int[] m = run.getMedoids();
+
+        double cost = assign(data, n, d, m, mMetric, new int[n]);
+
+        if (cost < bestCost) {
+          bestCost = cost;
+          medoids = m;
+        }
+      }
+    }
+
+    int[] labels = new int[n];
+
+    double cost = assign(data, n, d, medoids, mMetric, labels);
+
+    DoubleMatrix centers = DoubleMatrix.createDoubleMatrix(k, d);
+
+    for (int j = 0; j < k; ++j) {
+      System.arraycopy(data, medoids[j] * d, centers.mData, j * d, d);
+    }
+
+    return new Partition(labels, centers, medoids, cost, iterations, converged);
+  }
+
+  /**
+   * Draw a random sample of items that always contains the current best
+   * medoids so that each CLARA sample can only improve on them.
+   *
+   * @param perm a permutation of the item indices, shuffled in place.
+   * @param size the sample size.
+   * @param medoids the current medoids, or null.
+   * @param rnd the random number generator.
+   * @return the sample.
+   */
+  private static int[] sample(int[] perm,
+      int size,
+      int[] medoids,
+      Random rnd) {
+    int[] sample = new int[size];
+
+    int c = 0;
+
+    if (medoids != null) {
+      for (int m : medoids) {
+        sample[c++] = m;
+      }
+    }
+
+    // Partial Fisher-Yates shuffle
+    for (int i = 0; c < size && i < perm.length; ++i) {
+      int j = i + rnd.nextInt(perm.length - i);
+
+      int t = perm[i];
+      perm[i] = perm[j];
+      perm[j] = t;
+
+      boolean isMedoid = false;
+
+      if (medoids != null) {
+        for (int m : medoids) {
+          if (m == perm[i]) {
+            isMedoid = true;
+            break;
+          }
+        }
+      }
+
+      if (!isMedoid) {
+        sample[c++] = perm[i];
+      }
+    }
+
+    return sample;
+  }
+
+  /**
+   * Assign every item to its nearest medoid.
+   *
+   * @param data the data
+   * @param n the n
+   * @param d the d
+   * @param medoids the medoids
+   * @param metric the metric
+   * @param labels array to write the labels to.
+   * @return the sum of the distances of each item to its medoid.
+   */
+  private static double assign(final double[] data,
+      int n,
+      final int d,
+      final int[] medoids,
+      final DistanceMetric metric,
+      final int[] labels) {
+    final double[] dist = new double[n];
+
+    ParallelUtils.forEach(n, new RangeFunction() {
+      @Override
+      public void apply(int start, int end) {
+        for (int i = start; i < end; ++i) {
+          double min = Double.MAX_VALUE;
+          int a = 0;
+
+          for (int j = 0; j < medoids.length; ++j) {
+            double dj = metric.distance(data, i * d, data, medoids[j] * d, d);
+
+            if (dj < min) {
+              min = dj;
+              a = j;
+            }
+          }
+
+          labels[i] = a;
+          dist[i] = min;
+        }
+      }
+    });
+
+    double cost = 0;
+
+    for (double v : dist) {
+      cost += v;
+    }
+
+    return cost;
+  }
+
+  /**
+   * Runs PAM on a subset of the items.
+   */
+  private static class PamRun {
+
+    /** The items to cluster. */
+    private final int[] mItems;
+
+    /** The number of items. */
+    private final int mN;
+
+    /** The m k. */
+    private final int mK;
+
+    /** The pairwise distances between items. */
+    private final DistanceMatrix mDists;
+
+    /** The medoids as positions in mItems. */
+    private final int[] mMedoids;
+
+    /** Whether each item is a medoid. */
+    private final boolean[] mIsMedoid;
+
+    /** The index into mMedoids of the nearest medoid of each item. */
+    private final int[] mNearest;
+
+    /** The distance to the nearest medoid. */
+    private final double[] mDNearest;
+
+    /** The distance to the second nearest medoid. */
+    private final double[] mDSecond;
+
+    /** The m iterations. */
+    private int mIterations = 0;
+
+    /** The m converged. */
+    private boolean mConverged = false;
+
+    /**
+     * Instantiates a new pam run.
+     *
+     * @param data the data
+     * @param d the d
+     * @param items the items
+     * @param k the k
+     * @param metric the metric
+     */
+    public PamRun(final double[] data, final int d, final int[] items, int k,
+        final DistanceMetric metric) {
+      mItems = items;
+      mN = items.length;
+      mK = k;
+
+      mDists = new DistanceMatrix(mN);
+
+      final double[] dists = mDists.mData;
+      final int[] offsets = mDists.mOffsets;
+
+      ParallelUtils.forEach(mN, new RangeFunction() {
+        @Override
+        public void apply(int start, int end) {
+          for (int i = start; i < end; ++i) {
+            int o = offsets[i];
+
+            dists[o + i] = 0;
+
+            for (int j = i + 1; j < mN; ++j) {
+              dists[o + j] = metric
+                  .distance(data, mItems[i] * d, data, mItems[j] * d, d);
+            }
+          }
+        }
+      });
+
+      mMedoids = new int[k];
+      mIsMedoid = new boolean[mN];
+      mNearest = new int[mN];
+      mDNearest = new double[mN];
+      mDSecond = new double[mN];
+    }
+
+    /**
+     * Distance between two items.
+     *
+     * @param i the i
+     * @param j the j
+     * @return the double
+     */
+    private double dist(int i, int j) {
+      return mDists.mData[mDists.getIndex(i, j)];
+    }
+
+    /**
+     * Returns the medoids as indices into the original data.
+     *
+     * @return the medoids
+     */
+    public int[] getMedoids() {
+      int[] ret = new int[mK];
+
+      for (int j = 0; j < mK; ++j) {
+        ret[j] = mItems[mMedoids[j]];
+      }
+
+      return ret;
+    }
+
+    /**
+     * Run BUILD followed by SWAP.
+     *
+     * @param maxIterations the max iterations
+     */
+    public void run(int maxIterations) {
+      build();
+
+      while (mIterations < maxIterations) {
+        if (!swap()) {
+          mConverged = true;
+          break;
+        }
+
+        ++mIterations;
+      }
+    }
+
+    /**
+     * Greedily choose the initial medoids, each time adding the item that
+     * most reduces the total distance.
+     */
+    private void build() {
+      final double[] gains = new double[mN];
+
+      Arrays.fill(mDNearest, Double.MAX_VALUE);
+
+      for (int j = 0; j < mK; ++j) {
+        ParallelUtils.forEach(mN, new RangeFunction() {
+          @Override
+          public void apply(int start, int end) {
+            for (int c = start; c < end; ++c) {
+              if (mIsMedoid[c]) {
+                gains[c] = Double.NEGATIVE_INFINITY;
+                continue;
+              }
+
+              double gain = 0;
+
+              for (int o = 0; o < mN; ++o) {
+                double doc = dist(o, c);
+
+                if (doc < mDNearest[o]) {
+                  // Before the first medoid, mDNearest is infinite so
+                  // measure the gain as minus the total distance
+                  gain += mDNearest[o] == Double.MAX_VALUE ? -doc
+                      : mDNearest[o] - doc;
+                }
+              }
+
+              gains[c] = gain;
+            }
+          }
+        });
+
+        int best = 0;
+
+        for (int c = 1; c < mN; ++c) {
+          if (gains[c] > gains[best]) {
+            best = c;
+          }
+        }
+
+        mMedoids[j] = best;
+        mIsMedoid[best] = true;
+
+        for (int o = 0; o < mN; ++o) {
+          mDNearest[o] = Math.min(mDNearest[o], dist(o, best));
+        }
+      }
+
+      updateNearest();
+    }
+
+    /**
+     * Find the nearest and second nearest medoid of every item.
+     */
+    private void updateNearest() {
+      ParallelUtils.forEach(mN, new RangeFunction() {
+        @Override
+        public void apply(int start, int end) {
+          for (int o = start; o < end; ++o) {
+            double d1 = Double.MAX_VALUE;
+            double d2 = Double.MAX_VALUE;
+            int a = 0;
+
+            for (int j = 0; j < mK; ++j) {
+              double dj = dist(o, mMedoids[j]);
+
+              if (dj < d1) {
+                d2 = d1;
+                d1 = dj;
+                a = j;
+              } else if (dj < d2) {
+                d2 = dj;
+              }
+            }
+
+            mNearest[o] = a;
+            mDNearest[o] = d1;
+            mDSecond[o] = d2;
+          }
+        }
+      });
+    }
+
+    /**
+     * Find the best swap of a medoid for a non-medoid and apply it if it
+     * lowers the cost.
+     *
+     * @return true if a swap was made.
+     */
+    private boolean swap() {
+      final double[] bestDelta = new double[mN];
+      final int[] bestMedoid = new int[mN];
+
+      ParallelUtils.forEach(mN, new RangeFunction() {
+        @Override
+        public void apply(int start, int end) {
+          double[] delta = new double[mK];
+
+          for (int c = start; c < end; ++c) {
+            if (mIsMedoid[c]) {
+              bestDelta[c] = Double.MAX_VALUE;
+              continue;
+            }
+
+            // The change common to all swaps with c and the extra
+            // change when removing each medoid
+            double shared = 0;
+
+            Arrays.fill(delta, 0);
+
+            for (int o = 0; o < mN; ++o) {
+              double doc = dist(o, c);
+              double dn = mDNearest[o];
+
+              double s = Math.min(doc - dn, 0);
+
+              shared += s;
+
+              delta[mNearest[o]] += Math.min(doc, mDSecond[o]) - dn - s;
+            }
+
+            int m = 0;
+
+            for (int j = 1; j < mK; ++j) {
+              if (delta[j] < delta[m]) {
+                m = j;
+              }
+            }
+
+            bestDelta[c] = shared + delta[m];
+            bestMedoid[c] = m;
+          }
+        }
+      });
+
+      int best = -1;
+      double min = -MIN_IMPROVEMENT;
+
+      for (int c = 0; c < mN; ++c) {
+        if (bestDelta[c] < min) {
+          min = bestDelta[c];
+          best = c;
+        }
+      }
+
+      if (best == -1) {
+        return false;
+      }
+
+      int j = bestMedoid[best];
+
+      mIsMedoid[mMedoids[j]] = false;
+      mIsMedoid[best] = true;
+      mMedoids[j] = best;
+
+      updateNearest();
+
+      return true;
+    }
+  }
+}
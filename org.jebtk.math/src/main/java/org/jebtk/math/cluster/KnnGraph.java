@@ -0,0 +1,124 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.math.cluster;
+
+/**
+ * A k nearest neighbor graph stored as flat arrays. The neighbors of item i
+ * occupy positions i * k to (i + 1) * k - 1 of the arrays, nearest first.
+ * Positions with no neighbor have an index of -1.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class KnnGraph {
+
+  /** The m n. */
+  private final int mN;
+
+  /** The m k. */
+  private final int mK;
+
+  /** The m neighbors. */
+  private final int[] mNeighbors;
+
+  /** The m distances. */
+  private final double[] mDistances;
+
+  /**
+   * Instantiates a new knn graph.
+   *
+   * @param n the number of items.
+   * @param k the number of neighbors of each item.
+   * @param neighbors the neighbors
+   * @param distances the distances
+   */
+  public KnnGraph(int n, int k, int[] neighbors, double[] distances) {
+    mN = n;
+    mK = k;
+    mNeighbors = neighbors;
+    mDistances = distances;
+  }
+
+  /**
+   * Returns the number of items.
+   *
+   * @return the int
+   */
+  public int size() {
+    return mN;
+  }
+
+  /**
+   * Gets the number of neighbors of each item.
+   *
+   * @return the k
+   */
+  public int getK() {
+    return mK;
+  }
+
+  /**
+   * Returns the j-th nearest neighbor of item i.
+   *
+   * @param i the i
+   * @param j the j
+   * @return the neighbor
+   */
+  public int getNeighbor(int i, int j) {
+    return mNeighbors[i * mK + j];
+  }
+
+  /**
+   * Returns the distance from item i to its j-th nearest neighbor.
+   *
+   * @param i the i
+   * @param j the j
+   * @return the distance
+   */
+  public double getDistance(int i, int j) {
+    return mDistances[i * mK + j];
+  }
+
+  /**
+   * Returns the neighbor array.
+   *
+   * @return the neighbors
+   */
+  public int[] getNeighbors() {
+    return mNeighbors;
+  }
+
+  /**
+   * Returns the distance array.
+   *
+   * @return the distances
+   */
+  public double[] getDistances() {
+    return mDistances;
+  }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.math.cluster;
+
+/**
+ * A linkage whose distance from a merged cluster to any other cluster can be
+ * calculated from the distances before the merge using the Lance-Williams
+ * formula
+ * 
+ * d(k, i + j) = ai d(k, i) + aj d(k, j) + b d(i, j) + g |d(k, i) - d(k, j)|
+ * 
+ * This lets {@link HierarchicalClustering} update the distance matrix in
+ * constant time per cluster after each merge instead of revisiting the
+ * leaves of both clusters.
+ */
+public interface LanceWilliamsLinkage extends Linkage {
+
+  /**
+   * Returns the distance between cluster k and the cluster formed by merging
+   * clusters i and j.
+   *
+   * @param dki the distance between k and i.
+   * @param dkj the distance between k and j.
+   * @param dij the distance between i and j.
+   * @param ni the number of samples in i.
+   * @param nj the number of samples in j.
+   * @param nk the number of samples in k.
+   * @return the distance
+   */
+  public double update(double dki,
+      double dkj,
+      double dij,
+      int ni,
+      int nj,
+      int nk);
+
+  /**
+   * Returns true if the update formula applies to squared distances. The
+   * distances are squared before calling
+   * {@link #update(double, double, double, int, int, int)} and the square
+   * root of the result is stored so that merge heights stay on the scale of
+   * the distance metric.
+   *
+   * @return true, if is squared
+   */
+  public boolean isSquared();
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.math.cluster;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.jebtk.math.matrix.Matrix;
+
+/**
+ * The leaves of a cluster with a weight for each. Linkages defined by a
+ * Lance-Williams update can be written as weighted sums over the leaf to leaf
+ * distances, which lets them calculate the linkage of any two clusters from
+ * the distance matrix alone.
+ */
+class LeafWeights {
+
+  /** The leaf ids. */
+  final int[] mIds;
+
+  /** The weight of each leaf. */
+  final double[] mWeights;
+
+  /**
+   * Instantiates a new leaf weights.
+   *
+   * @param c the cluster
+   * @param halve if true, the weight is split equally between the two
+   *          children of each node (the weighted centroid used by WPGMA and
+   *          median linkage), otherwise every leaf has the same weight.
+   */
+  LeafWeights(Cluster c, boolean halve) {
+    int n = c.getCumulativeChildCount();
+
+    mIds = new int[n];
+    mWeights = new double[n];
+
+    Deque<Cluster> stack = new ArrayDeque<Cluster>();
+    Deque<Double> weights = new ArrayDeque<Double>();
+
+    stack.push(c);
+    weights.push(halve ? 1.0 : 1.0 / n);
+
+    int i = 0;
+
+    while (!stack.isEmpty()) {
+      Cluster cp = stack.pop();
+      double w = weights.pop();
+
+      if (cp.isParent()) {
+        double wc = halve ? w / 2 : w;
+
+        stack.push(cp.getChild2());
+        weights.push(wc);
+        stack.push(cp.getChild1());
+        weights.push(wc);
+      } else {
+        mIds[i] = cp.getId();
+        mWeights[i] = w;
+        ++i;
+      }
+    }
+  }
+
+  /**
+   * Returns the weighted sum of the distances between two sets of leaves.
+   *
+   * @param distanceMatrix the distance matrix
+   * @param w1 the w 1
+   * @param w2 the w 2
+   * @param squared whether to square the distances.
+   * @return the double
+   */
+  static double sum(final Matrix distanceMatrix,
+      final LeafWeights w1,
+      final LeafWeights w2,
+      boolean squared) {
+    double ret = 0;
+
+    for (int i = 0; i < w1.mIds.length; ++i) {
+      for (int j = 0; j < w2.mIds.length; ++j) {
+        double d = w1.mIds[i] == w2.mIds[j] ? 0
+            : distanceMatrix.getValue(w1.mIds[i], w2.mIds[j]);
+
+        if (squared) {
+          d *= d;
+        }
+
+        ret += w1.mWeights[i] * w2.mWeights[j] * d;
+      }
+    }
+
+    return ret;
+  }
+
+  /**
+   * Returns the squared Euclidean distance between the weighted centroids of
+   * two clusters, using only the distances between their leaves.
+   *
+   * @param distanceMatrix the distance matrix
+   * @param w1 the w 1
+   * @param w2 the w 2
+   * @return the double
+   */
+  static double centroidDistance2(final Matrix distanceMatrix,
+      final LeafWeights w1,
+      final LeafWeights w2) {
+    double d = sum(distanceMatrix, w1, w2, true)
+        - 0.5 * sum(distanceMatrix, w1, w1, true)
+        - 0.5 * sum(distanceMatrix, w2, w2, true);
+
+    // Guard against rounding and non Euclidean metrics
+    return Math.max(0, d);
+  }
+}
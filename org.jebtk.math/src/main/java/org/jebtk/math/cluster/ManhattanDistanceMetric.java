@@ -52,6 +52,27 @@ public class ManhattanDistanceMetric extends DistanceMetric {
     return d;
   }
 
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.jebtk.math.cluster.DistanceMetric#distance(double[], int,
+   * double[], int, int)
+   */
+  @Override
+  public double distance(final double[] d1,
+      int o1,
+      final double[] d2,
+      int o2,
+      int n) {
+    double d = 0;
+
+    for (int i = 0; i < n; ++i) {
+      d += Math.abs(d1[o1++] - d2[o2++]);
+    }
+
+    return d;
+  }
+
   /*
    * (non-Javadoc)
    * 
@@ -57,6 +57,32 @@ public class MaximumDistanceMetric extends DistanceMetric {
     return d;
   }
 
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.jebtk.math.cluster.DistanceMetric#distance(double[], int,
+   * double[], int, int)
+   */
+  @Override
+  public double distance(final double[] d1,
+      int o1,
+      final double[] d2,
+      int o2,
+      int n) {
+    double d = Double.MIN_VALUE;
+    double x;
+
+    for (int i = 0; i < n; ++i) {
+      x = Math.abs(d1[o1++] - d2[o2++]);
+
+      if (x > d) {
+        d = x;
+      }
+    }
+
+    return d;
+  }
+
   /*
    * (non-Javadoc)
    * 
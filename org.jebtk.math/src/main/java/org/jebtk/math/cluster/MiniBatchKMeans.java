@@ -0,0 +1,398 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.math.cluster;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jebtk.math.ParallelUtils;
+import org.jebtk.math.RangeFunction;
+import org.jebtk.math.matrix.DoubleMatrix;
+import org.jebtk.math.matrix.RowChunkIterator;
+
+/**
+ * Mini-batch k-means for matrices that are too large to hold in memory. Rows
+ * are consumed a chunk at a time from a {@link RowChunkIterator} and each
+ * center moves towards the rows assigned to it with a learning rate of one
+ * over the number of rows it has seen. The first batch is clustered with
+ * {@link KMeans} to seed the centers. Rows containing NaN are skipped.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class MiniBatchKMeans {
+
+  /** The m k. */
+  private final int mK;
+
+  /** The m seed. */
+  private long mSeed = 0;
+
+  /** The m tolerance. */
+  private double mTolerance = KMeans.DEFAULT_TOLERANCE;
+
+  /** The dimension of each row, set by the first batch. */
+  private int mD = -1;
+
+  /** The centers stored row major. */
+  private double[] mCenters = null;
+
+  /** The number of rows each center has seen. */
+  private long[] mCounts = null;
+
+  /** The number of batches processed. */
+  private int mBatch = 0;
+
+  /**
+   * Instantiates a new mini batch k means.
+   *
+   * @param k the number of clusters.
+   */
+  public MiniBatchKMeans(int k) {
+    if (k < 1) {
+      throw new IllegalArgumentException("k must be at least 1.");
+    }
+
+    mK = k;
+  }
+
+  /**
+   * Sets the seed used to initialize the centers.
+   *
+   * @param seed the seed
+   * @return the mini batch k means
+   */
+  public MiniBatchKMeans setSeed(long seed) {
+    mSeed = seed;
+
+    return this;
+  }
+
+  /**
+   * A batch is reported as converged if no center moved more than this
+   * distance.
+   *
+   * @param tolerance the tolerance
+   * @return the mini batch k means
+   */
+  public MiniBatchKMeans setTolerance(double tolerance) {
+    mTolerance = tolerance;
+
+    return this;
+  }
+
+  /**
+   * Update the centers with every chunk from an iterator. The iterator is
+   * not closed.
+   *
+   * @param chunks the chunks
+   * @return the statistics for each batch.
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public List<MiniBatchStats> fit(RowChunkIterator chunks) throws IOException {
+    List<MiniBatchStats> ret = new ArrayList<MiniBatchStats>();
+
+    DoubleMatrix chunk;
+
+    while ((chunk = chunks.nextChunk()) != null) {
+      ret.add(update(chunk));
+    }
+
+    return ret;
+  }
+
+  /**
+   * Update the centers with a batch of rows.
+   *
+   * @param batch the batch
+   * @return the statistics for the batch.
+   */
+  public MiniBatchStats update(DoubleMatrix batch) {
+    return update(batch.mData, batch.getRows(), batch.getCols());
+  }
+
+  /**
+   * Update the centers with n rows of dimension d stored row major.
+   *
+   * @param data the data
+   * @param n the n
+   * @param d the d
+   * @return the statistics for the batch.
+   */
+  public MiniBatchStats update(final double[] data, int n, final int d) {
+    if (mD != -1 && d != mD) {
+      throw new IllegalArgumentException(
+          "Batch has " + d + " columns, expected " + mD + ".");
+    }
+
+    // Drop incomplete rows so that they cannot pull centers to NaN
+    int[] rows = completeRows(data, n, d);
+
+    int m = rows.length;
+
+    MiniBatchStats stats;
+
+    if (mCenters == null) {
+      stats = init(data, rows, d, n - m);
+    } else {
+      final int[] labels = new int[m];
+      final double[] dist = new double[m];
+
+      assign(data, rows, d, labels, dist);
+
+      double inertia = 0;
+
+      for (double v : dist) {
+        inertia += v;
+      }
+
+      double[] old = mCenters.clone();
+
+      // Updates are sequential since each one depends on the last
+      for (int p = 0; p < m; ++p) {
+        int j = labels[p];
+
+        double eta = 1.0 / ++mCounts[j];
+
+        int o = rows[p] * d;
+        int c = j * d;
+
+        for (int x = 0; x < d; ++x) {
+          mCenters[c + x] += eta * (data[o + x] - mCenters[c + x]);
+        }
+      }
+
+      double shift = 0;
+
+      for (int j = 0; j < mK; ++j) {
+        double s = 0;
+
+        for (int x = j * d; x < (j + 1) * d; ++x) {
+          double v = mCenters[x] - old[x];
+
+          s += v * v;
+        }
+
+        shift = Math.max(shift, Math.sqrt(s));
+      }
+
+      stats = new MiniBatchStats(mBatch, m, n - m, m > 0 ? inertia / m : 0,
+          shift, shift <= mTolerance);
+    }
+
+    ++mBatch;
+
+    return stats;
+  }
+
+  /**
+   * Seed the centers by running k-means on the first batch.
+   *
+   * @param data the data
+   * @param rows the complete rows of the batch.
+   * @param d the d
+   * @param skipped the number of incomplete rows in the batch.
+   * @return the mini batch stats
+   */
+  private MiniBatchStats init(double[] data, int[] rows, int d, int skipped) {
+    if (rows.length < mK) {
+      throw new IllegalArgumentException(
+          "The first batch must have at least " + mK + " complete rows.");
+    }
+
+    double[] sub = new double[rows.length * d];
+
+    for (int p = 0; p < rows.length; ++p) {
+      System.arraycopy(data, rows[p] * d, sub, p * d, d);
+    }
+
+    Partition partition = new KMeans(mK).setSeed(mSeed)
+        .cluster(sub, rows.length, d);
+
+    mD = d;
+    mCenters = partition.getCenters().mData.clone();
+    mCounts = new long[mK];
+
+    int[] sizes = partition.getSizes();
+
+    for (int j = 0; j < mK; ++j) {
+      mCounts[j] = sizes[j];
+    }
+
+    return new MiniBatchStats(mBatch, rows.length, skipped,
+        partition.getCost() / rows.length, 0, false);
+  }
+
+  /**
+   * Assign rows to their nearest center.
+   *
+   * @param data the data
+   * @param rows the rows
+   * @param d the d
+   * @param labels the labels
+   * @param dist the squared distance of each row to its center.
+   */
+  private void assign(final double[] data,
+      final int[] rows,
+      final int d,
+      final int[] labels,
+      final double[] dist) {
+    ParallelUtils.forEach(rows.length, new RangeFunction() {
+      @Override
+      public void apply(int start, int end) {
+        for (int p = start; p < end; ++p) {
+          int o = rows[p] * d;
+
+          double min = Double.MAX_VALUE;
+          int a = 0;
+
+          for (int j = 0; j < mK; ++j) {
+            int c = j * d;
+            double s = 0;
+
+            for (int x = 0; x < d; ++x) {
+              double v = data[o + x] - mCenters[c + x];
+
+              s += v * v;
+            }
+
+            if (s < min) {
+              min = s;
+              a = j;
+            }
+          }
+
+          labels[p] = a;
+          dist[p] = min;
+        }
+      }
+    });
+  }
+
+  /**
+   * Returns the indices of the rows with no NaN values.
+   *
+   * @param data the data
+   * @param n the n
+   * @param d the d
+   * @return the int[]
+   */
+  private static int[] completeRows(double[] data, int n, int d) {
+    int[] rows = new int[n];
+    int m = 0;
+
+    for (int i = 0; i < n; ++i) {
+      boolean complete = true;
+
+      for (int x = i * d; x < (i + 1) * d; ++x) {
+        if (Double.isNaN(data[x])) {
+          complete = false;
+          break;
+        }
+      }
+
+      if (complete) {
+        rows[m++] = i;
+      }
+    }
+
+    if (m < n) {
+      int[] ret = new int[m];
+
+      System.arraycopy(rows, 0, ret, 0, m);
+
+      return ret;
+    } else {
+      return rows;
+    }
+  }
+
+  /**
+   * Assign each row of a batch to its nearest center. Rows with NaN values
+   * are labelled -1.
+   *
+   * @param batch the batch
+   * @return the labels
+   */
+  public int[] predict(DoubleMatrix batch) {
+    if (mCenters == null) {
+      throw new IllegalStateException("No batches have been seen.");
+    }
+
+    if (batch.getCols() != mD) {
+      throw new IllegalArgumentException(
+          "Batch has " + batch.getCols() + " columns, expected " + mD + ".");
+    }
+
+    int n = batch.getRows();
+
+    int[] rows = completeRows(batch.mData, n, mD);
+
+    int[] labels = new int[rows.length];
+
+    assign(batch.mData, rows, mD, labels, new double[rows.length]);
+
+    int[] ret = new int[n];
+
+    Arrays.fill(ret, -1);
+
+    for (int p = 0; p < rows.length; ++p) {
+      ret[rows[p]] = labels[p];
+    }
+
+    return ret;
+  }
+
+  /**
+   * Returns a copy of the current centers, one per row.
+   *
+   * @return the centers
+   */
+  public DoubleMatrix getCenters() {
+    if (mCenters == null) {
+      return null;
+    }
+
+    DoubleMatrix ret = DoubleMatrix.createDoubleMatrix(mK, mD);
+
+    System.arraycopy(mCenters, 0, ret.mData, 0, mCenters.length);
+
+    return ret;
+  }
+
+  /**
+   * Returns the number of rows each center has absorbed.
+   *
+   * @return the counts
+   */
+  public long[] getCounts() {
+    return mCounts == null ? null : mCounts.clone();
+  }
+}
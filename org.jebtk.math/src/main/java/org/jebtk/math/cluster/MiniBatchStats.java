@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.math.cluster;
+
+/**
+ * Convergence statistics for one batch of mini-batch k-means.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class MiniBatchStats {
+
+  /** The m batch. */
+  private final int mBatch;
+
+  /** The m rows. */
+  private final int mRows;
+
+  /** The m skipped. */
+  private final int mSkipped;
+
+  /** The m inertia. */
+  private final double mInertia;
+
+  /** The m shift. */
+  private final double mShift;
+
+  /** The m converged. */
+  private final boolean mConverged;
+
+  /**
+   * Instantiates a new mini batch stats.
+   *
+   * @param batch the batch number starting from 0.
+   * @param rows the number of rows used to update the centers.
+   * @param skipped the number of rows skipped because of missing values.
+   * @param inertia the mean squared distance of each row to its center
+   *          before the update.
+   * @param shift the largest distance a center moved.
+   * @param converged whether the shift is within the tolerance.
+   */
+  public MiniBatchStats(int batch, int rows, int skipped, double inertia,
+      double shift, boolean converged) {
+    mBatch = batch;
+    mRows = rows;
+    mSkipped = skipped;
+    mInertia = inertia;
+    mShift = shift;
+    mConverged = converged;
+  }
+
+  /**
+   * Gets the batch.
+   *
+   * @return the batch
+   */
+  public int getBatch() {
+    return mBatch;
+  }
+
+  /**
+   * Gets the rows.
+   *
+   * @return the rows
+   */
+  public int getRows() {
+    return mRows;
+  }
+
+  /**
+   * Returns the number of rows ignored because they contained NaN values.
+   *
+   * @return the skipped
+   */
+  public int getSkipped() {
+    return mSkipped;
+  }
+
+  /**
+   * Returns the mean squared distance of each row in the batch to its nearest
+   * center.
+   *
+   * @return the inertia
+   */
+  public double getInertia() {
+    return mInertia;
+  }
+
+  /**
+   * Returns the largest distance any center moved during the batch.
+   *
+   * @return the shift
+   */
+  public double getShift() {
+    return mShift;
+  }
+
+  /**
+   * Checks if is converged.
+   *
+   * @return true, if is converged
+   */
+  public boolean isConverged() {
+    return mConverged;
+  }
+
+  @Override
+  public String toString() {
+    return mBatch + " " + mRows + " " + mInertia + " " + mShift;
+  }
+}
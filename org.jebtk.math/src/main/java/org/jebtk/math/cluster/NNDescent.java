@@ -0,0 +1,683 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.math.cluster;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import org.jebtk.math.ParallelUtils;
+import org.jebtk.math.RangeFunction;
+import org.jebtk.math.matrix.DoubleMatrix;
+import org.jebtk.math.matrix.Matrix;
+
+/**
+ * Builds an approximate k nearest neighbor graph with NN-descent (Dong,
+ * Charikar and Li, 2011). Starting from random neighbors, each iteration
+ * compares the neighbors of neighbors of every item and keeps any that are
+ * closer, which converges quickly because a neighbor of a neighbor is likely
+ * to be a neighbor. Only O(n k) memory is used so no distance matrix is ever
+ * created. Local joins run in parallel and the graph only depends on the
+ * seed.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class NNDescent {
+
+  /** The Constant DEFAULT_K. */
+  public static final int DEFAULT_K = 15;
+
+  /** The Constant DEFAULT_MAX_ITERATIONS. */
+  public static final int DEFAULT_MAX_ITERATIONS = 10;
+
+  /** The Constant DEFAULT_SAMPLE_RATE. */
+  public static final double DEFAULT_SAMPLE_RATE = 0.5;
+
+  /** The Constant DEFAULT_DELTA. */
+  public static final double DEFAULT_DELTA = 0.001;
+
+  /** The number of locks used to guard the neighbor heaps. */
+  private static final int LOCKS = 4096;
+
+  /** The m k. */
+  private int mK = DEFAULT_K;
+
+  /** The m metric. */
+  private DistanceMetric mMetric = new EuclideanDistanceMetric();
+
+  /** The m max iterations. */
+  private int mMaxIterations = DEFAULT_MAX_ITERATIONS;
+
+  /** The m sample rate. */
+  private double mSampleRate = DEFAULT_SAMPLE_RATE;
+
+  /** The m delta. */
+  private double mDelta = DEFAULT_DELTA;
+
+  /** The m seed. */
+  private long mSeed = 0;
+
+  /**
+   * Sets the number of neighbors of each item.
+   *
+   * @param k the k
+   * @return the NN descent
+   */
+  public NNDescent setK(int k) {
+    mK = k;
+
+    return this;
+  }
+
+  /**
+   * Sets the metric.
+   *
+   * @param metric the metric
+   * @return the NN descent
+   */
+  public NNDescent setMetric(DistanceMetric metric) {
+    mMetric = metric;
+
+    return this;
+  }
+
+  /**
+   * Sets the max iterations.
+   *
+   * @param maxIterations the max iterations
+   * @return the NN descent
+   */
+  public NNDescent setMaxIterations(int maxIterations) {
+    mMaxIterations = maxIterations;
+
+    return this;
+  }
+
+  /**
+   * Sets the fraction of neighbors sampled for each local join.
+   *
+   * @param sampleRate the sample rate
+   * @return the NN descent
+   */
+  public NNDescent setSampleRate(double sampleRate) {
+    mSampleRate = sampleRate;
+
+    return this;
+  }
+
+  /**
+   * Stop when fewer than delta * n * k neighbors change in an iteration.
+   *
+   * @param delta the delta
+   * @return the NN descent
+   */
+  public NNDescent setDelta(double delta) {
+    mDelta = delta;
+
+    return this;
+  }
+
+  /**
+   * Sets the seed.
+   *
+   * @param seed the seed
+   * @return the NN descent
+   */
+  public NNDescent setSeed(long seed) {
+    mSeed = seed;
+
+    return this;
+  }
+
+  /**
+   * Build the graph of the rows of a matrix.
+   *
+   * @param m the m
+   * @return the knn graph
+   */
+  public KnnGraph rowGraph(final Matrix m) {
+    DoubleMatrix dm = KMeans.rowMajor(m);
+
+    return build(dm.mData, dm.getRows(), dm.getCols());
+  }
+
+  /**
+   * Build the graph of the columns of a matrix.
+   *
+   * @param m the m
+   * @return the knn graph
+   */
+  public KnnGraph columnGraph(final Matrix m) {
+    DoubleMatrix dm = (DoubleMatrix) DoubleMatrix.transpose(KMeans.rowMajor(m));
+
+    return build(dm.mData, dm.getRows(), dm.getCols());
+  }
+
+  /**
+   * Build the graph of n items of dimension d stored row major.
+   *
+   * @param data the data
+   * @param n the n
+   * @param d the d
+   * @return the knn graph
+   */
+  public KnnGraph build(final double[] data, final int n, final int d) {
+    final int k = Math.max(0, Math.min(mK, n - 1));
+
+    final Heaps heaps = new Heaps(n, k);
+
+    if (k == 0) {
+      return heaps.toGraph();
+    }
+
+    // Random initial neighbors
+    ParallelUtils.forEach(n, new RangeFunction() {
+      @Override
+      public void apply(int start, int end) {
+        for (int i = start; i < end; ++i) {
+          Random rnd = new Random(mSeed * 31 + i);
+
+          while (heaps.mSize[i] < k) {
+            int j = rnd.nextInt(n);
+
+            if (j != i) {
+              heaps.push(i, j, dist(data, d, i, j), 0);
+            }
+          }
+        }
+      }
+    });
+
+    final int sample = Math.max(1, (int) Math.round(mSampleRate * k));
+
+    for (int it = 1; it <= mMaxIterations; ++it) {
+      final int iteration = it;
+
+      // Split each neighborhood into old neighbors and a sample of new ones
+
+      final int[] oldN = new int[n * k];
+      final int[] oldC = new int[n];
+      final int[] newN = new int[n * sample];
+      final int[] newC = new int[n];
+
+      ParallelUtils.forEach(n, new RangeFunction() {
+        @Override
+        public void apply(int start, int end) {
+          for (int i = start; i < end; ++i) {
+            int o = i * k;
+
+            // Heap layout depends on the order neighbors were added in, so
+            // visit them in index order to keep sampling deterministic
+            int[] order = heaps.order(i);
+
+            // Positions of the new neighbors
+            int[] fresh = new int[k];
+            int c = 0;
+
+            for (int p : order) {
+
+              if (heaps.mNew[o + p]) {
+                fresh[c++] = p;
+              } else {
+                oldN[o + oldC[i]++] = heaps.mIndices[o + p];
+              }
+            }
+
+            // Partial shuffle to pick a random sample of the new neighbors.
+            // Only those sampled are marked as old.
+            Random rnd = random(iteration, i);
+
+            for (int s = 0; s < c && s < sample; ++s) {
+              int r = s + rnd.nextInt(c - s);
+
+              int p = fresh[r];
+              fresh[r] = fresh[s];
+              fresh[s] = p;
+
+              newN[i * sample + newC[i]++] = heaps.mIndices[o + p];
+              heaps.mNew[o + p] = false;
+            }
+          }
+        }
+      });
+
+      // Reverse neighbors, sampled
+
+      final int[][] oldR = reverse(oldN, oldC, k, n, sample, iteration, 1);
+      final int[][] newR = reverse(newN, newC, sample, n, sample, iteration, 2);
+
+      // Local join
+
+      ParallelUtils.forEach(n, new RangeFunction() {
+        @Override
+        public void apply(int start, int end) {
+          for (int i = start; i < end; ++i) {
+            int[] nu = union(newN, i * sample, newC[i], newR[i]);
+            int[] ol = union(oldN, i * k, oldC[i], oldR[i]);
+
+            for (int a = 0; a < nu.length; ++a) {
+              int u1 = nu[a];
+
+              for (int b = a + 1; b < nu.length; ++b) {
+                join(u1, nu[b]);
+              }
+
+              for (int b = 0; b < ol.length; ++b) {
+                join(u1, ol[b]);
+              }
+            }
+          }
+        }
+
+        private void join(int u1, int u2) {
+          if (u1 == u2) {
+            return;
+          }
+
+          double dd = dist(data, d, u1, u2);
+
+          heaps.push(u1, u2, dd, iteration);
+          heaps.push(u2, u1, dd, iteration);
+        }
+      });
+
+      // Count how many neighbors were replaced this iteration
+
+      long changes = 0;
+
+      for (int s : heaps.mStamps) {
+        if (s == iteration) {
+          ++changes;
+        }
+      }
+
+      if (changes <= mDelta * n * k) {
+        break;
+      }
+    }
+
+    return heaps.toGraph();
+  }
+
+  /**
+   * Distance between two items.
+   *
+   * @param data the data
+   * @param d the d
+   * @param i the i
+   * @param j the j
+   * @return the double
+   */
+  private double dist(double[] data, int d, int i, int j) {
+    return mMetric.distance(data, i * d, data, j * d, d);
+  }
+
+  /**
+   * Returns the random number generator for an item in an iteration.
+   *
+   * @param iteration the iteration
+   * @param i the i
+   * @return the random
+   */
+  private Random random(int iteration, int i) {
+    return new Random((mSeed * 31 + iteration) * 1000003L + i);
+  }
+
+  /**
+   * Find the items that list each item as a neighbor, keeping a random
+   * sample of at most sample of them.
+   *
+   * @param lists the neighbor lists
+   * @param counts the length of each list
+   * @param stride the space allocated to each list
+   * @param n the n
+   * @param sample the sample
+   * @param iteration the iteration
+   * @param salt distinguishes the old and new samples.
+   * @return the reverse neighbors of each item.
+   */
+  private int[][] reverse(int[] lists,
+      int[] counts,
+      int stride,
+      int n,
+      int sample,
+      int iteration,
+      int salt) {
+    int[][] ret = new int[n][];
+    int[] c = new int[n];
+
+    for (int i = 0; i < n; ++i) {
+      ret[i] = new int[sample];
+    }
+
+    // Visit items in order with a per item reservoir so the sample does
+    // not depend on threads
+    Random rnd = random(iteration, -salt);
+
+    for (int i = 0; i < n; ++i) {
+      int o = i * stride;
+
+      for (int p = 0; p < counts[i]; ++p) {
+        int j = lists[o + p];
+
+        if (c[j] < sample) {
+          ret[j][c[j]++] = i;
+        } else {
+          int r = rnd.nextInt(++c[j]);
+
+          if (r < sample) {
+            ret[j][r] = i;
+          }
+        }
+      }
+    }
+
+    for (int i = 0; i < n; ++i) {
+      if (c[i] < sample) {
+        ret[i] = Arrays.copyOf(ret[i], c[i]);
+      }
+    }
+
+    return ret;
+  }
+
+  /**
+   * Merge a neighbor list with reverse neighbors, dropping duplicates.
+   *
+   * @param list the list
+   * @param o the offset of the list.
+   * @param c the length of the list.
+   * @param reverse the reverse neighbors.
+   * @return the int[]
+   */
+  private static int[] union(int[] list, int o, int c, int[] reverse) {
+    int[] ret = new int[c + reverse.length];
+
+    System.arraycopy(list, o, ret, 0, c);
+
+    int s = c;
+
+    for (int r : reverse) {
+      boolean found = false;
+
+      for (int p = 0; p < s; ++p) {
+        if (ret[p] == r) {
+          found = true;
+          break;
+        }
+      }
+
+      if (!found) {
+        ret[s++] = r;
+      }
+    }
+
+    return s < ret.length ? Arrays.copyOf(ret, s) : ret;
+  }
+
+  /**
+   * A bounded max heap of neighbors for every item, stored in flat arrays.
+   * The heap with the largest distance (and, for ties, the largest index) at
+   * the root so the set kept is independent of the order neighbors are
+   * offered in.
+   */
+  private static class Heaps {
+
+    /** The m n. */
+    private final int mN;
+
+    /** The m k. */
+    private final int mK;
+
+    /** The m indices. */
+    private final int[] mIndices;
+
+    /** The m distances. */
+    private final double[] mDistances;
+
+    /** Whether each neighbor has yet to take part in a local join. */
+    private final boolean[] mNew;
+
+    /** The iteration each neighbor was added in. */
+    private final int[] mStamps;
+
+    /** The m size. */
+    private final int[] mSize;
+
+    /** The m locks. */
+    private final Object[] mLocks = new Object[LOCKS];
+
+    /**
+     * Instantiates a new heaps.
+     *
+     * @param n the n
+     * @param k the k
+     */
+    public Heaps(int n, int k) {
+      mN = n;
+      mK = k;
+      mIndices = new int[n * k];
+      mDistances = new double[n * k];
+      mNew = new boolean[n * k];
+      mStamps = new int[n * k];
+      mSize = new int[n];
+
+      Arrays.fill(mIndices, -1);
+
+      for (int i = 0; i < LOCKS; ++i) {
+        mLocks[i] = new Object();
+      }
+    }
+
+    /**
+     * Returns true if a neighbor ranks after another.
+     *
+     * @param d1 the d 1
+     * @param i1 the i 1
+     * @param d2 the d 2
+     * @param i2 the i 2
+     * @return true, if successful
+     */
+    private static boolean after(double d1, int i1, double d2, int i2) {
+      return d1 > d2 || (d1 == d2 && i1 > i2);
+    }
+
+    /**
+     * Offer j as a neighbor of i. Undefined (NaN) distances, for example
+     * from rows with missing values, are treated as infinitely far so that
+     * every item can still be given k neighbors.
+     *
+     * @param i the i
+     * @param j the j
+     * @param d the distance between i and j.
+     * @param stamp the iteration.
+     */
+    public void push(int i, int j, double d, int stamp) {
+      if (Double.isNaN(d)) {
+        d = Double.POSITIVE_INFINITY;
+      }
+
+      int o = i * mK;
+
+      synchronized (mLocks[i % LOCKS]) {
+        int size = mSize[i];
+
+        if (size == mK
+            && !after(mDistances[o], mIndices[o], d, j)) {
+          return;
+        }
+
+        for (int p = 0; p < size; ++p) {
+          if (mIndices[o + p] == j) {
+            return;
+          }
+        }
+
+        int pos;
+
+        if (size < mK) {
+          // Sift up
+          pos = size;
+
+          while (pos > 0) {
+            int parent = (pos - 1) / 2;
+
+            if (!after(d, j, mDistances[o + parent], mIndices[o + parent])) {
+              break;
+            }
+
+            move(o + parent, o + pos);
+
+            pos = parent;
+          }
+
+          mSize[i] = size + 1;
+        } else {
+          // Replace the root and sift down
+          pos = 0;
+
+          while (true) {
+            int c = 2 * pos + 1;
+
+            if (c >= mK) {
+              break;
+            }
+
+            if (c + 1 < mK && after(mDistances[o + c + 1],
+                mIndices[o + c + 1],
+                mDistances[o + c],
+                mIndices[o + c])) {
+              ++c;
+            }
+
+            if (!after(mDistances[o + c], mIndices[o + c], d, j)) {
+              break;
+            }
+
+            move(o + c, o + pos);
+
+            pos = c;
+          }
+        }
+
+        mIndices[o + pos] = j;
+        mDistances[o + pos] = d;
+        mNew[o + pos] = true;
+        mStamps[o + pos] = stamp;
+      }
+    }
+
+    /**
+     * Returns the positions of the neighbors of an item sorted by their
+     * index.
+     *
+     * @param i the i
+     * @return the positions
+     */
+    public int[] order(int i) {
+      int o = i * mK;
+      int size = mSize[i];
+
+      int[] ret = new int[size];
+
+      // Insertion sort since k is small
+      for (int p = 0; p < size; ++p) {
+        int q = p;
+
+        while (q > 0 && mIndices[o + ret[q - 1]] > mIndices[o + p]) {
+          ret[q] = ret[q - 1];
+          --q;
+        }
+
+        ret[q] = p;
+      }
+
+      return ret;
+    }
+
+    /**
+     * Move a heap entry.
+     *
+     * @param from the from
+     * @param to the to
+     */
+    private void move(int from, int to) {
+      mIndices[to] = mIndices[from];
+      mDistances[to] = mDistances[from];
+      mNew[to] = mNew[from];
+      mStamps[to] = mStamps[from];
+    }
+
+    /**
+     * Sort each heap nearest first and return the graph.
+     *
+     * @return the knn graph
+     */
+    public KnnGraph toGraph() {
+      final int[] indices = new int[mN * mK];
+      final double[] distances = new double[mN * mK];
+
+      ParallelUtils.forEach(mN, new RangeFunction() {
+        @Override
+        public void apply(int start, int end) {
+          Integer[] order = new Integer[mK];
+
+          for (int i = start; i < end; ++i) {
+            final int o = i * mK;
+
+            for (int p = 0; p < mK; ++p) {
+              order[p] = p;
+            }
+
+            Arrays.sort(order, new Comparator<Integer>() {
+              @Override
+              public int compare(Integer p1, Integer p2) {
+                int ret = Double.compare(mDistances[o + p1],
+                    mDistances[o + p2]);
+
+                if (ret == 0) {
+                  ret = Integer.compare(mIndices[o + p1], mIndices[o + p2]);
+                }
+
+                return ret;
+              }
+            });
+
+            for (int p = 0; p < mK; ++p) {
+              indices[o + p] = mIndices[o + order[p]];
+              distances[o + p] = mDistances[o + order[p]];
+            }
+          }
+        }
+      });
+
+      return new KnnGraph(mN, mK, indices, distances);
+    }
+  }
+}
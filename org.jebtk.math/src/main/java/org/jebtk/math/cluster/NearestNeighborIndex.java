@@ -0,0 +1,500 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.math.cluster;
+
+import org.jebtk.math.ParallelUtils;
+import org.jebtk.math.RangeFunction;
+import org.jebtk.math.matrix.DoubleMatrix;
+import org.jebtk.math.matrix.Matrix;
+
+/**
+ * Finds the rows of a matrix most similar to a query. The rows are
+ * normalized once into a contiguous buffer so that each comparison is a dot
+ * product: rows are centered and scaled to unit length for Pearson, scaled to
+ * unit length for cosine, and their squared lengths are stored for Euclidean.
+ * Queries scan the rows in parallel, keeping the best k in a bounded heap per
+ * block. Missing (NaN) values are replaced by the row mean for Pearson and by
+ * zero otherwise.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class NearestNeighborIndex {
+
+  /** The m type. */
+  private final SimilarityType mType;
+
+  /** The number of rows. */
+  private final int mN;
+
+  /** The dimension of each row. */
+  private final int mD;
+
+  /** The normalized rows stored row major. */
+  private final double[] mData;
+
+  /** The squared length of each row, for Euclidean distance. */
+  private final double[] mNorms;
+
+  /**
+   * Instantiates a new nearest neighbor index over the rows of a matrix.
+   *
+   * @param m the m
+   * @param type the type
+   */
+  public NearestNeighborIndex(final Matrix m, SimilarityType type) {
+    this(KMeans.rowMajor(m), type);
+  }
+
+  /**
+   * Instantiates a new nearest neighbor index.
+   *
+   * @param m the m
+   * @param type the type
+   */
+  public NearestNeighborIndex(final DoubleMatrix m, SimilarityType type) {
+    mType = type;
+    mN = m.getRows();
+    mD = m.getCols();
+    mData = new double[mN * mD];
+    mNorms = type == SimilarityType.EUCLIDEAN ? new double[mN] : null;
+
+    final double[] data = m.mData;
+
+    ParallelUtils.forEach(mN, new RangeFunction() {
+      @Override
+      public void apply(int start, int end) {
+        for (int i = start; i < end; ++i) {
+          double norm = normalize(data, i * mD, mData, i * mD);
+
+          if (mNorms != null) {
+            mNorms[i] = norm;
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * Copy a row into the buffer in normalized form.
+   *
+   * @param src the src
+   * @param so the offset of the row in src.
+   * @param dest the dest
+   * @param dof the offset of the row in dest.
+   * @return the squared length of the row.
+   */
+  private double normalize(double[] src, int so, double[] dest, int dof) {
+    double mean = 0;
+
+    if (mType == SimilarityType.PEARSON) {
+      int c = 0;
+
+      for (int x = 0; x < mD; ++x) {
+        double v = src[so + x];
+
+        if (!Double.isNaN(v)) {
+          mean += v;
+          ++c;
+        }
+      }
+
+      mean = c > 0 ? mean / c : 0;
+    }
+
+    double ss = 0;
+
+    for (int x = 0; x < mD; ++x) {
+      double v = src[so + x];
+
+      v = Double.isNaN(v) ? 0 : v - mean;
+
+      dest[dof + x] = v;
+
+      ss += v * v;
+    }
+
+    if (mType != SimilarityType.EUCLIDEAN && ss > 0) {
+      double s = 1.0 / Math.sqrt(ss);
+
+      for (int x = 0; x < mD; ++x) {
+        dest[dof + x] *= s;
+      }
+    }
+
+    return ss;
+  }
+
+  /**
+   * Returns the number of rows in the index.
+   *
+   * @return the int
+   */
+  public int size() {
+    return mN;
+  }
+
+  /**
+   * Find the k rows most similar to a row of the index, excluding the row
+   * itself.
+   *
+   * @param row the row
+   * @param k the k
+   * @return the neighbors
+   */
+  public Neighbors query(int row, int k) {
+    double norm = mNorms != null ? mNorms[row] : 0;
+
+    return scan(mData, row * mD, norm, k, row, true);
+  }
+
+  /**
+   * Find the k rows most similar to a vector with the same number of columns
+   * as the index.
+   *
+   * @param v the v
+   * @param k the k
+   * @return the neighbors
+   */
+  public Neighbors query(double[] v, int k) {
+    if (v.length != mD) {
+      throw new IllegalArgumentException(
+          "Query has " + v.length + " values, expected " + mD + ".");
+    }
+
+    double[] q = new double[mD];
+
+    double norm = normalize(v, 0, q, 0);
+
+    return scan(q, 0, norm, k, -1, true);
+  }
+
+  /**
+   * Find the k most similar rows to each of a set of rows. Queries run in
+   * parallel with each one scanning the index on a single thread.
+   *
+   * @param rows the rows
+   * @param k the k
+   * @return the neighbors of each row.
+   */
+  public Neighbors[] query(final int[] rows, final int k) {
+    final Neighbors[] ret = new Neighbors[rows.length];
+
+    ParallelUtils.forEach(0, rows.length, 1, new RangeFunction() {
+      @Override
+      public void apply(int start, int end) {
+        for (int i = start; i < end; ++i) {
+          int row = rows[i];
+
+          double norm = mNorms != null ? mNorms[row] : 0;
+
+          ret[i] = scan(mData, row * mD, norm, k, row, false);
+        }
+      }
+    });
+
+    return ret;
+  }
+
+  /**
+   * Scan the index for the best k rows.
+   *
+   * @param q the buffer holding the normalized query.
+   * @param qo the offset of the query in q.
+   * @param qNorm the squared length of the query.
+   * @param k the k
+   * @param exclude a row to ignore, or -1.
+   * @param parallel whether to split the scan between threads.
+   * @return the neighbors
+   */
+  private Neighbors scan(final double[] q,
+      final int qo,
+      final double qNorm,
+      int k,
+      final int exclude,
+      boolean parallel) {
+    final int kk = Math.max(0, Math.min(k, exclude == -1 ? mN : mN - 1));
+
+    TopK ret;
+
+    if (parallel && mN > 1) {
+      int blockSize = ParallelUtils.blockSize(mN);
+      int blocks = (mN + blockSize - 1) / blockSize;
+
+      final TopK[] heaps = new TopK[blocks];
+      final int bs = blockSize;
+
+      ParallelUtils.forEach(0, blocks, 1, new RangeFunction() {
+        @Override
+        public void apply(int start, int end) {
+          for (int b = start; b < end; ++b) {
+            TopK heap = new TopK(kk);
+
+            scan(q,
+                qo,
+                qNorm,
+                exclude,
+                b * bs,
+                Math.min(mN, (b + 1) * bs),
+                heap);
+
+            heaps[b] = heap;
+          }
+        }
+      });
+
+      ret = new TopK(kk);
+
+      for (TopK heap : heaps) {
+        for (int i = 0; i < heap.mSize; ++i) {
+          ret.offer(heap.mIndices[i], heap.mScores[i]);
+        }
+      }
+    } else {
+      ret = new TopK(kk);
+
+      scan(q, qo, qNorm, exclude, 0, mN, ret);
+    }
+
+    Neighbors neighbors = ret.sorted();
+
+    if (mType == SimilarityType.EUCLIDEAN) {
+      double[] scores = neighbors.getScores();
+
+      // Scores were negated squared distances
+      for (int i = 0; i < scores.length; ++i) {
+        scores[i] = Math.sqrt(Math.max(0, -scores[i]));
+      }
+    }
+
+    return neighbors;
+  }
+
+  /**
+   * Scan a block of rows.
+   *
+   * @param q the q
+   * @param qo the qo
+   * @param qNorm the q norm
+   * @param exclude the exclude
+   * @param start the start
+   * @param end the end
+   * @param heap the heap
+   */
+  private void scan(double[] q,
+      int qo,
+      double qNorm,
+      int exclude,
+      int start,
+      int end,
+      TopK heap) {
+    for (int i = start; i < end; ++i) {
+      if (i == exclude) {
+        continue;
+      }
+
+      double s = dot(q, qo, mData, i * mD, mD);
+
+      if (mType == SimilarityType.EUCLIDEAN) {
+        // Larger scores are better so rank by minus the squared distance
+        s = 2 * s - qNorm - mNorms[i];
+      }
+
+      heap.offer(i, s);
+    }
+  }
+
+  /**
+   * Dot product with four independent sums so the additions can be
+   * pipelined.
+   *
+   * @param a the a
+   * @param ao the ao
+   * @param b the b
+   * @param bo the bo
+   * @param n the n
+   * @return the double
+   */
+  private static double dot(double[] a, int ao, double[] b, int bo, int n) {
+    double s0 = 0;
+    double s1 = 0;
+    double s2 = 0;
+    double s3 = 0;
+
+    int x = 0;
+
+    for (; x < n - 3; x += 4) {
+      s0 += a[ao + x] * b[bo + x];
+      s1 += a[ao + x + 1] * b[bo + x + 1];
+      s2 += a[ao + x + 2] * b[bo + x + 2];
+      s3 += a[ao + x + 3] * b[bo + x + 3];
+    }
+
+    for (; x < n; ++x) {
+      s0 += a[ao + x] * b[bo + x];
+    }
+
+    return (s0 + s1) + (s2 + s3);
+  }
+
+  /**
+   * Keeps the k highest scores in a min heap. Ties are broken in favor of
+   * the lower index so results do not depend on how the scan was split.
+   */
+  private static class TopK {
+
+    /** The m indices. */
+    private final int[] mIndices;
+
+    /** The m scores. */
+    private final double[] mScores;
+
+    /** The m size. */
+    private int mSize = 0;
+
+    /**
+     * Instantiates a new top K.
+     *
+     * @param k the k
+     */
+    public TopK(int k) {
+      mIndices = new int[k];
+      mScores = new double[k];
+    }
+
+    /**
+     * Returns true if entry a ranks below entry b.
+     *
+     * @param sa the sa
+     * @param ia the ia
+     * @param sb the sb
+     * @param ib the ib
+     * @return true, if successful
+     */
+    private static boolean worse(double sa, int ia, double sb, int ib) {
+      return sa < sb || (sa == sb && ia > ib);
+    }
+
+    /**
+     * Offer.
+     *
+     * @param index the index
+     * @param score the score
+     */
+    public void offer(int index, double score) {
+      int k = mIndices.length;
+
+      if (k == 0 || Double.isNaN(score)) {
+        return;
+      }
+
+      if (mSize < k) {
+        // Sift up
+        int i = mSize++;
+
+        while (i > 0) {
+          int p = (i - 1) / 2;
+
+          if (!worse(score, index, mScores[p], mIndices[p])) {
+            break;
+          }
+
+          mScores[i] = mScores[p];
+          mIndices[i] = mIndices[p];
+          i = p;
+        }
+
+        mScores[i] = score;
+        mIndices[i] = index;
+      } else if (worse(mScores[0], mIndices[0], score, index)) {
+        siftDown(index, score, mSize);
+      }
+    }
+
+    /**
+     * Replace the root and restore the heap.
+     *
+     * @param index the index
+     * @param score the score
+     * @param size the size of the heap.
+     */
+    private void siftDown(int index, double score, int size) {
+      int i = 0;
+
+      while (true) {
+        int c = 2 * i + 1;
+
+        if (c >= size) {
+          break;
+        }
+
+        if (c + 1 < size
+            && worse(mScores[c + 1], mIndices[c + 1], mScores[c], mIndices[c])) {
+          ++c;
+        }
+
+        if (!worse(mScores[c], mIndices[c], score, index)) {
+          break;
+        }
+
+        mScores[i] = mScores[c];
+        mIndices[i] = mIndices[c];
+        i = c;
+      }
+
+      mScores[i] = score;
+      mIndices[i] = index;
+    }
+
+    /**
+     * Empty the heap into a list ordered best first.
+     *
+     * @return the neighbors
+     */
+    public Neighbors sorted() {
+      int n = mSize;
+
+      int[] indices = new int[n];
+      double[] scores = new double[n];
+
+      // Repeatedly remove the worst entry from the root
+      for (int i = n - 1; i >= 0; --i) {
+        indices[i] = mIndices[0];
+        scores[i] = mScores[0];
+
+        --mSize;
+
+        if (mSize > 0) {
+          siftDown(mIndices[mSize], mScores[mSize], mSize);
+        }
+      }
+
+      return new Neighbors(indices, scores);
+    }
+  }
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.math.cluster;
+
+/**
+ * The nearest neighbors of a query, best first.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class Neighbors {
+
+  /** The m indices. */
+  private final int[] mIndices;
+
+  /** The m scores. */
+  private final double[] mScores;
+
+  /**
+   * Instantiates a new neighbors.
+   *
+   * @param indices the row indices of the neighbors.
+   * @param scores the similarity or distance of each neighbor.
+   */
+  public Neighbors(int[] indices, double[] scores) {
+    mIndices = indices;
+    mScores = scores;
+  }
+
+  /**
+   * Returns the number of neighbors.
+   *
+   * @return the int
+   */
+  public int size() {
+    return mIndices.length;
+  }
+
+  /**
+   * Returns the row index of the i-th nearest neighbor.
+   *
+   * @param i the i
+   * @return the index
+   */
+  public int getIndex(int i) {
+    return mIndices[i];
+  }
+
+  /**
+   * Returns the correlation, similarity or distance of the i-th nearest
+   * neighbor, depending on how the neighbors were ranked.
+   *
+   * @param i the i
+   * @return the score
+   */
+  public double getScore(int i) {
+    return mScores[i];
+  }
+
+  /**
+   * Gets the indices.
+   *
+   * @return the indices
+   */
+  public int[] getIndices() {
+    return mIndices;
+  }
+
+  /**
+   * Gets the scores.
+   *
+   * @return the scores
+   */
+  public double[] getScores() {
+    return mScores;
+  }
+}
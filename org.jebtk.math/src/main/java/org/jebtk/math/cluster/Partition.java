@@ -0,0 +1,170 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.math.cluster;
+
+import org.jebtk.math.matrix.DoubleMatrix;
+
+/**
+ * The result of partitioning items into k flat clusters, for example by
+ * k-means or k-medoids. Each item is assigned a label in [0, k - 1].
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class Partition {
+
+  /** The cluster label of each item. */
+  private final int[] mLabels;
+
+  /** The cluster centers, one row per cluster. */
+  private final DoubleMatrix mCenters;
+
+  /** The item index of each medoid, or null if centers are means. */
+  private final int[] mMedoids;
+
+  /** The total cost of the partition. */
+  private final double mCost;
+
+  /** The number of iterations run. */
+  private final int mIterations;
+
+  /** Whether the algorithm converged before the iteration limit. */
+  private final boolean mConverged;
+
+  /**
+   * Instantiates a new partition.
+   *
+   * @param labels the cluster label of each item.
+   * @param centers the cluster centers.
+   * @param medoids the medoid item indices or null.
+   * @param cost the total cost.
+   * @param iterations the iterations run.
+   * @param converged whether the algorithm converged.
+   */
+  public Partition(int[] labels, DoubleMatrix centers, int[] medoids,
+      double cost, int iterations, boolean converged) {
+    mLabels = labels;
+    mCenters = centers;
+    mMedoids = medoids;
+    mCost = cost;
+    mIterations = iterations;
+    mConverged = converged;
+  }
+
+  /**
+   * Returns the cluster label of each item.
+   *
+   * @return the labels
+   */
+  public int[] getLabels() {
+    return mLabels;
+  }
+
+  /**
+   * Returns the cluster label of an item.
+   *
+   * @param item the item
+   * @return the label
+   */
+  public int getLabel(int item) {
+    return mLabels[item];
+  }
+
+  /**
+   * Returns the number of clusters.
+   *
+   * @return the k
+   */
+  public int getK() {
+    return mCenters.getRows();
+  }
+
+  /**
+   * Returns the cluster centers as a k x d matrix.
+   *
+   * @return the centers
+   */
+  public DoubleMatrix getCenters() {
+    return mCenters;
+  }
+
+  /**
+   * Returns the item indices of the medoids if the partition was created by a
+   * k-medoids algorithm, otherwise null.
+   *
+   * @return the medoids
+   */
+  public int[] getMedoids() {
+    return mMedoids;
+  }
+
+  /**
+   * Returns the cost of the partition. For k-means this is the within cluster
+   * sum of squared distances and for k-medoids the sum of distances to the
+   * nearest medoid.
+   *
+   * @return the cost
+   */
+  public double getCost() {
+    return mCost;
+  }
+
+  /**
+   * Returns the number of iterations run.
+   *
+   * @return the iterations
+   */
+  public int getIterations() {
+    return mIterations;
+  }
+
+  /**
+   * Returns true if the algorithm converged before reaching the maximum number
+   * of iterations.
+   *
+   * @return true, if is converged
+   */
+  public boolean isConverged() {
+    return mConverged;
+  }
+
+  /**
+   * Returns the number of items in each cluster.
+   *
+   * @return the sizes
+   */
+  public int[] getSizes() {
+    int[] ret = new int[getK()];
+
+    for (int l : mLabels) {
+      ++ret[l];
+    }
+
+    return ret;
+  }
+}
@@ -67,6 +67,42 @@ public class PearsonDistanceMetric extends DistanceMetric {
     return Mathematics.bound(1.0 - d, 0, 2);
   }
 
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.jebtk.math.cluster.DistanceMetric#distance(double[], int,
+   * double[], int, int)
+   */
+  @Override
+  public double distance(final double[] d1,
+      int o1,
+      final double[] d2,
+      int o2,
+      int n) {
+    double m1 = Statistics.mean(d1, o1, n);
+    double m2 = Statistics.mean(d2, o2, n);
+
+    double sxy = 0;
+    double sxx = 0;
+    double syy = 0;
+    double x;
+    double y;
+
+    for (int i = 0; i < n; ++i) {
+      x = d1[o1++] - m1;
+      y = d2[o2++] - m2;
+
+      sxy += x * y;
+      sxx += x * x;
+      syy += y * y;
+    }
+
+    // Equivalent to averaging the product of the population z-scores
+    double d = sxy / Math.sqrt(sxx * syy);
+
+    return Mathematics.bound(1.0 - d, 0, 2);
+  }
+
   /*
    * (non-Javadoc)
    * 
@@ -35,7 +35,7 @@ import org.jebtk.math.matrix.Matrix;
 /**
  * The class SingleLinkage.
  */
-public class SingleLinkage implements Linkage {
+public class SingleLinkage implements LanceWilliamsLinkage {
 
   /*
    * (non-Javadoc)
@@ -133,4 +133,19 @@ public class SingleLinkage implements Linkage {
 
     return d;
   }
+
+  @Override
+  public double update(double dki,
+      double dkj,
+      double dij,
+      int ni,
+      int nj,
+      int nk) {
+    return Math.min(dki, dkj);
+  }
+
+  @Override
+  public boolean isSquared() {
+    return false;
+  }
 }
@@ -0,0 +1,216 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.math.matrix;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jebtk.core.collections.CollectionUtils;
+import org.jebtk.core.io.FileUtils;
+import org.jebtk.core.io.Io;
+import org.jebtk.core.text.Splitter;
+import org.jebtk.core.text.TextUtils;
+
+/**
+ * Reads a delimited numerical matrix file a chunk of rows at a time. Unlike
+ * {@link DoubleMatrixParser} the whole file is never held in memory, so it
+ * can be used to stream matrices that are larger than the heap. Cells that
+ * are not numbers are read as NaN and row annotation columns are skipped.
+ * 
+ * @author Antony Holmes
+ */
+public class DoubleMatrixChunkParser implements RowChunkIterator {
+
+  /** The m reader. */
+  private final BufferedReader mReader;
+
+  /** The m chunk size. */
+  private final int mChunkSize;
+
+  /** The m row annotations. */
+  private final int mRowAnnotations;
+
+  /** The m split. */
+  private final Splitter mSplit;
+
+  /** The m column names. */
+  private List<String> mColumnNames = Collections.emptyList();
+
+  /** The m row names. */
+  private final List<String> mRowNames = new ArrayList<String>();
+
+  /** The m cols. */
+  private int mCols = -1;
+
+  /** The next line, read ahead to find the number of columns. */
+  private String mLine = null;
+
+  /**
+   * Instantiates a new double matrix chunk parser.
+   *
+   * @param file the file
+   * @param headers the number of header lines. The last one is used for the
+   *          column names.
+   * @param rowAnnotations the number of annotation columns at the start of
+   *          each row.
+   * @param delimiter the delimiter
+   * @param chunkSize the number of rows in each chunk.
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public DoubleMatrixChunkParser(Path file, int headers, int rowAnnotations,
+      String delimiter, int chunkSize) throws IOException {
+    mRowAnnotations = rowAnnotations;
+    mChunkSize = Math.max(1, chunkSize);
+    mSplit = Splitter.on(delimiter);
+
+    mReader = FileUtils.newBufferedReader(file);
+
+    String line = null;
+
+    for (int i = 0; i < headers; ++i) {
+      line = mReader.readLine();
+    }
+
+    if (line != null) {
+      mColumnNames = CollectionUtils.subList(
+          mSplit.text(TextUtils.removeExcelQuotes(line)),
+          rowAnnotations);
+
+      mCols = mColumnNames.size();
+    }
+
+    mLine = readLine();
+
+    if (mCols == -1) {
+      mCols = mLine != null
+          ? mSplit.text(mLine).size() - rowAnnotations : 0;
+    }
+  }
+
+  /**
+   * Returns the next non empty line.
+   *
+   * @return the string
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private String readLine() throws IOException {
+    String line;
+
+    while ((line = mReader.readLine()) != null) {
+      if (!Io.isEmptyLine(line)) {
+        return TextUtils.removeExcelQuotes(line);
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Returns the column names from the header, or an empty list if the file
+   * has no header.
+   *
+   * @return the column names
+   */
+  public List<String> getColumnNames() {
+    return Collections.unmodifiableList(mColumnNames);
+  }
+
+  /**
+   * Returns the first annotation of each row in the last chunk read, or an
+   * empty list if there are no row annotations.
+   *
+   * @return the row names
+   */
+  public List<String> getRowNames() {
+    return Collections.unmodifiableList(mRowNames);
+  }
+
+  @Override
+  public int getCols() {
+    return mCols;
+  }
+
+  @Override
+  public DoubleMatrix nextChunk() throws IOException {
+    if (mLine == null) {
+      return null;
+    }
+
+    mRowNames.clear();
+
+    DoubleMatrix ret = DoubleMatrix.createDoubleMatrix(mChunkSize, mCols);
+
+    double[] buffer = ret.mData;
+
+    int rows = 0;
+
+    while (mLine != null && rows < mChunkSize) {
+      List<String> tokens = mSplit.text(mLine);
+
+      if (mRowAnnotations > 0) {
+        mRowNames.add(tokens.get(0));
+      }
+
+      int o = rows * mCols;
+
+      for (int i = 0; i < mCols; ++i) {
+        int c = i + mRowAnnotations;
+
+        if (c < tokens.size() && TextUtils.isNumber(tokens.get(c))) {
+          buffer[o + i] = Double.parseDouble(tokens.get(c));
+        } else {
+          buffer[o + i] = Double.NaN;
+        }
+      }
+
+      ++rows;
+
+      mLine = readLine();
+    }
+
+    if (rows < mChunkSize) {
+      // Last chunk of the file
+      DoubleMatrix last = DoubleMatrix.createDoubleMatrix(rows, mCols);
+
+      System.arraycopy(buffer, 0, last.mData, 0, rows * mCols);
+
+      ret = last;
+    }
+
+    return ret;
+  }
+
+  @Override
+  public void close() throws IOException {
+    mReader.close();
+  }
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.math.matrix;
+
+/**
+ * Iterates over the rows of an in memory matrix in chunks.
+ */
+public class MatrixRowChunkIterator implements RowChunkIterator {
+
+  /** The m M. */
+  private final Matrix mM;
+
+  /** The m chunk size. */
+  private final int mChunkSize;
+
+  /** The next row to read. */
+  private int mRow = 0;
+
+  /**
+   * Instantiates a new matrix row chunk iterator.
+   *
+   * @param m the m
+   * @param chunkSize the chunk size
+   */
+  public MatrixRowChunkIterator(Matrix m, int chunkSize) {
+    mM = m;
+    mChunkSize = Math.max(1, chunkSize);
+  }
+
+  @Override
+  public int getCols() {
+    return mM.getCols();
+  }
+
+  @Override
+  public DoubleMatrix nextChunk() {
+    if (mRow >= mM.getRows()) {
+      return null;
+    }
+
+    int rows = Math.min(mChunkSize, mM.getRows() - mRow);
+
+    DoubleMatrix ret = DoubleMatrix.createDoubleMatrix(rows, mM.getCols());
+
+    double[] data = new double[mM.getCols()];
+
+    for (int i = 0; i < rows; ++i) {
+      mM.rowToDouble(mRow++, data);
+
+      System.arraycopy(data, 0, ret.mData, i * data.length, data.length);
+    }
+
+    return ret;
+  }
+
+  @Override
+  public void close() {
+    // Nothing to release
+  }
+}
@@ -0,0 +1,570 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.math.matrix.utils;
+
+import java.util.SplittableRandom;
+
+import org.apache.commons.math3.special.Erf;
+import org.jebtk.math.ParallelUtils;
+import org.jebtk.math.RangeFunction;
+import org.jebtk.math.matrix.DoubleMatrix;
+import org.jebtk.math.matrix.MatrixReduceFunction;
+import org.jebtk.math.statistics.BootstrapInterval;
+import org.jebtk.math.statistics.Percentiles;
+
+/**
+ * Bootstrap confidence intervals of a statistic on every row or column of a
+ * matrix. The statistic is any {@link MatrixReduceFunction}, which is called
+ * with the row or column index and a buffer of resampled values. Functions
+ * are called from several threads at once and must not keep the buffer, but
+ * they may reorder or modify it, for example by sorting it in place.
+ * 
+ * Resamples are drawn as indices, so the values of each row are copied once
+ * and every resample is gathered into the same buffer. The same B sets of
+ * indices are used for every row, each generated from its own seed split
+ * from the root seed, so results only depend on the seed. Rows are processed
+ * in parallel.
+ * 
+ * Resampled statistics that are NaN are ignored. Intervals are either plain
+ * percentiles or bias corrected and accelerated (BCa) percentiles, where the
+ * acceleration is estimated by the jackknife.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class Bootstrap {
+
+  /** The default number of resamples. */
+  public static final int DEFAULT_RESAMPLES = 1000;
+
+  /** The default confidence level. */
+  public static final double DEFAULT_CONFIDENCE = 0.95;
+
+  /**
+   * Resample indices are stored and shared if there are no more than this
+   * many of them, otherwise they are regenerated for each row.
+   */
+  private static final int MAX_STORED_INDICES = 1 << 22;
+
+  /** The statistic of each row on the original values. */
+  private final double[] mEstimate;
+
+  /** The standard deviation of the resampled statistics. */
+  private final double[] mStdErr;
+
+  /** The lower bounds. */
+  private final double[] mLower;
+
+  /** The upper bounds. */
+  private final double[] mUpper;
+
+  /**
+   * Instantiates a new bootstrap.
+   *
+   * @param n the number of rows or columns.
+   */
+  private Bootstrap(int n) {
+    mEstimate = new double[n];
+    mStdErr = new double[n];
+    mLower = new double[n];
+    mUpper = new double[n];
+  }
+
+  /**
+   * Returns the statistic calculated on the original values.
+   *
+   * @return the estimate
+   */
+  public double[] getEstimate() {
+    return mEstimate;
+  }
+
+  /**
+   * Returns the bootstrap standard error, the standard deviation of the
+   * resampled statistics.
+   *
+   * @return the std err
+   */
+  public double[] getStdErr() {
+    return mStdErr;
+  }
+
+  /**
+   * Returns the lower bound of each confidence interval.
+   *
+   * @return the lower
+   */
+  public double[] getLower() {
+    return mLower;
+  }
+
+  /**
+   * Returns the upper bound of each confidence interval.
+   *
+   * @return the upper
+   */
+  public double[] getUpper() {
+    return mUpper;
+  }
+
+  /**
+   * Bootstrap a statistic on each row of a matrix by resampling its columns.
+   *
+   * @param m the matrix
+   * @param f the statistic
+   * @param resamples the number of resamples.
+   * @param confidence the confidence level, e.g. 0.95.
+   * @param interval the type of interval.
+   * @param seed the seed
+   * @return the bootstrap
+   */
+  public static Bootstrap rows(DoubleMatrix m,
+      MatrixReduceFunction f,
+      int resamples,
+      double confidence,
+      BootstrapInterval interval,
+      long seed) {
+    return rows(m.mData,
+        m.getRows(),
+        m.getCols(),
+        f,
+        resamples,
+        confidence,
+        interval,
+        seed);
+  }
+
+  /**
+   * Bootstrap a statistic on each row of a row major matrix by resampling its
+   * columns.
+   *
+   * @param data the matrix values stored row major.
+   * @param rows the number of rows.
+   * @param cols the number of columns.
+   * @param f the statistic
+   * @param resamples the number of resamples.
+   * @param confidence the confidence level, e.g. 0.95.
+   * @param interval the type of interval.
+   * @param seed the seed
+   * @return the bootstrap
+   */
+  public static Bootstrap rows(final double[] data,
+      int rows,
+      int cols,
+      MatrixReduceFunction f,
+      int resamples,
+      double confidence,
+      BootstrapInterval interval,
+      long seed) {
+    return bootstrap(data,
+        rows,
+        cols,
+        cols,
+        1,
+        f,
+        resamples,
+        confidence,
+        interval,
+        seed);
+  }
+
+  /**
+   * Bootstrap a statistic on each column of a matrix by resampling its rows.
+   *
+   * @param m the matrix
+   * @param f the statistic
+   * @param resamples the number of resamples.
+   * @param confidence the confidence level, e.g. 0.95.
+   * @param interval the type of interval.
+   * @param seed the seed
+   * @return the bootstrap
+   */
+  public static Bootstrap columns(DoubleMatrix m,
+      MatrixReduceFunction f,
+      int resamples,
+      double confidence,
+      BootstrapInterval interval,
+      long seed) {
+    return columns(m.mData,
+        m.getRows(),
+        m.getCols(),
+        f,
+        resamples,
+        confidence,
+        interval,
+        seed);
+  }
+
+  /**
+   * Bootstrap a statistic on each column of a row major matrix by resampling
+   * its rows.
+   *
+   * @param data the matrix values stored row major.
+   * @param rows the number of rows.
+   * @param cols the number of columns.
+   * @param f the statistic
+   * @param resamples the number of resamples.
+   * @param confidence the confidence level, e.g. 0.95.
+   * @param interval the type of interval.
+   * @param seed the seed
+   * @return the bootstrap
+   */
+  public static Bootstrap columns(final double[] data,
+      int rows,
+      int cols,
+      MatrixReduceFunction f,
+      int resamples,
+      double confidence,
+      BootstrapInterval interval,
+      long seed) {
+    return bootstrap(data,
+        cols,
+        rows,
+        1,
+        cols,
+        f,
+        resamples,
+        confidence,
+        interval,
+        seed);
+  }
+
+  /**
+   * Bootstrap a statistic on strided vectors of an array.
+   *
+   * @param data the data
+   * @param vectors the number of vectors.
+   * @param n the number of values in each vector.
+   * @param vectorStride the distance between the starts of vectors.
+   * @param stride the distance between values in a vector.
+   * @param f the statistic
+   * @param resamples the number of resamples.
+   * @param confidence the confidence level.
+   * @param interval the type of interval.
+   * @param seed the seed
+   * @return the bootstrap
+   */
+  private static Bootstrap bootstrap(final double[] data,
+      int vectors,
+      final int n,
+      final int vectorStride,
+      final int stride,
+      final MatrixReduceFunction f,
+      final int resamples,
+      double confidence,
+      final BootstrapInterval interval,
+      long seed) {
+    final Bootstrap ret = new Bootstrap(vectors);
+
+    final long[] seeds = new long[resamples];
+
+    SplittableRandom root = new SplittableRandom(seed);
+
+    for (int i = 0; i < resamples; ++i) {
+      seeds[i] = root.split().nextLong();
+    }
+
+    final int[] indices = (long) resamples * n <= MAX_STORED_INDICES
+        ? indices(seeds, n) : null;
+
+    final double alpha = (1 - confidence) / 2;
+
+    ParallelUtils.forEach(vectors, new RangeFunction() {
+      @Override
+      public void apply(int start, int end) {
+        double[] x = new double[n];
+        double[] buffer = new double[n];
+        double[] jack = new double[Math.max(0, n - 1)];
+        double[] jackStats = new double[n];
+        double[] stats = new double[resamples];
+        double[] percentiles = new double[2];
+        double[] bounds = new double[2];
+
+        for (int v = start; v < end; ++v) {
+          int o = v * vectorStride;
+
+          for (int i = 0; i < n; ++i) {
+            x[i] = data[o + i * stride];
+          }
+
+          System.arraycopy(x, 0, buffer, 0, n);
+
+          double est = f.apply(v, buffer);
+
+          ret.mEstimate[v] = est;
+
+          int m = 0;
+
+          for (int b = 0; b < resamples; ++b) {
+            if (indices != null) {
+              int io = b * n;
+
+              for (int i = 0; i < n; ++i) {
+                buffer[i] = x[indices[io + i]];
+              }
+            } else {
+              SplittableRandom rng = new SplittableRandom(seeds[b]);
+
+              for (int i = 0; i < n; ++i) {
+                buffer[i] = x[rng.nextInt(n)];
+              }
+            }
+
+            double s = f.apply(v, buffer);
+
+            if (!Double.isNaN(s)) {
+              stats[m++] = s;
+            }
+          }
+
+          if (m == 0) {
+            ret.mStdErr[v] = Double.NaN;
+            ret.mLower[v] = Double.NaN;
+            ret.mUpper[v] = Double.NaN;
+            continue;
+          }
+
+          ret.mStdErr[v] = stdDev(stats, m);
+
+          if (interval == BootstrapInterval.BCA) {
+            double z0 = bias(stats, m, est);
+
+            double a = acceleration(f, v, x, jack, jackStats);
+
+            percentiles[0] = 100 * bcaAlpha(z0, a, alpha);
+            percentiles[1] = 100 * bcaAlpha(z0, a, 1 - alpha);
+          } else {
+            percentiles[0] = 100 * alpha;
+            percentiles[1] = 100 * (1 - alpha);
+          }
+
+          if (Double.isNaN(percentiles[0]) || Double.isNaN(percentiles[1])) {
+            ret.mLower[v] = Double.NaN;
+            ret.mUpper[v] = Double.NaN;
+            continue;
+          }
+
+          Percentiles.percentiles(stats, 0, m, percentiles, bounds);
+
+          ret.mLower[v] = bounds[0];
+          ret.mUpper[v] = bounds[1];
+        }
+      }
+    });
+
+    return ret;
+  }
+
+  /**
+   * Generate the resample indices, n for each seed.
+   *
+   * @param seeds the seeds
+   * @param n the number of values.
+   * @return the indices
+   */
+  private static int[] indices(final long[] seeds, final int n) {
+    final int[] ret = new int[seeds.length * n];
+
+    ParallelUtils.forEach(seeds.length, new RangeFunction() {
+      @Override
+      public void apply(int start, int end) {
+        for (int b = start; b < end; ++b) {
+          SplittableRandom rng = new SplittableRandom(seeds[b]);
+
+          int o = b * n;
+
+          for (int i = 0; i < n; ++i) {
+            ret[o + i] = rng.nextInt(n);
+          }
+        }
+      }
+    });
+
+    return ret;
+  }
+
+  /**
+   * The sample standard deviation of the first n values.
+   *
+   * @param values the values
+   * @param n the n
+   * @return the standard deviation
+   */
+  private static double stdDev(final double[] values, int n) {
+    if (n < 2) {
+      return 0;
+    }
+
+    double mean = 0;
+
+    for (int i = 0; i < n; ++i) {
+      mean += values[i];
+    }
+
+    mean /= n;
+
+    double ss = 0;
+
+    for (int i = 0; i < n; ++i) {
+      double d = values[i] - mean;
+
+      ss += d * d;
+    }
+
+    return Math.sqrt(ss / (n - 1));
+  }
+
+  /**
+   * The BCa bias correction, the normal quantile of the proportion of
+   * resampled statistics below the estimate. Ties count as a half and the
+   * proportion is kept away from 0 and 1 so that the correction is finite.
+   *
+   * @param stats the resampled statistics.
+   * @param m the number of statistics.
+   * @param est the estimate
+   * @return the bias correction
+   */
+  private static double bias(final double[] stats, int m, double est) {
+    double below = 0;
+
+    for (int i = 0; i < m; ++i) {
+      if (stats[i] < est) {
+        ++below;
+      } else if (stats[i] == est) {
+        below += 0.5;
+      }
+    }
+
+    double p = below / m;
+
+    double e = 0.5 / m;
+
+    return normInv(Math.max(e, Math.min(1 - e, p)));
+  }
+
+  /**
+   * The BCa acceleration, estimated from the skewness of the jackknife
+   * statistics.
+   *
+   * @param f the statistic
+   * @param index the row or column index.
+   * @param x the values
+   * @param jack buffer for the values less one.
+   * @param jackStats buffer for the jackknife statistics.
+   * @return the acceleration
+   */
+  private static double acceleration(MatrixReduceFunction f,
+      int index,
+      final double[] x,
+      double[] jack,
+      double[] jackStats) {
+    int n = x.length;
+
+    if (n < 2) {
+      return 0;
+    }
+
+    double mean = 0;
+    int m = 0;
+
+    for (int i = 0; i < n; ++i) {
+      // Copy afresh each time since the function may have modified the
+      // buffer
+      System.arraycopy(x, 0, jack, 0, i);
+      System.arraycopy(x, i + 1, jack, i, n - i - 1);
+
+      double s = f.apply(index, jack);
+
+      jackStats[i] = s;
+
+      if (!Double.isNaN(s)) {
+        mean += s;
+        ++m;
+      }
+    }
+
+    if (m == 0) {
+      return 0;
+    }
+
+    mean /= m;
+
+    double num = 0;
+    double den = 0;
+
+    for (int i = 0; i < n; ++i) {
+      if (!Double.isNaN(jackStats[i])) {
+        double d = mean - jackStats[i];
+        double d2 = d * d;
+
+        num += d2 * d;
+        den += d2;
+      }
+    }
+
+    if (den == 0) {
+      return 0;
+    }
+
+    return num / (6 * Math.pow(den, 1.5));
+  }
+
+  /**
+   * The BCa adjusted level for a nominal level.
+   *
+   * @param z0 the bias correction.
+   * @param a the acceleration
+   * @param alpha the nominal level.
+   * @return the adjusted level
+   */
+  private static double bcaAlpha(double z0, double a, double alpha) {
+    double z = z0 + normInv(alpha);
+
+    return normCdf(z0 + z / (1 - a * z));
+  }
+
+  /**
+   * The standard normal cumulative distribution function.
+   *
+   * @param z the z
+   * @return the probability
+   */
+  private static double normCdf(double z) {
+    return 0.5 * (1 + Erf.erf(z / Math.sqrt(2)));
+  }
+
+  /**
+   * The standard normal quantile function.
+   *
+   * @param p the probability
+   * @return the z
+   */
+  private static double normInv(double p) {
+    return Math.sqrt(2) * Erf.erfInv(2 * p - 1);
+  }
+}
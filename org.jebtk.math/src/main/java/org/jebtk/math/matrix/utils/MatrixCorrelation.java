@@ -0,0 +1,430 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.math.matrix.utils;
+
+import org.jebtk.math.ParallelUtils;
+import org.jebtk.math.RangeFunction;
+import org.jebtk.math.matrix.DoubleMatrix;
+import org.jebtk.math.matrix.UpperTriangularDoubleMatrix;
+import org.jebtk.math.statistics.CorrelationType;
+import org.jebtk.math.statistics.Ranks;
+import org.jebtk.math.statistics.TieMethod;
+
+/**
+ * Correlation between every pair of rows or columns of a matrix. Each
+ * vector is ranked (for Spearman) and standardized once to zero mean and
+ * unit length, so the correlation of two vectors is just their dot product.
+ * The pairs are computed in square tiles of vectors in parallel so that each
+ * tile's vectors are reused from the cache.
+ * 
+ * Missing values are handled pairwise: the correlation of two vectors is
+ * calculated from the positions where both have values, and for Spearman
+ * those values are re-ranked. Only pairs involving a vector with a NaN take
+ * this slower path. Correlations of constant vectors or of pairs with fewer
+ * than two values in common are NaN.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class MatrixCorrelation {
+
+  /** The number of vectors in a tile. */
+  private static final int TILE_SIZE = 64;
+
+  /**
+   * Instantiates a new matrix correlation.
+   */
+  private MatrixCorrelation() {
+    // Do nothing
+  }
+
+  /**
+   * Correlation between every pair of rows of a matrix.
+   *
+   * @param m the matrix
+   * @param type the type of correlation.
+   * @return the correlations
+   */
+  public static UpperTriangularDoubleMatrix rows(DoubleMatrix m,
+      CorrelationType type) {
+    return rows(m.mData, m.getRows(), m.getCols(), type);
+  }
+
+  /**
+   * Correlation between every pair of rows of a row major matrix.
+   *
+   * @param data the matrix values stored row major.
+   * @param rows the number of rows.
+   * @param cols the number of columns.
+   * @param type the type of correlation.
+   * @return the correlations
+   */
+  public static UpperTriangularDoubleMatrix rows(final double[] data,
+      int rows,
+      int cols,
+      CorrelationType type) {
+    return correlation(data, rows, cols, type);
+  }
+
+  /**
+   * Correlation between every pair of columns of a matrix.
+   *
+   * @param m the matrix
+   * @param type the type of correlation.
+   * @return the correlations
+   */
+  public static UpperTriangularDoubleMatrix columns(DoubleMatrix m,
+      CorrelationType type) {
+    return columns(m.mData, m.getRows(), m.getCols(), type);
+  }
+
+  /**
+   * Correlation between every pair of columns of a row major matrix.
+   *
+   * @param data the matrix values stored row major.
+   * @param rows the number of rows.
+   * @param cols the number of columns.
+   * @param type the type of correlation.
+   * @return the correlations
+   */
+  public static UpperTriangularDoubleMatrix columns(final double[] data,
+      final int rows,
+      final int cols,
+      CorrelationType type) {
+    // Transpose so that each column is contiguous
+    final double[] x = new double[data.length];
+
+    ParallelUtils.forEach(cols, new RangeFunction() {
+      @Override
+      public void apply(int start, int end) {
+        for (int c = start; c < end; ++c) {
+          int o = c * rows;
+
+          for (int r = 0; r < rows; ++r) {
+            x[o + r] = data[r * cols + c];
+          }
+        }
+      }
+    });
+
+    return correlation(x, cols, rows, type);
+  }
+
+  /**
+   * Correlation between every pair of vectors stored contiguously.
+   *
+   * @param x the vectors, which are not modified.
+   * @param n the number of vectors.
+   * @param d the length of each vector.
+   * @param type the type of correlation.
+   * @return the correlations
+   */
+  private static UpperTriangularDoubleMatrix correlation(final double[] x,
+      final int n,
+      final int d,
+      final CorrelationType type) {
+    final UpperTriangularDoubleMatrix ret = new UpperTriangularDoubleMatrix(
+        n);
+
+    final double[] z = new double[x.length];
+
+    if (type == CorrelationType.SPEARMAN) {
+      Ranks.rankRows(x, n, d, TieMethod.AVERAGE, z);
+    } else {
+      System.arraycopy(x, 0, z, 0, x.length);
+    }
+
+    final boolean[] missing = new boolean[n];
+
+    ParallelUtils.forEach(n, new RangeFunction() {
+      @Override
+      public void apply(int start, int end) {
+        for (int i = start; i < end; ++i) {
+          missing[i] = standardize(z, i * d, d);
+        }
+      }
+    });
+
+    final int tiles = (n + TILE_SIZE - 1) / TILE_SIZE;
+
+    // The tiles on and above the diagonal in row order
+    final int[] tileRows = new int[tiles * (tiles + 1) / 2];
+    final int[] tileCols = new int[tileRows.length];
+
+    int p = 0;
+
+    for (int i = 0; i < tiles; ++i) {
+      for (int j = i; j < tiles; ++j) {
+        tileRows[p] = i;
+        tileCols[p] = j;
+        ++p;
+      }
+    }
+
+    ParallelUtils.forEach(0, tileRows.length, 1, new RangeFunction() {
+      @Override
+      public void apply(int start, int end) {
+        double[] a = new double[d];
+        double[] b = new double[d];
+        double[] ra = new double[d];
+        double[] rb = new double[d];
+
+        for (int t = start; t < end; ++t) {
+          int s1 = tileRows[t] * TILE_SIZE;
+          int e1 = Math.min(n, s1 + TILE_SIZE);
+          int s2 = tileCols[t] * TILE_SIZE;
+          int e2 = Math.min(n, s2 + TILE_SIZE);
+
+          for (int i = s1; i < e1; ++i) {
+            int oi = i * d;
+            int ri = ret.mOffsets[i];
+
+            int j = Math.max(i, s2);
+
+            while (j < e2) {
+              if (!missing[i] && j + 3 < e2 && !missing[j] && !missing[j + 1]
+                  && !missing[j + 2] && !missing[j + 3]) {
+                dot4(z, oi, j * d, d, ret.mData, ri + j);
+
+                j += 4;
+              } else {
+                double r;
+
+                if (missing[i] || missing[j]) {
+                  r = pairwise(x, oi, j * d, d, type, a, b, ra, rb);
+                } else {
+                  r = dot(z, oi, j * d, d);
+                }
+
+                ret.mData[ri + j] = r;
+
+                ++j;
+              }
+            }
+          }
+        }
+      }
+    });
+
+    return ret;
+  }
+
+  /**
+   * Centre a vector and scale it to unit length. Vectors with missing
+   * values are left as they are and constant vectors are set to NaN.
+   *
+   * @param z the vectors
+   * @param o the offset of the vector.
+   * @param d the length of the vector.
+   * @return true if the vector has missing values.
+   */
+  private static boolean standardize(double[] z, int o, int d) {
+    double mean = 0;
+
+    for (int k = 0; k < d; ++k) {
+      mean += z[o + k];
+    }
+
+    if (Double.isNaN(mean)) {
+      return true;
+    }
+
+    mean /= d;
+
+    double ss = 0;
+
+    for (int k = 0; k < d; ++k) {
+      double v = z[o + k] - mean;
+
+      z[o + k] = v;
+      ss += v * v;
+    }
+
+    double s = 1 / Math.sqrt(ss);
+
+    for (int k = 0; k < d; ++k) {
+      // Constant vectors become NaN so their correlations are NaN
+      z[o + k] *= s;
+    }
+
+    return false;
+  }
+
+  /**
+   * The correlation of two standardized vectors, bounded to [-1, 1].
+   *
+   * @param z the vectors
+   * @param o1 the offset of the first vector.
+   * @param o2 the offset of the second vector.
+   * @param d the length of the vectors.
+   * @return the correlation
+   */
+  private static double dot(final double[] z, int o1, int o2, int d) {
+    double s0 = 0;
+    double s1 = 0;
+
+    int k = 0;
+
+    // Two accumulators break the dependency between additions
+    for (; k + 1 < d; k += 2) {
+      s0 += z[o1 + k] * z[o2 + k];
+      s1 += z[o1 + k + 1] * z[o2 + k + 1];
+    }
+
+    if (k < d) {
+      s0 += z[o1 + k] * z[o2 + k];
+    }
+
+    return Math.max(-1, Math.min(1, s0 + s1));
+  }
+
+  /**
+   * The correlations of one standardized vector with four consecutive ones.
+   * Each value of the first vector is loaded once for all four products.
+   *
+   * @param z the vectors
+   * @param o1 the offset of the first vector.
+   * @param o2 the offset of the first of the four vectors.
+   * @param d the length of the vectors.
+   * @param ret the array to write the four correlations to.
+   * @param offset the offset in ret.
+   */
+  private static void dot4(final double[] z,
+      int o1,
+      int o2,
+      int d,
+      double[] ret,
+      int offset) {
+    int p0 = o2;
+    int p1 = p0 + d;
+    int p2 = p1 + d;
+    int p3 = p2 + d;
+
+    double s0 = 0;
+    double s1 = 0;
+    double s2 = 0;
+    double s3 = 0;
+
+    for (int k = 0; k < d; ++k) {
+      double v = z[o1 + k];
+
+      s0 += v * z[p0 + k];
+      s1 += v * z[p1 + k];
+      s2 += v * z[p2 + k];
+      s3 += v * z[p3 + k];
+    }
+
+    ret[offset] = Math.max(-1, Math.min(1, s0));
+    ret[offset + 1] = Math.max(-1, Math.min(1, s1));
+    ret[offset + 2] = Math.max(-1, Math.min(1, s2));
+    ret[offset + 3] = Math.max(-1, Math.min(1, s3));
+  }
+
+  /**
+   * The correlation of two vectors over the positions where both have
+   * values.
+   *
+   * @param x the vectors
+   * @param o1 the offset of the first vector.
+   * @param o2 the offset of the second vector.
+   * @param d the length of the vectors.
+   * @param type the type of correlation.
+   * @param a buffer for the first vector.
+   * @param b buffer for the second vector.
+   * @param ra buffer for the ranks of the first vector.
+   * @param rb buffer for the ranks of the second vector.
+   * @return the correlation
+   */
+  private static double pairwise(final double[] x,
+      int o1,
+      int o2,
+      int d,
+      CorrelationType type,
+      double[] a,
+      double[] b,
+      double[] ra,
+      double[] rb) {
+    for (int k = 0; k < d; ++k) {
+      double v1 = x[o1 + k];
+      double v2 = x[o2 + k];
+
+      if (Double.isNaN(v1) || Double.isNaN(v2)) {
+        a[k] = Double.NaN;
+        b[k] = Double.NaN;
+      } else {
+        a[k] = v1;
+        b[k] = v2;
+      }
+    }
+
+    if (type == CorrelationType.SPEARMAN) {
+      // NaNs are not ranked so only the complete pairs are ranked
+      Ranks.rank(a, TieMethod.AVERAGE, ra);
+      Ranks.rank(b, TieMethod.AVERAGE, rb);
+
+      a = ra;
+      b = rb;
+    }
+
+    int m = 0;
+    double m1 = 0;
+    double m2 = 0;
+
+    for (int k = 0; k < d; ++k) {
+      if (!Double.isNaN(a[k])) {
+        m1 += a[k];
+        m2 += b[k];
+        ++m;
+      }
+    }
+
+    if (m < 2) {
+      return Double.NaN;
+    }
+
+    m1 /= m;
+    m2 /= m;
+
+    double sab = 0;
+    double saa = 0;
+    double sbb = 0;
+
+    for (int k = 0; k < d; ++k) {
+      if (!Double.isNaN(a[k])) {
+        double da = a[k] - m1;
+        double db = b[k] - m2;
+
+        sab += da * db;
+        saa += da * da;
+        sbb += db * db;
+      }
+    }
+
+    return Math.max(-1, Math.min(1, sab / Math.sqrt(saa * sbb)));
+  }
+}
@@ -27,13 +27,14 @@
  */
 package org.jebtk.math.matrix.utils;
 
+import java.io.IOException;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.SplittableRandom;
 
 import org.jebtk.core.Indexed;
 import org.jebtk.core.Mathematics;
@@ -44,6 +45,8 @@ import org.jebtk.core.collections.DefaultHashMap;
 import org.jebtk.core.sys.SysUtils;
 import org.jebtk.core.text.Join;
 import org.jebtk.math.MathUtils;
+import org.jebtk.math.ParallelUtils;
+import org.jebtk.math.RangeFunction;
 import org.jebtk.math.functions.LnFunction;
 import org.jebtk.math.functions.LogFunction;
 import org.jebtk.math.matrix.CellFunction;
@@ -57,11 +60,17 @@ import org.jebtk.math.matrix.MatrixGroup;
 import org.jebtk.math.matrix.MatrixReduceFunction;
 import org.jebtk.math.matrix.MatrixStatFunction;
 import org.jebtk.math.matrix.MixedMatrix;
+import org.jebtk.math.matrix.RowChunkIterator;
 import org.jebtk.math.matrix.TextMatrix;
+import org.jebtk.math.statistics.Percentiles;
+import org.jebtk.math.statistics.PermutationStatistic;
+import org.jebtk.math.statistics.QuantileSketch;
+import org.jebtk.math.statistics.RowMannWhitney;
+import org.jebtk.math.statistics.RowPermutationTest;
+import org.jebtk.math.statistics.RowTTest;
 import org.jebtk.math.statistics.Statistics;
 import org.jebtk.math.statistics.Stats;
 import org.jebtk.math.statistics.TTest;
-import org.jebtk.math.statistics.TwoSampleTest;
 
 /**
  * The class MatrixOperations.
@@ -406,9 +415,8 @@ public class MatrixOperations {
 
       MathUtils.divide(data, mGeoMeans, mData);
 
-      Stats stats = new Stats(mData);
-
-      double med = stats.median();
+      // mData is overwritten on each call so can be reordered
+      double med = Percentiles.median(mData, mData);
 
       if (med > 0) {
         ret[index] = med;
@@ -1039,59 +1047,7 @@ public class MatrixOperations {
    * @return the numerical matrix
    */
   public static DoubleMatrix quantileNormalize(Matrix m) {
-
-    List<List<Indexed<Integer, Double>>> indexedColumns = new ArrayList<List<Indexed<Integer, Double>>>(
-        m.getCols());
-
-    double[] values = new double[m.getRows()];
-    
-    for (int i = 0; i < m.getCols(); ++i) {
-      m.columnToDouble(i, values);
-
-      List<Indexed<Integer, Double>> sorted = Indexed.intIndex(values);
-
-      Collections.sort(sorted);
-
-      indexedColumns.add(sorted);
-    }
-
-    List<Double> rowMeans = new ArrayList<Double>(m.getRows());
-
-    // get the mean of the values of each row when each column is sorted
-
-    double[] colValues = new double[m.getCols()];
-    
-    for (int i = 0; i < m.getRows(); ++i) {
-      for (int j = 0; j < m.getCols(); ++j) {
-        colValues[j] = indexedColumns.get(j).get(i).getValue();
-      }
-
-      rowMeans.add(Statistics.mean(colValues));
-    }
-
-    List<Double> rowMeanRanks = Statistics.tiedRank(rowMeans);
-
-    // now we need a mapping between an index and
-    // the column rank of that index
-
-    DoubleMatrix zq = new DoubleMatrix(m.getRows(), m.getCols());
-
-    for (int column = 0; column < m.getCols(); ++column) {
-      m.columnToDouble(column, values);
-
-      // the ranks of the values we have
-      double[] valueRanks = Mathematics.tiedRank(values);
-
-      // interpolate from these ranks the new value using the row ranks
-      double[] interpolatedValues = Mathematics
-          .linearInterpolation(rowMeanRanks, rowMeans, valueRanks);
-
-      for (int row = 0; row < interpolatedValues.length; ++row) {
-        zq.set(row, column, interpolatedValues[row]);
-      }
-    }
-
-    return zq;
+    return QuantileNormalization.normalize(toDoubleMatrix(m));
   }
 
   /**
@@ -1603,7 +1559,8 @@ public class MatrixOperations {
   }
 
   /**
-   * Adds the IQR.
+   * Adds the IQR of each row. NaN values are ignored and rows with no other
+   * values have an IQR of NaN.
    *
    * @param m the m
    * @return the annotation matrix
@@ -1611,8 +1568,12 @@ public class MatrixOperations {
   public static DataFrame addIQR(DataFrame m) {
     double[] iqrList = new double[m.getRows()];
 
+    double[] data = new double[m.getCols()];
+
     for (int i = 0; i < m.getRows(); ++i) {
-      double iqr = new Stats(m.rowToDouble(i)).iqr();
+      m.getMatrix().rowToDouble(i, data);
+
+      double iqr = Percentiles.iqr(data, data);
 
       // System.err.println("iqr " + iqr);
 
@@ -2000,14 +1961,18 @@ public class MatrixOperations {
   }
 
   /**
-   * Median.
+   * Returns the median of a row. NaN values are ignored and a row with no
+   * other values has a median of NaN.
    *
    * @param m the m
    * @param row the row
    * @return the double
    */
   public static double median(final Matrix m, int row) {
-    return Statistics.median(m.rowToDouble(row));
+    double[] values = m.rowToDouble(row);
+
+    // The row is a copy so it can be reordered
+    return Percentiles.median(values, values);
   }
 
   /**
@@ -2020,12 +1985,71 @@ public class MatrixOperations {
     return Statistics.median(m.toDoubleArray());
   }
 
+  /**
+   * Build a quantile sketch of each column of a matrix that is read a chunk
+   * of rows at a time, so that column quantiles can be estimated for data
+   * that does not fit in memory. Sketches built from different files can be
+   * merged to get quantiles across all of them. The error of a merged sketch
+   * only averages out if its parts were built with independent seeds, so
+   * give each file its own seed, for example derived from a file id.
+   *
+   * @param chunks the chunks
+   * @param k the accuracy of the sketches, see {@link QuantileSketch}.
+   * @param seed the seed the column sketch seeds are derived from.
+   * @return a sketch for each column.
+   * @throws IOException Signals that an I/O exception has occurred.
+   * @throws IllegalArgumentException if a chunk does not have the number of
+   *           columns reported by the iterator.
+   */
+  public static QuantileSketch[] columnQuantileSketches(RowChunkIterator chunks,
+      int k,
+      long seed) throws IOException {
+    final int cols = chunks.getCols();
+
+    final QuantileSketch[] ret = new QuantileSketch[cols];
+
+    SplittableRandom root = new SplittableRandom(seed);
+
+    for (int i = 0; i < cols; ++i) {
+      ret[i] = new QuantileSketch(k, root.split().nextLong());
+    }
+
+    DoubleMatrix chunk;
+
+    while ((chunk = chunks.nextChunk()) != null) {
+      if (chunk.getCols() != cols) {
+        throw new IllegalArgumentException("Chunk has " + chunk.getCols()
+            + " columns, expected " + cols + ".");
+      }
+
+      final double[] data = chunk.mData;
+      final int rows = chunk.getRows();
+
+      // Each column has its own sketch so columns can be updated in
+      // parallel
+      ParallelUtils.forEach(cols, new RangeFunction() {
+        @Override
+        public void apply(int start, int end) {
+          for (int i = start; i < end; ++i) {
+            for (int r = 0; r < rows; ++r) {
+              ret[i].add(data[r * cols + i]);
+            }
+          }
+        }
+      });
+    }
+
+    return ret;
+  }
+
   public static double mode(final Matrix m) {
     return Statistics.mode(m.toDoubleArray());
   }
 
   /**
-   * Return the row indices of rows that have differential expression.
+   * Return the two tailed t-test p-value of each row. Rows without a valid
+   * p-value, such as those where a group has fewer than two values or a
+   * missing value, get a p-value of 1.
    *
    * @param m the m
    * @param g1 the g1
@@ -2037,45 +2061,54 @@ public class MatrixOperations {
       MatrixGroup g1,
       MatrixGroup g2,
       boolean equalVariance) {
-    Matrix im = m.getMatrix();
-
-    double[] pvalues = new double[m.getRows()];
-
-    List<Integer> g11 = MatrixGroup.findColumnIndices(m, g1);
-    List<Integer> g22 = MatrixGroup.findColumnIndices(m, g2);
+    DoubleMatrix dm = toDoubleMatrix(m.getMatrix());
 
-    for (int i = 0; i < im.getRows(); ++i) {
-      List<Double> p1 = new ArrayList<Double>(g11.size());
-
-      for (int c : g11) {
-        p1.add(m.getValue(i, c));
-      }
+    int[] g11 = toIndices(MatrixGroup.findColumnIndices(m, g1));
+    int[] g22 = toIndices(MatrixGroup.findColumnIndices(m, g2));
 
-      List<Double> p2 = new ArrayList<Double>(g22.size());
+    double[] pvalues = RowTTest
+        .test(dm.mData, dm.getRows(), dm.getCols(), g11, g22, equalVariance)
+        .getP();
 
-      for (int c : g22) {
-        p2.add(m.getValue(i, c));
+    for (int i = 0; i < pvalues.length; ++i) {
+      // Set strange values to 1
+      if (Mathematics.isInvalidNumber(pvalues[i])) {
+        pvalues[i] = 1;
       }
+    }
 
-      double p;
-
-      TwoSampleTest test = TwoSampleTest.create(p1, p2);
+    return pvalues;
+  }
 
-      if (equalVariance) {
-        p = test.twoTailEqualVarianceTTest();
-      } else {
-        p = test.twoTailUnequalVarianceTTest();
-      }
+  /**
+   * Returns a matrix as a row major double matrix, copying it only if
+   * necessary.
+   *
+   * @param m the m
+   * @return the double matrix
+   */
+  private static DoubleMatrix toDoubleMatrix(Matrix m) {
+    if (m instanceof DoubleMatrix) {
+      return (DoubleMatrix) m;
+    } else {
+      return new DoubleMatrix(m);
+    }
+  }
 
-      // Set strange values to NaN
-      if (Mathematics.isInvalidNumber(p)) {
-        p = 1; // Double.NaN;
-      }
+  /**
+   * Convert a list of column indices to an array.
+   *
+   * @param indices the indices
+   * @return the int[]
+   */
+  private static int[] toIndices(List<Integer> indices) {
+    int[] ret = new int[indices.size()];
 
-      pvalues[i] = p;
+    for (int i = 0; i < ret.length; ++i) {
+      ret[i] = indices.get(i);
     }
 
-    return pvalues;
+    return ret;
   }
 
   /**
@@ -2089,39 +2122,82 @@ public class MatrixOperations {
   public static double[] mannWhitney(DataFrame m,
       MatrixGroup g1,
       MatrixGroup g2) {
-    double[] pvalues = new double[m.getRows()];
+    DoubleMatrix dm = toDoubleMatrix(m.getMatrix());
 
-    List<Integer> g11 = MatrixGroup.findColumnIndices(m, g1);
-    List<Integer> g22 = MatrixGroup.findColumnIndices(m, g2);
+    int[] g11 = toIndices(MatrixGroup.findColumnIndices(m, g1));
+    int[] g22 = toIndices(MatrixGroup.findColumnIndices(m, g2));
 
-    for (int i = 0; i < m.getRows(); ++i) {
-      List<Double> p1 = new ArrayList<Double>(g11.size());
+    double[] pvalues = RowMannWhitney
+        .test(dm.mData, dm.getRows(), dm.getCols(), g11, g22)
+        .getP();
 
-      for (int c : g11) {
-        p1.add(m.getValue(i, c));
+    for (int i = 0; i < pvalues.length; ++i) {
+      // Set strange values to 1
+      if (Mathematics.isInvalidNumber(pvalues[i])) {
+        pvalues[i] = 1;
       }
-
-      List<Double> p2 = new ArrayList<Double>(g22.size());
-
-      for (int c : g22) {
-        p2.add(m.getValue(i, c));
-      }
-
-      TwoSampleTest test = TwoSampleTest.create(p1, p2);
-
-      double p = test.mannWhitney();
-
-      // Set strange values to NaN
-      if (Mathematics.isInvalidNumber(p)) {
-        p = 1; // Double.NaN;
-      }
-
-      pvalues[i] = p;
     }
 
     return pvalues;
   }
 
+  /**
+   * Permutation test of a statistic between two matrix groups on every row,
+   * using the default number of permutations.
+   *
+   * @param m the m
+   * @param g1 the g 1
+   * @param g2 the g 2
+   * @param stat the statistic
+   * @param seed the seed
+   * @return the results
+   */
+  public static RowPermutationTest permutationTest(DataFrame m,
+      MatrixGroup g1,
+      MatrixGroup g2,
+      PermutationStatistic stat,
+      long seed) {
+    return permutationTest(m,
+        g1,
+        g2,
+        stat,
+        RowPermutationTest.DEFAULT_PERMUTATIONS,
+        seed);
+  }
+
+  /**
+   * Permutation test of a statistic between two matrix groups on every row.
+   * Results are reproducible for a given seed.
+   *
+   * @param m the m
+   * @param g1 the g 1
+   * @param g2 the g 2
+   * @param stat the statistic
+   * @param permutations the number of permutations.
+   * @param seed the seed
+   * @return the results
+   */
+  public static RowPermutationTest permutationTest(DataFrame m,
+      MatrixGroup g1,
+      MatrixGroup g2,
+      PermutationStatistic stat,
+      int permutations,
+      long seed) {
+    DoubleMatrix dm = toDoubleMatrix(m.getMatrix());
+
+    int[] g11 = toIndices(MatrixGroup.findColumnIndices(m, g1));
+    int[] g22 = toIndices(MatrixGroup.findColumnIndices(m, g2));
+
+    return RowPermutationTest.test(dm.mData,
+        dm.getRows(),
+        dm.getCols(),
+        g11,
+        g22,
+        stat,
+        permutations,
+        seed);
+  }
+
   /**
    * Row to list.
    *
@@ -1,13 +1,27 @@
 package org.jebtk.math.matrix.utils;
 
 import org.jebtk.math.matrix.MatrixReduceFunction;
-import org.jebtk.math.statistics.Stats;
+import org.jebtk.math.statistics.Percentiles;
 
+/**
+ * Returns the median of each row. NaN values are ignored and a row with no
+ * other values has a median of NaN.
+ */
 public class MatrixRowMedianFunction implements MatrixReduceFunction {
 
+  /** Scratch space for selecting the median, one per thread. */
+  private final ThreadLocal<double[]> mScratch = new ThreadLocal<double[]>();
+
   @Override
   public double apply(int index, double[] data) {
-    return new Stats(data).median();
+    double[] scratch = mScratch.get();
+
+    if (scratch == null || scratch.length < data.length) {
+      scratch = new double[data.length];
+      mScratch.set(scratch);
+    }
+
+    return Percentiles.median(data, scratch);
   }
 
 }
@@ -0,0 +1,351 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.math.matrix.utils;
+
+import java.io.IOException;
+
+import org.jebtk.math.ParallelUtils;
+import org.jebtk.math.RangeFunction;
+import org.jebtk.math.matrix.DoubleMatrix;
+import org.jebtk.math.matrix.RowChunkIterator;
+import org.jebtk.math.statistics.QuantileSketch;
+import org.jebtk.math.statistics.Ranks;
+
+/**
+ * Quantile normalization of the columns of a matrix. Each value is replaced
+ * by the mean across columns of the values with the same rank, so every
+ * column ends up with the same distribution. Tied values get the reference
+ * value at their average rank. NaN values are left as NaN and columns with
+ * missing values are stretched over the full range of ranks.
+ * 
+ * Matrices in memory are normalized exactly with {@link #normalize}. For
+ * matrices too large to hold in memory, an instance is first fitted to a
+ * stream of row chunks, which builds a quantile sketch of each column and an
+ * approximate reference distribution, and then transforms the chunks of a
+ * second pass over the data.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class QuantileNormalization {
+
+  /** The default number of points in the approximate reference. */
+  public static final int DEFAULT_POINTS = 1000;
+
+  /** The accuracy of the column sketches. */
+  private final int mK;
+
+  /** The number of reference points. */
+  private final int mPoints;
+
+  /** The seed for the column sketches. */
+  private long mSeed = 0;
+
+  /** The column sketches. */
+  private QuantileSketch[] mSketches = null;
+
+  /** The reference value at each of the evenly spaced quantiles. */
+  private double[] mReference = null;
+
+  /**
+   * Instantiates a new quantile normalization for chunked data using the
+   * default sketch accuracy and number of reference points.
+   */
+  public QuantileNormalization() {
+    this(QuantileSketch.DEFAULT_K, DEFAULT_POINTS);
+  }
+
+  /**
+   * Instantiates a new quantile normalization for chunked data.
+   *
+   * @param k the accuracy of the column sketches, see
+   *          {@link QuantileSketch}.
+   * @param points the number of evenly spaced quantiles in the reference
+   *          distribution.
+   */
+  public QuantileNormalization(int k, int points) {
+    mK = k;
+    mPoints = Math.max(2, points);
+  }
+
+  /**
+   * Sets the seed used to build the column sketches.
+   *
+   * @param seed the seed
+   * @return the quantile normalization
+   */
+  public QuantileNormalization setSeed(long seed) {
+    mSeed = seed;
+
+    return this;
+  }
+
+  /**
+   * Read all the chunks of a matrix to build the reference distribution.
+   *
+   * @param chunks the chunks
+   * @return the quantile normalization
+   * @throws IOException Signals that an I/O exception has occurred.
+   * @throws IllegalArgumentException if a chunk does not have the number of
+   *           columns reported by the iterator.
+   */
+  public QuantileNormalization fit(RowChunkIterator chunks)
+      throws IOException {
+    mSketches = MatrixOperations.columnQuantileSketches(chunks, mK, mSeed);
+
+    mReference = new double[mPoints];
+
+    for (int t = 0; t < mPoints; ++t) {
+      double q = (double) t / (mPoints - 1);
+
+      double sum = 0;
+      int n = 0;
+
+      for (QuantileSketch sketch : mSketches) {
+        if (sketch.getN() > 0) {
+          sum += sketch.quantile(q);
+          ++n;
+        }
+      }
+
+      mReference[t] = n > 0 ? sum / n : Double.NaN;
+    }
+
+    return this;
+  }
+
+  /**
+   * Normalize a chunk of rows in place. The normalizer must have been fitted
+   * to the same matrix, typically by reading it twice.
+   *
+   * @param chunk the chunk
+   * @throws IllegalArgumentException if the chunk does not have the same
+   *           number of columns as the fitted matrix.
+   */
+  public void transform(final DoubleMatrix chunk) {
+    if (mSketches == null) {
+      throw new IllegalStateException("fit must be called first.");
+    }
+
+    final int rows = chunk.getRows();
+    final int cols = chunk.getCols();
+    final double[] data = chunk.mData;
+
+    if (cols != mSketches.length) {
+      throw new IllegalArgumentException("Chunk has " + cols
+          + " columns, expected " + mSketches.length + ".");
+    }
+
+    ParallelUtils.forEach(cols, new RangeFunction() {
+      @Override
+      public void apply(int start, int end) {
+        for (int j = start; j < end; ++j) {
+          QuantileSketch sketch = mSketches[j];
+
+          for (int i = 0; i < rows; ++i) {
+            int p = i * cols + j;
+
+            double v = data[p];
+
+            if (Double.isNaN(v)) {
+              continue;
+            }
+
+            // The sketch knows the extremes exactly so pin them to the
+            // ends of the reference
+            double q;
+
+            if (v <= sketch.getMin()) {
+              q = 0;
+            } else if (v >= sketch.getMax()) {
+              q = 1;
+            } else {
+              q = sketch.cdf(v);
+            }
+
+            data[p] = interpolate(mReference, q * (mPoints - 1));
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * Quantile normalize the columns of a matrix.
+   *
+   * @param m the matrix
+   * @return the normalized matrix
+   */
+  public static DoubleMatrix normalize(DoubleMatrix m) {
+    return normalize(m.mData, m.getRows(), m.getCols());
+  }
+
+  /**
+   * Quantile normalize the columns of a row major matrix. Columns are sorted
+   * once, in parallel, and the sort order is reused to build the reference
+   * and to assign the normalized values.
+   *
+   * @param data the data
+   * @param rows the rows
+   * @param cols the cols
+   * @return the normalized matrix
+   */
+  public static DoubleMatrix normalize(final double[] data,
+      final int rows,
+      final int cols) {
+    // order[j * rows + t] is the row of the t-th smallest value of column j
+    final int[] order = new int[rows * cols];
+    final int[] counts = new int[cols];
+
+    ParallelUtils.forEach(cols, new RangeFunction() {
+      @Override
+      public void apply(int start, int end) {
+        int[] index = new int[rows];
+
+        for (int j = start; j < end; ++j) {
+          counts[j] = Ranks.argsort(data, j, cols, rows, index);
+
+          System.arraycopy(index, 0, order, j * rows, counts[j]);
+        }
+      }
+    });
+
+    //
+    // The reference is the mean of the sorted columns. Columns with missing
+    // values are interpolated to the full number of rows.
+    //
+
+    final double[] reference = new double[rows];
+
+    ParallelUtils.forEach(rows, new RangeFunction() {
+      @Override
+      public void apply(int start, int end) {
+        for (int t = start; t < end; ++t) {
+          double sum = 0;
+          int n = 0;
+
+          for (int j = 0; j < cols; ++j) {
+            int m = counts[j];
+
+            if (m == 0) {
+              continue;
+            }
+
+            int o = j * rows;
+
+            if (m == rows) {
+              sum += data[order[o + t] * cols + j];
+            } else {
+              double p = m > 1 ? (double) t * (m - 1) / (rows - 1) : 0;
+
+              int i = Math.min((int) p, m - 1);
+              int i2 = Math.min(i + 1, m - 1);
+
+              double w = p - i;
+
+              sum += (1 - w) * data[order[o + i] * cols + j]
+                  + w * data[order[o + i2] * cols + j];
+            }
+
+            ++n;
+          }
+
+          reference[t] = n > 0 ? sum / n : Double.NaN;
+        }
+      }
+    });
+
+    //
+    // Assign each value the reference at its average rank
+    //
+
+    DoubleMatrix ret = DoubleMatrix.createDoubleMatrix(rows, cols);
+
+    final double[] out = ret.mData;
+
+    ParallelUtils.forEach(cols, new RangeFunction() {
+      @Override
+      public void apply(int start, int end) {
+        for (int j = start; j < end; ++j) {
+          int m = counts[j];
+          int o = j * rows;
+
+          if (m < rows) {
+            for (int i = 0; i < rows; ++i) {
+              if (Double.isNaN(data[i * cols + j])) {
+                out[i * cols + j] = Double.NaN;
+              }
+            }
+          }
+
+          // Scale ranks in columns with missing values to the reference
+          double scale = m > 1 ? (double) (rows - 1) / (m - 1) : 0;
+
+          for (int s = 0; s < m;) {
+            double v = data[order[o + s] * cols + j];
+
+            int e = s + 1;
+
+            while (e < m && data[order[o + e] * cols + j] == v) {
+              ++e;
+            }
+
+            double r = interpolate(reference, 0.5 * (s + e - 1) * scale);
+
+            for (int i = s; i < e; ++i) {
+              out[order[o + i] * cols + j] = r;
+            }
+
+            s = e;
+          }
+        }
+      }
+    });
+
+    return ret;
+  }
+
+  /**
+   * Linearly interpolate an array at a fractional index.
+   *
+   * @param values the values
+   * @param p the index
+   * @return the interpolated value
+   */
+  private static double interpolate(double[] values, double p) {
+    int i = Math.min((int) p, values.length - 1);
+
+    if (i == values.length - 1) {
+      return values[i];
+    }
+
+    double w = p - i;
+
+    return (1 - w) * values[i] + w * values[i + 1];
+  }
+}
@@ -27,45 +27,21 @@
  */
 package org.jebtk.math.statistics;
 
-import java.util.HashMap;
-import java.util.Map;
-
-import org.jebtk.core.text.TextUtils;
-
 /**
- * Fast implementation of the hypergeometric function using the sum of logs.
+ * Binomial coefficients and factorials computed from the shared log factorial
+ * table. Objects hold no state so a single instance can be shared between
+ * threads.
  *
  * @author Antony Holmes
  *
  */
 public class Binomial {
 
-  /**
-   * The member cached factorial.
-   */
-  private Map<Integer, Double> mCachedFactorial = new HashMap<Integer, Double>();
-
-  /**
-   * The member cached binomial.
-   */
-  private Map<String, Double> mCachedBinomial = new HashMap<String, Double>();
-
-  /**
-   * The member cached log binomial.
-   */
-  private Map<String, Double> mCachedLogBinomial = new HashMap<String, Double>();
-
   /**
    * Cache some log values to speed up execution.
    */
   public final void cache() {
-    for (int i = 0; i < 10000; ++i) {
-      logFactorial(i);
-
-      // for (int j = 0; j < 10000; ++j) {
-      // logBinomial(i, j);
-      // }
-    }
+    LogFactorial.ensureCapacity(10000);
   }
 
   /**
@@ -75,7 +51,7 @@ public class Binomial {
    * @return the double
    */
   public final double logGamma(int n) {
-    return logFactorial(n - 1);
+    return LogFactorial.logGamma(n);
   }
 
   /**
@@ -95,7 +71,7 @@ public class Binomial {
    * @return the int
    */
   public final int factorial(int n) {
-    return (int) Math.exp(logFactorial(n));
+    return (int) Math.round(Math.exp(logFactorial(n)));
   }
 
   /**
@@ -105,21 +81,7 @@ public class Binomial {
    * @return log n!
    */
   public double logFactorial(int n) {
-    Double ret = mCachedFactorial.get(n);
-
-    if (ret != null) {
-      return ret;
-    }
-
-    double f = 0.0;
-
-    for (int i = 1; i <= n; i++) {
-      f += Math.log(i);
-    }
-
-    mCachedFactorial.put(n, f);
-
-    return f;
+    return LogFactorial.logFactorial(n);
   }
 
   /**
@@ -130,7 +92,7 @@ public class Binomial {
    * @return the double
    */
   public final double binomial(int n, int k) {
-    return binomial(n, k, getKey(n, k));
+    return Math.exp(logBinomial(n, k));
   }
 
   /**
@@ -138,25 +100,11 @@ public class Binomial {
    *
    * @param n the n
    * @param k the k
-   * @param key the key
+   * @param key unused, kept for compatibility.
    * @return the double
    */
   public final double binomial(int n, int k, String key) {
-    Double ret = mCachedBinomial.get(key);
-
-    if (ret != null) {
-      // System.err.println("cached pdf " + hkey + " " + ret);
-
-      return ret;
-    }
-
-    double logBinomial = logBinomial(n, k);
-
-    double binomial = Math.exp(logBinomial);
-
-    // cachedBinomial.put(key, binomial);
-
-    return binomial;
+    return binomial(n, k);
   }
 
   /**
@@ -167,44 +115,14 @@ public class Binomial {
    * @return the double
    */
   public final double logBinomial(int n, int k) {
-    String key = getKey(n, k);
-
-    Double ret = mCachedLogBinomial.get(key);
-
-    if (ret != null) {
-      return ret;
-    }
-
-    double binomial = logFactorial(n) - logFactorial(k) - logFactorial(n - k);
-
-    mCachedLogBinomial.put(key, binomial);
-
-    return binomial;
+    return LogFactorial.logBinomial(n, k);
   }
 
   /**
-   * Gets the key.
-   *
-   * @param n the n
-   * @param k the k
-   * @return the key
-   */
-  private static final String getKey(int n, int k) {
-    return new StringBuilder().append(n).append(TextUtils.COLON_DELIMITER)
-        .append(k).toString(); // k + ":" + N + ":" + m + ":" + n;
-
-    // System.err.println(k + " " + N + " " + m + " " + n + " " + key);
-  }
-
-  /**
-   * Clear the cached hypergeometric intermediates. The Object will aggressively
-   * cache intermediate parts of calculations for reuse so a pdf/cdf calculation
-   * is done at most once, however this may impact memory usage.
+   * Nothing is cached per object so this does nothing. Kept for
+   * compatibility.
    */
   public void clear() {
-    mCachedFactorial.clear();
-
-    mCachedBinomial.clear();
-    mCachedLogBinomial.clear();
+    // Do nothing
   }
 }
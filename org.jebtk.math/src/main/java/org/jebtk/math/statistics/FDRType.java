@@ -45,5 +45,20 @@ public enum FDRType {
   /**
    * The benjamini hochberg.
    */
-  BENJAMINI_HOCHBERG
+  BENJAMINI_HOCHBERG,
+
+  /**
+   * Benjamini-Yekutieli, valid for any dependence between tests.
+   */
+  BENJAMINI_YEKUTIELI,
+
+  /**
+   * Holm's step down family wise error rate.
+   */
+  HOLM,
+
+  /**
+   * Storey's q-values.
+   */
+  STOREY
 }
@@ -0,0 +1,184 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.math.statistics;
+
+import org.jebtk.math.ParallelUtils;
+import org.jebtk.math.RangeFunction;
+
+/**
+ * Fisher's exact test on many 2x2 contingency tables at once. Table i is
+ * 
+ * <pre>
+ * a[i] b[i]
+ * c[i] d[i]
+ * </pre>
+ * 
+ * and is tested using the hypergeometric distribution of a[i] given the
+ * margins. Probabilities come from the shared log factorial table so each
+ * table needs only a few lookups plus a short tail sum. Tables are processed
+ * in parallel.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class FisherExactTest {
+
+  /** The p-values for a[i] being smaller than expected. */
+  private final double[] mLess;
+
+  /** The p-values for a[i] being larger than expected. */
+  private final double[] mGreater;
+
+  /** The two tailed p-values. */
+  private final double[] mTwoTail;
+
+  /**
+   * Instantiates a new fisher exact test.
+   *
+   * @param n the number of tables.
+   */
+  private FisherExactTest(int n) {
+    mLess = new double[n];
+    mGreater = new double[n];
+    mTwoTail = new double[n];
+  }
+
+  /**
+   * Returns P(X <= a) for each table.
+   *
+   * @return the p-values.
+   */
+  public double[] getLess() {
+    return mLess;
+  }
+
+  /**
+   * Returns P(X >= a) for each table. This is the usual test for enrichment
+   * or overlap.
+   *
+   * @return the p-values.
+   */
+  public double[] getGreater() {
+    return mGreater;
+  }
+
+  /**
+   * Returns the sum of the probabilities of all tables with the same margins
+   * that are no more likely than the observed one.
+   *
+   * @return the p-values.
+   */
+  public double[] getTwoTail() {
+    return mTwoTail;
+  }
+
+  /**
+   * Test many 2x2 tables. The arrays must be the same length. Tables with
+   * negative counts have p-values of NaN.
+   *
+   * @param a the top left counts.
+   * @param b the top right counts.
+   * @param c the bottom left counts.
+   * @param d the bottom right counts.
+   * @return the results
+   */
+  public static FisherExactTest test(final int[] a,
+      final int[] b,
+      final int[] c,
+      final int[] d) {
+    final FisherExactTest ret = new FisherExactTest(a.length);
+
+    int max = 0;
+
+    for (int i = 0; i < a.length; ++i) {
+      max = Math.max(max, a[i] + b[i] + c[i] + d[i]);
+    }
+
+    // Grow the table once rather than from inside the workers
+    LogFactorial.ensureCapacity(max);
+
+    ParallelUtils.forEach(a.length, new RangeFunction() {
+      @Override
+      public void apply(int start, int end) {
+        for (int i = start; i < end; ++i) {
+          test(a[i], b[i], c[i], d[i], i, ret);
+        }
+      }
+    });
+
+    return ret;
+  }
+
+  /**
+   * Test one table and store the p-values at index i.
+   *
+   * @param a the a
+   * @param b the b
+   * @param c the c
+   * @param d the d
+   * @param i the index
+   * @param ret the results
+   */
+  private static void test(int a,
+      int b,
+      int c,
+      int d,
+      int i,
+      FisherExactTest ret) {
+    if (a < 0 || b < 0 || c < 0 || d < 0) {
+      ret.mLess[i] = Double.NaN;
+      ret.mGreater[i] = Double.NaN;
+      ret.mTwoTail[i] = Double.NaN;
+
+      return;
+    }
+
+    // Row 1 total, column 1 total and the grand total
+    int n = a + b;
+    int m = a + c;
+    int N = n + c + d;
+
+    double p = Math.exp(Hypergeometric.logPdf(a, n, m, N));
+
+    // Only sum the tail on the far side of the mode. The other follows
+    // from P(X <= a) + P(X >= a) = 1 + P(X = a) and is not small.
+    if (a >= Hypergeometric.mode(n, m, N)) {
+      double greater = Hypergeometric.upperTail(a, n, m, N);
+
+      ret.mGreater[i] = greater;
+      ret.mLess[i] = Math.min(1, 1 - greater + p);
+    } else {
+      double less = Hypergeometric.lowerTail(a, n, m, N);
+
+      ret.mLess[i] = less;
+      ret.mGreater[i] = Math.min(1, 1 - less + p);
+    }
+
+    ret.mTwoTail[i] = Hypergeometric.twoTail(a, n, m, N);
+  }
+}
@@ -0,0 +1,460 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.math.statistics;
+
+import java.util.Arrays;
+
+import org.jebtk.math.ParallelUtils;
+import org.jebtk.math.RangeFunction;
+
+/**
+ * Histogram accumulator with fixed bins and primitive counts. Values can be
+ * added one at a time, for example from a streaming parser, or in bulk from
+ * arrays and ranges of arrays such as matrix rows. Histograms with the same
+ * bins can be merged, so separate threads or chunks of a file can be counted
+ * independently and combined. {@link HistBin} objects are only created when
+ * {@link #toHistBins()} is called.
+ * 
+ * Bins are half open intervals [e(i), e(i + 1)) except for the last, which
+ * also includes the upper edge. Values below the first edge or above the
+ * last are counted as underflow and overflow and NaN values are counted as
+ * missing.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class Histogram {
+
+  /** The bin edges, one more than the number of bins. */
+  private final double[] mEdges;
+
+  /** The counts in each bin. */
+  private final long[] mCounts;
+
+  /** True if the bins have equal widths. */
+  private final boolean mUniform;
+
+  /** The number of bins per unit for uniform bins. */
+  private final double mScale;
+
+  /**
+   * How close, in bins, a uniform bin position must be to an edge before it
+   * is checked against the edges, to allow for rounding.
+   */
+  private final double mTolerance;
+
+  /** The number of values below the first edge. */
+  private long mUnderflow = 0;
+
+  /** The number of values above the last edge. */
+  private long mOverflow = 0;
+
+  /** The number of NaN values. */
+  private long mMissing = 0;
+
+  /**
+   * Instantiates a new histogram with equal width bins between a start and
+   * end.
+   *
+   * @param start the start
+   * @param end the end
+   * @param bins the number of bins.
+   */
+  public Histogram(double start, double end, int bins) {
+    if (bins < 1 || !(end > start)) {
+      throw new IllegalArgumentException(
+          "A histogram needs at least one bin and end > start.");
+    }
+
+    mEdges = new double[bins + 1];
+
+    double w = (end - start) / bins;
+
+    for (int i = 0; i < bins; ++i) {
+      mEdges[i] = start + i * w;
+    }
+
+    mEdges[bins] = end;
+
+    for (int i = 1; i < bins; ++i) {
+      if (!(mEdges[i] > mEdges[i - 1])) {
+        throw new IllegalArgumentException(
+            "The histogram bins are too narrow to represent.");
+      }
+    }
+
+    mCounts = new long[bins];
+    mUniform = true;
+    mScale = bins / (end - start);
+
+    // Rounding in the edges and in the position calculation are both
+    // relative to the magnitude of the end points
+    mTolerance = Math.min(1,
+        16 * Math.ulp(1.0)
+            * (Math.max(Math.abs(start), Math.abs(end)) * mScale + bins));
+  }
+
+  /**
+   * Instantiates a new histogram with the given bin edges.
+   *
+   * @param edges the edges, in strictly ascending order.
+   */
+  public Histogram(final double[] edges) {
+    if (edges.length < 2) {
+      throw new IllegalArgumentException(
+          "A histogram needs at least two edges.");
+    }
+
+    for (int i = 1; i < edges.length; ++i) {
+      if (!(edges[i] > edges[i - 1])) {
+        throw new IllegalArgumentException(
+            "Histogram edges must be in ascending order.");
+      }
+    }
+
+    mEdges = Arrays.copyOf(edges, edges.length);
+    mCounts = new long[edges.length - 1];
+    mUniform = false;
+    mScale = 0;
+    mTolerance = 0;
+  }
+
+  /**
+   * Instantiates a new empty histogram with the same bins as another.
+   *
+   * @param h the histogram
+   */
+  private Histogram(Histogram h) {
+    mEdges = h.mEdges;
+    mCounts = new long[h.mCounts.length];
+    mUniform = h.mUniform;
+    mScale = h.mScale;
+    mTolerance = h.mTolerance;
+  }
+
+  /**
+   * Returns a new empty histogram with the same bins as this one, for
+   * example to count on another thread before merging.
+   *
+   * @return the histogram
+   */
+  public Histogram newEmpty() {
+    return new Histogram(this);
+  }
+
+  /**
+   * Add a value.
+   *
+   * @param v the value
+   * @return the histogram
+   */
+  public Histogram add(double v) {
+    int b = bin(v);
+
+    if (b >= 0) {
+      ++mCounts[b];
+    }
+
+    return this;
+  }
+
+  /**
+   * Add values.
+   *
+   * @param values the values
+   * @return the histogram
+   */
+  public Histogram add(final double[] values) {
+    return add(values, 0, values.length);
+  }
+
+  /**
+   * Add a range of values from an array, for example a row of a row major
+   * matrix.
+   *
+   * @param values the values
+   * @param from the start of the range (inclusive).
+   * @param to the end of the range (exclusive).
+   * @return the histogram
+   */
+  public Histogram add(final double[] values, int from, int to) {
+    if (!mUniform) {
+      for (int i = from; i < to; ++i) {
+        int b = bin(values[i]);
+
+        if (b >= 0) {
+          ++mCounts[b];
+        }
+      }
+
+      return this;
+    }
+
+    // The same as bin() but with the out of range counts held in locals
+    long[] counts = mCounts;
+    int last = counts.length - 1;
+    double start = mEdges[0];
+    double end = mEdges[last + 1];
+
+    long under = 0;
+    long over = 0;
+    long missing = 0;
+
+    for (int i = from; i < to; ++i) {
+      double v = values[i];
+
+      if (v >= start && v < end) {
+        ++counts[uniformBin(v)];
+      } else if (v == end) {
+        ++counts[last];
+      } else if (v < start) {
+        ++under;
+      } else if (v > end) {
+        ++over;
+      } else {
+        ++missing;
+      }
+    }
+
+    mUnderflow += under;
+    mOverflow += over;
+    mMissing += missing;
+
+    return this;
+  }
+
+  /**
+   * Add values in parallel. The array is split into blocks that are counted
+   * into separate histograms and then merged into this one.
+   *
+   * @param values the values
+   * @return the histogram
+   */
+  public Histogram parallelAdd(final double[] values) {
+    final int n = values.length;
+
+    final int size = ParallelUtils.blockSize(n);
+
+    final Histogram[] parts = new Histogram[(n + size - 1) / size];
+
+    ParallelUtils.forEach(0, parts.length, 1, new RangeFunction() {
+      @Override
+      public void apply(int start, int end) {
+        for (int i = start; i < end; ++i) {
+          int s = i * size;
+
+          parts[i] = newEmpty().add(values, s, Math.min(n, s + size));
+        }
+      }
+    });
+
+    for (Histogram h : parts) {
+      merge(h);
+    }
+
+    return this;
+  }
+
+  /**
+   * Add the counts of another histogram with the same bins to this one.
+   *
+   * @param h the histogram
+   * @return the histogram
+   */
+  public Histogram merge(Histogram h) {
+    if (h.mEdges != mEdges && !Arrays.equals(h.mEdges, mEdges)) {
+      throw new IllegalArgumentException(
+          "Only histograms with the same bins can be merged.");
+    }
+
+    for (int i = 0; i < mCounts.length; ++i) {
+      mCounts[i] += h.mCounts[i];
+    }
+
+    mUnderflow += h.mUnderflow;
+    mOverflow += h.mOverflow;
+    mMissing += h.mMissing;
+
+    return this;
+  }
+
+  /**
+   * Returns the bin of a value, updating the underflow, overflow and
+   * missing counts for values that are not in a bin.
+   *
+   * @param v the value
+   * @return the bin, or -1 if the value is not in a bin.
+   */
+  private int bin(double v) {
+    int last = mCounts.length - 1;
+
+    if (v >= mEdges[0] && v < mEdges[last + 1]) {
+      int b;
+
+      if (mUniform) {
+        b = uniformBin(v);
+      } else {
+        b = Arrays.binarySearch(mEdges, v);
+
+        // Values equal to an edge start that bin, otherwise the search gives
+        // the insertion point after the bin's lower edge
+        if (b < 0) {
+          b = -b - 2;
+        }
+      }
+
+      return b;
+    } else if (v == mEdges[last + 1]) {
+      return last;
+    } else if (v < mEdges[0]) {
+      ++mUnderflow;
+    } else if (v > mEdges[last + 1]) {
+      ++mOverflow;
+    } else {
+      ++mMissing;
+    }
+
+    return -1;
+  }
+
+  /**
+   * Returns the bin of a value between the first and last edge when the
+   * bins are uniform. The bin is calculated directly and only compared to
+   * the edges when the value is so close to one that rounding could have
+   * put it in the wrong bin.
+   *
+   * @param v the value
+   * @return the bin
+   */
+  private int uniformBin(double v) {
+    double f = (v - mEdges[0]) * mScale;
+
+    int b = (int) f;
+
+    double d = f - b;
+
+    if (d < mTolerance || d > 1 - mTolerance) {
+      b = Math.min(mCounts.length - 1, b);
+
+      if (v < mEdges[b]) {
+        --b;
+      } else if (v >= mEdges[b + 1]) {
+        ++b;
+      }
+    }
+
+    return b;
+  }
+
+  /**
+   * Returns the number of bins.
+   *
+   * @return the bins
+   */
+  public int getBins() {
+    return mCounts.length;
+  }
+
+  /**
+   * Returns a copy of the bin edges.
+   *
+   * @return the edges
+   */
+  public double[] getEdges() {
+    return Arrays.copyOf(mEdges, mEdges.length);
+  }
+
+  /**
+   * Returns the counts in each bin. The array is live and should not be
+   * modified.
+   *
+   * @return the counts
+   */
+  public long[] getCounts() {
+    return mCounts;
+  }
+
+  /**
+   * Returns the number of values below the first edge.
+   *
+   * @return the underflow
+   */
+  public long getUnderflow() {
+    return mUnderflow;
+  }
+
+  /**
+   * Returns the number of values above the last edge.
+   *
+   * @return the overflow
+   */
+  public long getOverflow() {
+    return mOverflow;
+  }
+
+  /**
+   * Returns the number of NaN values.
+   *
+   * @return the missing
+   */
+  public long getMissing() {
+    return mMissing;
+  }
+
+  /**
+   * Returns the number of values in bins.
+   *
+   * @return the count
+   */
+  public long getCount() {
+    long ret = 0;
+
+    for (long c : mCounts) {
+      ret += c;
+    }
+
+    return ret;
+  }
+
+  /**
+   * Create a bin object for each bin, starting at its lower edge. Counts too
+   * large for a HistBin are capped at Integer.MAX_VALUE.
+   *
+   * @return the bins
+   */
+  public HistBin[] toHistBins() {
+    HistBin[] ret = new HistBin[mCounts.length];
+
+    for (int i = 0; i < ret.length; ++i) {
+      ret[i] = new HistBin(mEdges[i], mEdges[i + 1] - mEdges[i],
+          (int) Math.min(Integer.MAX_VALUE, mCounts[i]));
+    }
+
+    return ret;
+  }
+}
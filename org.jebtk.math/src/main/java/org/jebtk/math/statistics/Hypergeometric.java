@@ -27,13 +27,17 @@
  */
 package org.jebtk.math.statistics;
 
-import java.util.Map;
-
 import org.apache.commons.math3.distribution.HypergeometricDistribution;
-import org.jebtk.core.AgeMap;
+import org.jebtk.math.ParallelUtils;
+import org.jebtk.math.RangeFunction;
 
 /**
  * Fast implementation of the hypergeometric function using the sum of logs.
+ * Probabilities are computed in closed form from a shared table of log
+ * factorials and tails are summed using the ratio between neighbouring
+ * probabilities, starting from the end nearest the mode so that small tails
+ * are summed directly rather than subtracted from one. Objects hold no state
+ * and can be shared between threads.
  *
  * @author Antony Holmes
  *
@@ -41,97 +45,76 @@ import org.jebtk.core.AgeMap;
 public class Hypergeometric {
 
   /**
-   * The member cached pdf.
-   */
-  private Map<String, Double> mCachedPdf = new AgeMap<String, Double>(10000);
-
-  /**
-   * The member cached cdf.
-   */
-  private Map<String, Double> mCachedCdf = new AgeMap<String, Double>(10000);
-
-  /**
-   * The member two tail cdf.
+   * Relative tolerance used when deciding whether a probability is as or less
+   * likely than the observed one in the two tailed test, so that values that
+   * are equal in exact arithmetic are not separated by rounding.
    */
-  private Map<String, Double> mTwoTailCdf = new AgeMap<String, Double>(10000);
+  private static final double RELATIVE_ERROR = 1 + 1e-7;
 
   /**
-   * The member one tail cdf.
+   * Stop summing a tail once terms no longer change the total.
    */
-  private Map<String, Double> mOneTailCdf = new AgeMap<String, Double>(10000);
+  private static final double EPSILON = 1e-17;
 
   /**
-   * Gets the key.
+   * Compute the hypergeometric PDF.
    *
    * @param successes the successes
    * @param sampleSize the sample size
    * @param populationSuccesses the population successes
    * @param populationSize the population size
-   * @return the key
+   * @return the double
    */
-  private static String getKey(int successes,
+  public final double pdf(int successes,
       int sampleSize,
       int populationSuccesses,
       int populationSize) {
-    return successes + "." + sampleSize + "." + populationSuccesses + "."
-        + populationSize;
+    return Math.exp(
+        logPdf(successes, sampleSize, populationSuccesses, populationSize));
   }
 
   /**
-   * Lookup.
+   * Compute the hypergeometric CDF.
    *
    * @param successes the successes
    * @param sampleSize the sample size
    * @param populationSuccesses the population successes
    * @param populationSize the population size
-   * @param cache the cache
    * @return the double
    */
-  private static double lookup(int successes,
+  public final double cdf(int successes,
       int sampleSize,
       int populationSuccesses,
-      int populationSize,
-      Map<String, Double> cache) {
-
-    String key = getKey(successes,
+      int populationSize) {
+    return lowerTail(successes,
         sampleSize,
         populationSuccesses,
         populationSize);
-
-    if (cache.containsKey(key)) {
-      return cache.get(key);
-    } else {
-      return -1;
-    }
   }
 
   /**
-   * Store.
+   * The probability of seeing a result as or less likely than the observed
+   * number of successes.
    *
-   * @param p the p
    * @param successes the successes
    * @param sampleSize the sample size
    * @param populationSuccesses the population successes
    * @param populationSize the population size
-   * @param cache the cache
+   * @return the double
    */
-  private static void store(double p,
-      int successes,
+  public final double cdfTwoTail(int successes,
       int sampleSize,
       int populationSuccesses,
-      int populationSize,
-      Map<String, Double> cache) {
-
-    String key = getKey(successes,
+      int populationSize) {
+    return twoTail(successes,
         sampleSize,
         populationSuccesses,
         populationSize);
-
-    cache.put(key, p);
   }
 
   /**
-   * Compute the hypergeometric PDF.
+   * The probability of seeing this number of successes or more (up to sample
+   * size).
    *
    * @param successes the successes
    * @param sampleSize the sample size
@@ -139,162 +122,335 @@ public class Hypergeometric {
    * @param populationSize the population size
    * @return the double
    */
-  public final double pdf(int successes,
+  public final double cdfOneTail(int successes,
       int sampleSize,
       int populationSuccesses,
       int populationSize) {
-    double pdf = lookup(successes,
+    return upperTail(successes,
         sampleSize,
         populationSuccesses,
-        populationSize,
-        mCachedPdf);
+        populationSize);
+  }
 
-    if (pdf != -1) {
-      return pdf;
-    }
+  /**
+   * Compute the one tailed (over representation) p-value of many tests at
+   * once. The arrays must be the same length and test i uses element i of
+   * each array.
+   *
+   * @param successes the successes
+   * @param sampleSizes the sample sizes
+   * @param populationSuccesses the population successes
+   * @param populationSizes the population sizes
+   * @return the p-values.
+   */
+  public static double[] cdfOneTail(final int[] successes,
+      final int[] sampleSizes,
+      final int[] populationSuccesses,
+      final int[] populationSizes) {
+    final double[] ret = new double[successes.length];
+
+    LogFactorial.ensureCapacity(max(populationSizes));
+
+    ParallelUtils.forEach(ret.length, new RangeFunction() {
+      @Override
+      public void apply(int start, int end) {
+        for (int i = start; i < end; ++i) {
+          ret[i] = upperTail(successes[i],
+              sampleSizes[i],
+              populationSuccesses[i],
+              populationSizes[i]);
+        }
+      }
+    });
+
+    return ret;
+  }
 
-    HypergeometricDistribution d = new HypergeometricDistribution(null,
-        populationSize, populationSuccesses, sampleSize);
+  /**
+   * Compute the two tailed p-value of many tests at once. The arrays must be
+   * the same length and test i uses element i of each array.
+   *
+   * @param successes the successes
+   * @param sampleSizes the sample sizes
+   * @param populationSuccesses the population successes
+   * @param populationSizes the population sizes
+   * @return the p-values.
+   */
+  public static double[] cdfTwoTail(final int[] successes,
+      final int[] sampleSizes,
+      final int[] populationSuccesses,
+      final int[] populationSizes) {
+    final double[] ret = new double[successes.length];
+
+    LogFactorial.ensureCapacity(max(populationSizes));
+
+    ParallelUtils.forEach(ret.length, new RangeFunction() {
+      @Override
+      public void apply(int start, int end) {
+        for (int i = start; i < end; ++i) {
+          ret[i] = twoTail(successes[i],
+              sampleSizes[i],
+              populationSuccesses[i],
+              populationSizes[i]);
+        }
+      }
+    });
 
-    pdf = d.probability(successes);
+    return ret;
+  }
 
-    store(pdf,
-        successes,
-        sampleSize,
-        populationSuccesses,
-        populationSize,
-        mCachedPdf);
+  /**
+   * Returns the log of the hypergeometric PDF, or negative infinity if the
+   * number of successes is not possible.
+   *
+   * @param k the number of successes in the sample.
+   * @param n the sample size.
+   * @param m the number of successes in the population.
+   * @param N the population size.
+   * @return the log probability.
+   */
+  public static double logPdf(int k, int n, int m, int N) {
+    if (k < min(n, m, N) || k > max(n, m)) {
+      return Double.NEGATIVE_INFINITY;
+    }
 
-    return pdf;
+    return LogFactorial.logFactorial(m) - LogFactorial.logFactorial(k)
+        - LogFactorial.logFactorial(m - k)
+        + LogFactorial.logFactorial(N - m)
+        - LogFactorial.logFactorial(n - k)
+        - LogFactorial.logFactorial(N - m - n + k)
+        + LogFactorial.logFactorial(n) + LogFactorial.logFactorial(N - n)
+        - LogFactorial.logFactorial(N);
   }
 
   /**
-   * Compute the hypergeometric CDF.
+   * Returns P(X <= k).
    *
-   * @param successes the successes
-   * @param sampleSize the sample size
-   * @param populationSuccesses the population successes
-   * @param populationSize the population size
-   * @return the double
+   * @param k the number of successes in the sample.
+   * @param n the sample size.
+   * @param m the number of successes in the population.
+   * @param N the population size.
+   * @return the probability.
    */
-  public final double cdf(int successes,
-      int sampleSize,
-      int populationSuccesses,
-      int populationSize) {
-    double cdf = lookup(successes,
-        sampleSize,
-        populationSuccesses,
-        populationSize,
-        mCachedCdf);
+  public static double lowerTail(int k, int n, int m, int N) {
+    if (k < min(n, m, N)) {
+      return 0;
+    }
 
-    if (cdf != -1) {
-      return cdf;
+    if (k >= max(n, m)) {
+      return 1;
     }
 
-    HypergeometricDistribution d = new HypergeometricDistribution(null,
-        populationSize, populationSuccesses, sampleSize);
+    if (k <= mode(n, m, N)) {
+      return sumDown(k, n, m, N);
+    } else {
+      return Math.max(0, 1 - sumUp(k + 1, n, m, N));
+    }
+  }
 
-    cdf = d.cumulativeProbability(successes);
+  /**
+   * Returns P(X >= k).
+   *
+   * @param k the number of successes in the sample.
+   * @param n the sample size.
+   * @param m the number of successes in the population.
+   * @param N the population size.
+   * @return the probability.
+   */
+  public static double upperTail(int k, int n, int m, int N) {
+    if (k <= min(n, m, N)) {
+      return 1;
+    }
 
-    store(cdf,
-        successes,
-        sampleSize,
-        populationSuccesses,
-        populationSize,
-        mCachedCdf);
+    if (k > max(n, m)) {
+      return 0;
+    }
 
-    return cdf;
+    if (k >= mode(n, m, N)) {
+      return sumUp(k, n, m, N);
+    } else {
+      return Math.max(0, 1 - sumDown(k - 1, n, m, N));
+    }
   }
 
   /**
-   * Cdf two tail.
+   * Returns the sum of the probabilities of all outcomes that are no more
+   * likely than k.
    *
-   * @param successes the successes
-   * @param sampleSize the sample size
-   * @param populationSuccesses the population successes
-   * @param populationSize the population size
-   * @return the double
+   * @param k the number of successes in the sample.
+   * @param n the sample size.
+   * @param m the number of successes in the population.
+   * @param N the population size.
+   * @return the probability.
    */
-  public final double cdfTwoTail(int successes,
-      int sampleSize,
-      int populationSuccesses,
-      int populationSize) {
-    double cdf = lookup(successes,
-        sampleSize,
-        populationSuccesses,
-        populationSize,
-        mTwoTailCdf);
+  public static double twoTail(int k, int n, int m, int N) {
+    int lo = min(n, m, N);
+    int hi = max(n, m);
 
-    if (cdf != -1) {
-      return cdf;
+    if (k < lo || k > hi) {
+      return 0;
     }
 
-    double cdf0 = pdf(successes,
-        sampleSize,
-        populationSuccesses,
-        populationSize);
+    int mode = mode(n, m, N);
+
+    double limit = logPdf(k, n, m, N) + Math.log(RELATIVE_ERROR);
 
-    cdf = 0;
+    // The pdf increases up to the mode and then decreases so the outcomes
+    // no more likely than k form a tail on each side. Find where each tail
+    // ends by binary search.
 
-    for (int i = 0; i <= sampleSize; ++i) {
-      double c = pdf(i, sampleSize, populationSuccesses, populationSize);
+    // Last value at or below the mode with pdf <= limit
+    int l = lo - 1;
+    int h = mode;
 
-      if (c <= cdf0) {
-        // System.err.println("cdf " + c);
-        cdf += c;
+    while (l < h) {
+      int mid = (l + h + 1) >>> 1;
+
+      if (logPdf(mid, n, m, N) <= limit) {
+        l = mid;
+      } else {
+        h = mid - 1;
       }
+    }
+
+    int lower = l;
+
+    // First value above the mode with pdf <= limit
+    l = mode + 1;
+    h = hi + 1;
 
+    while (l < h) {
+      int mid = (l + h) >>> 1;
+
+      if (logPdf(mid, n, m, N) <= limit) {
+        h = mid;
+      } else {
+        l = mid + 1;
+      }
     }
 
-    cdf = Math.min(1.0, cdf);
+    int upper = l;
 
-    store(cdf,
-        successes,
-        sampleSize,
-        populationSuccesses,
-        populationSize,
-        mTwoTailCdf);
+    double p = 0;
+
+    if (lower >= lo) {
+      p += sumDown(lower, n, m, N);
+    }
+
+    if (upper <= hi) {
+      p += sumUp(upper, n, m, N);
+    }
 
-    return cdf;
+    return Math.min(1, p);
   }
 
   /**
-   * The probability of seeing this number of successes or more (up to sample
-   * size).
+   * Sum the probabilities from k down to the smallest possible value. Terms
+   * are generated from pdf(k) using pdf(i - 1) / pdf(i) so k should be at or
+   * below the mode so that the terms shrink.
    *
-   * @param successes the successes
-   * @param sampleSize the sample size
-   * @param populationSuccesses the population successes
-   * @param populationSize the population size
-   * @return the double
+   * @param k the k
+   * @param n the n
+   * @param m the m
+   * @param N the N
+   * @return the sum
    */
-  public final double cdfOneTail(int successes,
-      int sampleSize,
-      int populationSuccesses,
-      int populationSize) {
-    double cdf = lookup(successes,
-        sampleSize,
-        populationSuccesses,
-        populationSize,
-        mOneTailCdf);
+  private static double sumDown(int k, int n, int m, int N) {
+    int lo = min(n, m, N);
+
+    double t = 1;
+    double s = 1;
 
-    if (cdf != -1) {
-      return cdf;
+    for (int i = k; i > lo; --i) {
+      t *= (double) i * (N - m - n + i) / ((double) (m - i + 1) * (n - i + 1));
+      s += t;
+
+      if (t < s * EPSILON) {
+        break;
+      }
     }
 
-    HypergeometricDistribution d = new HypergeometricDistribution(null,
-        populationSize, populationSuccesses, sampleSize);
+    return Math.exp(logPdf(k, n, m, N)) * s;
+  }
 
-    cdf = d.upperCumulativeProbability(successes);
+  /**
+   * Sum the probabilities from k up to the largest possible value. Terms are
+   * generated from pdf(k) using pdf(i + 1) / pdf(i) so k should be at or
+   * above the mode so that the terms shrink.
+   *
+   * @param k the k
+   * @param n the n
+   * @param m the m
+   * @param N the N
+   * @return the sum
+   */
+  private static double sumUp(int k, int n, int m, int N) {
+    int hi = max(n, m);
 
-    store(cdf,
-        successes,
-        sampleSize,
-        populationSuccesses,
-        populationSize,
-        mOneTailCdf);
+    double t = 1;
+    double s = 1;
+
+    for (int i = k; i < hi; ++i) {
+      t *= (double) (m - i) * (n - i) / ((double) (i + 1) * (N - m - n + i + 1));
+      s += t;
+
+      if (t < s * EPSILON) {
+        break;
+      }
+    }
+
+    return Math.exp(logPdf(k, n, m, N)) * s;
+  }
+
+  /**
+   * Returns the most likely number of successes.
+   *
+   * @param n the n
+   * @param m the m
+   * @param N the N
+   * @return the mode
+   */
+  static int mode(int n, int m, int N) {
+    return (int) (((long) n + 1) * ((long) m + 1) / ((long) N + 2));
+  }
+
+  /**
+   * Returns the smallest possible number of successes.
+   *
+   * @param n the n
+   * @param m the m
+   * @param N the N
+   * @return the min
+   */
+  private static int min(int n, int m, int N) {
+    return Math.max(0, n + m - N);
+  }
+
+  /**
+   * Returns the largest possible number of successes.
+   *
+   * @param n the n
+   * @param m the m
+   * @return the max
+   */
+  private static int max(int n, int m) {
+    return Math.min(n, m);
+  }
+
+  /**
+   * Returns the largest value in an array.
+   *
+   * @param values the values
+   * @return the max
+   */
+  private static int max(int[] values) {
+    int ret = 0;
+
+    for (int v : values) {
+      ret = Math.max(ret, v);
+    }
 
-    return cdf;
+    return ret;
   }
 
   /**
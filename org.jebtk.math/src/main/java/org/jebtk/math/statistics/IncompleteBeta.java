@@ -0,0 +1,249 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.math.statistics;
+
+/**
+ * The regularized incomplete beta function I_x(a, b) for real a and b,
+ * evaluated with the continued fraction expansion using the modified Lentz
+ * method. The expansion is applied to whichever of I_x(a, b) and
+ * I_(1 - x)(b, a) converges fastest, so the number of terms grows only with
+ * the square root of the shape parameters. The log beta function is
+ * calculated without cancellation when either parameter is large. All
+ * methods are stateless and can be called from any thread.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class IncompleteBeta {
+
+  /** The relative accuracy of the continued fraction. */
+  private static final double EPS = 1e-15;
+
+  /** Stops the Lentz iteration dividing by zero. */
+  private static final double TINY = 1e-300;
+
+  /** The maximum number of continued fraction terms. */
+  private static final int MAX_ITERATIONS = 10000;
+
+  /**
+   * Parameters at least this large are handled by Stirling's series in
+   * log beta.
+   */
+  private static final double LARGE = 16;
+
+  /** 0.5 * log(2 pi). */
+  private static final double HALF_LOG_2_PI = 0.5 * Math.log(2 * Math.PI);
+
+  /**
+   * Instantiates a new incomplete beta.
+   */
+  private IncompleteBeta() {
+    // Do nothing
+  }
+
+  /**
+   * Returns the regularized incomplete beta function I_x(a, b).
+   *
+   * @param x the x between 0 and 1.
+   * @param a the a > 0
+   * @param b the b > 0
+   * @return I_x(a, b), or NaN if the arguments are out of range.
+   */
+  public static double regularized(double x, double a, double b) {
+    return regularized(x, 1 - x, a, b, logBeta(a, b));
+  }
+
+  /**
+   * Returns the regularized incomplete beta function I_x(a, b) given 1 - x
+   * and log B(a, b). Passing 1 - x separately keeps precision when x is
+   * close to 1 and passing log B(a, b) saves recalculating it when many
+   * values share the same parameters.
+   *
+   * @param x the x between 0 and 1.
+   * @param y 1 - x
+   * @param a the a > 0
+   * @param b the b > 0
+   * @param logBeta log B(a, b)
+   * @return I_x(a, b), or NaN if the arguments are out of range.
+   */
+  public static double regularized(double x,
+      double y,
+      double a,
+      double b,
+      double logBeta) {
+    if (Double.isNaN(x) || Double.isNaN(y) || !(a > 0) || !(b > 0)
+        || x < 0 || y < 0) {
+      return Double.NaN;
+    }
+
+    if (x == 0) {
+      return 0;
+    }
+
+    if (y == 0) {
+      return 1;
+    }
+
+    // The continued fraction converges quickly below the mean of the
+    // distribution, above it use the symmetry I_x(a, b) = 1 - I_y(b, a)
+    if (x > (a + 1) / (a + b + 2)) {
+      return 1 - fraction(y, x, b, a, logBeta);
+    } else {
+      return fraction(x, y, a, b, logBeta);
+    }
+  }
+
+  /**
+   * Returns log B(a, b) = log gamma(a) + log gamma(b) - log gamma(a + b).
+   * When a parameter is large the Stirling terms of the gamma functions are
+   * combined analytically so that large values do not cancel.
+   *
+   * @param a the a > 0
+   * @param b the b > 0
+   * @return log B(a, b)
+   */
+  public static double logBeta(double a, double b) {
+    if (!(a > 0) || !(b > 0)) {
+      return Double.NaN;
+    }
+
+    double p = Math.min(a, b);
+    double q = Math.max(a, b);
+
+    double pq = p + q;
+
+    if (p >= LARGE) {
+      double corr = LogFactorial.gammaCorrection(p)
+          + LogFactorial.gammaCorrection(q) - LogFactorial.gammaCorrection(pq);
+
+      return HALF_LOG_2_PI - 0.5 * Math.log(q) + corr
+          + (p - 0.5) * Math.log(p / pq) + q * Math.log1p(-p / pq);
+    } else if (q >= LARGE) {
+      double corr = LogFactorial.gammaCorrection(q)
+          - LogFactorial.gammaCorrection(pq);
+
+      return LogFactorial.logGamma(p) + corr + p - p * Math.log(pq)
+          + (q - 0.5) * Math.log1p(-p / pq);
+    } else {
+      return LogFactorial.logGamma(p) + LogFactorial.logGamma(q)
+          - LogFactorial.logGamma(pq);
+    }
+  }
+
+  /**
+   * Evaluate I_x(a, b) from the continued fraction, which should only be
+   * used when x < (a + 1) / (a + b + 2).
+   *
+   * @param x the x
+   * @param y 1 - x
+   * @param a the a
+   * @param b the b
+   * @param logBeta log B(a, b)
+   * @return I_x(a, b)
+   */
+  private static double fraction(double x,
+      double y,
+      double a,
+      double b,
+      double logBeta) {
+    // Take the log of whichever of x and 1 - x is small, since the other is
+    // only known to within rounding of 1 and is multiplied by a or b
+    double logX = x <= 0.5 ? Math.log(x) : Math.log1p(-y);
+    double logY = y <= 0.5 ? Math.log(y) : Math.log1p(-x);
+
+    double front = Math.exp(a * logX + b * logY - logBeta) / a;
+
+    if (front == 0) {
+      return 0;
+    }
+
+    double qab = a + b;
+    double qap = a + 1;
+    double qam = a - 1;
+
+    double c = 1;
+    double d = 1 - qab * x / qap;
+
+    if (Math.abs(d) < TINY) {
+      d = TINY;
+    }
+
+    d = 1 / d;
+
+    double h = d;
+
+    for (int m = 1; m <= MAX_ITERATIONS; ++m) {
+      int m2 = 2 * m;
+
+      // Even term
+      double aa = m * (b - m) * x / ((qam + m2) * (a + m2));
+
+      d = 1 + aa * d;
+
+      if (Math.abs(d) < TINY) {
+        d = TINY;
+      }
+
+      c = 1 + aa / c;
+
+      if (Math.abs(c) < TINY) {
+        c = TINY;
+      }
+
+      d = 1 / d;
+      h *= d * c;
+
+      // Odd term
+      aa = -(a + m) * (qab + m) * x / ((a + m2) * (qap + m2));
+
+      d = 1 + aa * d;
+
+      if (Math.abs(d) < TINY) {
+        d = TINY;
+      }
+
+      c = 1 + aa / c;
+
+      if (Math.abs(c) < TINY) {
+        c = TINY;
+      }
+
+      d = 1 / d;
+
+      double delta = d * c;
+
+      h *= delta;
+
+      if (Math.abs(delta - 1) < EPS) {
+        break;
+      }
+    }
+
+    return front * h;
+  }
+}
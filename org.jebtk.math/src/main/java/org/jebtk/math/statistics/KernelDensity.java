@@ -30,7 +30,10 @@ package org.jebtk.math.statistics;
 import java.util.Arrays;
 
 import org.jebtk.core.Mathematics;
+import org.jebtk.math.FFT;
 import org.jebtk.math.Linspace;
+import org.jebtk.math.ParallelUtils;
+import org.jebtk.math.RangeFunction;
 
 // TODO: Auto-generated Javadoc
 /**
@@ -41,6 +44,19 @@ public abstract class KernelDensity {
   /** The Constant DEFAULT_POINTS. */
   private static final int DEFAULT_POINTS = 100;
 
+  /**
+   * How many bandwidths either side of a value a kernel without compact
+   * support is evaluated over. A Gaussian is below 1e-14 of its peak beyond
+   * this.
+   */
+  private static final double KERNEL_CUTOFF = 8;
+
+  /** The number of grid bins per bandwidth when binning. */
+  private static final int BINS_PER_BANDWIDTH = 8;
+
+  /** The largest grid used when binning. */
+  private static final int MAX_GRID_SIZE = 1 << 20;
+
   /** The m dist. */
   private double[] mDist;
 
@@ -51,12 +67,24 @@ public abstract class KernelDensity {
   private double[] mCdf;
 
   /**
-   * Instantiates a new kernel density.
+   * Instantiates a new kernel density that is evaluated exactly.
    *
    * @param dist the dist
    * @param kernel the kernel
    */
   public KernelDensity(double[] dist, Kernel kernel) {
+    this(dist, kernel, KernelDensityMethod.EXACT);
+  }
+
+  /**
+   * Instantiates a new kernel density.
+   *
+   * @param dist the dist
+   * @param kernel the kernel
+   * @param method how to evaluate the estimate.
+   */
+  public KernelDensity(double[] dist, Kernel kernel,
+      KernelDensityMethod method) {
     mDist = new double[dist.length];
 
     // Clone the dist since we are going to modify it
@@ -70,7 +98,13 @@ public abstract class KernelDensity {
 
     double bandwidth = bandwidthEstimate(dist);
 
-    double[] pdf = kde(mLx, dist, bandwidth, kernel);
+    double[] pdf;
+
+    if (method == KernelDensityMethod.BINNED) {
+      pdf = binnedKde(mLx, mDist, bandwidth, kernel);
+    } else {
+      pdf = windowedKde(mLx, mDist, bandwidth, kernel);
+    }
 
     mCdf = cdf(mLx, pdf);
 
@@ -88,61 +122,29 @@ public abstract class KernelDensity {
   public double[] cdf(double[] xp) {
     double[] ret = new double[xp.length];
 
+    int last = mLx.length - 1;
+
     for (int i = 0; i < xp.length; ++i) {
       double x = xp[i];
 
-      int ci = 0;
-
-      // integrate f(x) dx
       if (x <= mLx[0]) {
         // x is before the the points we are evaluating so just use
-        // the first point as an estimate of the pdf
-        ci = 0;
-      } else if (x >= mLx[mLx.length - 1]) {
+        // the first point as an estimate of the cdf
+        ret[i] = mCdf[0];
+      } else if (x >= mLx[last]) {
         // comes after the cdf finishes so use the maximum cdf to
         // approximate the point
-        ci = mLx.length - 1;
+        ret[i] = mCdf[last];
       } else {
-        // Search until we hit the first point equal to or greater
-        // than x. If the cdf has enough points, this will give a
-        // reasonably close approximation of the cdf for x.
-        for (int j = 1; j < mCdf.length - 1; ++j) {
-          if (mLx[j] >= x) {
-            // System.err.println("sum " + j + " " + x + " " +
-            // cdfPoints.get(j));
-
-            break;
-          }
+        // Interpolate between the evaluation points either side of x
+        int j = upperBound(mLx, 0, mLx.length, x);
 
-          ++ci;
+        double w = (x - mLx[j - 1]) / (mLx[j] - mLx[j - 1]);
 
-          // Trapezoid rule
-          // sum += pdf.get(j) + pdf.get(j + 1); // * (evalPoints.get(j + 1) -
-          // evalPoints.get(j));
-
-        }
+        ret[i] = (1 - w) * mCdf[j - 1] + w * mCdf[j];
       }
-
-      // sum *= h;
-
-      // System.err.println("sumd " + x + " " + i + " " + ci + " " +
-      // cdf.get(ci));
-      // System.err.println("eh " + cdf);
-
-      ret[i] = mCdf[ci];
     }
 
-    // PrintUtils.out().println("=====");
-    // PrintUtils.out().columns(cdfPoints, pdf);
-    // PrintUtils.out().columns(cdfPoints, cdf);
-    // PrintUtils.out().columns(dist);
-    // PrintUtils.out().println(bandwidth);
-    // PrintUtils.out().println("=====");
-
-    // System.exit(0);
-
-    // System.err.println("cdf " + Arrays.toString(ret));
-
     return ret;
   }
 
@@ -273,22 +275,302 @@ public abstract class KernelDensity {
    * @return the list
    */
   public static double[] kde(final double[] xp,
+      final double[] dist,
+      final double bandwidth,
+      final Kernel kernel) {
+    int n = xp.length;
+
+    final double[] values = new double[n];
+
+    ParallelUtils.forEach(n, new RangeFunction() {
+      @Override
+      public void apply(int start, int end) {
+        for (int i = start; i < end; ++i) {
+          values[i] = kde(xp[i], dist, bandwidth, kernel);
+        }
+      }
+    });
+
+    return values;
+  }
+
+  /**
+   * Evaluate the points of xp relative to dist using the given method.
+   *
+   * @param xp the xp
+   * @param dist the dist
+   * @param bandwidth the bandwidth
+   * @param kernel the kernel
+   * @param method the method
+   * @return the density at each point of xp.
+   */
+  public static double[] kde(final double[] xp,
+      double[] dist,
+      double bandwidth,
+      Kernel kernel,
+      KernelDensityMethod method) {
+    switch (method) {
+    case BINNED:
+      return binnedKde(xp, dist, bandwidth, kernel);
+    default:
+      return kde(xp, dist, bandwidth, kernel);
+    }
+  }
+
+  /**
+   * Approximate the density at the points of xp by linearly binning dist onto
+   * a grid with several bins per bandwidth, convolving the bin weights with
+   * the kernel using an FFT and interpolating the result at each point. The
+   * cost is O(n + g log g) for a grid of g bins, rather than O(n * m). Values
+   * further outside the range of xp than the support of the kernel, or
+   * {@link #KERNEL_CUTOFF} bandwidths for kernels without compact support, are
+   * ignored when binning but still count towards the normalization, so the
+   * estimate agrees with the exact one. Values that are not finite are
+   * ignored.
+   *
+   * @param xp the xp
+   * @param dist the dist
+   * @param bandwidth the bandwidth
+   * @param kernel the kernel
+   * @return the density at each point of xp.
+   */
+  public static double[] binnedKde(final double[] xp,
       double[] dist,
       double bandwidth,
       Kernel kernel) {
-    int n = xp.length;
+    double[] ret = new double[xp.length];
 
-    double[] values = new double[n];
+    if (xp.length == 0 || dist.length == 0) {
+      return ret;
+    }
 
-    for (int i = 0; i < n; ++i) {
-      values[i] = kde(xp[i], dist, bandwidth, kernel);
+    double cutoff = support(kernel) * bandwidth;
+
+    double min = Double.POSITIVE_INFINITY;
+    double max = Double.NEGATIVE_INFINITY;
+
+    for (double x : xp) {
+      min = Math.min(min, x);
+      max = Math.max(max, x);
     }
 
-    return values;
+    double start = min - cutoff;
+
+    double delta = bandwidth / BINS_PER_BANDWIDTH;
+
+    double range = max - min + 2 * cutoff;
+
+    if (range / delta >= MAX_GRID_SIZE / 2) {
+      // The points span many bandwidths so use a coarser grid
+      delta = range / (MAX_GRID_SIZE / 2 - 1);
+    }
+
+    int m = (int) Math.ceil(range / delta) + 1;
+
+    // The kernel is evaluated over [-k, k] bins
+    int k = (int) Math.ceil(cutoff / delta);
+
+    int size = FFT.nextPowerOf2(m + k);
+
+    //
+    // Linear binning, each value is split between the two grid points
+    // either side in proportion to how close it is to them.
+    //
+
+    double[] counts = new double[size];
+
+    // The number of finite values
+    int n = 0;
+
+    for (double x : dist) {
+      if (!Mathematics.isValidNumber(x)) {
+        continue;
+      }
+
+      ++n;
+
+      double p = (x - start) / delta;
+
+      if (!(p >= 0 && p < m - 1)) {
+        continue;
+      }
+
+      int i = (int) p;
+
+      double w = p - i;
+
+      counts[i] += 1 - w;
+      counts[i + 1] += w;
+    }
+
+    //
+    // Kernel weights, with negative offsets wrapped to the end of the array
+    //
+
+    double[] weights = new double[size];
+
+    for (int i = -k; i <= k; ++i) {
+      weights[i < 0 ? size + i : i] = kernel.evaluate(i * delta / bandwidth);
+    }
+
+    double[] grid = FFT.convolve(counts, weights);
+
+    if (n == 0) {
+      return ret;
+    }
+
+    double f = 1.0 / (bandwidth * n);
+
+    //
+    // Interpolate the grid at the evaluation points
+    //
+
+    for (int i = 0; i < xp.length; ++i) {
+      double p = (xp[i] - start) / delta;
+
+      int j = Math.min((int) p, m - 2);
+
+      double w = p - j;
+
+      // Rounding in the FFT can leave tiny negative values where the
+      // density is zero
+      ret[i] = Math.max(0, f * ((1 - w) * grid[j] + w * grid[j + 1]));
+    }
+
+    return ret;
   }
 
   /**
-   * The Kernel Density estimator (KDE).
+   * Evaluate the density at the points of xp using only the values of dist
+   * within the support of the kernel of each point, or
+   * {@link #KERNEL_CUTOFF} bandwidths for kernels without compact support.
+   * The window for each point is found by binary search so a point costs
+   * O(log n + w) for a window of w values. Points are evaluated in parallel.
+   * Values that are not finite are ignored.
+   *
+   * @param xp the xp
+   * @param sortedDist the dist, sorted in ascending order.
+   * @param bandwidth the bandwidth
+   * @param kernel the kernel
+   * @return the density at each point of xp.
+   */
+  public static double[] windowedKde(final double[] xp,
+      final double[] sortedDist,
+      final double bandwidth,
+      final Kernel kernel) {
+    final double[] ret = new double[xp.length];
+
+    // Sorting moves negative infinity to the start and positive infinity
+    // and NaN to the end
+    int lo = 0;
+    int hi = sortedDist.length;
+
+    while (lo < hi && !Mathematics.isValidNumber(sortedDist[lo])) {
+      ++lo;
+    }
+
+    while (hi > lo && !Mathematics.isValidNumber(sortedDist[hi - 1])) {
+      --hi;
+    }
+
+    if (lo == hi) {
+      return ret;
+    }
+
+    final int first = lo;
+    final int last = hi;
+    final double f = 1.0 / (bandwidth * (hi - lo));
+    final double cutoff = support(kernel) * bandwidth;
+
+    ParallelUtils.forEach(xp.length, new RangeFunction() {
+      @Override
+      public void apply(int start, int end) {
+        for (int i = start; i < end; ++i) {
+          double x = xp[i];
+
+          int s = lowerBound(sortedDist, first, last, x - cutoff);
+          int e = upperBound(sortedDist, s, last, x + cutoff);
+
+          double sum = 0;
+
+          for (int j = s; j < e; ++j) {
+            sum += kernel.evaluate((x - sortedDist[j]) / bandwidth);
+          }
+
+          ret[i] = f * sum;
+        }
+      }
+    });
+
+    return ret;
+  }
+
+  /**
+   * Returns the number of bandwidths either side of a value that a kernel
+   * needs to be evaluated over.
+   *
+   * @param kernel the kernel
+   * @return the support
+   */
+  private static double support(Kernel kernel) {
+    if (kernel instanceof CompactKernel) {
+      return ((CompactKernel) kernel).getSupport();
+    } else {
+      return KERNEL_CUTOFF;
+    }
+  }
+
+  /**
+   * Returns the index of the first value in a sorted range that is greater
+   * than or equal to v.
+   *
+   * @param values the values
+   * @param start the start of the range (inclusive).
+   * @param end the end of the range (exclusive).
+   * @param v the v
+   * @return the index, or end if all values are less than v.
+   */
+  private static int lowerBound(double[] values, int start, int end, double v) {
+    while (start < end) {
+      int mid = (start + end) >>> 1;
+
+      if (values[mid] < v) {
+        start = mid + 1;
+      } else {
+        end = mid;
+      }
+    }
+
+    return start;
+  }
+
+  /**
+   * Returns the index of the first value in a sorted range that is greater
+   * than v.
+   *
+   * @param values the values
+   * @param start the start of the range (inclusive).
+   * @param end the end of the range (exclusive).
+   * @param v the v
+   * @return the index, or end if no value is greater than v.
+   */
+  private static int upperBound(double[] values, int start, int end, double v) {
+    while (start < end) {
+      int mid = (start + end) >>> 1;
+
+      if (values[mid] <= v) {
+        start = mid + 1;
+      } else {
+        end = mid;
+      }
+    }
+
+    return start;
+  }
+
+  /**
+   * The Kernel Density estimator (KDE). Values that are not finite are
+   * ignored.
    *
    * @param x the x
    * @param dist the dist
@@ -300,22 +582,27 @@ public abstract class KernelDensity {
       double[] dist,
       double bandwidth,
       Kernel kernel) {
-    double n = dist.length;
-
-    double f = 1.0 / (bandwidth * n);
+    int n = 0;
 
     double sum = 0;
 
     // System.err.println("kde " + x + " " + dist);
 
     for (double xi : dist) {
-      sum += kernel.evaluate((x - xi) / bandwidth);
+      if (Mathematics.isValidNumber(xi)) {
+        sum += kernel.evaluate((x - xi) / bandwidth);
+        ++n;
+      }
     }
 
     // System.err.println("kde " + x + " " + Arrays.toString(dist) + " " +
     // bandwidth);
 
-    return f * sum;
+    if (n == 0) {
+      return 0;
+    }
+
+    return sum / (bandwidth * n);
   }
 
 }
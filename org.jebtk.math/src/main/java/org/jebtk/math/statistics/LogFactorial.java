@@ -0,0 +1,281 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.math.statistics;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Shared table of log factorials. The table grows on demand and can be used
+ * from any number of threads without locking. Small values are computed by
+ * summing logs and larger ones from Stirling's series, which is accurate to
+ * double precision there and does not accumulate rounding error. Beyond the
+ * maximum table size values are computed directly from the series.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class LogFactorial {
+
+  /** The initial size of the table. */
+  private static final int INITIAL_SIZE = 1024;
+
+  /**
+   * The largest table that will be created (8Mb). Larger values are not
+   * cached.
+   */
+  public static final int MAX_TABLE_SIZE = 1 << 20;
+
+  /**
+   * Values from here on are computed with Stirling's series, whose truncation
+   * error is below 1e-20 for n >= 256.
+   */
+  private static final int STIRLING_CUTOFF = 256;
+
+  /**
+   * Non integer log gamma values are shifted up to at least this before the
+   * Stirling series is used.
+   */
+  private static final double GAMMA_SHIFT = 16;
+
+  /** 0.5 * log(2 pi). */
+  private static final double HALF_LOG_2_PI = 0.5 * Math.log(2 * Math.PI);
+
+  /**
+   * The table, where entry n is log n!. Replaced by a larger copy when it
+   * needs to grow so readers always see a fully populated array.
+   */
+  private static final AtomicReference<double[]> TABLE =
+      new AtomicReference<double[]>(create(INITIAL_SIZE));
+
+  /**
+   * Instantiates a new log factorial.
+   */
+  private LogFactorial() {
+    // Do nothing
+  }
+
+  /**
+   * Returns log n!.
+   *
+   * @param n a non negative integer.
+   * @return log n!
+   */
+  public static double logFactorial(int n) {
+    if (n < 0) {
+      throw new IllegalArgumentException(n + " must be non negative.");
+    }
+
+    double[] table = TABLE.get();
+
+    if (n < table.length) {
+      return table[n];
+    }
+
+    if (n >= MAX_TABLE_SIZE) {
+      return stirling(n);
+    }
+
+    return grow(n)[n];
+  }
+
+  /**
+   * Returns log gamma(n) = log (n - 1)!.
+   *
+   * @param n a positive integer.
+   * @return log gamma(n)
+   */
+  public static double logGamma(int n) {
+    return logFactorial(n - 1);
+  }
+
+  /**
+   * Returns log gamma(x) for a positive real x. Small integers are looked up
+   * in the table; other values use the recurrence gamma(x + 1) = x gamma(x)
+   * to shift x into the range where Stirling's series is accurate. Large
+   * integers use the series directly so that they do not grow the table.
+   *
+   * @param x a positive number.
+   * @return log gamma(x), or NaN if x is not positive.
+   */
+  public static double logGamma(double x) {
+    if (!(x > 0)) {
+      return Double.NaN;
+    }
+
+    if (x == Math.rint(x) && x <= STIRLING_CUTOFF) {
+      return logFactorial((int) x - 1);
+    }
+
+    if (Double.isInfinite(x)) {
+      return x;
+    }
+
+    double shift = 0;
+
+    if (x < GAMMA_SHIFT) {
+      double p = 1;
+
+      while (x < GAMMA_SHIFT) {
+        p *= x;
+        x += 1;
+      }
+
+      shift = Math.log(p);
+    }
+
+    return (x - 0.5) * Math.log(x) - x + HALF_LOG_2_PI
+        + gammaCorrection(x) - shift;
+  }
+
+  /**
+   * The remainder of Stirling's series for log gamma(x), i.e. log gamma(x) -
+   * ((x - 0.5) log x - x + 0.5 log(2 pi)). The truncation error is about
+   * 1e-16 for x >= 16.
+   *
+   * @param x the x
+   * @return the correction
+   */
+  static double gammaCorrection(double x) {
+    double r = 1.0 / x;
+    double r2 = r * r;
+
+    return r * (1.0 / 12 - r2 * (1.0 / 360
+        - r2 * (1.0 / 1260 - r2 * (1.0 / 1680 - r2 / 1188))));
+  }
+
+  /**
+   * Returns the log of the binomial coefficient n choose k.
+   *
+   * @param n the n
+   * @param k the k
+   * @return log (n choose k), or negative infinity if k is not between 0 and
+   *         n.
+   */
+  public static double logBinomial(int n, int k) {
+    if (k < 0 || k > n) {
+      return Double.NEGATIVE_INFINITY;
+    }
+
+    return logFactorial(n) - logFactorial(k) - logFactorial(n - k);
+  }
+
+  /**
+   * Make sure the table holds at least log n! so that later lookups up to n
+   * never need to grow it.
+   *
+   * @param n the largest value that will be looked up.
+   */
+  public static void ensureCapacity(int n) {
+    n = Math.min(n, MAX_TABLE_SIZE - 1);
+
+    if (n >= TABLE.get().length) {
+      grow(n);
+    }
+  }
+
+  /**
+   * Grow the table to hold at least n. Threads that grow the table at the
+   * same time each build a copy and the first one to finish is kept.
+   *
+   * @param n the n
+   * @return the table
+   */
+  private static double[] grow(int n) {
+    while (true) {
+      double[] table = TABLE.get();
+
+      if (n < table.length) {
+        return table;
+      }
+
+      int size = table.length;
+
+      while (size <= n) {
+        size *= 2;
+      }
+
+      size = Math.min(size, MAX_TABLE_SIZE);
+
+      double[] ret = new double[size];
+
+      System.arraycopy(table, 0, ret, 0, table.length);
+
+      fill(ret, table.length);
+
+      if (TABLE.compareAndSet(table, ret)) {
+        return ret;
+      }
+    }
+  }
+
+  /**
+   * Create a new table.
+   *
+   * @param size the size
+   * @return the table
+   */
+  private static double[] create(int size) {
+    double[] ret = new double[size];
+
+    fill(ret, 1);
+
+    return ret;
+  }
+
+  /**
+   * Fill in the table from a given index.
+   *
+   * @param table the table
+   * @param start the first index to fill.
+   */
+  private static void fill(double[] table, int start) {
+    int end = Math.min(table.length, STIRLING_CUTOFF);
+
+    for (int i = start; i < end; ++i) {
+      table[i] = table[i - 1] + Math.log(i);
+    }
+
+    for (int i = Math.max(start, end); i < table.length; ++i) {
+      table[i] = stirling(i);
+    }
+  }
+
+  /**
+   * Stirling's series for log n!.
+   *
+   * @param n the n
+   * @return log n!
+   */
+  private static double stirling(double n) {
+    double r = 1.0 / n;
+    double r2 = r * r;
+
+    return (n + 0.5) * Math.log(n) - n + HALF_LOG_2_PI
+        + r * (1.0 / 12 - r2 * (1.0 / 360 - r2 * (1.0 / 1260 - r2 / 1680)));
+  }
+}
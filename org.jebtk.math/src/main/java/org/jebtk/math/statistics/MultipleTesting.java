@@ -0,0 +1,336 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.math.statistics;
+
+import java.util.Arrays;
+
+/**
+ * Multiple testing corrections on arrays of p-values. Adjusted values are
+ * written into a buffer supplied by the caller, which may be the p-value
+ * array itself. NaN and infinite p-values are not counted as tests and are
+ * copied to the output unchanged. Adjusted values are capped at 1.
+ * 
+ * Corrections that depend on rank sort the p-values once. Each p-value is
+ * packed with its index into a long so the order can be found with a
+ * parallel primitive sort, and the adjustment is then a single pass over the
+ * sorted order.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class MultipleTesting {
+
+  /** The default lambda for estimating the proportion of true nulls. */
+  public static final double DEFAULT_LAMBDA = 0.5;
+
+  /** Mask for the index in a packed key. */
+  private static final long INDEX_MASK = 0xFFFFFFFFL;
+
+  /**
+   * Instantiates a new multiple testing.
+   */
+  private MultipleTesting() {
+    // Do nothing
+  }
+
+  /**
+   * Adjust p-values using a given method.
+   *
+   * @param p the p-values
+   * @param type the method
+   * @param ret the adjusted p-values
+   */
+  public static void adjust(final double[] p, FDRType type, double[] ret) {
+    switch (type) {
+    case BENJAMINI_HOCHBERG:
+      benjaminiHochberg(p, ret);
+      break;
+    case BENJAMINI_YEKUTIELI:
+      benjaminiYekutieli(p, ret);
+      break;
+    case BONFERRONI:
+      bonferroni(p, ret);
+      break;
+    case HOLM:
+      holm(p, ret);
+      break;
+    case STOREY:
+      storey(p, DEFAULT_LAMBDA, ret);
+      break;
+    default:
+      System.arraycopy(p, 0, ret, 0, p.length);
+      break;
+    }
+  }
+
+  /**
+   * Bonferroni correction, p * m.
+   *
+   * @param p the p-values
+   * @param ret the adjusted p-values
+   */
+  public static void bonferroni(final double[] p, double[] ret) {
+    int m = countValid(p);
+
+    for (int i = 0; i < p.length; ++i) {
+      ret[i] = isValid(p[i]) ? Math.min(1, p[i] * m) : p[i];
+    }
+  }
+
+  /**
+   * Holm's step down correction. The i-th smallest p-value is multiplied by
+   * m - i + 1 and the results are made non decreasing in rank.
+   *
+   * @param p the p-values
+   * @param ret the adjusted p-values
+   */
+  public static void holm(final double[] p, double[] ret) {
+    long[] keys = sort(p, ret);
+
+    int m = keys.length;
+
+    double max = 0;
+
+    for (int i = 0; i < m; ++i) {
+      int index = index(keys[i]);
+
+      max = Math.max(max, Math.min(1, (m - i) * p[index]));
+
+      ret[index] = max;
+    }
+  }
+
+  /**
+   * Benjamini-Hochberg false discovery rate.
+   *
+   * @param p the p-values
+   * @param ret the adjusted p-values
+   */
+  public static void benjaminiHochberg(final double[] p, double[] ret) {
+    stepUp(p, 1, ret);
+  }
+
+  /**
+   * Benjamini-Yekutieli false discovery rate, which is valid under any
+   * dependence between the tests.
+   *
+   * @param p the p-values
+   * @param ret the adjusted p-values
+   */
+  public static void benjaminiYekutieli(final double[] p, double[] ret) {
+    int m = countValid(p);
+
+    double c = 0;
+
+    for (int i = 1; i <= m; ++i) {
+      c += 1.0 / i;
+    }
+
+    stepUp(p, c, ret);
+  }
+
+  /**
+   * Storey's q-values. The Benjamini-Hochberg values are scaled by an
+   * estimate of the proportion of true null hypotheses, pi0 = #{p >= lambda}
+   * / (m * (1 - lambda)), as in the qvalue package with a fixed lambda.
+   *
+   * @param p the p-values
+   * @param lambda the lambda, usually 0.5.
+   * @param ret the q-values
+   */
+  public static void storey(final double[] p, double lambda, double[] ret) {
+    stepUp(p, pi0(p, lambda), ret);
+  }
+
+  /**
+   * Estimate the proportion of true null hypotheses from the p-values at or
+   * above lambda.
+   *
+   * @param p the p-values
+   * @param lambda the lambda
+   * @return pi0, between 0 and 1.
+   */
+  public static double pi0(final double[] p, double lambda) {
+    int m = 0;
+    int above = 0;
+
+    for (double v : p) {
+      if (isValid(v)) {
+        ++m;
+
+        if (v >= lambda) {
+          ++above;
+        }
+      }
+    }
+
+    if (m == 0) {
+      return 1;
+    }
+
+    return Math.min(1, above / (m * (1 - lambda)));
+  }
+
+  /**
+   * Step up adjustment, the running minimum from the largest p-value down of
+   * factor * p * m / i.
+   *
+   * @param p the p-values
+   * @param factor the factor
+   * @param ret the adjusted p-values
+   */
+  private static void stepUp(final double[] p, double factor, double[] ret) {
+    long[] keys = sort(p, ret);
+
+    int m = keys.length;
+
+    double f = factor * m;
+
+    double min = 1;
+
+    for (int i = m - 1; i >= 0; --i) {
+      int index = index(keys[i]);
+
+      min = Math.min(min, f * p[index] / (i + 1));
+
+      ret[index] = min;
+    }
+  }
+
+  /**
+   * Sort the valid p-values and copy the invalid ones to the output.
+   *
+   * @param p the p-values
+   * @param ret the output, which receives the invalid values.
+   * @return the packed keys of the valid p-values in ascending order.
+   */
+  private static long[] sort(final double[] p, double[] ret) {
+    long[] keys = new long[countValid(p)];
+
+    int m = 0;
+
+    for (int i = 0; i < p.length; ++i) {
+      if (isValid(p[i])) {
+        keys[m++] = pack(p[i], i);
+      } else {
+        ret[i] = p[i];
+      }
+    }
+
+    Arrays.parallelSort(keys);
+
+    // Keys only hold the top half of each p-value so values that differ
+    // in the lower bits may be out of order. Such runs are short so fix
+    // them with an insertion sort on the full values.
+    int s = 0;
+
+    while (s < m) {
+      int e = s + 1;
+
+      long high = keys[s] >>> 32;
+
+      while (e < m && keys[e] >>> 32 == high) {
+        ++e;
+      }
+
+      if (e - s > 1) {
+        for (int i = s + 1; i < e; ++i) {
+          long k = keys[i];
+          double v = p[index(k)];
+
+          int j = i - 1;
+
+          while (j >= s && p[index(keys[j])] > v) {
+            keys[j + 1] = keys[j];
+            --j;
+          }
+
+          keys[j + 1] = k;
+        }
+      }
+
+      s = e;
+    }
+
+    return keys;
+  }
+
+  /**
+   * Pack the upper 32 bits of a p-value with its index. For non negative
+   * doubles the bits increase with the value so the keys sort by p-value
+   * and then by index.
+   *
+   * @param p the p
+   * @param index the index
+   * @return the key
+   */
+  private static long pack(double p, int index) {
+    // Adding 0 turns -0 into 0 and negative values are treated as 0
+    long bits = Double.doubleToLongBits(Math.max(0, p) + 0.0);
+
+    return (bits & ~INDEX_MASK) | index;
+  }
+
+  /**
+   * Unpack the index from a key.
+   *
+   * @param key the key
+   * @return the index
+   */
+  private static int index(long key) {
+    return (int) (key & INDEX_MASK);
+  }
+
+  /**
+   * Count the p-values that are numbers.
+   *
+   * @param p the p
+   * @return the count
+   */
+  private static int countValid(final double[] p) {
+    int ret = 0;
+
+    for (double v : p) {
+      if (isValid(v)) {
+        ++ret;
+      }
+    }
+
+    return ret;
+  }
+
+  /**
+   * Checks if a p-value is a number.
+   *
+   * @param p the p
+   * @return true, if is valid
+   */
+  private static boolean isValid(double p) {
+    return !Double.isNaN(p) && !Double.isInfinite(p);
+  }
+}
@@ -67,6 +67,16 @@ public class NormKernelDensity extends KernelDensity {
     super(dist, KERNEL);
   }
 
+  /**
+   * Instantiates a new norm kernel density.
+   *
+   * @param dist the dist
+   * @param method how to evaluate the estimate.
+   */
+  public NormKernelDensity(double[] dist, KernelDensityMethod method) {
+    super(dist, KERNEL, method);
+  }
+
   /**
    * Bandwidth estimate. See
    * https://en.wikipedia.org/wiki/Kernel_density_estimation
@@ -107,4 +117,4 @@ public class NormKernelDensity extends KernelDensity {
       return 1;
     }
   }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,372 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.math.statistics;
+
+import java.util.Arrays;
+
+/**
+ * Percentiles, medians, MAD and IQR computed by selection rather than by
+ * sorting, which takes O(n) rather than O(n log n) time. Methods that take a
+ * scratch buffer copy the values into it, dropping NaNs, and leave the input
+ * untouched. The buffer can be reused between calls to avoid allocation, or
+ * can be the input array itself if it may be reordered. If the buffer is null
+ * or too small a new one is allocated. Percentiles use the same definition as
+ * {@link Statistics#percentile(double[], int)}.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class Percentiles {
+
+  /**
+   * Instantiates a new percentiles.
+   */
+  private Percentiles() {
+    // Do nothing
+  }
+
+  /**
+   * Returns the median of the values.
+   *
+   * @param values the values
+   * @param scratch the scratch buffer
+   * @return the median or NaN if there are no values.
+   */
+  public static double median(final double[] values, double[] scratch) {
+    return percentile(values, 50, scratch);
+  }
+
+  /**
+   * Returns a percentile of the values.
+   *
+   * @param values the values
+   * @param percentile the percentile between 0 and 100.
+   * @param scratch the scratch buffer
+   * @return the percentile or NaN if there are no values.
+   */
+  public static double percentile(final double[] values,
+      double percentile,
+      double[] scratch) {
+    double[] a = buffer(values, scratch);
+
+    return percentile(a, 0, copyValid(values, a), percentile);
+  }
+
+  /**
+   * Calculate several percentiles of the values together. Each selection
+   * only needs to search the part of the buffer left unordered by the
+   * previous one so this is cheaper than calculating them separately.
+   *
+   * @param values the values
+   * @param percentiles the percentiles between 0 and 100.
+   * @param scratch the scratch buffer
+   * @return the percentiles, NaN if there are no values.
+   */
+  public static double[] percentiles(final double[] values,
+      final double[] percentiles,
+      double[] scratch) {
+    double[] a = buffer(values, scratch);
+
+    double[] ret = new double[percentiles.length];
+
+    percentiles(a, 0, copyValid(values, a), percentiles, ret);
+
+    return ret;
+  }
+
+  /**
+   * Returns the inter-quartile range of the values.
+   *
+   * @param values the values
+   * @param scratch the scratch buffer
+   * @return the IQR or NaN if there are no values.
+   */
+  public static double iqr(final double[] values, double[] scratch) {
+    double[] a = buffer(values, scratch);
+
+    double[] q = new double[2];
+
+    percentiles(a, 0, copyValid(values, a), new double[] { 25, 75 }, q);
+
+    return q[1] - q[0];
+  }
+
+  /**
+   * Returns the median absolute deviation of the values.
+   *
+   * @param values the values
+   * @param scratch the scratch buffer
+   * @return the MAD or NaN if there are no values.
+   */
+  public static double mad(final double[] values, double[] scratch) {
+    double[] a = buffer(values, scratch);
+
+    int n = copyValid(values, a);
+
+    double m = percentile(a, 0, n, 50);
+
+    // The buffer now holds the valid values in a different order, which is
+    // all we need for the deviations
+    for (int i = 0; i < n; ++i) {
+      a[i] = Math.abs(a[i] - m);
+    }
+
+    return percentile(a, 0, n, 50);
+  }
+
+  /**
+   * Returns a percentile of a range of an array, reordering the range. The
+   * range must not contain NaNs.
+   *
+   * @param a the array
+   * @param from the start of the range (inclusive).
+   * @param to the end of the range (exclusive).
+   * @param percentile the percentile between 0 and 100.
+   * @return the percentile or NaN if the range is empty.
+   */
+  public static double percentile(double[] a,
+      int from,
+      int to,
+      double percentile) {
+    double[] ret = new double[1];
+
+    percentiles(a, from, to, new double[] { percentile }, ret);
+
+    return ret[0];
+  }
+
+  /**
+   * Calculate several percentiles of a range of an array, reordering the
+   * range. The range must not contain NaNs.
+   *
+   * @param a the array
+   * @param from the start of the range (inclusive).
+   * @param to the end of the range (exclusive).
+   * @param percentiles the percentiles between 0 and 100.
+   * @param ret array to write the percentiles to.
+   */
+  public static void percentiles(double[] a,
+      int from,
+      int to,
+      final double[] percentiles,
+      double[] ret) {
+    int n = to - from;
+
+    if (n == 0) {
+      Arrays.fill(ret, 0, percentiles.length, Double.NaN);
+      return;
+    }
+
+    // Each percentile interpolates between the values of rank i and i + 1 so
+    // work out which ranks are needed and select them in ascending order.
+    // Once rank k is in place, everything after it is at least as large so
+    // the next selection only needs to search from k + 1.
+
+    int[] ranks = new int[percentiles.length * 2];
+
+    for (int i = 0; i < percentiles.length; ++i) {
+      int r = lowerRank(percentiles[i], n);
+
+      ranks[2 * i] = r;
+      ranks[2 * i + 1] = Math.min(r + 1, n - 1);
+    }
+
+    Arrays.sort(ranks);
+
+    int start = from;
+
+    for (int r : ranks) {
+      int k = from + r;
+
+      if (k >= start) {
+        select(a, start, to, k);
+
+        start = k + 1;
+      }
+    }
+
+    for (int i = 0; i < percentiles.length; ++i) {
+      double rank = percentiles[i] * (n + 1) / 100.0;
+
+      int r = lowerRank(percentiles[i], n);
+
+      double lower = a[from + r];
+
+      if (rank < 1 || rank >= n) {
+        ret[i] = lower;
+      } else {
+        double d = rank - (int) rank;
+
+        ret[i] = lower + d * (a[from + r + 1] - lower);
+      }
+    }
+  }
+
+  /**
+   * Returns the zero based rank of the lower of the two values a percentile
+   * interpolates between.
+   *
+   * @param percentile the percentile
+   * @param n the number of values.
+   * @return the rank
+   */
+  private static int lowerRank(double percentile, int n) {
+    double rank = percentile * (n + 1) / 100.0;
+
+    if (rank < 1) {
+      return 0;
+    } else if (rank >= n) {
+      return n - 1;
+    } else {
+      return (int) rank - 1;
+    }
+  }
+
+  /**
+   * Reorder a range of an array so that the value at index k is the one that
+   * would be there if the range were sorted, with no larger values before it
+   * and no smaller values after it. Uses quickselect with a median of three
+   * pivot and falls back to sorting if partitioning is repeatedly unbalanced,
+   * so the worst case is O(n log n).
+   *
+   * @param a the array
+   * @param from the start of the range (inclusive).
+   * @param to the end of the range (exclusive).
+   * @param k the index to select.
+   * @return the value at index k.
+   */
+  public static double select(double[] a, int from, int to, int k) {
+    int lo = from;
+    int hi = to - 1;
+
+    int depth = 2 * (32 - Integer.numberOfLeadingZeros(to - from));
+
+    while (hi > lo) {
+      if (depth-- == 0) {
+        Arrays.sort(a, lo, hi + 1);
+        break;
+      }
+
+      int mid = (lo + hi) >>> 1;
+
+      // Order the first, middle and last values and use the middle one as
+      // the pivot
+      if (a[mid] < a[lo]) {
+        swap(a, lo, mid);
+      }
+
+      if (a[hi] < a[lo]) {
+        swap(a, lo, hi);
+      }
+
+      if (a[hi] < a[mid]) {
+        swap(a, mid, hi);
+      }
+
+      double pivot = a[mid];
+
+      int i = lo;
+      int j = hi;
+
+      while (i <= j) {
+        while (a[i] < pivot) {
+          ++i;
+        }
+
+        while (a[j] > pivot) {
+          --j;
+        }
+
+        if (i <= j) {
+          swap(a, i, j);
+          ++i;
+          --j;
+        }
+      }
+
+      // Values in [lo, j] are <= pivot, values in [i, hi] are >= pivot and
+      // anything in between equals the pivot
+      if (k <= j) {
+        hi = j;
+      } else if (k >= i) {
+        lo = i;
+      } else {
+        break;
+      }
+    }
+
+    return a[k];
+  }
+
+  /**
+   * Copy the values that are not NaN to the start of a buffer.
+   *
+   * @param values the values
+   * @param buffer the buffer, which may be the values array itself.
+   * @return the number of values copied.
+   */
+  private static int copyValid(final double[] values, double[] buffer) {
+    int n = 0;
+
+    for (double v : values) {
+      if (!Double.isNaN(v)) {
+        buffer[n++] = v;
+      }
+    }
+
+    return n;
+  }
+
+  /**
+   * Returns the scratch buffer if it is large enough, otherwise a new one.
+   *
+   * @param values the values
+   * @param scratch the scratch
+   * @return the buffer
+   */
+  private static double[] buffer(final double[] values, double[] scratch) {
+    if (scratch != null && scratch.length >= values.length) {
+      return scratch;
+    } else {
+      return new double[values.length];
+    }
+  }
+
+  /**
+   * Swap two values.
+   *
+   * @param a the a
+   * @param i the i
+   * @param j the j
+   */
+  private static void swap(double[] a, int i, int j) {
+    double t = a[i];
+    a[i] = a[j];
+    a[j] = t;
+  }
+}
@@ -0,0 +1,463 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.math.statistics;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * KLL quantile sketch (Karnin, Lang and Liberty 2016). Summarizes a stream of
+ * values in memory proportional to k, independent of the number of values,
+ * so that quantiles can be estimated for data that does not fit in memory.
+ * Sketches of different parts of a data set can be merged, for example one
+ * per file or per thread, giving the same accuracy as a sketch of all the
+ * data. The rank error is roughly 1.7 / k, about 1% for the default k of 200.
+ * The minimum and maximum are exact.
+ * 
+ * Values are kept in levels where a value in level h stands for 2^h of the
+ * original values. When a level fills up it is sorted and every other value
+ * is promoted to the next level. A sketch is not thread safe.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class QuantileSketch {
+
+  /** The default k. */
+  public static final int DEFAULT_K = 200;
+
+  /** How quickly the capacities of lower levels shrink. */
+  private static final double CAPACITY_FACTOR = 2.0 / 3.0;
+
+  /** The smallest capacity of a level. */
+  private static final int MIN_CAPACITY = 2;
+
+  /** The k. */
+  private final int mK;
+
+  /** Chooses whether odd or even values are promoted. */
+  private final Random mRandom;
+
+  /** The values in each level. */
+  private double[][] mLevels = new double[0][];
+
+  /** The number of values in each level. */
+  private int[] mSizes = new int[0];
+
+  /** The number of levels. */
+  private int mH = 0;
+
+  /** The number of values held in all levels. */
+  private int mSize = 0;
+
+  /** The number of values the levels can hold before compacting. */
+  private int mMaxSize = 0;
+
+  /** The number of values summarized. */
+  private long mN = 0;
+
+  /** The m min. */
+  private double mMin = Double.POSITIVE_INFINITY;
+
+  /** The m max. */
+  private double mMax = Double.NEGATIVE_INFINITY;
+
+  /** Sorted values with their cumulative weights, built on demand. */
+  private double[] mSortedValues = null;
+
+  /** The m sorted weights. */
+  private long[] mSortedWeights = null;
+
+  /**
+   * Instantiates a new quantile sketch with the default k.
+   */
+  public QuantileSketch() {
+    this(DEFAULT_K);
+  }
+
+  /**
+   * Instantiates a new quantile sketch.
+   *
+   * @param k controls the accuracy and size of the sketch.
+   */
+  public QuantileSketch(int k) {
+    this(k, 0);
+  }
+
+  /**
+   * Instantiates a new quantile sketch.
+   *
+   * @param k controls the accuracy and size of the sketch.
+   * @param seed the seed for choosing which values to promote. Sketches that
+   *          will be merged should have different seeds.
+   */
+  public QuantileSketch(int k, long seed) {
+    if (k < MIN_CAPACITY) {
+      throw new IllegalArgumentException("k must be at least " + MIN_CAPACITY
+          + ".");
+    }
+
+    mK = k;
+    mRandom = new Random(seed);
+
+    grow();
+  }
+
+  /**
+   * Add a value to the sketch. NaNs are ignored.
+   *
+   * @param x the x
+   * @return the quantile sketch
+   */
+  public QuantileSketch add(double x) {
+    if (Double.isNaN(x)) {
+      return this;
+    }
+
+    mMin = Math.min(mMin, x);
+    mMax = Math.max(mMax, x);
+    ++mN;
+
+    append(0, x);
+
+    ++mSize;
+
+    if (mSize >= mMaxSize) {
+      compress();
+    }
+
+    mSortedValues = null;
+
+    return this;
+  }
+
+  /**
+   * Add values to the sketch. NaNs are ignored.
+   *
+   * @param values the values
+   * @return the quantile sketch
+   */
+  public QuantileSketch add(double[] values) {
+    for (double v : values) {
+      add(v);
+    }
+
+    return this;
+  }
+
+  /**
+   * Merge another sketch into this one. The other sketch is not changed.
+   *
+   * @param sketch the sketch
+   * @return the quantile sketch
+   */
+  public QuantileSketch merge(QuantileSketch sketch) {
+    if (sketch.mN == 0) {
+      return this;
+    }
+
+    while (mH < sketch.mH) {
+      grow();
+    }
+
+    for (int h = 0; h < sketch.mH; ++h) {
+      for (int i = 0; i < sketch.mSizes[h]; ++i) {
+        append(h, sketch.mLevels[h][i]);
+      }
+    }
+
+    mSize += sketch.mSize;
+    mN += sketch.mN;
+    mMin = Math.min(mMin, sketch.mMin);
+    mMax = Math.max(mMax, sketch.mMax);
+
+    while (mSize >= mMaxSize) {
+      compress();
+    }
+
+    mSortedValues = null;
+
+    return this;
+  }
+
+  /**
+   * Returns the number of values summarized.
+   *
+   * @return the n
+   */
+  public long getN() {
+    return mN;
+  }
+
+  /**
+   * Returns the smallest value seen.
+   *
+   * @return the min, or NaN if the sketch is empty.
+   */
+  public double getMin() {
+    return mN > 0 ? mMin : Double.NaN;
+  }
+
+  /**
+   * Returns the largest value seen.
+   *
+   * @return the max, or NaN if the sketch is empty.
+   */
+  public double getMax() {
+    return mN > 0 ? mMax : Double.NaN;
+  }
+
+  /**
+   * Estimate the value at a quantile.
+   *
+   * @param q the quantile between 0 and 1.
+   * @return the estimate, or NaN if the sketch is empty.
+   */
+  public double quantile(double q) {
+    if (mN == 0) {
+      return Double.NaN;
+    }
+
+    if (q <= 0) {
+      return mMin;
+    }
+
+    if (q >= 1) {
+      return mMax;
+    }
+
+    sort();
+
+    long total = mSortedWeights[mSortedWeights.length - 1];
+
+    double rank = q * total;
+
+    // First value whose cumulative weight reaches the rank
+    int l = 0;
+    int h = mSortedWeights.length - 1;
+
+    while (l < h) {
+      int mid = (l + h) >>> 1;
+
+      if (mSortedWeights[mid] < rank) {
+        l = mid + 1;
+      } else {
+        h = mid;
+      }
+    }
+
+    return mSortedValues[l];
+  }
+
+  /**
+   * Estimate the values at several quantiles.
+   *
+   * @param q the quantiles between 0 and 1.
+   * @return the estimates.
+   */
+  public double[] quantiles(double[] q) {
+    double[] ret = new double[q.length];
+
+    for (int i = 0; i < q.length; ++i) {
+      ret[i] = quantile(q[i]);
+    }
+
+    return ret;
+  }
+
+  /**
+   * Estimate the fraction of values less than or equal to x.
+   *
+   * @param x the x
+   * @return the fraction, or NaN if the sketch is empty.
+   */
+  public double cdf(double x) {
+    if (mN == 0) {
+      return Double.NaN;
+    }
+
+    sort();
+
+    // Last value <= x
+    int l = 0;
+    int h = mSortedValues.length;
+
+    while (l < h) {
+      int mid = (l + h) >>> 1;
+
+      if (mSortedValues[mid] <= x) {
+        l = mid + 1;
+      } else {
+        h = mid;
+      }
+    }
+
+    if (l == 0) {
+      return 0;
+    }
+
+    return (double) mSortedWeights[l - 1]
+        / mSortedWeights[mSortedWeights.length - 1];
+  }
+
+  /**
+   * Add a level.
+   */
+  private void grow() {
+    mLevels = Arrays.copyOf(mLevels, mH + 1);
+    mSizes = Arrays.copyOf(mSizes, mH + 1);
+    mLevels[mH] = new double[capacity(mH, mH + 1)];
+
+    ++mH;
+
+    mMaxSize = 0;
+
+    for (int h = 0; h < mH; ++h) {
+      mMaxSize += capacity(h, mH);
+    }
+  }
+
+  /**
+   * Returns the capacity of a level. Higher levels hold more values since
+   * each one stands for more of the data.
+   *
+   * @param h the level
+   * @param levels the number of levels
+   * @return the capacity
+   */
+  private int capacity(int h, int levels) {
+    int depth = levels - h - 1;
+
+    return Math.max(MIN_CAPACITY,
+        (int) Math.ceil(mK * Math.pow(CAPACITY_FACTOR, depth)));
+  }
+
+  /**
+   * Append a value to a level.
+   *
+   * @param h the level
+   * @param x the x
+   */
+  private void append(int h, double x) {
+    if (mSizes[h] == mLevels[h].length) {
+      mLevels[h] = Arrays.copyOf(mLevels[h], Math.max(MIN_CAPACITY,
+          mLevels[h].length * 2));
+    }
+
+    mLevels[h][mSizes[h]++] = x;
+  }
+
+  /**
+   * Compact the lowest level that is over capacity by promoting every other
+   * value to the level above.
+   */
+  private void compress() {
+    for (int h = 0; h < mH; ++h) {
+      if (mSizes[h] >= capacity(h, mH)) {
+        if (h + 1 >= mH) {
+          grow();
+        }
+
+        double[] level = mLevels[h];
+        int n = mSizes[h];
+
+        Arrays.sort(level, 0, n);
+
+        // Keep the largest value back if there is an odd number so that
+        // pairs are compacted
+        int pairs = n / 2;
+        int offset = mRandom.nextBoolean() ? 1 : 0;
+
+        for (int i = 0; i < pairs; ++i) {
+          append(h + 1, level[2 * i + offset]);
+        }
+
+        if (n % 2 == 1) {
+          level[0] = level[n - 1];
+          mSizes[h] = 1;
+        } else {
+          mSizes[h] = 0;
+        }
+
+        mSize -= pairs;
+
+        return;
+      }
+    }
+  }
+
+  /**
+   * Build the sorted values with cumulative weights.
+   */
+  private void sort() {
+    if (mSortedValues != null) {
+      return;
+    }
+
+    double[] values = new double[0];
+    long[] weights = new long[0];
+
+    // Merge the sorted levels one at a time
+    for (int h = 0; h < mH; ++h) {
+      int n = mSizes[h];
+
+      double[] level = Arrays.copyOf(mLevels[h], n);
+
+      Arrays.sort(level);
+
+      long w = 1L << h;
+
+      double[] mv = new double[values.length + n];
+      long[] mw = new long[values.length + n];
+
+      int i = 0;
+      int j = 0;
+      int k = 0;
+
+      while (i < values.length || j < n) {
+        if (j == n || (i < values.length && values[i] <= level[j])) {
+          mv[k] = values[i];
+          mw[k++] = weights[i++];
+        } else {
+          mv[k] = level[j++];
+          mw[k++] = w;
+        }
+      }
+
+      values = mv;
+      weights = mw;
+    }
+
+    for (int i = 1; i < weights.length; ++i) {
+      weights[i] += weights[i - 1];
+    }
+
+    mSortedValues = values;
+    mSortedWeights = weights;
+  }
+}
@@ -0,0 +1,391 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.math.statistics;
+
+import org.jebtk.math.ParallelUtils;
+import org.jebtk.math.RangeFunction;
+
+/**
+ * Ranks values held in primitive arrays. Values are sorted together with
+ * their indices using a merge sort on primitive arrays so nothing is boxed.
+ * Ranks are one based and NaN values are not ranked; their rank is NaN.
+ * Ranks are written into arrays supplied by the caller and whole matrices
+ * can be ranked row by row or column by column in parallel.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class Ranks {
+
+  /** Runs up to this length are sorted by insertion sort. */
+  private static final int INSERTION_SORT_SIZE = 16;
+
+  /**
+   * Working space for sorting n values and their indices.
+   */
+  private static class Buffers {
+
+    /** The keys. */
+    private double[] mKeys;
+
+    /** The indices. */
+    private int[] mIndex;
+
+    /** Merge space for the keys. */
+    private double[] mKeysTmp;
+
+    /** Merge space for the indices. */
+    private int[] mIndexTmp;
+
+    /**
+     * Instantiates a new buffers.
+     *
+     * @param n the n
+     */
+    public Buffers(int n) {
+      mKeys = new double[n];
+      mIndex = new int[n];
+      mKeysTmp = new double[n];
+      mIndexTmp = new int[n];
+    }
+  }
+
+  /**
+   * Instantiates a new ranks.
+   */
+  private Ranks() {
+    // Do nothing
+  }
+
+  /**
+   * Rank values.
+   *
+   * @param values the values
+   * @param ties how to rank ties.
+   * @return the ranks
+   */
+  public static double[] rank(final double[] values, TieMethod ties) {
+    double[] ret = new double[values.length];
+
+    rank(values, ties, ret);
+
+    return ret;
+  }
+
+  /**
+   * Rank values, writing the ranks into a buffer.
+   *
+   * @param values the values
+   * @param ties how to rank ties.
+   * @param ret array of at least the same length as values for the ranks.
+   */
+  public static void rank(final double[] values,
+      TieMethod ties,
+      double[] ret) {
+    rank(values, 0, 1, values.length, ties, ret, new Buffers(values.length));
+  }
+
+  /**
+   * Rank each row of a row major matrix in parallel.
+   *
+   * @param data the data
+   * @param rows the rows
+   * @param cols the cols
+   * @param ties how to rank ties.
+   * @param ret array the same size as data for the ranks, which may be data
+   *          itself.
+   */
+  public static void rankRows(final double[] data,
+      int rows,
+      final int cols,
+      final TieMethod ties,
+      final double[] ret) {
+    ParallelUtils.forEach(rows, new RangeFunction() {
+      @Override
+      public void apply(int start, int end) {
+        Buffers buffers = new Buffers(cols);
+
+        for (int i = start; i < end; ++i) {
+          rank(data, i * cols, 1, cols, ties, ret, buffers);
+        }
+      }
+    });
+  }
+
+  /**
+   * Rank each column of a row major matrix in parallel.
+   *
+   * @param data the data
+   * @param rows the rows
+   * @param cols the cols
+   * @param ties how to rank ties.
+   * @param ret array the same size as data for the ranks, which may be data
+   *          itself.
+   */
+  public static void rankColumns(final double[] data,
+      final int rows,
+      final int cols,
+      final TieMethod ties,
+      final double[] ret) {
+    ParallelUtils.forEach(cols, new RangeFunction() {
+      @Override
+      public void apply(int start, int end) {
+        Buffers buffers = new Buffers(rows);
+
+        for (int i = start; i < end; ++i) {
+          rank(data, i, cols, rows, ties, ret, buffers);
+        }
+      }
+    });
+  }
+
+  /**
+   * Find the order that sorts values into ascending order. NaNs are not
+   * sorted.
+   *
+   * @param values the values
+   * @param index array of at least the same length as values to write the
+   *          indices of the non NaN values to, in ascending order of value.
+   * @return the number of values that are not NaN, i.e. the number of
+   *         indices written.
+   */
+  public static int argsort(final double[] values, int[] index) {
+    return argsort(values, 0, 1, values.length, index);
+  }
+
+  /**
+   * Find the order that sorts n values stored in an array with a given
+   * offset and stride, such as a column of a row major matrix. NaNs are not
+   * sorted.
+   *
+   * @param values the values
+   * @param offset the index of the first value.
+   * @param stride the distance between values.
+   * @param n the number of values.
+   * @param index array of at least n to write the positions (0 to n - 1) of
+   *          the non NaN values to, in ascending order of value.
+   * @return the number of values that are not NaN.
+   */
+  public static int argsort(final double[] values,
+      int offset,
+      int stride,
+      int n,
+      int[] index) {
+    Buffers buffers = new Buffers(n);
+
+    int m = sort(values, offset, stride, n, buffers);
+
+    System.arraycopy(buffers.mIndex, 0, index, 0, m);
+
+    return m;
+  }
+
+  /**
+   * Rank n values stored with a given offset and stride, writing the ranks
+   * to the same positions in ret.
+   *
+   * @param values the values
+   * @param offset the offset
+   * @param stride the stride
+   * @param n the n
+   * @param ties the ties
+   * @param ret the ret
+   * @param buffers the buffers
+   */
+  private static void rank(final double[] values,
+      int offset,
+      int stride,
+      int n,
+      TieMethod ties,
+      double[] ret,
+      Buffers buffers) {
+    int m = sort(values, offset, stride, n, buffers);
+
+    double[] keys = buffers.mKeys;
+    int[] index = buffers.mIndex;
+
+    if (m < n) {
+      // Marking NaNs is safe even if ret is the values array since only
+      // positions that are already NaN are written
+      for (int i = 0; i < n; ++i) {
+        int p = offset + i * stride;
+
+        if (Double.isNaN(values[p])) {
+          ret[p] = Double.NaN;
+        }
+      }
+    }
+
+    int dense = 0;
+
+    for (int s = 0; s < m;) {
+      // Find the block of tied values
+      int e = s + 1;
+
+      while (e < m && keys[e] == keys[s]) {
+        ++e;
+      }
+
+      ++dense;
+
+      double r;
+
+      switch (ties) {
+      case MIN:
+        r = s + 1;
+        break;
+      case MAX:
+        r = e;
+        break;
+      case DENSE:
+        r = dense;
+        break;
+      default:
+        // Mean of s + 1 to e
+        r = 0.5 * (s + 1 + e);
+        break;
+      }
+
+      for (int i = s; i < e; ++i) {
+        ret[offset + index[i] * stride] = r;
+      }
+
+      s = e;
+    }
+  }
+
+  /**
+   * Copy the non NaN values and their positions into the buffers and sort
+   * them.
+   *
+   * @param values the values
+   * @param offset the offset
+   * @param stride the stride
+   * @param n the n
+   * @param buffers the buffers
+   * @return the number of values sorted.
+   */
+  private static int sort(final double[] values,
+      int offset,
+      int stride,
+      int n,
+      Buffers buffers) {
+    double[] keys = buffers.mKeys;
+    int[] index = buffers.mIndex;
+
+    int m = 0;
+
+    for (int i = 0; i < n; ++i) {
+      double v = values[offset + i * stride];
+
+      if (!Double.isNaN(v)) {
+        keys[m] = v;
+        index[m] = i;
+        ++m;
+      }
+    }
+
+    mergeSort(buffers, m);
+
+    return m;
+  }
+
+  /**
+   * Sort the first n keys and indices in the buffers into ascending order of
+   * key. The sort is stable so tied values keep their original order.
+   *
+   * @param buffers the buffers
+   * @param n the n
+   */
+  private static void mergeSort(Buffers buffers, int n) {
+    double[] keys = buffers.mKeys;
+    int[] index = buffers.mIndex;
+
+    // Sort short runs in place
+    for (int s = 0; s < n; s += INSERTION_SORT_SIZE) {
+      int e = Math.min(s + INSERTION_SORT_SIZE, n);
+
+      for (int i = s + 1; i < e; ++i) {
+        double k = keys[i];
+        int x = index[i];
+
+        int j = i - 1;
+
+        while (j >= s && keys[j] > k) {
+          keys[j + 1] = keys[j];
+          index[j + 1] = index[j];
+          --j;
+        }
+
+        keys[j + 1] = k;
+        index[j + 1] = x;
+      }
+    }
+
+    // Merge runs back and forth between the arrays and the temporary
+    // arrays
+    double[] fromKeys = keys;
+    int[] fromIndex = index;
+    double[] toKeys = buffers.mKeysTmp;
+    int[] toIndex = buffers.mIndexTmp;
+
+    for (int width = INSERTION_SORT_SIZE; width < n; width *= 2) {
+      for (int s = 0; s < n; s += 2 * width) {
+        int mid = Math.min(s + width, n);
+        int e = Math.min(s + 2 * width, n);
+
+        int i = s;
+        int j = mid;
+
+        for (int k = s; k < e; ++k) {
+          if (j >= e || (i < mid && fromKeys[i] <= fromKeys[j])) {
+            toKeys[k] = fromKeys[i];
+            toIndex[k] = fromIndex[i++];
+          } else {
+            toKeys[k] = fromKeys[j];
+            toIndex[k] = fromIndex[j++];
+          }
+        }
+      }
+
+      double[] tk = fromKeys;
+      fromKeys = toKeys;
+      toKeys = tk;
+
+      int[] ti = fromIndex;
+      fromIndex = toIndex;
+      toIndex = ti;
+    }
+
+    // Make sure the sorted values end up in the main buffers
+    if (fromKeys != keys) {
+      System.arraycopy(fromKeys, 0, keys, 0, n);
+      System.arraycopy(fromIndex, 0, index, 0, n);
+    }
+  }
+}
@@ -0,0 +1,326 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.math.statistics;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.math3.special.Erf;
+import org.jebtk.math.ParallelUtils;
+import org.jebtk.math.RangeFunction;
+
+/**
+ * Mann-Whitney U tests on every row of a matrix at once. Each block of rows
+ * reuses the same buffers: the two groups are sorted separately and ranked by
+ * merging them, which also finds tied values. Missing (NaN) values are
+ * ignored.
+ * 
+ * When there are no ties and the groups are small enough, p-values are
+ * calculated from the exact distribution of U. Otherwise the normal
+ * approximation with the variance corrected for ties is used.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class RowMannWhitney {
+
+  /**
+   * Use the exact distribution when the groups have at most this many values
+   * combined. The number of arrangements of 50 values stays below 2^53 so
+   * the counts are exact in double precision.
+   */
+  public static final int MAX_EXACT_SIZE = 50;
+
+  /** The U statistics. */
+  private final double[] mU;
+
+  /** The two tailed p-values. */
+  private final double[] mP;
+
+  /**
+   * Instantiates a new row mann whitney.
+   *
+   * @param rows the rows
+   */
+  private RowMannWhitney(int rows) {
+    mU = new double[rows];
+    mP = new double[rows];
+  }
+
+  /**
+   * Returns the U statistic of the first group of each row, i.e. the number
+   * of pairs in which the value from the first group is larger, counting ties
+   * as a half.
+   *
+   * @return the u
+   */
+  public double[] getU() {
+    return mU;
+  }
+
+  /**
+   * Returns the two tailed p-value of each row. Rows where either group has
+   * no values have a p-value of NaN.
+   *
+   * @return the p
+   */
+  public double[] getP() {
+    return mP;
+  }
+
+  /**
+   * Test each row of a matrix.
+   *
+   * @param data the matrix values stored row major.
+   * @param rows the number of rows.
+   * @param cols the number of columns.
+   * @param g1 the columns in the first group.
+   * @param g2 the columns in the second group.
+   * @return the results
+   */
+  public static RowMannWhitney test(final double[] data,
+      int rows,
+      final int cols,
+      final int[] g1,
+      final int[] g2) {
+    final RowMannWhitney ret = new RowMannWhitney(rows);
+
+    ParallelUtils.forEach(rows, new RangeFunction() {
+      @Override
+      public void apply(int start, int end) {
+        double[] a = new double[g1.length];
+        double[] b = new double[g2.length];
+
+        // Exact distributions are shared by rows with the same group sizes
+        Map<Integer, double[]> exact = new HashMap<Integer, double[]>();
+
+        for (int i = start; i < end; ++i) {
+          int o = i * cols;
+
+          int n1 = copy(data, o, g1, a);
+          int n2 = copy(data, o, g2, b);
+
+          if (n1 == 0 || n2 == 0) {
+            ret.mU[i] = Double.NaN;
+            ret.mP[i] = Double.NaN;
+            continue;
+          }
+
+          Arrays.sort(a, 0, n1);
+          Arrays.sort(b, 0, n2);
+
+          // Merge the sorted groups to find the rank sum of the first
+          // group and the tie correction
+
+          double r1 = 0;
+          double ties = 0;
+          int pos = 0;
+          int ia = 0;
+          int ib = 0;
+
+          while (ia < n1 || ib < n2) {
+            double v;
+
+            if (ib == n2 || (ia < n1 && a[ia] <= b[ib])) {
+              v = a[ia];
+            } else {
+              v = b[ib];
+            }
+
+            int ca = 0;
+
+            while (ia < n1 && a[ia] == v) {
+              ++ia;
+              ++ca;
+            }
+
+            int cb = 0;
+
+            while (ib < n2 && b[ib] == v) {
+              ++ib;
+              ++cb;
+            }
+
+            double t = ca + cb;
+
+            // Tied values share the mean of the ranks they span
+            r1 += ca * (pos + (t + 1) / 2);
+
+            ties += t * t * t - t;
+
+            pos += t;
+          }
+
+          double u = r1 - n1 * (n1 + 1.0) / 2;
+
+          ret.mU[i] = u;
+
+          if (ties == 0 && n1 + n2 <= MAX_EXACT_SIZE) {
+            int key = n1 * (MAX_EXACT_SIZE + 1) + n2;
+
+            double[] cdf = exact.get(key);
+
+            if (cdf == null) {
+              cdf = exactCdf(n1, n2);
+              exact.put(key, cdf);
+            }
+
+            ret.mP[i] = exactP(u, n1, n2, cdf);
+          } else {
+            ret.mP[i] = normalP(u, n1, n2, ties);
+          }
+        }
+      }
+    });
+
+    return ret;
+  }
+
+  /**
+   * Copy the non missing group values of a row into a buffer.
+   *
+   * @param data the data
+   * @param o the offset of the row.
+   * @param g the group columns.
+   * @param buffer the buffer
+   * @return the number of values copied.
+   */
+  private static int copy(double[] data, int o, int[] g, double[] buffer) {
+    int n = 0;
+
+    for (int c : g) {
+      double v = data[o + c];
+
+      if (!Double.isNaN(v)) {
+        buffer[n++] = v;
+      }
+    }
+
+    return n;
+  }
+
+  /**
+   * Two tailed p-value from the normal approximation to U, with the variance
+   * reduced to account for ties.
+   *
+   * @param u the u
+   * @param n1 the n 1
+   * @param n2 the n 2
+   * @param ties the sum of t^3 - t over groups of t tied values.
+   * @return the double
+   */
+  public static double normalP(double u, int n1, int n2, double ties) {
+    double n = n1 + n2;
+    double prod = (double) n1 * n2;
+
+    double var = prod / 12 * ((n + 1) - ties / (n * (n - 1)));
+
+    if (!(var > 0)) {
+      // Every value is the same
+      return 1;
+    }
+
+    double z = (u - prod / 2) / Math.sqrt(var);
+
+    return Erf.erfc(Math.abs(z) / Math.sqrt(2));
+  }
+
+  /**
+   * Two tailed p-value from the exact distribution of U.
+   *
+   * @param u the u
+   * @param n1 the n 1
+   * @param n2 the n 2
+   * @param cdf the cumulative distribution of U.
+   * @return the double
+   */
+  private static double exactP(double u, int n1, int n2, double[] cdf) {
+    // The distribution is symmetric so use the smaller tail
+    int umin = (int) Math.min(u, (double) n1 * n2 - u);
+
+    return Math.min(1, 2 * cdf[umin]);
+  }
+
+  /**
+   * Returns the cumulative distribution of U for groups of size n1 and n2
+   * with no ties. The number of arrangements giving each value of U are the
+   * coefficients of the Gaussian binomial coefficient [n1 + n2, n1], which
+   * is built up one factor at a time so every intermediate value is an
+   * integer.
+   *
+   * @param n1 the n 1
+   * @param n2 the n 2
+   * @return the double[]
+   */
+  public static double[] exactCdf(int n1, int n2) {
+    int m = Math.min(n1, n2);
+    int n = n1 + n2;
+    int max = n1 * n2;
+
+    double[] c = new double[max + 1];
+
+    c[0] = 1;
+
+    int degree = 0;
+
+    // [n, m] = prod_{i = 1}^{m} (1 - q^(n - m + i)) / (1 - q^i)
+    for (int i = 1; i <= m; ++i) {
+      // Multiply by (1 - q^(n - m + i))
+      int s = n - m + i;
+
+      for (int k = Math.min(max, degree + s); k >= s; --k) {
+        c[k] -= c[k - s];
+      }
+
+      degree += s;
+
+      // Divide by (1 - q^i), i.e. multiply by 1 + q^i + q^2i + ...
+      for (int k = i; k <= max; ++k) {
+        c[k] += c[k - i];
+      }
+
+      degree -= i;
+    }
+
+    double total = 0;
+
+    for (double v : c) {
+      total += v;
+    }
+
+    double sum = 0;
+
+    for (int k = 0; k <= max; ++k) {
+      sum += c[k];
+      c[k] = sum / total;
+    }
+
+    return c;
+  }
+}
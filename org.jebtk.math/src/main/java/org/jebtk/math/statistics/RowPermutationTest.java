@@ -0,0 +1,416 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.math.statistics;
+
+import java.util.SplittableRandom;
+
+import org.jebtk.math.ParallelUtils;
+import org.jebtk.math.RangeFunction;
+
+/**
+ * Permutation tests of a two group statistic on every row of a matrix at
+ * once. The data is never moved: the pooled columns of each row are copied
+ * once, centred on the row mean, and their sum and sum of squares are
+ * stored. A permutation is then just a random choice of which pooled
+ * columns form the smaller group, so each row and permutation only needs the
+ * sum and sum of squares of that group; the other group follows by
+ * subtraction.
+ * 
+ * Permutations are drawn once and shared by all rows, so each row is
+ * compared against the same null labellings as in a conventional
+ * permutation test. They are generated in fixed size blocks, each with its
+ * own generator split from a seeded root, so results depend only on the seed
+ * and not on the number of threads. Rows are then tested in parallel.
+ * 
+ * The two tailed p-value of a row is (b + 1) / (B + 1) where b is the number
+ * of the B permutations whose statistic is at least as extreme as the
+ * observed one. Rows with missing values have a p-value of NaN.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class RowPermutationTest {
+
+  /** The default number of permutations. */
+  public static final int DEFAULT_PERMUTATIONS = 1000;
+
+  /** How many permutations share a generator. */
+  private static final int BLOCK_SIZE = 64;
+
+  /**
+   * Relative tolerance when comparing a permuted statistic to the observed
+   * one, so that labellings equivalent to the observed one always count
+   * despite rounding.
+   */
+  private static final double TOLERANCE = 1e-10;
+
+  /** The observed statistics. */
+  private final double[] mStat;
+
+  /** The number of permutations at least as extreme as observed. */
+  private final int[] mCounts;
+
+  /** The p-values. */
+  private final double[] mP;
+
+  /** The number of permutations. */
+  private final int mPermutations;
+
+  /**
+   * Instantiates a new row permutation test.
+   *
+   * @param rows the rows
+   * @param permutations the permutations
+   */
+  private RowPermutationTest(int rows, int permutations) {
+    mStat = new double[rows];
+    mCounts = new int[rows];
+    mP = new double[rows];
+    mPermutations = permutations;
+  }
+
+  /**
+   * Returns the observed statistic of each row, with the first group as the
+   * numerator or the minuend.
+   *
+   * @return the statistic
+   */
+  public double[] getStatistic() {
+    return mStat;
+  }
+
+  /**
+   * Returns the number of permutations of each row whose statistic was at
+   * least as extreme as the observed one.
+   *
+   * @return the counts
+   */
+  public int[] getCounts() {
+    return mCounts;
+  }
+
+  /**
+   * Returns the two tailed empirical p-value of each row.
+   *
+   * @return the p
+   */
+  public double[] getP() {
+    return mP;
+  }
+
+  /**
+   * Returns the number of permutations.
+   *
+   * @return the permutations
+   */
+  public int getPermutations() {
+    return mPermutations;
+  }
+
+  /**
+   * Test each row of a matrix.
+   *
+   * @param data the matrix values stored row major.
+   * @param rows the number of rows.
+   * @param cols the number of columns.
+   * @param g1 the columns in the first group.
+   * @param g2 the columns in the second group.
+   * @param stat the statistic to test.
+   * @param permutations the number of random permutations.
+   * @param seed the seed for the permutations.
+   * @return the results
+   */
+  public static RowPermutationTest test(final double[] data,
+      int rows,
+      final int cols,
+      final int[] g1,
+      final int[] g2,
+      final PermutationStatistic stat,
+      final int permutations,
+      long seed) {
+    final RowPermutationTest ret = new RowPermutationTest(rows,
+        permutations);
+
+    final int n1 = g1.length;
+    final int n2 = g2.length;
+    final int n = n1 + n2;
+
+    // Only the smaller group is summed, the other is found by subtraction
+    final boolean first = n1 <= n2;
+    final int k = first ? n1 : n2;
+
+    final int[] perms = permutations(n, k, permutations, seed);
+
+    // The observed labelling, with the first group in the first n1 pooled
+    // positions
+    final int[] observed = new int[k];
+
+    for (int i = 0; i < k; ++i) {
+      observed[i] = first ? i : n1 + i;
+    }
+
+    ParallelUtils.forEach(rows, new RangeFunction() {
+      @Override
+      public void apply(int start, int end) {
+        double[] x = new double[n];
+
+        for (int i = start; i < end; ++i) {
+          int o = i * cols;
+
+          double mean = 0;
+
+          for (int j = 0; j < n1; ++j) {
+            x[j] = data[o + g1[j]];
+            mean += x[j];
+          }
+
+          for (int j = 0; j < n2; ++j) {
+            x[n1 + j] = data[o + g2[j]];
+            mean += x[j + n1];
+          }
+
+          mean /= n;
+
+          if (Double.isNaN(mean)) {
+            ret.mStat[i] = Double.NaN;
+            ret.mP[i] = Double.NaN;
+            continue;
+          }
+
+          // Centring keeps the sums of squares accurate
+          double s = 0;
+          double q = 0;
+
+          for (int j = 0; j < n; ++j) {
+            x[j] -= mean;
+            s += x[j];
+            q += x[j] * x[j];
+          }
+
+          double obs = statistic(stat, x, observed, 0, k, first, n1, n2, s,
+              q, mean);
+
+          ret.mStat[i] = obs;
+
+          double a = extremity(stat, obs);
+
+          if (Double.isNaN(a)) {
+            ret.mP[i] = Double.NaN;
+            continue;
+          }
+
+          a *= 1 - TOLERANCE;
+
+          int count = 0;
+
+          for (int p = 0; p < permutations; ++p) {
+            double v = statistic(stat, x, perms, p * k, k, first, n1, n2, s,
+                q, mean);
+
+            if (extremity(stat, v) >= a) {
+              ++count;
+            }
+          }
+
+          ret.mCounts[i] = count;
+          ret.mP[i] = (count + 1.0) / (permutations + 1.0);
+        }
+      }
+    });
+
+    return ret;
+  }
+
+  /**
+   * Draw random subsets of k of n pooled positions. Each block of
+   * permutations has its own generator split from the root in order, so the
+   * subsets only depend on the seed.
+   *
+   * @param n the number of pooled values.
+   * @param k the subset size.
+   * @param permutations the number of subsets.
+   * @param seed the seed
+   * @return the subsets, k positions per permutation.
+   */
+  private static int[] permutations(final int n,
+      final int k,
+      final int permutations,
+      long seed) {
+    final int[] ret = new int[permutations * k];
+
+    final int blocks = (permutations + BLOCK_SIZE - 1) / BLOCK_SIZE;
+
+    final SplittableRandom[] rngs = new SplittableRandom[blocks];
+
+    SplittableRandom root = new SplittableRandom(seed);
+
+    for (int i = 0; i < blocks; ++i) {
+      rngs[i] = root.split();
+    }
+
+    ParallelUtils.forEach(0, blocks, 1, new RangeFunction() {
+      @Override
+      public void apply(int start, int end) {
+        int[] pool = new int[n];
+
+        for (int b = start; b < end; ++b) {
+          SplittableRandom rng = rngs[b];
+
+          int e = Math.min(permutations, (b + 1) * BLOCK_SIZE);
+
+          for (int p = b * BLOCK_SIZE; p < e; ++p) {
+            for (int i = 0; i < n; ++i) {
+              pool[i] = i;
+            }
+
+            // Partial Fisher-Yates shuffle of the first k positions
+            int o = p * k;
+
+            for (int i = 0; i < k; ++i) {
+              int j = i + rng.nextInt(n - i);
+
+              int t = pool[j];
+              pool[j] = pool[i];
+              pool[i] = t;
+
+              ret[o + i] = t;
+            }
+          }
+        }
+      }
+    });
+
+    return ret;
+  }
+
+  /**
+   * Calculate the statistic for one labelling of a row.
+   *
+   * @param stat the statistic
+   * @param x the centred pooled values of the row.
+   * @param subsets the labellings.
+   * @param o the offset of the labelling in subsets.
+   * @param k the size of the summed group.
+   * @param first true if the summed group is the first group.
+   * @param n1 the size of the first group.
+   * @param n2 the size of the second group.
+   * @param s the sum of the pooled values.
+   * @param q the sum of squares of the pooled values.
+   * @param mean the mean that was subtracted from the row.
+   * @return the statistic
+   */
+  private static double statistic(PermutationStatistic stat,
+      final double[] x,
+      final int[] subsets,
+      int o,
+      int k,
+      boolean first,
+      int n1,
+      int n2,
+      double s,
+      double q,
+      double mean) {
+    double a = 0;
+    double aq = 0;
+
+    for (int i = 0; i < k; ++i) {
+      double v = x[subsets[o + i]];
+
+      a += v;
+      aq += v * v;
+    }
+
+    double s1;
+    double q1;
+    double s2;
+    double q2;
+
+    if (first) {
+      s1 = a;
+      q1 = aq;
+      s2 = s - a;
+      q2 = q - aq;
+    } else {
+      s1 = s - a;
+      q1 = q - aq;
+      s2 = a;
+      q2 = aq;
+    }
+
+    double m1 = s1 / n1;
+    double m2 = s2 / n2;
+
+    switch (stat) {
+    case MEAN_DIFFERENCE:
+      return m1 - m2;
+    case FOLD_CHANGE:
+      return (m1 + mean) / (m2 + mean);
+    default:
+      break;
+    }
+
+    // Sums of squared deviations from the group means
+    double ss1 = Math.max(0, q1 - s1 * m1);
+    double ss2 = Math.max(0, q2 - s2 * m2);
+
+    switch (stat) {
+    case STUDENT_T:
+      double df = n1 + n2 - 2;
+
+      return (m1 - m2)
+          / Math.sqrt((ss1 + ss2) / df * (1.0 / n1 + 1.0 / n2));
+    case WELCH_T:
+      return (m1 - m2)
+          / Math.sqrt(ss1 / (n1 - 1) / n1 + ss2 / (n2 - 1) / n2);
+    default:
+      double sd = Math.sqrt(ss1 / n1) + Math.sqrt(ss2 / n2);
+
+      if (sd > 0) {
+        return (m1 - m2) / sd;
+      } else {
+        return 0;
+      }
+    }
+  }
+
+  /**
+   * How far a statistic is from no difference, so that both tails can be
+   * counted at once.
+   *
+   * @param stat the statistic type.
+   * @param v the value
+   * @return the extremity, NaN if undefined.
+   */
+  private static double extremity(PermutationStatistic stat, double v) {
+    if (stat == PermutationStatistic.FOLD_CHANGE) {
+      return v > 0 ? Math.abs(Math.log(v)) : Double.NaN;
+    } else {
+      return Math.abs(v);
+    }
+  }
+}
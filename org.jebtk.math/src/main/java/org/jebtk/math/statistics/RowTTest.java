@@ -0,0 +1,212 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.math.statistics;
+
+import org.jebtk.math.ParallelUtils;
+import org.jebtk.math.RangeFunction;
+
+/**
+ * Two sample t-tests on every row of a matrix at once. Group columns are
+ * resolved once by the caller and each row is read directly from row major
+ * storage, so no per row lists or test objects are created. Rows are
+ * processed in parallel and the statistics, degrees of freedom and two tailed
+ * p-values are returned in arrays.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class RowTTest {
+
+  /** The t statistics. */
+  private final double[] mT;
+
+  /** The degrees of freedom. */
+  private final double[] mDf;
+
+  /** The two tailed p-values. */
+  private final double[] mP;
+
+  /**
+   * Instantiates a new row T test.
+   *
+   * @param rows the rows
+   */
+  private RowTTest(int rows) {
+    mT = new double[rows];
+    mDf = new double[rows];
+    mP = new double[rows];
+  }
+
+  /**
+   * Returns the t statistic of each row, positive when the mean of the first
+   * group is larger.
+   *
+   * @return the t
+   */
+  public double[] getT() {
+    return mT;
+  }
+
+  /**
+   * Returns the degrees of freedom of each row. For unequal variances these
+   * are the Welch-Satterthwaite degrees of freedom.
+   *
+   * @return the df
+   */
+  public double[] getDf() {
+    return mDf;
+  }
+
+  /**
+   * Returns the two tailed p-value of each row. Rows where a group has fewer
+   * than two values or a missing value have a p-value of NaN. If neither
+   * group varies, Student's test gives 0 when the means differ and NaN when
+   * they are equal, and Welch's test gives NaN, as in commons-math.
+   *
+   * @return the p
+   */
+  public double[] getP() {
+    return mP;
+  }
+
+  /**
+   * Test each row of a matrix.
+   *
+   * @param data the matrix values stored row major.
+   * @param rows the number of rows.
+   * @param cols the number of columns.
+   * @param g1 the columns in the first group.
+   * @param g2 the columns in the second group.
+   * @param equalVariance true for Student's t-test, false for Welch's.
+   * @return the results
+   */
+  public static RowTTest test(final double[] data,
+      int rows,
+      final int cols,
+      final int[] g1,
+      final int[] g2,
+      final boolean equalVariance) {
+    final RowTTest ret = new RowTTest(rows);
+
+    final double n1 = g1.length;
+    final double n2 = g2.length;
+
+    ParallelUtils.forEach(rows, new RangeFunction() {
+      @Override
+      public void apply(int start, int end) {
+        for (int i = start; i < end; ++i) {
+          int o = i * cols;
+
+          double m1 = mean(data, o, g1);
+          double m2 = mean(data, o, g2);
+
+          // Sum of squared deviations rather than sum of squares to avoid
+          // cancellation when the means are large
+          double v1 = ss(data, o, g1, m1) / (n1 - 1);
+          double v2 = ss(data, o, g2, m2) / (n2 - 1);
+
+          double t;
+          double df;
+
+          if (equalVariance) {
+            df = n1 + n2 - 2;
+
+            double sp = ((n1 - 1) * v1 + (n2 - 1) * v2) / df;
+
+            t = (m1 - m2) / Math.sqrt(sp * (1 / n1 + 1 / n2));
+          } else {
+            double a = v1 / n1;
+            double b = v2 / n2;
+
+            t = (m1 - m2) / Math.sqrt(a + b);
+
+            df = (a + b) * (a + b)
+                / (a * a / (n1 - 1) + b * b / (n2 - 1));
+          }
+
+          ret.mT[i] = t;
+          ret.mDf[i] = df;
+          ret.mP[i] = twoTailP(t, df);
+        }
+      }
+    });
+
+    return ret;
+  }
+
+  /**
+   * Returns the two tailed p-value of a t statistic.
+   *
+   * @param t the t
+   * @param df the degrees of freedom
+   * @return the p-value
+   */
+  public static double twoTailP(double t, double df) {
+    return TDist.twoTailP(t, df);
+  }
+
+  /**
+   * Mean of the group columns of a row.
+   *
+   * @param data the data
+   * @param o the offset of the row.
+   * @param g the group columns.
+   * @return the double
+   */
+  private static double mean(double[] data, int o, int[] g) {
+    double s = 0;
+
+    for (int c : g) {
+      s += data[o + c];
+    }
+
+    return s / g.length;
+  }
+
+  /**
+   * Sum of squared deviations of the group columns of a row from their
+   * mean.
+   *
+   * @param data the data
+   * @param o the offset of the row.
+   * @param g the group columns.
+   * @param mean the mean
+   * @return the double
+   */
+  private static double ss(double[] data, int o, int[] g, double mean) {
+    double s = 0;
+
+    for (int c : g) {
+      double d = data[o + c] - mean;
+
+      s += d * d;
+    }
+
+    return s;
+  }
+}
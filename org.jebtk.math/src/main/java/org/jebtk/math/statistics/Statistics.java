@@ -28,7 +28,6 @@
 package org.jebtk.math.statistics;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -549,13 +548,19 @@ public class Statistics {
   }
 
   /**
-   * Median.
+   * Returns the median of the values, which do not need to be sorted. NaNs
+   * are ignored, so the median is NaN if every value is NaN. An empty array
+   * has a median of 0.
    *
    * @param values the values
    * @return the double
    */
   public static double median(final double[] values) {
-    return percentile(values, 50);
+    if (values.length == 0) {
+      return 0;
+    }
+
+    return Percentiles.median(values, null);
   }
 
   /**
@@ -751,7 +756,9 @@ public class Statistics {
   }
 
   /**
-   * Compute the median absolute deviation of a set of values.
+   * Compute the median absolute deviation of a set of values. NaNs are
+   * ignored, so the MAD is NaN if every value is NaN. An empty array has a
+   * MAD of 0.
    *
    * @param values the values
    * @return the double
@@ -785,17 +792,11 @@ public class Statistics {
    * @return the double
    */
   public static double mad(final double[] values) {
-    int n = values.length;
-
-    double[] a = new double[n];
-
-    double m = median(values);
-
-    for (int i = 0; i < n; ++i) {
-      a[i] = Math.abs(values[i] - m);
+    if (values.length == 0) {
+      return 0;
     }
 
-    return median(a);
+    return Percentiles.mad(values, null);
   }
 
   /**
@@ -817,12 +818,12 @@ public class Statistics {
    */
   public static List<Double> fdr(final List<Double> pvalues, FDRType type) {
     switch (type) {
-    case BENJAMINI_HOCHBERG:
-      return benjaminiHochbergCorrection(pvalues);
+    case NONE:
+      return pvalues;
     case BONFERRONI:
       return bonferroniCorrection(pvalues);
     default:
-      return pvalues;
+      return toList(fdr(CollectionUtils.toArray(pvalues), type));
     }
   }
 
@@ -835,12 +836,16 @@ public class Statistics {
    */
   public static double[] fdr(final double[] pvalues, FDRType type) {
     switch (type) {
-    case BENJAMINI_HOCHBERG:
-      return benjaminiHochbergCorrection(pvalues);
+    case NONE:
+      return pvalues;
     case BONFERRONI:
       return bonferroniCorrection(pvalues);
     default:
-      return pvalues;
+      double[] ret = new double[pvalues.length];
+
+      MultipleTesting.adjust(pvalues, type, ret);
+
+      return ret;
     }
   }
 
@@ -905,81 +910,7 @@ public class Statistics {
    * @return the list
    */
   public static List<Double> benjaminiHochbergCorrection(List<Double> pvalues) {
-    // Sort the values and adjust to get the fdf
-    // see http://en.wikipedia.org/wiki/False_discovery_rate
-    //
-
-    // First index the list so we can keep track of which p-value
-    // gets which ranking
-    List<Indexed<Integer, Double>> indexedP = IndexedInt.index(pvalues);
-
-    // Now they are in rank order
-    Collections.sort(indexedP);
-
-    int n = pvalues.size();
-    double validN = countValidNumbers(pvalues);
-
-    List<Double> fdrs = new ArrayList<Double>(pvalues.size());
-
-    double fdr;
-
-    int rank = 1;
-
-    for (int i = 0; i < n; ++i) {
-      double v = indexedP.get(i).getValue();
-
-      if (Mathematics.isValidNumber(v)) {
-        fdr = v * validN / rank;
-
-        // Bound it
-        // fdr = Math.max(0, Math.min(fdr, 1.0));
-
-        // if the fdr is less than the previously ranked
-        // entry, set it to the higher value. The FDR
-        // cannot alter the ranking of each entity, only
-        // control whether they are classified as significant
-        // or not
-
-        // if (i > 0) {
-        // fdr = Math.max(fdr, fdrs.get(i - 1));
-        // }
-
-        // The q-value is limited to be between
-        // 0 and the q-value of the element one
-        // rank above this one
-        // ret.add(Math.min(ret.get(i - 1), fdr));
-
-        // System.err.println("p " + indexedP.get(i).getValue() + " " + fdr + "
-        // " + rank + " " + n + " r " + ((double)n / rank));
-
-        // We bound the p-value to reprevent rounding
-        // errors
-        fdrs.add(Mathematics.bound(fdr, 0, 1.0));
-
-        ++rank;
-      } else {
-        fdrs.add(v);
-      }
-    }
-
-    // Now lets correct the fdrs using the cumulative minimum to ensure
-    // that fdrs only increase
-
-    List<Double> fdrC = cumMinRev(fdrs);
-
-    // Now create a return list that maps the fdrs
-    // back to their original index in the list
-
-    List<Double> ret = Mathematics.zeros(n);
-
-    for (int i = 0; i < n; ++i) {
-      ret.set(indexedP.get(i).getIndex(), fdrC.get(i));
-    }
-
-    // System.err.println("p " + sorted.toString());
-    // System.err.println("bh " + ret.toString());
-
-    return ret;
+    return toList(benjaminiHochbergCorrection(CollectionUtils.toArray(pvalues)));
   }
 
   /**
@@ -989,58 +920,9 @@ public class Statistics {
    * @return the double[]
    */
   public static double[] benjaminiHochbergCorrection(final double[] pvalues) {
-    // Sort the values and adjust to get the fdf
-    // see http://en.wikipedia.org/wiki/False_discovery_rate
-    //
-
-    // First index the list so we can keep track of which p-value
-    // gets which ranking
-    List<Indexed<Integer, Double>> indexedP = IndexedInt.index(pvalues);
-
-    // Now they are in rank order
-    Collections.sort(indexedP);
-
-    int n = pvalues.length;
-    double validN = countValidNumbers(pvalues);
-
-    double[] fdrs = new double[n];
-
-    double fdr;
-
-    int rank = 1;
-
-    for (int i = 0; i < n; ++i) {
-      double v = indexedP.get(i).getValue();
-
-      if (Mathematics.isValidNumber(v)) {
-        fdr = v * validN / rank;
-
-        // We bound the p-value to reprevent rounding
-        // errors
-        fdrs[i] = Mathematics.bound(fdr, 0, 1.0);
-
-        ++rank;
-      } else {
-        fdrs[i] = v;
-      }
-    }
-
-    // Now lets correct the fdrs using the cumulative minimum to ensure
-    // that fdrs only increase
-
-    double[] fdrC = cumMinRev(fdrs);
-
-    // Now create a return list that maps the fdrs
-    // back to their original index in the list
-
-    double[] ret = Mathematics.zerosArray(n);
-
-    for (int i = 0; i < n; ++i) {
-      ret[indexedP.get(i).getIndex()] = fdrC[i];
-    }
+    double[] ret = new double[pvalues.length];
 
-    // System.err.println("p " + sorted.toString());
-    // System.err.println("bh " + ret.toString());
+    MultipleTesting.benjaminiHochberg(pvalues, ret);
 
     return ret;
   }
@@ -1282,65 +1164,29 @@ public class Statistics {
       return null;
     }
 
-    CountMap<Double> countMap = new CountMap<Double>();
-
-    // Count the values
-    countMap.inc(values);
-
-    List<Indexed<Integer, Double>> sorted = IndexedInt.index(values);
-
-    // Items are now rank sorted
-    Collections.sort(sorted);
-
-    double rank = 1.0;
-
-    double currentValue = Double.MIN_VALUE;
-
-    double v;
-
-    Map<Integer, Double> ranks = new HashMap<Integer, Double>();
-
-    // ranks.put(sorted.get(0).getIndex(), rank /
-    // countMap.get(sorted.get(0).getValue()));
-
-    for (int i = 0; i < sorted.size(); ++i) {
-      v = sorted.get(i).getValue();
-
-      if (v > currentValue) {
-        // We have moved into a new block so calculate the fractional
-        // rank for this block
+    double[] ranks = Ranks.rank(CollectionUtils.toArray(values),
+        TieMethod.AVERAGE);
 
-        // Since we are using zero based indices, the rank is the
-        // number of items in the group (since for each index we
-        // must add 1 to get the one based index) plus the zero
-        // based ranks of each group member.
+    List<Double> ret = new ArrayList<Double>(ranks.length);
 
-        rank = 1; // countMap.get(v);
-
-        for (int j = 0; j < countMap.get(v); ++j) {
-          rank += i + j;
-        }
-
-        rank /= countMap.get(v);
-
-        // increase the rank by the number of previous items
-        // rank += i; //countMap.get(sorted.get(i - 1).getValue());
-      }
-
-      currentValue = v;
-
-      ranks.put(sorted.get(i).getIndex(), rank);
-    }
-
-    List<Double> ret = new ArrayList<Double>(values.size());
-
-    for (int i = 0; i < values.size(); ++i) {
-      ret.add(ranks.get(i));
+    for (double r : ranks) {
+      ret.add(r);
     }
 
     return ret;
   }
 
+  /**
+   * Returns the fractional ranks of values, where tied values get the mean
+   * of the ranks they span. NaN values have a rank of NaN.
+   *
+   * @param values the values
+   * @return the ranks
+   */
+  public static double[] tiedRank(final double[] values) {
+    return Ranks.rank(values, TieMethod.AVERAGE);
+  }
+
   /**
    * Returns the ratio of non-zero values to the number of values.
    *
@@ -1605,4 +1451,20 @@ public class Statistics {
   public static double spearmanCorrelation(double[] v1, double[] v2) {
     return new SpearmansCorrelation().correlation(v1, v2);
   }
+
+  /**
+   * Convert an array to a list.
+   *
+   * @param values the values
+   * @return the list
+   */
+  private static List<Double> toList(final double[] values) {
+    List<Double> ret = new ArrayList<Double>(values.length);
+
+    for (double v : values) {
+      ret.add(v);
+    }
+
+    return ret;
+  }
 }
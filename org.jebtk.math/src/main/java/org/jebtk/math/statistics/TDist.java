@@ -30,11 +30,28 @@ package org.jebtk.math.statistics;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.apache.commons.math3.special.Erf;
+import org.jebtk.math.ParallelUtils;
+import org.jebtk.math.RangeFunction;
+
 /**
  * The class TDist.
+ * 
+ * The Student t distribution function is evaluated from the regularized
+ * incomplete beta function, P(|T| > t) = I_x(df / 2, 1 / 2) with x = df / (df
+ * + t^2), for real degrees of freedom. Very large degrees of freedom use a
+ * corrected normal approximation instead. Arrays of statistics can be converted
+ * to p-values in parallel, with a faster path when all share the same degrees
+ * of freedom.
  */
 public class TDist {
 
+  /**
+   * Above this many degrees of freedom p-values are calculated from a
+   * normal approximation rather than the incomplete beta function.
+   */
+  private static final double NORMAL_DF = 4e5;
+
   /**
    * The main method.
    *
@@ -180,18 +197,7 @@ public class TDist {
    * @return the double
    */
   public static double incompleteBeta(double x, int a, int b) {
-    Binomial binomial = new Binomial();
-
-    double ret = 0;
-
-    int max = a + b - 1;
-
-    for (int i = a; i <= max; ++i) {
-      ret += binomial.binomial(max, i) * Math.pow(x, i)
-          * Math.pow((1 - x), max - i);
-    }
-
-    return ret;
+    return IncompleteBeta.regularized(x, a, b);
   }
 
   /**
@@ -202,28 +208,7 @@ public class TDist {
    * @return the double
    */
   public static double cumTDist(double x, int v) {
-
-    double s = 0;
-
-    double d = (x + 5) / 100.0;
-
-    double d2 = d / 2.0;
-
-    double t = -5;
-
-    List<Double> p = new ArrayList<Double>(100);
-
-    for (int i = 0; i < 100; ++i) {
-      p.add(tDist(t, v));
-
-      t += d;
-    }
-
-    for (int i = 0; i < 99; ++i) {
-      s += d2 * (p.get(i) + p.get(i + 1));
-    }
-
-    return s;
+    return cdf(x, v);
   }
 
   /**
@@ -233,12 +218,7 @@ public class TDist {
    * @return the double
    */
   public static double lnGamma(double z) {
-    // return (z - 0.5) * Math.log(z) - z + 0.5 * Math.log(2 * Math.PI);
-
-    // from wiki
-    return z * Math.log(z) - z - 0.5 * Math.log(z / (2.0 * Math.PI))
-        + (1.0 / (12.0 * z)) - (1.0 / (360.0 * Math.pow(z, 3)))
-        + (1.0 / (1260.0 * Math.pow(z, 5)));
+    return LogFactorial.logGamma(z);
   }
 
   /**
@@ -303,4 +283,152 @@ public class TDist {
   public static double oneTailTDist(double t, double v) {
     return tDist(t, v) / 2.0;
   }
+
+  /**
+   * The cumulative distribution function P(T <= t).
+   *
+   * @param t the t
+   * @param df the degrees of freedom.
+   * @return the probability
+   */
+  public static double cdf(double t, double df) {
+    return cdf(t, df, logBeta(df));
+  }
+
+  /**
+   * The two tailed p-value P(|T| >= |t|).
+   *
+   * @param t the t
+   * @param df the degrees of freedom.
+   * @return the p-value, or NaN if t is NaN or df is not positive.
+   */
+  public static double twoTailP(double t, double df) {
+    return twoTailP(t, df, logBeta(df));
+  }
+
+  /**
+   * The cumulative distribution function of each t statistic with its own
+   * degrees of freedom, calculated in parallel.
+   *
+   * @param t the t statistics.
+   * @param df the degrees of freedom.
+   * @param ret the array to write the probabilities to.
+   */
+  public static void cdf(final double[] t,
+      final double[] df,
+      final double[] ret) {
+    ParallelUtils.forEach(t.length, new RangeFunction() {
+      @Override
+      public void apply(int start, int end) {
+        for (int i = start; i < end; ++i) {
+          ret[i] = cdf(t[i], df[i]);
+        }
+      }
+    });
+  }
+
+  /**
+   * The two tailed p-value of each t statistic with its own degrees of
+   * freedom, calculated in parallel.
+   *
+   * @param t the t statistics.
+   * @param df the degrees of freedom.
+   * @param ret the array to write the p-values to.
+   */
+  public static void twoTailP(final double[] t,
+      final double[] df,
+      final double[] ret) {
+    ParallelUtils.forEach(t.length, new RangeFunction() {
+      @Override
+      public void apply(int start, int end) {
+        for (int i = start; i < end; ++i) {
+          ret[i] = twoTailP(t[i], df[i]);
+        }
+      }
+    });
+  }
+
+  /**
+   * The two tailed p-value of each t statistic with the same degrees of
+   * freedom, calculated in parallel. The beta function is only evaluated
+   * once.
+   *
+   * @param t the t statistics.
+   * @param df the degrees of freedom.
+   * @param ret the array to write the p-values to.
+   */
+  public static void twoTailP(final double[] t,
+      final double df,
+      final double[] ret) {
+    final double logBeta = logBeta(df);
+
+    ParallelUtils.forEach(t.length, new RangeFunction() {
+      @Override
+      public void apply(int start, int end) {
+        for (int i = start; i < end; ++i) {
+          ret[i] = twoTailP(t[i], df, logBeta);
+        }
+      }
+    });
+  }
+
+  /**
+   * The cumulative distribution function given log B(df / 2, 1 / 2).
+   *
+   * @param t the t
+   * @param df the degrees of freedom.
+   * @param logBeta log B(df / 2, 1 / 2)
+   * @return the probability
+   */
+  private static double cdf(double t, double df, double logBeta) {
+    double p = 0.5 * twoTailP(t, df, logBeta);
+
+    return t > 0 ? 1 - p : p;
+  }
+
+  /**
+   * The two tailed p-value given log B(df / 2, 1 / 2).
+   *
+   * @param t the t
+   * @param df the degrees of freedom.
+   * @param logBeta log B(df / 2, 1 / 2)
+   * @return the p-value
+   */
+  private static double twoTailP(double t, double df, double logBeta) {
+    if (Double.isNaN(t) || !(df > 0)) {
+      return Double.NaN;
+    }
+
+    double t2 = t * t;
+
+    if (Double.isInfinite(t2)) {
+      return 0;
+    }
+
+    if (df > NORMAL_DF) {
+      // The continued fraction converges too slowly near the middle of the
+      // distribution so use the corrected normal approximation (Abramowitz
+      // and Stegun 26.7.8), which tends to the normal limit as df grows.
+      double v = 1 / (4 * df);
+      double z = Math.abs(t) * (1 - v) / Math.sqrt(1 + t2 * 2 * v);
+
+      return Erf.erfc(z / Math.sqrt(2));
+    }
+
+    // x = df / (df + t^2) and 1 - x are formed separately so that neither
+    // loses precision
+    double s = df + t2;
+
+    return IncompleteBeta.regularized(df / s, t2 / s, 0.5 * df, 0.5, logBeta);
+  }
+
+  /**
+   * Returns log B(df / 2, 1 / 2).
+   *
+   * @param df the degrees of freedom.
+   * @return the log beta
+   */
+  private static double logBeta(double df) {
+    return IncompleteBeta.logBeta(0.5 * df, 0.5);
+  }
 }
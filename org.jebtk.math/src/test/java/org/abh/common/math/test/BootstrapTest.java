@@ -0,0 +1,91 @@
+/**
+ * Copyright 2017 Antony Holmes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.abh.common.math.test;
+
+import org.jebtk.math.matrix.MatrixReduceFunction;
+import org.jebtk.math.matrix.utils.Bootstrap;
+import org.jebtk.math.statistics.BootstrapInterval;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The Class BootstrapTest.
+ */
+public class BootstrapTest {
+
+  /** Two skewed rows of 12 values. */
+  private static final double[] DATA = { 1, 1, 2, 2, 3, 3, 4, 5, 8, 13, 21,
+      34, 0.5, 0.1, 0.7, 0.2, 0.9, 1.5, 0.3, 4, 0.6, 0.8, 12, 0.4 };
+
+  /**
+   * The mean.
+   */
+  private static class Mean implements MatrixReduceFunction {
+    @Override
+    public double apply(int index, double[] data) {
+      double sum = 0;
+
+      for (double v : data) {
+        sum += v;
+      }
+
+      return sum / data.length;
+    }
+  }
+
+  /**
+   * The mean, but the buffer is overwritten afterwards.
+   */
+  private static class DestructiveMean extends Mean {
+    @Override
+    public double apply(int index, double[] data) {
+      double ret = super.apply(index, data);
+
+      for (int i = 0; i < data.length; ++i) {
+        data[i] = -1;
+      }
+
+      return ret;
+    }
+  }
+
+  /**
+   * BCa intervals do not depend on whether the statistic modifies its
+   * buffer.
+   */
+  @Test
+  public void modifiedBufferTest() {
+    Bootstrap b1 = Bootstrap
+        .rows(DATA, 2, 12, new Mean(), 500, 0.9, BootstrapInterval.BCA, 1);
+    Bootstrap b2 = Bootstrap.rows(DATA,
+        2,
+        12,
+        new DestructiveMean(),
+        500,
+        0.9,
+        BootstrapInterval.BCA,
+        1);
+
+    Assert.assertArrayEquals(b1.getEstimate(), b2.getEstimate(), 0);
+    Assert.assertArrayEquals(b1.getLower(), b2.getLower(), 0);
+    Assert.assertArrayEquals(b1.getUpper(), b2.getUpper(), 0);
+
+    for (int i = 0; i < 2; ++i) {
+      Assert.assertTrue(b1.getLower()[i] < b1.getEstimate()[i]);
+      Assert.assertTrue(b1.getUpper()[i] > b1.getEstimate()[i]);
+    }
+  }
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright 2017 Antony Holmes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.abh.common.math.test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.jebtk.math.cluster.ClusterCache;
+import org.jebtk.math.cluster.DistanceMatrix;
+import org.jebtk.math.cluster.DistanceMetric;
+import org.jebtk.math.matrix.DoubleMatrix;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The Class ClusterCacheTest.
+ */
+public class ClusterCacheTest {
+
+  /**
+   * A metric with a parameter.
+   */
+  private static class PowerDistanceMetric extends DistanceMetric {
+
+    /** The m p. */
+    private final double mP;
+
+    /**
+     * Instantiates a new power distance metric.
+     *
+     * @param p the p
+     */
+    public PowerDistanceMetric(double p) {
+      mP = p;
+    }
+
+    @Override
+    public double distance(double[] d1, double[] d2) {
+      double sum = 0;
+
+      for (int i = 0; i < d1.length; ++i) {
+        sum += Math.pow(Math.abs(d1[i] - d2[i]), mP);
+      }
+
+      return Math.pow(sum, 1 / mP);
+    }
+
+    @Override
+    public double distance(List<Double> d1, List<Double> d2) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  /**
+   * Only the leaf distances are stored and read back.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @Test
+  public void distanceMatrixTest() throws IOException {
+    Path dir = Files.createTempDirectory("cluster-cache");
+
+    ClusterCache cache = new ClusterCache(dir, 1 << 20);
+
+    int n = 5;
+
+    DistanceMatrix m = new DistanceMatrix(2 * n - 1);
+
+    for (int i = 0; i < 2 * n - 1; ++i) {
+      for (int j = i + 1; j < 2 * n - 1; ++j) {
+        m.set(i, j, 10 * i + j);
+      }
+    }
+
+    Assert.assertNull(cache.getDistanceMatrix("test"));
+
+    cache.putDistanceMatrix("test", m);
+
+    Assert.assertEquals(12 + 8 * n * (n - 1) / 2, cache.size());
+
+    DistanceMatrix d = cache.getDistanceMatrix("test");
+
+    Assert.assertEquals(2 * n - 1, d.getRows());
+
+    for (int i = 0; i < n; ++i) {
+      for (int j = i + 1; j < n; ++j) {
+        Assert.assertEquals(10 * i + j, d.getValue(i, j), 0);
+      }
+    }
+
+    cache.clear();
+
+    Assert.assertNull(cache.getDistanceMatrix("test"));
+    Assert.assertNull(cache.getDendrogram("test"));
+
+    Files.delete(dir);
+  }
+
+  /**
+   * Instances of a metric with different parameters have different keys.
+   */
+  @Test
+  public void keyTest() {
+    DoubleMatrix m = new DoubleMatrix(2, 2);
+
+    m.set(0, 0, 1);
+    m.set(1, 1, 2);
+
+    String k1 = ClusterCache.rowKey(m, new PowerDistanceMetric(1));
+    String k2 = ClusterCache.rowKey(m, new PowerDistanceMetric(2));
+
+    Assert.assertFalse(k1.equals(k2));
+    Assert.assertEquals(k1, ClusterCache.rowKey(m, new PowerDistanceMetric(1)));
+    Assert.assertFalse(k1.equals(ClusterCache.columnKey(m,
+        new PowerDistanceMetric(1))));
+  }
+}
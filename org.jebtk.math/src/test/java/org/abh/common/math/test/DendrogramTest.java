@@ -0,0 +1,74 @@
+/**
+ * Copyright 2017 Antony Holmes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.abh.common.math.test;
+
+import org.jebtk.math.cluster.Dendrogram;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The Class DendrogramTest.
+ */
+public class DendrogramTest {
+
+  /**
+   * Create a small tree ((0, 1), (2, (3, 4))).
+   *
+   * @return the dendrogram
+   */
+  private static Dendrogram createTree() {
+    Dendrogram d = new Dendrogram(5);
+
+    int n5 = d.merge(0, 1, 1); // 5
+    int n6 = d.merge(3, 4, 2); // 6
+    int n7 = d.merge(2, n6, 3); // 7
+    d.merge(n5, n7, 10); // 8
+
+    return d;
+  }
+
+  /**
+   * Leaf order test.
+   */
+  @Test
+  public void leafOrderTest() {
+    Assert.assertArrayEquals(new int[] { 0, 1, 2, 3, 4 },
+        createTree().leafOrder());
+  }
+
+  /**
+   * Cut by k test.
+   */
+  @Test
+  public void cutByKTest() {
+    Dendrogram d = createTree();
+
+    Assert.assertArrayEquals(new int[] { 0, 0, 1, 1, 1 }, d.cutByK(2));
+    Assert.assertArrayEquals(new int[] { 0, 0, 1, 2, 2 }, d.cutByK(3));
+    Assert.assertArrayEquals(new int[] { 0, 1, 2, 3, 4 }, d.cutByK(5));
+  }
+
+  /**
+   * Cut by height test.
+   */
+  @Test
+  public void cutByHeightTest() {
+    Dendrogram d = createTree();
+
+    Assert.assertArrayEquals(new int[] { 0, 0, 1, 2, 2 }, d.cutByHeight(2.5));
+    Assert.assertArrayEquals(new int[] { 0, 0, 0, 0, 0 }, d.cutByHeight(10));
+  }
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright 2017 Antony Holmes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.abh.common.math.test;
+
+import org.jebtk.math.statistics.FisherExactTest;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The Class FisherExactTestTest.
+ * 
+ * Expected values are the p-values of R's fisher.test, calculated exactly.
+ */
+public class FisherExactTestTest {
+
+  /** The tables as a, b, c, d. */
+  private static final int[][] TABLES = { { 3, 1, 1, 3 }, { 2, 15, 10, 3 },
+      { 10, 2, 3, 15 }, { 50, 5, 5, 50 }, { 0, 5, 5, 0 }, { 7, 0, 0, 0 },
+      { 2, 3, 3, 2 }, { 4, 6, 6, 4 } };
+
+  /** The expected less p-values. */
+  private static final double[] LESS = { 0.9857142857142858,
+      0.00046518094336290503, 0.9999845190186861, 1.0, 0.003968253968253968,
+      1.0, 0.5, 0.3281408993483297 };
+
+  /** The expected greater p-values. */
+  private static final double[] GREATER = { 0.24285714285714285,
+      0.9999845190186861, 0.00046518094336290503, 1.2401433100326415e-19, 1.0,
+      1.0, 0.8968253968253969, 0.9105522960012125 };
+
+  /** The expected two sided p-values. */
+  private static final double[] TWO_TAIL = { 0.4857142857142857,
+      0.0005367241191434358, 0.0005367241191434358, 2.480286620065283e-19,
+      0.007936507936507936, 1.0, 1.0, 0.6562817986966594 };
+
+  /**
+   * The tea tasting and convictions examples from the R documentation, their
+   * mirror images, a table with a tiny p-value and tables with zero margins.
+   * The last two tables have symmetric distributions, so the outcome
+   * mirroring the observed one has exactly the same probability and must be
+   * counted in the two sided p-value even if rounding makes it slightly
+   * larger.
+   */
+  @Test
+  public void pValueTest() {
+    int n = TABLES.length;
+
+    int[] a = new int[n];
+    int[] b = new int[n];
+    int[] c = new int[n];
+    int[] d = new int[n];
+
+    for (int i = 0; i < n; ++i) {
+      a[i] = TABLES[i][0];
+      b[i] = TABLES[i][1];
+      c[i] = TABLES[i][2];
+      d[i] = TABLES[i][3];
+    }
+
+    FisherExactTest test = FisherExactTest.test(a, b, c, d);
+
+    for (int i = 0; i < n; ++i) {
+      assertRelative(LESS[i], test.getLess()[i]);
+      assertRelative(GREATER[i], test.getGreater()[i]);
+      assertRelative(TWO_TAIL[i], test.getTwoTail()[i]);
+    }
+  }
+
+  /**
+   * Tables with negative counts have no p-values.
+   */
+  @Test
+  public void negativeTest() {
+    FisherExactTest test = FisherExactTest.test(new int[] { 1 },
+        new int[] { -1 },
+        new int[] { 2 },
+        new int[] { 3 });
+
+    Assert.assertEquals(Double.NaN, test.getLess()[0], 0);
+    Assert.assertEquals(Double.NaN, test.getGreater()[0], 0);
+    Assert.assertEquals(Double.NaN, test.getTwoTail()[0], 0);
+  }
+
+  /**
+   * Check a value to a relative tolerance.
+   *
+   * @param expected the expected
+   * @param actual the actual
+   */
+  private static void assertRelative(double expected, double actual) {
+    Assert.assertEquals(expected, actual, 1e-10 * expected);
+  }
+}
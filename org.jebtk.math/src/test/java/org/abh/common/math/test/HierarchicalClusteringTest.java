@@ -0,0 +1,178 @@
+/**
+ * Copyright 2017 Antony Holmes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.abh.common.math.test;
+
+import org.jebtk.math.cluster.AverageLinkage;
+import org.jebtk.math.cluster.CentroidLinkage;
+import org.jebtk.math.cluster.Cluster;
+import org.jebtk.math.cluster.CompleteLinkage;
+import org.jebtk.math.cluster.Dendrogram;
+import org.jebtk.math.cluster.DistanceMatrix;
+import org.jebtk.math.cluster.HierarchicalClustering;
+import org.jebtk.math.cluster.LanceWilliamsLinkage;
+import org.jebtk.math.cluster.Linkage;
+import org.jebtk.math.cluster.MedianLinkage;
+import org.jebtk.math.cluster.SingleLinkage;
+import org.jebtk.math.cluster.WardLinkage;
+import org.jebtk.math.cluster.WeightedLinkage;
+import org.jebtk.math.matrix.Matrix;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The Class HierarchicalClusteringTest.
+ * 
+ * Expected merges are those of R's hclust on the Euclidean distances between
+ * the points, using ward.D2 and mcquitty, and centroid and median on the
+ * squared distances with the square root of the heights taken.
+ */
+public class HierarchicalClusteringTest {
+
+  /** The points. */
+  private static final double[][] POINTS = { { 0, 0 }, { 1, 0.3 }, { 4, 1 },
+      { 4.5, 2.2 }, { 9, 0.5 }, { 2, 5 } };
+
+  /**
+   * Ward test.
+   */
+  @Test
+  public void wardTest() {
+    assertMerges(new WardLinkage(),
+        new int[][] { { 0, 1 }, { 2, 3 }, { 5, 7 }, { 6, 8 }, { 4, 9 } },
+        new double[] { 1.044030650891055, 1.3000000000000003,
+            4.707794954470015, 6.1332427529543185, 8.787301443939809 });
+  }
+
+  /**
+   * Weighted (WPGMA) test.
+   */
+  @Test
+  public void weightedTest() {
+    assertMerges(new WeightedLinkage(),
+        new int[][] { { 0, 1 }, { 2, 3 }, { 6, 7 }, { 5, 8 }, { 4, 9 } },
+        new double[] { 1.044030650891055, 1.3000000000000003,
+            4.048785862665697, 4.60404278716309, 7.517294368903274 });
+  }
+
+  /**
+   * Centroid test.
+   */
+  @Test
+  public void centroidTest() {
+    assertMerges(new CentroidLinkage(),
+        new int[][] { { 0, 1 }, { 2, 3 }, { 6, 7 }, { 5, 8 }, { 4, 9 } },
+        new double[] { 1.044030650891055, 1.3000000000000003,
+            4.020572098594926, 4.142010381445223, 6.806614430096654 });
+  }
+
+  /**
+   * Median test.
+   */
+  @Test
+  public void medianTest() {
+    assertMerges(new MedianLinkage(),
+        new int[][] { { 0, 1 }, { 2, 3 }, { 6, 7 }, { 5, 8 }, { 4, 9 } },
+        new double[] { 1.044030650891055, 1.3000000000000003,
+            4.020572098594926, 4.142010381445223, 7.235437961865197 });
+  }
+
+  /**
+   * Single, complete and average linkage must write the same distances to
+   * merged clusters, which the leaf ordering methods read, whether the
+   * Lance-Williams update or the general method is used.
+   */
+  @Test
+  public void distanceMatrixTest() {
+    LanceWilliamsLinkage[] linkages = { new SingleLinkage(),
+        new CompleteLinkage(), new AverageLinkage() };
+
+    int n = POINTS.length;
+
+    for (final LanceWilliamsLinkage l : linkages) {
+      DistanceMatrix fast = createDistanceMatrix();
+      DistanceMatrix general = createDistanceMatrix();
+
+      Dendrogram d1 = HierarchicalClustering.linkage(l, n, fast);
+
+      // Hide the update rule so the general method is used
+      Dendrogram d2 = HierarchicalClustering.linkage(new Linkage() {
+        @Override
+        public double getLinkage(Matrix distanceMatrix, Cluster c1, Cluster c2) {
+          return l.getLinkage(distanceMatrix, c1, c2);
+        }
+      }, n, general);
+
+      for (int i = 0; i < n - 1; ++i) {
+        Assert.assertEquals(d2.getLeft(i), d1.getLeft(i));
+        Assert.assertEquals(d2.getRight(i), d1.getRight(i));
+        Assert.assertEquals(d2.getHeight(i), d1.getHeight(i), 1e-12);
+      }
+
+      for (int i = 0; i < 2 * n - 1; ++i) {
+        for (int j = i; j < 2 * n - 1; ++j) {
+          Assert.assertEquals(general.getValue(i, j),
+              fast.getValue(i, j),
+              1e-12);
+        }
+      }
+    }
+  }
+
+  /**
+   * Check the merges of a linkage on the test points.
+   *
+   * @param l the linkage
+   * @param merges the expected pairs of ids merged.
+   * @param heights the expected merge heights.
+   */
+  private static void assertMerges(Linkage l,
+      int[][] merges,
+      double[] heights) {
+    Dendrogram d = HierarchicalClustering
+        .linkage(l, POINTS.length, createDistanceMatrix());
+
+    for (int i = 0; i < merges.length; ++i) {
+      Assert.assertEquals(merges[i][0],
+          Math.min(d.getLeft(i), d.getRight(i)));
+      Assert.assertEquals(merges[i][1],
+          Math.max(d.getLeft(i), d.getRight(i)));
+      Assert.assertEquals(heights[i], d.getHeight(i), 1e-12);
+    }
+  }
+
+  /**
+   * Create the Euclidean distance matrix of the test points with space for
+   * the merged clusters.
+   *
+   * @return the distance matrix
+   */
+  private static DistanceMatrix createDistanceMatrix() {
+    int n = POINTS.length;
+
+    DistanceMatrix ret = new DistanceMatrix(2 * n - 1);
+
+    for (int i = 0; i < n; ++i) {
+      for (int j = i + 1; j < n; ++j) {
+        double dx = POINTS[i][0] - POINTS[j][0];
+        double dy = POINTS[i][1] - POINTS[j][1];
+
+        ret.set(i, j, Math.sqrt(dx * dx + dy * dy));
+      }
+    }
+
+    return ret;
+  }
+}
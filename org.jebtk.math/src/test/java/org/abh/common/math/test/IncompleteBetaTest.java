@@ -0,0 +1,91 @@
+/**
+ * Copyright 2017 Antony Holmes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.abh.common.math.test;
+
+import org.jebtk.math.statistics.IncompleteBeta;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The Class IncompleteBetaTest. For integer a and b, I_x(a, b) is a binomial
+ * tail probability, which gives exact expected values.
+ */
+public class IncompleteBetaTest {
+
+  /**
+   * Assert that two values agree to a relative tolerance.
+   *
+   * @param expected the expected
+   * @param actual the actual
+   * @param tolerance the tolerance
+   */
+  private static void assertRelative(double expected,
+      double actual,
+      double tolerance) {
+    Assert.assertEquals(expected, actual, Math.abs(expected) * tolerance);
+  }
+
+  /**
+   * Regularized test.
+   */
+  @Test
+  public void regularizedTest() {
+    assertRelative(0.25569, IncompleteBeta.regularized(0.3, 3, 4), 1e-14);
+    assertRelative(2.06515e-09, IncompleteBeta.regularized(0.01, 5, 3), 1e-13);
+    assertRelative(0.502428616319932,
+        IncompleteBeta.regularized(0.4, 200, 300),
+        1e-12);
+    assertRelative(0.5, IncompleteBeta.regularized(0.5, 100, 100), 1e-13);
+    assertRelative(0.009950215753652417,
+        IncompleteBeta.regularized(1e-5, 1, 1000),
+        1e-13);
+  }
+
+  /**
+   * Values far in the tail keep their relative precision.
+   */
+  @Test
+  public void tailTest() {
+    assertRelative(5.095000000000005e-149,
+        IncompleteBeta.regularized(0.001, 50, 2),
+        1e-12);
+  }
+
+  /**
+   * The ends of the range and invalid arguments.
+   */
+  @Test
+  public void limitsTest() {
+    Assert.assertEquals(0, IncompleteBeta.regularized(0, 2, 3), 0);
+    Assert.assertEquals(1, IncompleteBeta.regularized(1, 2, 3), 0);
+
+    Assert.assertTrue(Double.isNaN(IncompleteBeta.regularized(Double.NaN, 2, 3)));
+    Assert.assertTrue(Double.isNaN(IncompleteBeta.regularized(0.5, 0, 3)));
+    Assert.assertTrue(Double.isNaN(IncompleteBeta.regularized(0.5, 2, -1)));
+  }
+
+  /**
+   * log B(a, b) = log gamma(a) + log gamma(b) - log gamma(a + b).
+   */
+  @Test
+  public void logBetaTest() {
+    // B(3, 4) = 2! 3! / 6!
+    assertRelative(Math.log(1.0 / 60), IncompleteBeta.logBeta(3, 4), 1e-14);
+
+    // B(1 / 2, 1 / 2) = pi
+    assertRelative(Math.log(Math.PI), IncompleteBeta.logBeta(0.5, 0.5), 1e-14);
+  }
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright 2017 Antony Holmes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.abh.common.math.test;
+
+import org.jebtk.math.cluster.CentroidLinkage;
+import org.jebtk.math.cluster.Cluster;
+import org.jebtk.math.cluster.DistanceMatrix;
+import org.jebtk.math.cluster.EuclideanDistanceMetric;
+import org.jebtk.math.cluster.IncrementalClustering;
+import org.jebtk.math.cluster.InsertionMethod;
+import org.jebtk.math.matrix.DoubleMatrix;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The Class IncrementalClusteringTest.
+ */
+public class IncrementalClusteringTest {
+
+  /**
+   * Centroid linkage on the points 0, 2 and 1 merges (0, 2) at height 2 and
+   * then the third point at height 1, so the tree is not monotonic. Adding a
+   * sample must still build a complete tree.
+   */
+  @Test
+  public void inversionTest() {
+    double[] values = { 0, 2, 1, 10 };
+
+    DistanceMatrix dist = new DistanceMatrix(5);
+
+    for (int i = 0; i < 3; ++i) {
+      for (int j = i + 1; j < 3; ++j) {
+        dist.set(i, j, Math.abs(values[i] - values[j]));
+      }
+    }
+
+    Cluster c01 = new Cluster(3, 2, new Cluster(0, 0), new Cluster(1, 0));
+    Cluster root = new Cluster(4, 1, c01, new Cluster(2, 0));
+
+    DoubleMatrix m = new DoubleMatrix(4, 1);
+
+    for (int i = 0; i < values.length; ++i) {
+      m.set(i, 0, values[i]);
+    }
+
+    IncrementalClustering clustering = new IncrementalClustering(root, dist,
+        new CentroidLinkage(), new EuclideanDistanceMetric());
+
+    Cluster newRoot = clustering.insertRows(m);
+
+    Assert.assertEquals(4, clustering.getSampleCount());
+    Assert.assertEquals(4, newRoot.getCumulativeChildCount());
+    Assert.assertEquals(6, newRoot.getId());
+    Assert.assertEquals(1.0, newRoot.getLevel(), 1e-12);
+  }
+
+  /**
+   * Inserting samples in two steps must keep the measured distance between
+   * every pair of leaves, both in the matrix returned and in the one the
+   * second insertion starts from.
+   */
+  @Test
+  public void leafDistanceTest() {
+    double[] values = { 0, 2, 1, 10, 4, 7 };
+
+    for (InsertionMethod method : InsertionMethod.values()) {
+      DistanceMatrix dist = new DistanceMatrix(5);
+
+      for (int i = 0; i < 3; ++i) {
+        for (int j = i + 1; j < 3; ++j) {
+          dist.set(i, j, Math.abs(values[i] - values[j]));
+        }
+      }
+
+      Cluster c01 = new Cluster(3, 2, new Cluster(0, 0), new Cluster(1, 0));
+      Cluster root = new Cluster(4, 1, c01, new Cluster(2, 0));
+
+      IncrementalClustering clustering = new IncrementalClustering(root, dist,
+          new CentroidLinkage(), new EuclideanDistanceMetric())
+              .setMethod(method);
+
+      clustering.insertRows(matrix(values, 4));
+
+      assertLeafDistances(values, 4, clustering.getDistanceMatrix());
+
+      Cluster newRoot = clustering.insertRows(matrix(values, 6));
+
+      Assert.assertEquals(6, newRoot.getCumulativeChildCount());
+
+      assertLeafDistances(values, 6, clustering.getDistanceMatrix());
+    }
+  }
+
+  /**
+   * Create a one column matrix from the first n values.
+   *
+   * @param values the values
+   * @param n the number of rows.
+   * @return the matrix
+   */
+  private static DoubleMatrix matrix(double[] values, int n) {
+    DoubleMatrix m = new DoubleMatrix(n, 1);
+
+    for (int i = 0; i < n; ++i) {
+      m.set(i, 0, values[i]);
+    }
+
+    return m;
+  }
+
+  /**
+   * Check the leaf to leaf distances of the first n values.
+   *
+   * @param values the values
+   * @param n the number of leaves.
+   * @param dist the distance matrix
+   */
+  private static void assertLeafDistances(double[] values,
+      int n,
+      DistanceMatrix dist) {
+    for (int i = 0; i < n; ++i) {
+      for (int j = i + 1; j < n; ++j) {
+        Assert.assertEquals(Math.abs(values[i] - values[j]),
+            dist.getValue(i, j),
+            1e-12);
+      }
+    }
+  }
+}
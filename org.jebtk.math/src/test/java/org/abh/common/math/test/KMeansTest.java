@@ -0,0 +1,145 @@
+/**
+ * Copyright 2017 Antony Holmes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.abh.common.math.test;
+
+import java.util.Arrays;
+
+import org.jebtk.math.cluster.KMeans;
+import org.jebtk.math.cluster.KMeansAlgorithm;
+import org.jebtk.math.cluster.KMedoids;
+import org.jebtk.math.cluster.ManhattanDistanceMetric;
+import org.jebtk.math.cluster.Partition;
+import org.jebtk.math.matrix.DoubleMatrix;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The Class KMeansTest.
+ */
+public class KMeansTest {
+
+  /**
+   * Three unit squares of points at (0, 0), (10, 10) and (0, 10) stored row
+   * major.
+   */
+  private static final double[] SQUARES = { 0, 0, 0, 1, 1, 0, 1, 1, 10, 10,
+      10, 11, 11, 10, 11, 11, 0, 10, 0, 11, 1, 10, 1, 11 };
+
+  /** Two groups of points on a line. */
+  private static final double[] LINE = { 1, 2, 3, 10, 11, 12 };
+
+  /**
+   * Check that items are grouped into the squares.
+   *
+   * @param p the p
+   */
+  private static void assertSquares(Partition p) {
+    int[] labels = p.getLabels();
+
+    for (int s = 0; s < 3; ++s) {
+      for (int i = 1; i < 4; ++i) {
+        Assert.assertEquals(labels[4 * s], labels[4 * s + i]);
+      }
+    }
+
+    Assert.assertTrue(labels[0] != labels[4]);
+    Assert.assertTrue(labels[0] != labels[8]);
+    Assert.assertTrue(labels[4] != labels[8]);
+  }
+
+  /**
+   * Every algorithm finds the squares, with centers at their middles.
+   */
+  @Test
+  public void kmeansTest() {
+    for (KMeansAlgorithm algorithm : KMeansAlgorithm.values()) {
+      Partition p = new KMeans(3).setAlgorithm(algorithm).setSeed(1)
+          .cluster(SQUARES, 12, 2);
+
+      assertSquares(p);
+
+      Assert.assertEquals(3, p.getK());
+      Assert.assertTrue(p.isConverged());
+      Assert.assertArrayEquals(new int[] { 4, 4, 4 }, p.getSizes());
+
+      // Each point is 0.5 from the middle of its square in x and y
+      Assert.assertEquals(6, p.getCost(), 1e-12);
+
+      DoubleMatrix centers = p.getCenters();
+
+      for (int s = 0; s < 3; ++s) {
+        int j = p.getLabel(4 * s);
+
+        Assert.assertEquals(SQUARES[8 * s] + 0.5, centers.getValue(j, 0),
+            1e-12);
+        Assert.assertEquals(SQUARES[8 * s + 1] + 0.5, centers.getValue(j, 1),
+            1e-12);
+      }
+    }
+  }
+
+  /**
+   * More clusters than items gives one cluster per item.
+   */
+  @Test
+  public void kmeansSmallTest() {
+    Partition p = new KMeans(10).setSeed(1).cluster(LINE, 3, 1);
+
+    Assert.assertEquals(3, p.getK());
+    Assert.assertEquals(0, p.getCost(), 0);
+  }
+
+  /**
+   * PAM picks the middle point of each group.
+   */
+  @Test
+  public void kmedoidsTest() {
+    Partition p = new KMedoids(2).setSeed(1).cluster(LINE, 6, 1);
+
+    int[] medoids = p.getMedoids().clone();
+
+    Arrays.sort(medoids);
+
+    Assert.assertArrayEquals(new int[] { 1, 4 }, medoids);
+    Assert.assertEquals(4, p.getCost(), 1e-12);
+    Assert.assertTrue(p.isConverged());
+
+    int[] labels = p.getLabels();
+
+    Assert.assertEquals(labels[0], labels[2]);
+    Assert.assertEquals(labels[3], labels[5]);
+    Assert.assertTrue(labels[0] != labels[3]);
+  }
+
+  /**
+   * CLARA, used when there are more items than PAM allows, finds the same
+   * medoids as PAM on well separated data.
+   */
+  @Test
+  public void claraTest() {
+    Partition p = new KMedoids(3).setSeed(1).setMaxPamItems(4)
+        .setMetric(new ManhattanDistanceMetric()).cluster(SQUARES, 12, 2);
+
+    assertSquares(p);
+
+    // Any corner of a unit square is 1 + 2 + 1 from the others
+    Assert.assertEquals(12, p.getCost(), 1e-12);
+
+    for (int m : p.getMedoids()) {
+      Assert.assertEquals(m, p.getMedoids()[p.getLabel(m)]);
+    }
+  }
+}
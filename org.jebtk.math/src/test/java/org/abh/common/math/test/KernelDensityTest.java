@@ -0,0 +1,106 @@
+/**
+ * Copyright 2017 Antony Holmes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.abh.common.math.test;
+
+import org.jebtk.math.statistics.GaussianKernel;
+import org.jebtk.math.statistics.Kernel;
+import org.jebtk.math.statistics.KernelDensity;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The Class KernelDensityTest.
+ */
+public class KernelDensityTest {
+
+  /** The values. */
+  private static final double[] DIST = { -1, 0, 0.5, 2 };
+
+  /** The values with missing entries, sorted. */
+  private static final double[] MISSING_DIST = { Double.NEGATIVE_INFINITY, -1,
+      0, 0.5, 2, Double.POSITIVE_INFINITY, Double.NaN, Double.NaN };
+
+  /** The points to evaluate. */
+  private static final double[] XP = { -2, -0.5, 0, 1, 3 };
+
+  /** The bandwidth. */
+  private static final double BANDWIDTH = 0.5;
+
+  /** The kernel. */
+  private static final Kernel KERNEL = new GaussianKernel();
+
+  /**
+   * The density from the definition.
+   *
+   * @param x the x
+   * @return the density
+   */
+  private static double density(double x) {
+    double sum = 0;
+
+    for (double xi : DIST) {
+      double u = (x - xi) / BANDWIDTH;
+
+      sum += Math.exp(-0.5 * u * u) / Math.sqrt(2 * Math.PI);
+    }
+
+    return sum / (BANDWIDTH * DIST.length);
+  }
+
+  /**
+   * Exact densities ignore values that are not finite.
+   */
+  @Test
+  public void exactTest() {
+    double[] kde = KernelDensity.kde(XP, MISSING_DIST, BANDWIDTH, KERNEL);
+    double[] windowed = KernelDensity
+        .windowedKde(XP, MISSING_DIST, BANDWIDTH, KERNEL);
+
+    for (int i = 0; i < XP.length; ++i) {
+      Assert.assertEquals(density(XP[i]), kde[i], 1e-12);
+      Assert.assertEquals(density(XP[i]), windowed[i], 1e-12);
+    }
+  }
+
+  /**
+   * Binned densities are normalized by the number of finite values.
+   */
+  @Test
+  public void binnedTest() {
+    double[] binned = KernelDensity
+        .binnedKde(XP, MISSING_DIST, BANDWIDTH, KERNEL);
+
+    for (int i = 0; i < XP.length; ++i) {
+      Assert.assertEquals(density(XP[i]), binned[i], 1e-3);
+    }
+  }
+
+  /**
+   * All values missing.
+   */
+  @Test
+  public void emptyTest() {
+    double[] dist = { Double.NaN };
+
+    Assert.assertEquals(0, KernelDensity.kde(0, dist, BANDWIDTH, KERNEL), 0);
+    Assert.assertEquals(0,
+        KernelDensity.windowedKde(XP, dist, BANDWIDTH, KERNEL)[0],
+        0);
+    Assert.assertEquals(0,
+        KernelDensity.binnedKde(XP, dist, BANDWIDTH, KERNEL)[0],
+        0);
+  }
+}
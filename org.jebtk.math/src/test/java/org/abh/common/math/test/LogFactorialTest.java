@@ -0,0 +1,76 @@
+/**
+ * Copyright 2017 Antony Holmes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.abh.common.math.test;
+
+import org.jebtk.math.statistics.LogFactorial;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The Class LogFactorialTest.
+ */
+public class LogFactorialTest {
+
+  /**
+   * Log factorial test.
+   */
+  @Test
+  public void logFactorialTest() {
+    Assert.assertEquals(0, LogFactorial.logFactorial(0), 0);
+    Assert.assertEquals(0, LogFactorial.logFactorial(1), 0);
+    Assert.assertEquals(Math.log(120), LogFactorial.logFactorial(5), 1e-14);
+
+    double sum = 0;
+
+    for (int i = 2; i < 300; ++i) {
+      sum += Math.log(i);
+    }
+
+    // log 299!
+    Assert.assertEquals(sum, LogFactorial.logFactorial(299), 1e-11);
+  }
+
+  /**
+   * Negative values are rejected.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void negativeTest() {
+    LogFactorial.logFactorial(-1);
+  }
+
+  /**
+   * Log gamma test.
+   */
+  @Test
+  public void logGammaTest() {
+    // gamma(1 / 2) = sqrt(pi)
+    Assert.assertEquals(0.5723649429247001, LogFactorial.logGamma(0.5), 1e-15);
+    Assert.assertEquals(1.4280723266653883, LogFactorial.logGamma(3.7), 1e-14);
+    Assert.assertEquals(5908.674175848678,
+        LogFactorial.logGamma(1000.5),
+        1e-11);
+
+    // Small integers from the table and large ones from the series
+    Assert.assertEquals(Math.log(24), LogFactorial.logGamma(5.0), 1e-14);
+    Assert.assertEquals(1409.202067470412, LogFactorial.logGamma(300.0), 1e-11);
+    Assert.assertEquals(LogFactorial.logFactorial(299999),
+        LogFactorial.logGamma(300000.0),
+        1e-8);
+
+    Assert.assertTrue(Double.isNaN(LogFactorial.logGamma(0.0)));
+    Assert.assertTrue(Double.isNaN(LogFactorial.logGamma(-1.5)));
+  }
+}
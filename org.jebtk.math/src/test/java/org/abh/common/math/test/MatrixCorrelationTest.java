@@ -0,0 +1,198 @@
+/**
+ * Copyright 2017 Antony Holmes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.abh.common.math.test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.jebtk.math.matrix.UpperTriangularDoubleMatrix;
+import org.jebtk.math.matrix.utils.MatrixCorrelation;
+import org.jebtk.math.statistics.CorrelationType;
+import org.jebtk.math.statistics.Statistics;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The Class MatrixCorrelationTest.
+ * 
+ * Every pair of vectors is compared to {@link Statistics#correlation} or
+ * {@link Statistics#spearmanCorrelation} on the positions where both have
+ * values.
+ */
+public class MatrixCorrelationTest {
+
+  /**
+   * Eleven rows, so some correlations are calculated four at a time and some
+   * one at a time, with rows containing NaNs and a constant row.
+   */
+  @Test
+  public void rowsTest() {
+    double[] data = createData(new Random(0), 11, 15);
+
+    for (CorrelationType type : CorrelationType.values()) {
+      assertCorrelations(data,
+          11,
+          15,
+          type,
+          MatrixCorrelation.rows(data, 11, 15, type));
+    }
+  }
+
+  /**
+   * Enough rows to need several tiles.
+   */
+  @Test
+  public void tilesTest() {
+    double[] data = createData(new Random(1), 150, 9);
+
+    for (CorrelationType type : CorrelationType.values()) {
+      assertCorrelations(data,
+          150,
+          9,
+          type,
+          MatrixCorrelation.rows(data, 150, 9, type));
+    }
+  }
+
+  /**
+   * Column correlations must equal the row correlations of the transpose.
+   */
+  @Test
+  public void columnsTest() {
+    int rows = 15;
+    int cols = 11;
+
+    double[] t = createData(new Random(2), cols, rows);
+
+    double[] data = new double[t.length];
+
+    for (int i = 0; i < rows; ++i) {
+      for (int j = 0; j < cols; ++j) {
+        data[i * cols + j] = t[j * rows + i];
+      }
+    }
+
+    for (CorrelationType type : CorrelationType.values()) {
+      assertCorrelations(t,
+          cols,
+          rows,
+          type,
+          MatrixCorrelation.columns(data, rows, cols, type));
+    }
+  }
+
+  /**
+   * Random rows of integers, so there are ties. Every fifth row has NaNs,
+   * one of them in every position but one, and row 7 is constant.
+   *
+   * @param random the random
+   * @param n the number of rows.
+   * @param d the number of columns.
+   * @return the data
+   */
+  private static double[] createData(Random random, int n, int d) {
+    double[] ret = new double[n * d];
+
+    for (int i = 0; i < n; ++i) {
+      for (int k = 0; k < d; ++k) {
+        double v;
+
+        if (i == 7) {
+          v = 3;
+        } else if (i % 5 == 3 && random.nextInt(3) == 0) {
+          v = Double.NaN;
+        } else {
+          v = random.nextInt(10);
+        }
+
+        ret[i * d + k] = v;
+      }
+    }
+
+    Arrays.fill(ret, 4 * d + 1, 5 * d, Double.NaN);
+
+    return ret;
+  }
+
+  /**
+   * Check the correlation of every pair of rows, including each row with
+   * itself.
+   *
+   * @param data the data
+   * @param n the number of rows.
+   * @param d the number of columns.
+   * @param type the type of correlation.
+   * @param c the correlations
+   */
+  private static void assertCorrelations(double[] data,
+      int n,
+      int d,
+      CorrelationType type,
+      UpperTriangularDoubleMatrix c) {
+    for (int i = 0; i < n; ++i) {
+      for (int j = i; j < n; ++j) {
+        Assert.assertEquals(expected(data, i, j, d, type),
+            c.getValue(i, j),
+            1e-12);
+      }
+    }
+  }
+
+  /**
+   * The correlation of two rows over the positions where both have values.
+   *
+   * @param data the data
+   * @param i the first row.
+   * @param j the second row.
+   * @param d the number of columns.
+   * @param type the type of correlation.
+   * @return the correlation, NaN if there are fewer than two positions.
+   */
+  private static double expected(double[] data,
+      int i,
+      int j,
+      int d,
+      CorrelationType type) {
+    double[] a = new double[d];
+    double[] b = new double[d];
+
+    int m = 0;
+
+    for (int k = 0; k < d; ++k) {
+      double v1 = data[i * d + k];
+      double v2 = data[j * d + k];
+
+      if (!Double.isNaN(v1) && !Double.isNaN(v2)) {
+        a[m] = v1;
+        b[m] = v2;
+        ++m;
+      }
+    }
+
+    if (m < 2) {
+      return Double.NaN;
+    }
+
+    a = Arrays.copyOf(a, m);
+    b = Arrays.copyOf(b, m);
+
+    if (type == CorrelationType.SPEARMAN) {
+      return Statistics.spearmanCorrelation(a, b);
+    } else {
+      return Statistics.correlation(a, b);
+    }
+  }
+}
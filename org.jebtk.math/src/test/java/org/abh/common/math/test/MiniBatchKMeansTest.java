@@ -0,0 +1,88 @@
+/**
+ * Copyright 2017 Antony Holmes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.abh.common.math.test;
+
+import org.jebtk.math.cluster.MiniBatchKMeans;
+import org.jebtk.math.cluster.MiniBatchStats;
+import org.jebtk.math.matrix.DoubleMatrix;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The Class MiniBatchKMeansTest.
+ */
+public class MiniBatchKMeansTest {
+
+  /**
+   * Two well separated groups in two dimensions with a missing value in the
+   * last row.
+   *
+   * @return the batch
+   */
+  private static DoubleMatrix createBatch() {
+    double[] values = { 0, 0, 0, 1, 1, 0, 10, 10, 10, 11, 11, 10, 5,
+        Double.NaN };
+
+    DoubleMatrix m = new DoubleMatrix(7, 2);
+
+    for (int i = 0; i < 7; ++i) {
+      m.set(i, 0, values[2 * i]);
+      m.set(i, 1, values[2 * i + 1]);
+    }
+
+    return m;
+  }
+
+  /**
+   * Incomplete rows are reported as skipped, including in the first batch.
+   */
+  @Test
+  public void skippedTest() {
+    MiniBatchKMeans kmeans = new MiniBatchKMeans(2).setSeed(1);
+
+    MiniBatchStats first = kmeans.update(createBatch());
+
+    Assert.assertEquals(6, first.getRows());
+    Assert.assertEquals(1, first.getSkipped());
+
+    MiniBatchStats second = kmeans.update(createBatch());
+
+    Assert.assertEquals(6, second.getRows());
+    Assert.assertEquals(1, second.getSkipped());
+
+    int[] labels = kmeans.predict(createBatch());
+
+    Assert.assertEquals(labels[0], labels[1]);
+    Assert.assertEquals(labels[0], labels[2]);
+    Assert.assertEquals(labels[3], labels[4]);
+    Assert.assertEquals(labels[3], labels[5]);
+    Assert.assertTrue(labels[0] != labels[3]);
+    Assert.assertEquals(-1, labels[6]);
+  }
+
+  /**
+   * Batches to predict must have the same number of columns as those used
+   * to fit.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void predictColumnsTest() {
+    MiniBatchKMeans kmeans = new MiniBatchKMeans(2).setSeed(1);
+
+    kmeans.update(createBatch());
+
+    kmeans.predict(new DoubleMatrix(2, 3));
+  }
+}
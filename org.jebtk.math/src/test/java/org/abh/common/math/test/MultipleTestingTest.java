@@ -0,0 +1,150 @@
+/**
+ * Copyright 2017 Antony Holmes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.abh.common.math.test;
+
+import org.jebtk.math.statistics.FDRType;
+import org.jebtk.math.statistics.MultipleTesting;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The Class MultipleTestingTest. Expected values follow R's p.adjust and,
+ * for Storey, qvalue(p, lambda = 0.5), and were calculated with an
+ * independent port of their code. NaN and infinite p-values are excluded
+ * from the number of tests, like NA in R.
+ */
+public class MultipleTestingTest {
+
+  /**
+   * The p-values, with ties, missing values and a run of values that only
+   * differ after the first 32 bits, listed out of order.
+   */
+  private static final double[] P = { 0.01, 0.04, 0.03, Double.NaN, 0.04, 0.2,
+      0.5, 0.8, 0.001, 0.5, 0.6, 1e-300, 0.1 + 5e-9, 0.1 + 3e-9, 0.1 + 1e-9,
+      0.1 + 4e-9, 0.1 + 2e-9, Double.POSITIVE_INFINITY, 1, 0.5 };
+
+  /** The Constant BONFERRONI. */
+  private static final double[] BONFERRONI = { 0.18, 0.72, 0.54, Double.NaN,
+      0.72, 1, 1, 1, 0.018, 1, 1, 1.8e-299, 1, 1, 1, 1, 1,
+      Double.POSITIVE_INFINITY, 1, 1 };
+
+  /** The Constant HOLM. */
+  private static final double[] HOLM = { 0.16, 0.56, 0.45, Double.NaN, 0.56, 1,
+      1, 1, 0.017, 1, 1, 1.8e-299, 1, 1, 1, 1, 1, Double.POSITIVE_INFINITY, 1,
+      1 };
+
+  /** The Constant BH. */
+  private static final double[] BH = { 0.06, 0.12, 0.12, Double.NaN, 0.12, 0.3,
+      0.6, 0.8470588235294119, 0.009, 0.6, 0.675, 1.8e-299, 0.16363637181818183,
+      0.16363637181818183, 0.16363637181818183, 0.16363637181818183,
+      0.16363637181818183, Double.POSITIVE_INFINITY, 1, 0.6 };
+
+  /** The Constant BY. */
+  private static final double[] BY = { 0.20970648469177883, 0.41941296938355765,
+      0.41941296938355765, Double.NaN, 0.41941296938355765, 1, 1, 1,
+      0.03145597270376682, 1, 1, 6.291194540753364e-299, 0.5719268050284628,
+      0.5719268050284628, 0.5719268050284628, 0.5719268050284628,
+      0.5719268050284628, Double.POSITIVE_INFINITY, 1, 1 };
+
+  /** Storey with pi0 = 12 / (18 * 0.5) capped at 1, i.e. 2 / 3. */
+  private static final double[] STOREY = { 0.04, 0.08, 0.08, Double.NaN, 0.08,
+      0.2, 0.4, 0.5647058823529412, 0.006, 0.4, 0.45, 1.2e-299,
+      0.10909091454545455, 0.10909091454545455, 0.10909091454545455,
+      0.10909091454545455, 0.10909091454545455, Double.POSITIVE_INFINITY,
+      0.6666666666666666, 0.4 };
+
+  /**
+   * Adjust the p-values and compare them to the expected values.
+   *
+   * @param type the type
+   * @param expected the expected
+   */
+  private static void assertAdjust(FDRType type, double[] expected) {
+    double[] ret = new double[P.length];
+
+    MultipleTesting.adjust(P, type, ret);
+
+    Assert.assertArrayEquals(expected, ret, 1e-14);
+
+    // In place
+    double[] p = P.clone();
+
+    MultipleTesting.adjust(p, type, p);
+
+    Assert.assertArrayEquals(ret, p, 0);
+  }
+
+  /**
+   * Bonferroni test.
+   */
+  @Test
+  public void bonferroniTest() {
+    assertAdjust(FDRType.BONFERRONI, BONFERRONI);
+  }
+
+  /**
+   * Holm test.
+   */
+  @Test
+  public void holmTest() {
+    assertAdjust(FDRType.HOLM, HOLM);
+  }
+
+  /**
+   * Benjamini-Hochberg test.
+   */
+  @Test
+  public void benjaminiHochbergTest() {
+    assertAdjust(FDRType.BENJAMINI_HOCHBERG, BH);
+  }
+
+  /**
+   * Benjamini-Yekutieli test.
+   */
+  @Test
+  public void benjaminiYekutieliTest() {
+    assertAdjust(FDRType.BENJAMINI_YEKUTIELI, BY);
+  }
+
+  /**
+   * Storey test.
+   */
+  @Test
+  public void storeyTest() {
+    Assert.assertEquals(2.0 / 3.0,
+        MultipleTesting.pi0(P, MultipleTesting.DEFAULT_LAMBDA),
+        1e-15);
+
+    assertAdjust(FDRType.STOREY, STOREY);
+  }
+
+  /**
+   * No valid p-values.
+   */
+  @Test
+  public void emptyTest() {
+    double[] p = { Double.NaN, Double.NaN };
+    double[] ret = new double[2];
+
+    MultipleTesting.benjaminiHochberg(p, ret);
+
+    Assert.assertTrue(Double.isNaN(ret[0]));
+    Assert.assertTrue(Double.isNaN(ret[1]));
+    Assert.assertEquals(1, MultipleTesting.pi0(p, 0.5), 0);
+
+    MultipleTesting.benjaminiHochberg(new double[0], new double[0]);
+  }
+}
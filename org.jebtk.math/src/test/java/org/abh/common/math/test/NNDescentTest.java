@@ -0,0 +1,82 @@
+/**
+ * Copyright 2017 Antony Holmes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.abh.common.math.test;
+
+import org.jebtk.math.cluster.KnnGraph;
+import org.jebtk.math.cluster.NNDescent;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The Class NNDescentTest.
+ */
+public class NNDescentTest {
+
+  /**
+   * Rows with an undefined distance to every other row must still get k
+   * neighbors rather than stalling the random initialization.
+   */
+  @Test(timeout = 10000)
+  public void nanRowTest() {
+    int n = 20;
+    int d = 3;
+
+    double[] data = new double[n * d];
+
+    for (int i = 0; i < n; ++i) {
+      for (int j = 0; j < d; ++j) {
+        data[i * d + j] = i + 0.1 * j;
+      }
+    }
+
+    // Row 0 is missing entirely
+    for (int j = 0; j < d; ++j) {
+      data[j] = Double.NaN;
+    }
+
+    KnnGraph graph = new NNDescent().setK(4).setSeed(1).build(data, n, d);
+
+    Assert.assertEquals(n, graph.size());
+
+    for (int i = 0; i < n; ++i) {
+      for (int j = 0; j < 4; ++j) {
+        Assert.assertTrue(graph.getNeighbor(i, j) >= 0);
+        Assert.assertTrue(graph.getNeighbor(i, j) != i);
+      }
+    }
+
+    // The missing row can only ever be a last resort.
+    for (int j = 0; j < 4; ++j) {
+      Assert.assertTrue(Double.isInfinite(graph.getDistance(0, j)));
+    }
+  }
+
+  /**
+   * With k = n - 1 every row is a neighbor so the nearest must be found.
+   */
+  @Test
+  public void neighborTest() {
+    double[] data = { 0, 0, 0, 1, 10, 10, 10, 11 };
+
+    KnnGraph graph = new NNDescent().setK(3).setSeed(1).build(data, 4, 2);
+
+    Assert.assertEquals(1, graph.getNeighbor(0, 0));
+    Assert.assertEquals(0, graph.getNeighbor(1, 0));
+    Assert.assertEquals(3, graph.getNeighbor(2, 0));
+    Assert.assertEquals(2, graph.getNeighbor(3, 0));
+    Assert.assertEquals(1.0, graph.getDistance(0, 0), 1e-12);
+  }
+}
@@ -0,0 +1,241 @@
+/**
+ * Copyright 2017 Antony Holmes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.abh.common.math.test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.jebtk.math.statistics.Percentiles;
+import org.jebtk.math.statistics.Statistics;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The Class PercentilesTest.
+ * 
+ * Selection must give the same values as
+ * {@link Statistics#percentile(double[], int)} on the sorted values.
+ */
+public class PercentilesTest {
+
+  /**
+   * Every percentile of small arrays with many ties, in random order.
+   */
+  @Test
+  public void tiesTest() {
+    Random random = new Random(0);
+
+    for (int t = 0; t < 500; ++t) {
+      int n = 1 + random.nextInt(40);
+
+      double[] values = new double[n];
+
+      for (int i = 0; i < n; ++i) {
+        values[i] = random.nextInt(5);
+      }
+
+      double[] sorted = sorted(values);
+
+      for (int p = 0; p <= 100; ++p) {
+        Assert.assertEquals(Statistics.percentile(sorted, p),
+            Percentiles.percentile(values, p, null),
+            1e-12);
+      }
+    }
+  }
+
+  /**
+   * Arrays of one and two values.
+   */
+  @Test
+  public void smallTest() {
+    Assert.assertEquals(7, Percentiles.median(new double[] { 7 }, null), 0);
+    Assert.assertEquals(7,
+        Percentiles.percentile(new double[] { 7 }, 1, null),
+        0);
+    Assert.assertEquals(0, Percentiles.iqr(new double[] { 7 }, null), 0);
+
+    double[] values = { 4, 1 };
+
+    Assert.assertEquals(2.5, Percentiles.median(values, null), 1e-12);
+    Assert.assertEquals(1, Percentiles.percentile(values, 10, null), 0);
+    Assert.assertEquals(4, Percentiles.percentile(values, 90, null), 0);
+    Assert.assertEquals(1.5, Percentiles.mad(values, null), 1e-12);
+
+    // The input must not be reordered
+    Assert.assertArrayEquals(new double[] { 4, 1 }, values, 0);
+  }
+
+  /**
+   * NaNs are ignored and there is no percentile when every value is NaN.
+   */
+  @Test
+  public void nanTest() {
+    double[] values = { 5, Double.NaN, 1, 3, Double.NaN, 2 };
+
+    Assert.assertEquals(2.5, Percentiles.median(values, null), 1e-12);
+    Assert.assertEquals(Statistics.percentile(new double[] { 1, 2, 3, 5 }, 75),
+        Percentiles.percentile(values, 75, null),
+        1e-12);
+
+    double[] nan = { Double.NaN, Double.NaN };
+
+    Assert.assertEquals(Double.NaN, Percentiles.median(nan, null), 0);
+    Assert.assertEquals(Double.NaN, Percentiles.mad(nan, null), 0);
+    Assert.assertEquals(Double.NaN, Percentiles.iqr(nan, null), 0);
+    Assert.assertEquals(Double.NaN, Percentiles.median(new double[0], null), 0);
+  }
+
+  /**
+   * Several percentiles calculated together, in any order and with
+   * duplicates, must match those calculated separately. The scratch buffer
+   * may be the input.
+   */
+  @Test
+  public void percentilesTest() {
+    Random random = new Random(1);
+
+    double[] p = { 90, 10, 50, 50, 0, 100, 25, 75, 99, 1 };
+
+    for (int t = 0; t < 200; ++t) {
+      int n = 1 + random.nextInt(1000);
+
+      double[] values = new double[n];
+
+      for (int i = 0; i < n; ++i) {
+        values[i] = random.nextInt(4) == 0 ? Double.NaN
+            : Math.floor(random.nextGaussian() * 10);
+      }
+
+      double[] valid = valid(values);
+
+      double[] sorted = sorted(valid);
+
+      double[] ret = Percentiles.percentiles(values, p, values);
+
+      for (int i = 0; i < p.length; ++i) {
+        double expected = sorted.length == 0 ? Double.NaN
+            : Statistics.percentile(sorted, (int) p[i]);
+
+        Assert.assertEquals(expected, ret[i], 1e-12);
+      }
+    }
+  }
+
+  /**
+   * Sorted, reversed and constant input must not degrade selection.
+   */
+  @Test
+  public void orderedTest() {
+    int n = 10001;
+
+    double[] sorted = new double[n];
+    double[] reversed = new double[n];
+    double[] constant = new double[n];
+
+    for (int i = 0; i < n; ++i) {
+      sorted[i] = i;
+      reversed[i] = n - 1 - i;
+      constant[i] = 3;
+    }
+
+    Assert.assertEquals(5000, Percentiles.median(sorted, null), 0);
+    Assert.assertEquals(5000, Percentiles.median(reversed, null), 0);
+    Assert.assertEquals(3, Percentiles.median(constant, null), 0);
+    Assert.assertEquals(0, Percentiles.mad(constant, null), 0);
+
+    double[] a = sorted(sorted);
+
+    for (int k = 0; k < n; k += 997) {
+      Assert.assertEquals(k, Percentiles.select(a, 0, n, k), 0);
+    }
+  }
+
+  /**
+   * MAD and IQR against their definitions on sorted values.
+   */
+  @Test
+  public void madIqrTest() {
+    Random random = new Random(2);
+
+    for (int t = 0; t < 200; ++t) {
+      int n = 1 + random.nextInt(100);
+
+      double[] values = new double[n];
+
+      for (int i = 0; i < n; ++i) {
+        values[i] = random.nextInt(3) == 0 ? Double.NaN : random.nextInt(20);
+      }
+
+      double[] sorted = sorted(valid(values));
+
+      if (sorted.length == 0) {
+        continue;
+      }
+
+      double median = Statistics.percentile(sorted, 50);
+
+      double[] deviations = new double[sorted.length];
+
+      for (int i = 0; i < sorted.length; ++i) {
+        deviations[i] = Math.abs(sorted[i] - median);
+      }
+
+      Assert.assertEquals(Statistics.percentile(sorted(deviations), 50),
+          Percentiles.mad(values, null),
+          1e-12);
+
+      Assert.assertEquals(Statistics.percentile(sorted, 75)
+          - Statistics.percentile(sorted, 25),
+          Percentiles.iqr(values, new double[n]),
+          1e-12);
+    }
+  }
+
+  /**
+   * Returns the values that are not NaN.
+   *
+   * @param values the values
+   * @return the valid values
+   */
+  private static double[] valid(double[] values) {
+    double[] ret = new double[values.length];
+
+    int n = 0;
+
+    for (double v : values) {
+      if (!Double.isNaN(v)) {
+        ret[n++] = v;
+      }
+    }
+
+    return Arrays.copyOf(ret, n);
+  }
+
+  /**
+   * Returns a sorted copy of the values.
+   *
+   * @param values the values
+   * @return the sorted values
+   */
+  private static double[] sorted(double[] values) {
+    double[] ret = Arrays.copyOf(values, values.length);
+
+    Arrays.sort(ret);
+
+    return ret;
+  }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright 2017 Antony Holmes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.abh.common.math.test;
+
+import java.io.IOException;
+
+import org.jebtk.math.matrix.DoubleMatrix;
+import org.jebtk.math.matrix.RowChunkIterator;
+import org.jebtk.math.matrix.utils.QuantileNormalization;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The Class QuantileNormalizationTest.
+ */
+public class QuantileNormalizationTest {
+
+  /**
+   * Returns a single chunk.
+   *
+   * @param m the m
+   * @return the row chunk iterator
+   */
+  private static RowChunkIterator chunks(final DoubleMatrix m) {
+    return chunks(m, m.getCols());
+  }
+
+  /**
+   * Returns a single chunk from an iterator reporting a given number of
+   * columns.
+   *
+   * @param m the m
+   * @param cols the columns reported by the iterator.
+   * @return the row chunk iterator
+   */
+  private static RowChunkIterator chunks(final DoubleMatrix m,
+      final int cols) {
+    return new RowChunkIterator() {
+      private boolean mDone = false;
+
+      @Override
+      public int getCols() {
+        return cols;
+      }
+
+      @Override
+      public DoubleMatrix nextChunk() {
+        if (mDone) {
+          return null;
+        }
+
+        mDone = true;
+
+        return m;
+      }
+
+      @Override
+      public void close() {
+        // Do nothing
+      }
+    };
+  }
+
+  /**
+   * A column of 1 to 100 and one of 101 to 200 are both mapped onto the mean
+   * distribution, 51 to 150.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @Test
+  public void transformTest() throws IOException {
+    DoubleMatrix m = new DoubleMatrix(100, 2);
+
+    for (int i = 0; i < 100; ++i) {
+      m.set(i, 0, i + 1);
+      m.set(i, 1, i + 101);
+    }
+
+    QuantileNormalization qn = new QuantileNormalization().fit(chunks(m));
+
+    qn.transform(m);
+
+    Assert.assertEquals(51, m.getValue(0, 0), 1e-12);
+    Assert.assertEquals(150, m.getValue(99, 1), 1e-12);
+
+    for (int i = 0; i < 100; ++i) {
+      Assert.assertEquals(i + 51, m.getValue(i, 0), 1);
+      Assert.assertEquals(m.getValue(i, 0), m.getValue(i, 1), 1e-12);
+    }
+  }
+
+  /**
+   * Chunks must have the same columns as the fitted matrix.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void columnsTest() throws IOException {
+    DoubleMatrix m = new DoubleMatrix(10, 2);
+
+    QuantileNormalization qn = new QuantileNormalization().fit(chunks(m));
+
+    qn.transform(new DoubleMatrix(10, 3));
+  }
+
+  /**
+   * Fitting must reject chunks whose columns differ from the iterator's.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void fitColumnsTest() throws IOException {
+    new QuantileNormalization().fit(chunks(new DoubleMatrix(10, 3), 2));
+  }
+}
@@ -0,0 +1,258 @@
+/**
+ * Copyright 2017 Antony Holmes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.abh.common.math.test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.jebtk.math.statistics.Ranks;
+import org.jebtk.math.statistics.TieMethod;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The Class RanksTest.
+ */
+public class RanksTest {
+
+  /**
+   * The example in the documentation of {@link TieMethod}.
+   */
+  @Test
+  public void tieMethodTest() {
+    double[] values = { 10, 20, 20, 30 };
+
+    Assert.assertArrayEquals(new double[] { 1, 2.5, 2.5, 4 },
+        Ranks.rank(values, TieMethod.AVERAGE),
+        0);
+    Assert.assertArrayEquals(new double[] { 1, 2, 2, 4 },
+        Ranks.rank(values, TieMethod.MIN),
+        0);
+    Assert.assertArrayEquals(new double[] { 1, 3, 3, 4 },
+        Ranks.rank(values, TieMethod.MAX),
+        0);
+    Assert.assertArrayEquals(new double[] { 1, 2, 2, 3 },
+        Ranks.rank(values, TieMethod.DENSE),
+        0);
+  }
+
+  /**
+   * NaNs are not ranked and do not take up a rank.
+   */
+  @Test
+  public void nanTest() {
+    double[] values = { 30, Double.NaN, 10, 20, Double.NaN, 20 };
+
+    Assert.assertArrayEquals(
+        new double[] { 4, Double.NaN, 1, 2.5, Double.NaN, 2.5 },
+        Ranks.rank(values, TieMethod.AVERAGE),
+        0);
+
+    int[] index = new int[values.length];
+
+    // Tied values keep their original order
+    Assert.assertEquals(4, Ranks.argsort(values, index));
+    Assert.assertArrayEquals(new int[] { 2, 3, 5, 0 },
+        Arrays.copyOf(index, 4));
+
+    Assert.assertArrayEquals(new double[] { Double.NaN, Double.NaN },
+        Ranks.rank(new double[] { Double.NaN, Double.NaN }, TieMethod.MIN),
+        0);
+  }
+
+  /**
+   * Arrays long enough to need the merge passes, with many ties, against
+   * ranks counted directly.
+   */
+  @Test
+  public void mergeTest() {
+    Random random = new Random(0);
+
+    int[] sizes = { 1, 2, 15, 16, 17, 33, 64, 100, 1000 };
+
+    for (int n : sizes) {
+      for (int t = 0; t < 20; ++t) {
+        double[] values = random(random, n, 1 + random.nextInt(n + 1));
+
+        for (TieMethod ties : TieMethod.values()) {
+          Assert.assertArrayEquals(expected(values, ties),
+              Ranks.rank(values, ties),
+              0);
+        }
+
+        int[] index = new int[n];
+
+        int m = Ranks.argsort(values, index);
+
+        for (int i = 1; i < m; ++i) {
+          double v1 = values[index[i - 1]];
+          double v2 = values[index[i]];
+
+          Assert.assertTrue(v1 < v2 || (v1 == v2 && index[i - 1] < index[i]));
+        }
+      }
+    }
+  }
+
+  /**
+   * Ranking the columns of a row major matrix must rank each strided column
+   * on its own, including when the ranks overwrite the data.
+   */
+  @Test
+  public void rankColumnsTest() {
+    Random random = new Random(1);
+
+    int rows = 40;
+    int cols = 7;
+
+    double[] data = random(random, rows * cols, 10);
+
+    double[] ret = new double[data.length];
+
+    Ranks.rankColumns(data, rows, cols, TieMethod.AVERAGE, ret);
+
+    for (int j = 0; j < cols; ++j) {
+      double[] column = new double[rows];
+
+      for (int i = 0; i < rows; ++i) {
+        column[i] = data[i * cols + j];
+      }
+
+      double[] expected = expected(column, TieMethod.AVERAGE);
+
+      for (int i = 0; i < rows; ++i) {
+        Assert.assertEquals(expected[i], ret[i * cols + j], 0);
+      }
+    }
+
+    double[] copy = Arrays.copyOf(data, data.length);
+
+    Ranks.rankColumns(copy, rows, cols, TieMethod.AVERAGE, copy);
+
+    Assert.assertArrayEquals(ret, copy, 0);
+  }
+
+  /**
+   * Ranking rows in place must give the same ranks as ranking into a new
+   * array.
+   */
+  @Test
+  public void rankRowsTest() {
+    Random random = new Random(2);
+
+    int rows = 9;
+    int cols = 50;
+
+    double[] data = random(random, rows * cols, 20);
+
+    double[] ret = new double[data.length];
+
+    Ranks.rankRows(data, rows, cols, TieMethod.MAX, ret);
+
+    for (int i = 0; i < rows; ++i) {
+      double[] row = Arrays.copyOfRange(data, i * cols, (i + 1) * cols);
+
+      Assert.assertArrayEquals(expected(row, TieMethod.MAX),
+          Arrays.copyOfRange(ret, i * cols, (i + 1) * cols),
+          0);
+    }
+
+    Ranks.rankRows(data, rows, cols, TieMethod.MAX, data);
+
+    Assert.assertArrayEquals(ret, data, 0);
+
+    double[] values = { 3, Double.NaN, 1, 3 };
+
+    Ranks.rank(values, TieMethod.DENSE, values);
+
+    Assert.assertArrayEquals(new double[] { 2, Double.NaN, 1, 2 }, values, 0);
+  }
+
+  /**
+   * Random integers below a bound, so there are ties, with about one value in
+   * ten NaN.
+   *
+   * @param random the random
+   * @param n the number of values.
+   * @param bound the bound
+   * @return the values
+   */
+  private static double[] random(Random random, int n, int bound) {
+    double[] ret = new double[n];
+
+    for (int i = 0; i < n; ++i) {
+      ret[i] = random.nextInt(10) == 0 ? Double.NaN : random.nextInt(bound);
+    }
+
+    return ret;
+  }
+
+  /**
+   * Rank values by counting the values below and equal to each one.
+   *
+   * @param values the values
+   * @param ties how to rank ties.
+   * @return the ranks
+   */
+  private static double[] expected(double[] values, TieMethod ties) {
+    double[] ret = new double[values.length];
+
+    for (int i = 0; i < values.length; ++i) {
+      double v = values[i];
+
+      if (Double.isNaN(v)) {
+        ret[i] = Double.NaN;
+        continue;
+      }
+
+      int less = 0;
+      int equal = 0;
+
+      double[] distinct = new double[values.length];
+      int d = 0;
+
+      for (double w : values) {
+        if (w < v) {
+          ++less;
+
+          if (Arrays.binarySearch(distinct, 0, d, w) < 0) {
+            distinct[d++] = w;
+            Arrays.sort(distinct, 0, d);
+          }
+        } else if (w == v) {
+          ++equal;
+        }
+      }
+
+      switch (ties) {
+      case MIN:
+        ret[i] = less + 1;
+        break;
+      case MAX:
+        ret[i] = less + equal;
+        break;
+      case DENSE:
+        ret[i] = d + 1;
+        break;
+      default:
+        ret[i] = less + 0.5 * (equal + 1);
+        break;
+      }
+    }
+
+    return ret;
+  }
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright 2017 Antony Holmes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.abh.common.math.test;
+
+import org.jebtk.math.statistics.RowMannWhitney;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The Class RowMannWhitneyTest. Expected p-values follow R's
+ * wilcox.test(x, y), with exact = FALSE, correct = FALSE for the normal
+ * approximation, and were calculated independently by enumerating every
+ * arrangement of the ranks.
+ */
+public class RowMannWhitneyTest {
+
+  /**
+   * Test a single row made of two groups.
+   *
+   * @param x the first group
+   * @param y the second group
+   * @return the results
+   */
+  private static RowMannWhitney test(double[] x, double[] y) {
+    int n = x.length + y.length;
+
+    double[] data = new double[n];
+    int[] g1 = new int[x.length];
+    int[] g2 = new int[y.length];
+
+    for (int i = 0; i < x.length; ++i) {
+      data[i] = x[i];
+      g1[i] = i;
+    }
+
+    for (int i = 0; i < y.length; ++i) {
+      data[x.length + i] = y[i];
+      g2[i] = x.length + i;
+    }
+
+    return RowMannWhitney.test(data, 1, n, g1, g2);
+  }
+
+  /**
+   * Small groups without ties use the exact distribution. This is the
+   * example from the R documentation, where the one sided p-value is
+   * 0.1272.
+   */
+  @Test
+  public void exactTest() {
+    double[] x = { 0.80, 0.83, 1.89, 1.04, 1.45, 1.38, 1.91, 1.64, 0.73,
+        1.46 };
+    double[] y = { 1.15, 0.88, 0.90, 0.74, 1.21 };
+
+    RowMannWhitney mw = test(x, y);
+
+    Assert.assertEquals(35, mw.getU()[0], 0);
+    Assert.assertEquals(0.2544122544122544, mw.getP()[0], 1e-12);
+
+    // Swapping the groups gives the other tail
+    mw = test(y, x);
+
+    Assert.assertEquals(15, mw.getU()[0], 0);
+    Assert.assertEquals(0.2544122544122544, mw.getP()[0], 1e-12);
+  }
+
+  /**
+   * Larger groups that still use the exact distribution.
+   */
+  @Test
+  public void exactLargeTest() {
+    double[] x = new double[20];
+    double[] y = new double[25];
+
+    for (int i = 0; i < x.length; ++i) {
+      x[i] = ((i + 1) * 37 % 101) / 10.0;
+    }
+
+    for (int i = 0; i < y.length; ++i) {
+      y[i] = ((i + 1) * 53 % 103) / 10.0 + 0.05;
+    }
+
+    RowMannWhitney mw = test(x, y);
+
+    Assert.assertEquals(269, mw.getU()[0], 0);
+    Assert.assertEquals(0.675596762704326, mw.getP()[0], 1e-12);
+  }
+
+  /**
+   * Ties use the normal approximation with the tie corrected variance.
+   */
+  @Test
+  public void tiesTest() {
+    double[] x = { 1, 2, 2, 3, 3, 3, 5 };
+    double[] y = { 2, 3, 4, 4, 5, 6 };
+
+    RowMannWhitney mw = test(x, y);
+
+    Assert.assertEquals(10, mw.getU()[0], 0);
+    Assert.assertEquals(0.10802203343404664, mw.getP()[0], 1e-10);
+  }
+
+  /**
+   * Large groups use the normal approximation.
+   */
+  @Test
+  public void normalTest() {
+    double[] x = new double[30];
+    double[] y = new double[30];
+
+    for (int i = 0; i < 30; ++i) {
+      x[i] = 2 * i;
+      y[i] = 2 * i + 11;
+    }
+
+    RowMannWhitney mw = test(x, y);
+
+    Assert.assertEquals(300, mw.getU()[0], 0);
+    Assert.assertEquals(0.026577763365016195, mw.getP()[0], 1e-10);
+  }
+
+  /**
+   * Missing values are ignored and rows without values in a group are NaN.
+   */
+  @Test
+  public void missingTest() {
+    double[] data = { 0.80, 0.83, 1.89, 1.04, 1.45, 1.38, 1.91, 1.64, 0.73,
+        1.46, Double.NaN, 1.15, 0.88, 0.90, 0.74, 1.21, Double.NaN, Double.NaN,
+        Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN,
+        Double.NaN, Double.NaN, Double.NaN, 1, 2, 3, 4, 5 };
+
+    int[] g1 = { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 };
+    int[] g2 = { 11, 12, 13, 14, 15 };
+
+    RowMannWhitney mw = RowMannWhitney.test(data, 2, 16, g1, g2);
+
+    Assert.assertEquals(35, mw.getU()[0], 0);
+    Assert.assertEquals(0.2544122544122544, mw.getP()[0], 1e-12);
+
+    Assert.assertTrue(Double.isNaN(mw.getU()[1]));
+    Assert.assertTrue(Double.isNaN(mw.getP()[1]));
+  }
+}
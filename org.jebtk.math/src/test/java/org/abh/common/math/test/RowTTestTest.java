@@ -0,0 +1,132 @@
+/**
+ * Copyright 2017 Antony Holmes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.abh.common.math.test;
+
+import org.jebtk.math.statistics.RowTTest;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The Class RowTTestTest.
+ * 
+ * Expected values are those of R's t.test. The first row is R's sleep data,
+ * for which t.test reports t = -1.8608 with p = 0.07919 (var.equal = TRUE)
+ * and df = 17.776 with p = 0.07939 (Welch).
+ */
+public class RowTTestTest {
+
+  /** The first group. */
+  private static final int[] G1 = { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9 };
+
+  /** The second group. */
+  private static final int[] G2 = { 10, 11, 12, 13, 14, 15, 16, 17, 18, 19 };
+
+  /**
+   * The rows: the sleep data, groups with different variances, constant
+   * groups and a missing value.
+   */
+  private static final double[][] ROWS = {
+      { 0.7, -1.6, -0.2, -1.2, -0.1, 3.4, 3.7, 0.8, 0.0, 2.0, 1.9, 0.8, 1.1,
+          0.1, -0.1, 4.4, 5.5, 1.6, 4.6, 3.4 },
+      { 10.1, 12.3, 9.8, 11.7, 10.9, 13.2, 8.4, 11.1, 12.8, 10.3, 14.2, 9.1,
+          18.7, 6.3, 16.9, 11.4, 20.2, 7.7, 15.5, 13.8 },
+      { 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2 },
+      { 1, 2, 3, 4, 5, 6, 7, 8, 9, Double.NaN, 2, 3, 4, 5, 6, 7, 8, 9, 10,
+          11 } };
+
+  /**
+   * Student's t-test.
+   */
+  @Test
+  public void studentTest() {
+    RowTTest test = RowTTest.test(data(), ROWS.length, 20, G1, G2, true);
+
+    Assert.assertEquals(-1.8608134674868526, test.getT()[0], 1e-12);
+    Assert.assertEquals(18, test.getDf()[0], 0);
+    assertRelative(0.07918671421593815, test.getP()[0]);
+
+    Assert.assertEquals(-1.4943744779050223, test.getT()[1], 1e-12);
+    Assert.assertEquals(18, test.getDf()[1], 0);
+    assertRelative(0.15240204181346817, test.getP()[1]);
+
+    // Constant groups with different means
+    Assert.assertEquals(Double.NEGATIVE_INFINITY, test.getT()[2], 0);
+    Assert.assertEquals(0, test.getP()[2], 0);
+
+    Assert.assertEquals(Double.NaN, test.getP()[3], 0);
+  }
+
+  /**
+   * Welch's t-test.
+   */
+  @Test
+  public void welchTest() {
+    RowTTest test = RowTTest.test(data(), ROWS.length, 20, G1, G2, false);
+
+    Assert.assertEquals(-1.8608134674868526, test.getT()[0], 1e-12);
+    Assert.assertEquals(17.776473516178495, test.getDf()[0], 1e-10);
+    assertRelative(0.0793941401873578, test.getP()[0]);
+
+    Assert.assertEquals(-1.4943744779050223, test.getT()[1], 1e-12);
+    Assert.assertEquals(10.78451704122744, test.getDf()[1], 1e-10);
+    assertRelative(0.1637498147806018, test.getP()[1]);
+
+    // The degrees of freedom of constant groups are undefined
+    Assert.assertEquals(Double.NaN, test.getP()[2], 0);
+    Assert.assertEquals(Double.NaN, test.getP()[3], 0);
+  }
+
+  /**
+   * A group with one value has no sample variance so every p-value is NaN.
+   * MatrixOperations.tTest reports these as 1, where commons-math threw.
+   */
+  @Test
+  public void singleValueTest() {
+    for (boolean equalVariance : new boolean[] { true, false }) {
+      RowTTest test = RowTTest
+          .test(data(), ROWS.length, 20, new int[] { 0 }, G2, equalVariance);
+
+      for (double p : test.getP()) {
+        Assert.assertEquals(Double.NaN, p, 0);
+      }
+    }
+  }
+
+  /**
+   * Returns the rows stored row major.
+   *
+   * @return the data
+   */
+  private static double[] data() {
+    double[] ret = new double[ROWS.length * 20];
+
+    for (int i = 0; i < ROWS.length; ++i) {
+      System.arraycopy(ROWS[i], 0, ret, i * 20, 20);
+    }
+
+    return ret;
+  }
+
+  /**
+   * Check a p-value to a relative tolerance.
+   *
+   * @param expected the expected
+   * @param actual the actual
+   */
+  private static void assertRelative(double expected, double actual) {
+    Assert.assertEquals(expected, actual, 1e-11 * expected);
+  }
+}
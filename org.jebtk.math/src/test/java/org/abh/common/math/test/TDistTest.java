@@ -0,0 +1,116 @@
+/**
+ * Copyright 2017 Antony Holmes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.abh.common.math.test;
+
+import org.jebtk.math.statistics.TDist;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The Class TDistTest. Expected values are from the closed forms of the t
+ * distribution for small degrees of freedom, agree with R's pt, and tail
+ * values were checked with 400 digit arithmetic.
+ */
+public class TDistTest {
+
+  /**
+   * Assert that two values agree to a relative tolerance.
+   *
+   * @param expected the expected
+   * @param actual the actual
+   * @param tolerance the tolerance
+   */
+  private static void assertRelative(double expected,
+      double actual,
+      double tolerance) {
+    Assert.assertEquals(expected, actual, Math.abs(expected) * tolerance);
+  }
+
+  /**
+   * Cdf test.
+   */
+  @Test
+  public void cdfTest() {
+    // pt(2, 5)
+    assertRelative(0.9490302605850709, TDist.cdf(2, 5), 1e-14);
+    assertRelative(0.050969739414929105, TDist.cdf(-2, 5), 1e-13);
+
+    Assert.assertEquals(0.5, TDist.cdf(0, 5), 0);
+
+    // Cauchy
+    assertRelative(0.75, TDist.cdf(1, 1), 1e-14);
+  }
+
+  /**
+   * Two tailed p-values.
+   */
+  @Test
+  public void twoTailTest() {
+    assertRelative(0.5, TDist.twoTailP(1, 1), 1e-14);
+    assertRelative(0.5, TDist.twoTailP(-1, 1), 1e-14);
+
+    // 1 - t / sqrt(t^2 + 2) for 2 degrees of freedom
+    assertRelative(0.09546596626670911, TDist.twoTailP(3, 2), 1e-14);
+
+    Assert.assertEquals(1, TDist.twoTailP(0, 10), 0);
+
+    // Approaches the normal distribution
+    assertRelative(0.04999579029644087, TDist.twoTailP(1.96, 1e12), 1e-9);
+  }
+
+  /**
+   * Far tail p-values keep their relative precision rather than rounding to
+   * zero.
+   */
+  @Test
+  public void tailTest() {
+    assertRelative(1.8572128388108902E-102, TDist.twoTailP(1e4, 31), 1e-12);
+    assertRelative(4.0622884995247713e-75, TDist.twoTailP(20, 1000), 1e-12);
+  }
+
+  /**
+   * Invalid arguments.
+   */
+  @Test
+  public void invalidTest() {
+    Assert.assertTrue(Double.isNaN(TDist.twoTailP(Double.NaN, 5)));
+    Assert.assertTrue(Double.isNaN(TDist.twoTailP(1, 0)));
+    Assert.assertTrue(Double.isNaN(TDist.twoTailP(1, -1)));
+  }
+
+  /**
+   * The vectorized versions agree with the scalar ones.
+   */
+  @Test
+  public void arrayTest() {
+    double[] t = { -3, -1, 0, 0.5, 2, 10, Double.NaN };
+    double[] df = { 1, 2, 3, 5, 5, 30, 4 };
+
+    double[] cdf = new double[t.length];
+    double[] p = new double[t.length];
+    double[] p5 = new double[t.length];
+
+    TDist.cdf(t, df, cdf);
+    TDist.twoTailP(t, df, p);
+    TDist.twoTailP(t, 5, p5);
+
+    for (int i = 0; i < t.length; ++i) {
+      Assert.assertEquals(TDist.cdf(t[i], df[i]), cdf[i], 0);
+      Assert.assertEquals(TDist.twoTailP(t[i], df[i]), p[i], 0);
+      Assert.assertEquals(TDist.twoTailP(t[i], 5), p5[i], 0);
+    }
+  }
+}